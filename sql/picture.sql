@@ -47,3 +47,26 @@ create index idx_spaceId on picture (spaceId);
 alter table picture
     add column picColor varchar(16) null comment '图片主色调';
 
+-- 游标分页: 按 (createTime, id) 定位, 二级索引中隐含主键 id
+create index idx_spaceId_createTime on picture (spaceId, createTime);
+create index idx_reviewStatus_spaceId_createTime on picture (reviewStatus, spaceId, createTime);
+
+-- 主色调的整数形式(0xRRGGBB), 以色搜图时无需再解析字符串
+alter table picture
+    add column picColorValue int null comment '图片主色调(0xRRGGBB)';
+
+update picture
+set picColorValue = conv(substring(picColor, 3), 16, 10)
+where picColor is not null
+  and picColorValue is null;
+
+-- 图片感知哈希(64 位 pHash), 用于站内以图搜图
+alter table picture
+    add column picPhash bigint null comment '图片感知哈希(pHash)';
+
+-- 图片文件内容哈希, 关联 picture_file 表, 相同内容的图片共用一份存储
+alter table picture
+    add column fileHash char(64) null comment '文件内容哈希(SHA-256)';
+
+-- 文件处理完成后按内容哈希同步图片
+create index idx_fileHash on picture (fileHash);
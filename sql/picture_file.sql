@@ -0,0 +1,20 @@
+-- picture_file
+create table if not exists picture_file
+(
+    id           bigint auto_increment comment 'id' primary key,
+    fileHash     char(64)                           not null comment '文件内容哈希(SHA-256)',
+    url          varchar(512)                       not null comment '图片 url',
+    thumbnailUrl varchar(512)                       null comment '缩略图 url',
+    picSize      bigint                             null comment '图片体积',
+    picWidth     int                                null comment '图片宽度',
+    picHeight    int                                null comment '图片高度',
+    picScale     double                             null comment '图片宽高比例',
+    picFormat    varchar(32)                        null comment '图片格式',
+    picColor     varchar(16)                        null comment '图片主色调',
+    picPhash     bigint                             null comment '图片感知哈希(pHash)',
+    refCount     int      default 0                 not null comment '引用该文件的图片数量',
+    createTime   datetime default CURRENT_TIMESTAMP not null comment '创建时间',
+    updateTime   datetime default CURRENT_TIMESTAMP not null on update CURRENT_TIMESTAMP comment '更新时间',
+    -- 索引设计
+    UNIQUE KEY uk_fileHash (fileHash) -- 按内容哈希查找与增减引用
+) comment '图片文件(按内容去重)' collate = utf8mb4_unicode_ci;
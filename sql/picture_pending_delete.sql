@@ -0,0 +1,14 @@
+-- picture_pending_delete
+create table if not exists picture_pending_delete
+(
+    id              bigint auto_increment comment 'id' primary key,
+    objectKey       varchar(512)                       not null comment '对象键',
+    attempts        int      default 0                 not null comment '已尝试删除次数',
+    nextAttemptTime datetime default CURRENT_TIMESTAMP not null comment '下次尝试删除时间',
+    lastError       varchar(512)                       null comment '最近一次删除失败原因',
+    createTime      datetime default CURRENT_TIMESTAMP not null comment '创建时间',
+    updateTime      datetime default CURRENT_TIMESTAMP not null on update CURRENT_TIMESTAMP comment '更新时间',
+    -- 索引设计
+    UNIQUE KEY uk_objectKey (objectKey),             -- 同一对象只登记一次
+    INDEX idx_nextAttemptTime (nextAttemptTime)      -- 按时间取出到期的待删除对象
+) comment '待删除的存储对象' collate = utf8mb4_unicode_ci;
@@ -0,0 +1,21 @@
+-- picture_tag
+create table if not exists picture_tag
+(
+    id         bigint auto_increment comment 'id' primary key,
+    pictureId  bigint                             not null comment '图片 id',
+    tag        varchar(64)                        not null comment '标签',
+    spaceId    bigint                             null comment '空间 id（冗余，为空表示公共空间）',
+    createTime datetime default CURRENT_TIMESTAMP not null comment '创建时间',
+    -- 索引设计
+    UNIQUE KEY uk_pictureId_tag (pictureId, tag),        -- 同一图片的标签不重复, 同时用于按图片删除
+    INDEX idx_tag_spaceId_pictureId (tag, spaceId, pictureId) -- 标签过滤与标签统计走覆盖索引
+) comment '图片标签关联' collate = utf8mb4_unicode_ci;
+
+-- 历史数据回填（MySQL 8.0+）
+insert ignore into picture_tag (pictureId, tag, spaceId)
+select p.id, t.tag, p.spaceId
+from picture p,
+     json_table(p.tags, '$[*]' columns (tag varchar(64) path '$')) t
+where p.isDelete = 0
+  and p.tags is not null
+  and json_valid(p.tags);
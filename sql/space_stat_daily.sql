@@ -0,0 +1,34 @@
+-- space_stat_daily
+create table if not exists space_stat_daily
+(
+    id           bigint auto_increment comment 'id' primary key,
+    spaceId      bigint                             not null comment '空间 id（0 表示公共图库）',
+    statDate     date                               not null comment '日期（图片创建日期）',
+    userId       bigint                             not null comment '创建用户 id',
+    category     varchar(64)                        not null default '' comment '分类（空字符串表示未分类）',
+    sizeBucket   tinyint                            not null comment '大小区间',
+    pictureCount bigint   default 0                 not null comment '图片数量',
+    totalSize    bigint   default 0                 not null comment '图片总大小',
+    updateTime   datetime default CURRENT_TIMESTAMP not null on update CURRENT_TIMESTAMP comment '更新时间',
+    -- 索引设计
+    UNIQUE KEY uk_space_date_user_category_bucket (spaceId, statDate, userId, category, sizeBucket) -- 增量累加的维度, 同时用于按空间查询
+) comment '空间图片按天汇总' collate = utf8mb4_unicode_ci;
+
+-- 历史数据回填
+insert into space_stat_daily (spaceId, statDate, userId, category, sizeBucket, pictureCount, totalSize)
+select ifnull(spaceId, 0),
+       date(createTime),
+       userId,
+       ifnull(category, ''),
+       case
+           when ifnull(picSize, 0) < 102400 then 0
+           when picSize < 512000 then 1
+           when picSize < 1048576 then 2
+           else 3 end as sizeBucket,
+       count(*),
+       ifnull(sum(picSize), 0)
+from picture
+where isDelete = 0
+group by 1, 2, 3, 4, 5
+on duplicate key update pictureCount = values(pictureCount),
+                        totalSize    = values(totalSize);
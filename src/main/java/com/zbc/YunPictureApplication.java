@@ -6,11 +6,13 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.EnableAspectJAutoProxy;
 import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication(exclude = {ShardingSphereAutoConfiguration.class})
 @MapperScan("com.zbc.mapper")
 @EnableAspectJAutoProxy(exposeProxy = true)
 @EnableAsync
+@EnableScheduling
 public class YunPictureApplication {
 
     public static void main(String[] args) {
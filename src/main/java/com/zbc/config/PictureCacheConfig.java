@@ -0,0 +1,83 @@
+package com.zbc.config;
+
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.fasterxml.jackson.databind.JavaType;
+import com.zbc.domain.vo.CursorPageVO;
+import com.zbc.domain.vo.PictureVO;
+import com.zbc.manage.cache.MultiLevelCache;
+import com.zbc.manage.cache.PictureCacheVersionManager;
+import com.zbc.manage.search.PictureChangeRelay;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * 图片相关缓存配置
+ */
+@Configuration
+public class PictureCacheConfig {
+
+    /**
+     * 本地缓存最大条数
+     */
+    @Value("${picture.cache.local-maximum-size:10000}")
+    private long localMaximumSize;
+
+    /**
+     * 本地缓存有效期(秒)
+     */
+    @Value("${picture.cache.local-ttl-seconds:1800}")
+    private long localTtlSeconds;
+
+    /**
+     * redis 缓存有效期(秒)
+     */
+    @Value("${picture.cache.remote-ttl-seconds:3600}")
+    private long remoteTtlSeconds;
+
+    /**
+     * 有效期随机抖动(秒)
+     */
+    @Value("${picture.cache.jitter-seconds:600}")
+    private long jitterSeconds;
+
+    /**
+     * 订阅图片列表缓存失效广播与图片变更广播
+     */
+    @Bean
+    public RedisMessageListenerContainer pictureCacheListenerContainer(RedisConnectionFactory redisConnectionFactory,
+                                                                       PictureCacheVersionManager pictureCacheVersionManager,
+                                                                       PictureChangeRelay pictureChangeRelay) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        container.addMessageListener(pictureCacheVersionManager, new ChannelTopic(PictureCacheVersionManager.INVALIDATE_CHANNEL));
+        container.addMessageListener(pictureChangeRelay, new ChannelTopic(PictureChangeRelay.CHANGE_CHANNEL));
+        return container;
+    }
+
+    /**
+     * 图片分页列表缓存
+     */
+    @Bean
+    public MultiLevelCache<Page<PictureVO>> pictureVOPageCache(StringRedisTemplate stringRedisTemplate) {
+        JavaType valueType = MultiLevelCache.getObjectMapper().getTypeFactory()
+                .constructParametricType(Page.class, PictureVO.class);
+        return new MultiLevelCache<>("picture:listPictureVOByPage", valueType, stringRedisTemplate,
+                localMaximumSize, localTtlSeconds, remoteTtlSeconds, jitterSeconds);
+    }
+
+    /**
+     * 图片游标分页列表缓存
+     */
+    @Bean
+    public MultiLevelCache<CursorPageVO<PictureVO>> pictureVOCursorPageCache(StringRedisTemplate stringRedisTemplate) {
+        JavaType valueType = MultiLevelCache.getObjectMapper().getTypeFactory()
+                .constructParametricType(CursorPageVO.class, PictureVO.class);
+        return new MultiLevelCache<>("picture:listPictureVOByCursor", valueType, stringRedisTemplate,
+                localMaximumSize, localTtlSeconds, remoteTtlSeconds, jitterSeconds);
+    }
+}
@@ -1,8 +1,8 @@
 package com.zbc.controller;
 
+import cn.hutool.core.io.IoUtil;
 import com.qcloud.cos.model.COSObject;
 import com.qcloud.cos.model.COSObjectInputStream;
-import com.qcloud.cos.utils.IOUtils;
 import com.zbc.annotations.AuthCheck;
 import com.zbc.constants.UserConstant;
 import com.zbc.domain.vo.BaseResponse;
@@ -77,13 +77,12 @@ public class FileController {
         try {
             COSObject cosObject = cosManage.getObject(filepath);
             cosObjectInput = cosObject.getObjectContent();
-            // 处理下载到的流
-            byte[] bytes = IOUtils.toByteArray(cosObjectInput);
             // 设置响应头
             response.setContentType("application/octet-stream;charset=UTF-8");
+            response.setContentLengthLong(cosObject.getObjectMetadata().getContentLength());
             response.setHeader("Content-Disposition", "attachment; filename=" + filepath);
-            // 写入响应
-            response.getOutputStream().write(bytes);
+            // 以固定大小的缓冲区写入响应, 不把整个文件读入内存
+            IoUtil.copy(cosObjectInput, response.getOutputStream(), IoUtil.DEFAULT_BUFFER_SIZE);
             response.getOutputStream().flush();
         } catch (Exception e) {
             log.error("file download error, filepath = {}", filepath, e);
@@ -1,11 +1,8 @@
 package com.zbc.controller;
 
-import cn.hutool.core.util.RandomUtil;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
-import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.xiaoymin.knife4j.annotations.ApiOperationSupport;
 import com.zbc.annotations.AuthCheck;
 import com.zbc.api.aliyunai.AliYunAiApi;
@@ -21,32 +18,49 @@ import com.zbc.domain.pojo.Picture;
 import com.zbc.domain.pojo.Space;
 import com.zbc.domain.pojo.User;
 import com.zbc.domain.vo.BaseResponse;
+import com.zbc.domain.vo.CursorPageVO;
 import com.zbc.domain.vo.PictureTagCategory;
+import com.zbc.domain.vo.PictureGrabJobVO;
+import com.zbc.domain.vo.PictureMultipartUploadVO;
 import com.zbc.domain.vo.PictureVO;
 import com.zbc.enums.PictureReviewStatusEnum;
+import com.zbc.event.PictureChangeEvent;
 import com.zbc.exception.BusinessException;
 import com.zbc.exception.ErrorCode;
 import com.zbc.manage.auth.SpaceUserAuthManager;
 import com.zbc.manage.auth.StpKit;
 import com.zbc.manage.auth.annotation.SaSpaceCheckPermission;
+import com.zbc.manage.cache.MultiLevelCache;
+import com.zbc.manage.cache.MultiLevelCacheStats;
+import com.zbc.manage.cache.PictureCacheVersionManager;
+import com.zbc.manage.image.PictureThumbnailManager;
+import com.zbc.manage.storage.PictureDeliveryManager;
+import com.zbc.service.PictureMultipartUploadService;
 import com.zbc.service.PictureService;
 import com.zbc.service.SpaceService;
 import com.zbc.service.UserService;
+import com.zbc.utils.ObjectKeyUtils;
 import com.zbc.utils.ResultUtils;
 import com.zbc.utils.ThrowUtils;
+import com.zbc.websocket.PictureEditHandler;
+import com.zbc.websocket.domain.PictureEditRoomStats;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import org.springframework.beans.BeanUtils;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.annotation.Resource;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/picture")
@@ -57,21 +71,27 @@ public class PictureController {
     @Resource
     private PictureService pictureService;
     @Resource
-    private StringRedisTemplate stringRedisTemplate;
+    private PictureMultipartUploadService pictureMultipartUploadService;
     @Resource
     private SpaceService spaceService;
     @Resource
     private AliYunAiApi aliYunAiApi;
     @Resource
     private SpaceUserAuthManager spaceUserAuthManager;
-    /**
-     * 构造本地缓存
-     */
-    private final Cache<String, String> LOCAL_CACHE = Caffeine.newBuilder()
-            .initialCapacity(1024) // 初始容量
-            .maximumSize(10000L) // 最大容量
-            .expireAfterWrite(5L, TimeUnit.MINUTES) // 缓存有效期 5 分钟
-            .build();
+    @Resource
+    private MultiLevelCache<Page<PictureVO>> pictureVOPageCache;
+    @Resource
+    private MultiLevelCache<CursorPageVO<PictureVO>> pictureVOCursorPageCache;
+    @Resource
+    private PictureCacheVersionManager pictureCacheVersionManager;
+    @Resource
+    private ApplicationEventPublisher applicationEventPublisher;
+    @Resource
+    private PictureThumbnailManager pictureThumbnailManager;
+    @Resource
+    private PictureDeliveryManager pictureDeliveryManager;
+    @Resource
+    private PictureEditHandler pictureEditHandler;
 
     /**
      * 文件上传(本地上传)
@@ -161,6 +181,8 @@ public class PictureController {
         // 操作数据库
         boolean result = pictureService.updateById(picture);
         ThrowUtils.throwIf(!result, ErrorCode.OPERATION_ERROR);
+        // 发布图片变更事件
+        applicationEventPublisher.publishEvent(PictureChangeEvent.update(oldPicture, pictureService.getById(id)));
         return ResultUtils.success(true);
     }
 
@@ -208,6 +230,55 @@ public class PictureController {
         return ResultUtils.success(pictureVO);
     }
 
+    /**
+     * 获取指定尺寸的缩略图(首次访问时生成)
+     *
+     * @param id       图片 id
+     * @param size     尺寸(最大边长)
+     * @param response 响应对象
+     */
+    @GetMapping("/thumbnail")
+    public void getPictureThumbnail(long id, int size, HttpServletResponse response) throws IOException {
+        ThrowUtils.throwIf(id <= 0, ErrorCode.PARAMS_ERROR);
+        Picture picture = pictureService.getById(id);
+        ThrowUtils.throwIf(picture == null, ErrorCode.NOT_FOUND_ERROR);
+        // 空间权限校验
+        if (picture.getSpaceId() != null) {
+            boolean hasPermission = StpKit.SPACE.hasPermission(SpaceUserPermissionConstant.PICTURE_VIEW);
+            ThrowUtils.throwIf(!hasPermission, ErrorCode.NO_AUTH_ERROR);
+        }
+        File file = pictureThumbnailManager.getThumbnail(picture, size);
+        response.setContentType(pictureThumbnailManager.getContentType(file));
+        response.setContentLengthLong(file.length());
+        response.setHeader("Cache-Control", (picture.getSpaceId() == null ? "public" : "private") + ", max-age=86400");
+        Files.copy(file.toPath(), response.getOutputStream());
+    }
+
+    /**
+     * 获取图片内容, 支持 Range、ETag 与 304
+     *
+     * @param id        图片 id
+     * @param thumbnail 是否获取缩略图
+     * @param request   请求对象
+     * @param response  响应对象
+     */
+    @GetMapping("/file")
+    public void getPictureFile(long id, @RequestParam(defaultValue = "false") boolean thumbnail,
+                               HttpServletRequest request, HttpServletResponse response) throws IOException {
+        ThrowUtils.throwIf(id <= 0, ErrorCode.PARAMS_ERROR);
+        Picture picture = pictureService.getById(id);
+        ThrowUtils.throwIf(picture == null, ErrorCode.NOT_FOUND_ERROR);
+        // 空间权限校验
+        if (picture.getSpaceId() != null) {
+            boolean hasPermission = StpKit.SPACE.hasPermission(SpaceUserPermissionConstant.PICTURE_VIEW);
+            ThrowUtils.throwIf(!hasPermission, ErrorCode.NO_AUTH_ERROR);
+        }
+        String url = thumbnail && StrUtil.isNotBlank(picture.getThumbnailUrl()) ? picture.getThumbnailUrl() : picture.getUrl();
+        ThrowUtils.throwIf(StrUtil.isBlank(url), ErrorCode.NOT_FOUND_ERROR);
+        String key = ObjectKeyUtils.toObjectKey(url);
+        pictureDeliveryManager.serve(key, picture.getSpaceId() == null, request, response);
+    }
+
     /**
      * 分页获取图片列表(管理员)
      */
@@ -248,130 +319,74 @@ public class PictureController {
                 throw new BusinessException(ErrorCode.NO_AUTH_ERROR, "没有空间权限");
             }*/
         }
-        // 查询数据库
-        Page<Picture> picturePage = pictureService.page(new Page<>(current, size), pictureService.getQueryWrapper(pictureQueryRequest));
-        // 获取封装类
-        Page<PictureVO> pictureVOPage = pictureService.getPictureVOPage(picturePage, request);
+        if (spaceId != null) {
+            // 私有空间访问量小, 且用户上传/删除后需要立即看到结果, 直接查询数据库
+            Page<Picture> picturePage = pictureService.page(new Page<>(current, size), pictureService.getQueryWrapper(pictureQueryRequest));
+            return ResultUtils.success(pictureService.getPictureVOPage(picturePage, request));
+        }
+        // 公共图库先查询多级缓存(本地缓存 -> redis), 都没有再查询数据库
+        String str = JSONUtil.toJsonStr(pictureQueryRequest);
+        String hashKey = DigestUtils.md5DigestAsHex(str.getBytes(StandardCharsets.UTF_8));
+        // key 中带上公共图库的版本号, 图片变更后旧缓存自动失效
+        String cacheKey = pictureCacheVersionManager.buildVersionedKey(null, hashKey);
+        Page<PictureVO> pictureVOPage = pictureVOPageCache.get(cacheKey, () -> {
+            // 查询数据库
+            Page<Picture> picturePage = pictureService.page(new Page<>(current, size), pictureService.getQueryWrapper(pictureQueryRequest));
+            // 获取封装类
+            return pictureService.getPictureVOPage(picturePage, request);
+        });
         return ResultUtils.success(pictureVOPage);
     }
 
     /**
-     * 分页获取图片列表(用户, 带redis缓存)
+     * 游标分页获取图片列表(用户, 适用于无限滚动, 不查询总数)
      */
-    @Deprecated
-    @PostMapping("/list/page/vo/cache")
-    public BaseResponse<Page<PictureVO>> listPictureVOByPageWithCache(@RequestBody PictureQueryRequest pictureQueryRequest, HttpServletRequest request) {
-        long current = pictureQueryRequest.getCurrent();
-        long size = pictureQueryRequest.getPageSize();
+    @PostMapping("/list/cursor/vo")
+    public BaseResponse<CursorPageVO<PictureVO>> listPictureVOByCursor(@RequestBody PictureCursorQueryRequest cursorQueryRequest, HttpServletRequest request) {
+        ThrowUtils.throwIf(cursorQueryRequest == null, ErrorCode.PARAMS_ERROR);
+        long size = cursorQueryRequest.getPageSize();
         // 限制爬虫
         ThrowUtils.throwIf(size > 20, ErrorCode.PARAMS_ERROR);
-        // 普通用户默认只能看到审核通过的数据
-        pictureQueryRequest.setReviewStatus(PictureReviewStatusEnum.PASS.getValue());
-        // 1. 先查询缓存, 缓存中没有再查询数据库
-        // 构造key
-        String str = JSONUtil.toJsonStr(pictureQueryRequest);
-        String hashKey = DigestUtils.md5DigestAsHex(str.getBytes());
-        final String key = "picture:listPictureVOByPage:" + hashKey;
-        // redis查询到的数据
-        String value = stringRedisTemplate.opsForValue().get(key);
-        if (value != null) {
-            // 缓存中存在数据, 直接返回
-            Page<PictureVO> page = JSONUtil.toBean(value, Page.class);
-            return ResultUtils.success(page);
+        // 空间权限校验
+        Long spaceId = cursorQueryRequest.getSpaceId();
+        if (spaceId == null) {
+            // 公开图库, 普通用户默认只能看到审核通过的数据
+            cursorQueryRequest.setReviewStatus(PictureReviewStatusEnum.PASS.getValue());
+            cursorQueryRequest.setNullSpaceId(true);
+        } else {
+            // 私有空间
+            boolean hasPermission = StpKit.SPACE.hasPermission(SpaceUserPermissionConstant.PICTURE_VIEW);
+            ThrowUtils.throwIf(!hasPermission, ErrorCode.NO_AUTH_ERROR);
+            // 与分页列表一致, 私有空间直接查询数据库, 用户上传/删除后立即看到结果
+            return ResultUtils.success(pictureService.listPictureVOByCursor(cursorQueryRequest, request));
         }
-        // 查询数据库
-        Page<Picture> picturePage = pictureService.page(new Page<>(current, size), pictureService.getQueryWrapper(pictureQueryRequest));
-        // 获取封装类
-        Page<PictureVO> pictureVOPage = pictureService.getPictureVOPage(picturePage, request);
-        // 2. 查询数据库之后, 写入到redis
-        String jsonStr = JSONUtil.toJsonStr(pictureVOPage);
-        // 随机TTL为300-600秒
-        int timeout = 300 + RandomUtil.randomInt(0, 300);
-        stringRedisTemplate.opsForValue().set(key, jsonStr, timeout, TimeUnit.SECONDS);
-        return ResultUtils.success(pictureVOPage);
+        // 公共图库先查询多级缓存, key 中带上公共图库的版本号
+        String str = JSONUtil.toJsonStr(cursorQueryRequest);
+        String hashKey = DigestUtils.md5DigestAsHex(str.getBytes(StandardCharsets.UTF_8));
+        String cacheKey = pictureCacheVersionManager.buildVersionedKey(null, hashKey);
+        CursorPageVO<PictureVO> cursorPageVO = pictureVOCursorPageCache.get(cacheKey,
+                () -> pictureService.listPictureVOByCursor(cursorQueryRequest, request));
+        return ResultUtils.success(cursorPageVO);
     }
 
-
     /**
-     * 分页获取图片列表(用户, 带本地缓存)
+     * 图片列表缓存统计(管理员)
      */
-    @Deprecated
-    @PostMapping("/list/page/vo/cache/local")
-    public BaseResponse<Page<PictureVO>> listPictureVOByPageWithLocalCache(@RequestBody PictureQueryRequest pictureQueryRequest, HttpServletRequest request) {
-        long current = pictureQueryRequest.getCurrent();
-        long size = pictureQueryRequest.getPageSize();
-        // 限制爬虫
-        ThrowUtils.throwIf(size > 20, ErrorCode.PARAMS_ERROR);
-        // 普通用户默认只能看到审核通过的数据
-        pictureQueryRequest.setReviewStatus(PictureReviewStatusEnum.PASS.getValue());
-        // 1. 先查询缓存, 缓存中没有再查询数据库
-        // 构造key
-        String str = JSONUtil.toJsonStr(pictureQueryRequest);
-        String hashKey = DigestUtils.md5DigestAsHex(str.getBytes());
-        final String key = "listPictureVOByPage:" + hashKey;
-        // 从本地化缓存中查询
-        String value = LOCAL_CACHE.getIfPresent(key);
-        if (value != null) {
-            // 缓存中存在数据, 直接返回
-            Page<PictureVO> page = JSONUtil.toBean(value, Page.class);
-            return ResultUtils.success(page);
-        }
-        // 查询数据库
-        Page<Picture> picturePage = pictureService.page(new Page<>(current, size), pictureService.getQueryWrapper(pictureQueryRequest));
-        // 获取封装类
-        Page<PictureVO> pictureVOPage = pictureService.getPictureVOPage(picturePage, request);
-        // 2. 查询数据库之后, 写入到本地缓存
-        String jsonStr = JSONUtil.toJsonStr(pictureVOPage);
-        LOCAL_CACHE.put(key, jsonStr);
-        return ResultUtils.success(pictureVOPage);
+    @GetMapping("/list/page/vo/cache/stats")
+    @AuthCheck(mustRole = UserConstant.ADMIN_ROLE)
+    public BaseResponse<List<MultiLevelCacheStats>> getPictureVOPageCacheStats() {
+        return ResultUtils.success(Arrays.asList(pictureVOPageCache.stats(), pictureVOCursorPageCache.stats()));
     }
 
     /**
-     * 分页获取图片列表(用户, 多级缓存)
+     * 协同编辑房间统计(管理员)
      */
-    @Deprecated
-    @PostMapping("/list/page/vo/many")
-    public BaseResponse<Page<PictureVO>> listPictureVOByPageWithMany(@RequestBody PictureQueryRequest pictureQueryRequest, HttpServletRequest request) {
-        long current = pictureQueryRequest.getCurrent();
-        long size = pictureQueryRequest.getPageSize();
-        // 限制爬虫
-        ThrowUtils.throwIf(size > 20, ErrorCode.PARAMS_ERROR);
-        // 普通用户默认只能看到审核通过的数据
-        pictureQueryRequest.setReviewStatus(PictureReviewStatusEnum.PASS.getValue());
-        // 1. 先查询本地缓存, 缓存中再查询分布式redis缓存, 没有再查询数据库
-        // 构造key
-        String str = JSONUtil.toJsonStr(pictureQueryRequest);
-        String hashKey = DigestUtils.md5DigestAsHex(str.getBytes());
-        final String key = "picture:listPictureVOByPage:" + hashKey;
-        // 查询本地缓存
-        String value = LOCAL_CACHE.getIfPresent(key);
-        if (value != null) {
-            // 缓存中存在数据, 直接返回
-            Page<PictureVO> page = JSONUtil.toBean(value, Page.class);
-            return ResultUtils.success(page);
-        }
-        // 本地缓存没有, 查询分布式redis缓存
-        value = stringRedisTemplate.opsForValue().get(key);
-        if (value != null) {
-            // 缓存中存在数据, 写入到本地缓存, 直接返回
-            LOCAL_CACHE.put(key, value);
-            Page<PictureVO> page = JSONUtil.toBean(value, Page.class);
-            return ResultUtils.success(page);
-        }
-        // 都没有, 查询数据库
-        Page<Picture> picturePage = pictureService.page(new Page<>(current, size), pictureService.getQueryWrapper(pictureQueryRequest));
-        // 获取封装类
-        Page<PictureVO> pictureVOPage = pictureService.getPictureVOPage(picturePage, request);
-        // 2. 查询数据库之后, 写入到本地缓存和redis
-        String jsonStr = JSONUtil.toJsonStr(pictureVOPage);
-        // 随机TTL为300-600秒
-        int timeout = 300 + RandomUtil.randomInt(0, 300);
-        stringRedisTemplate.opsForValue().set(key, jsonStr, timeout, TimeUnit.SECONDS);
-        LOCAL_CACHE.put(key, jsonStr);
-        return ResultUtils.success(pictureVOPage);
+    @GetMapping("/edit/stats")
+    @AuthCheck(mustRole = UserConstant.ADMIN_ROLE)
+    public BaseResponse<List<PictureEditRoomStats>> getPictureEditRoomStats() {
+        return ResultUtils.success(pictureEditHandler.listRoomStats());
     }
 
-
     /**
      * 编辑图片(用户)
      */
@@ -418,19 +433,100 @@ public class PictureController {
     }
 
     /**
-     * 批量抓取图片
+     * 分片上传: 初始化(仅专业版、旗舰版空间)
+     *
+     * @param initRequest 文件名、大小与空间 id
+     * @param request     获取当前登录用户
+     * @return 分片上传 id 与分片规则
+     */
+    @PostMapping("/upload/multipart/init")
+    @SaSpaceCheckPermission(value = SpaceUserPermissionConstant.PICTURE_UPLOAD)
+    public BaseResponse<PictureMultipartUploadVO> initMultipartUpload(@RequestBody PictureMultipartUploadInitRequest initRequest, HttpServletRequest request) {
+        User currentUser = userService.getCurrentUser(request);
+        return ResultUtils.success(pictureMultipartUploadService.initiate(initRequest, currentUser));
+    }
+
+    /**
+     * 分片上传: 上传分片(可并行)
+     *
+     * @param multipartFile 分片内容
+     * @param partRequest   分片上传 id 与分片序号
+     * @param request       获取当前登录用户
+     * @return 是否成功
+     */
+    @PostMapping("/upload/multipart/part")
+    public BaseResponse<Boolean> uploadMultipartPart(@RequestPart("file") MultipartFile multipartFile, PictureMultipartUploadPartRequest partRequest, HttpServletRequest request) {
+        User currentUser = userService.getCurrentUser(request);
+        pictureMultipartUploadService.uploadPart(partRequest, multipartFile, currentUser);
+        return ResultUtils.success(true);
+    }
+
+    /**
+     * 分片上传: 查询进度(断点续传)
+     *
+     * @param uploadId 分片上传 id
+     * @param request  获取当前登录用户
+     * @return 上传进度
+     */
+    @GetMapping("/upload/multipart/get")
+    public BaseResponse<PictureMultipartUploadVO> getMultipartUpload(String uploadId, HttpServletRequest request) {
+        User currentUser = userService.getCurrentUser(request);
+        return ResultUtils.success(pictureMultipartUploadService.getProgress(uploadId, currentUser));
+    }
+
+    /**
+     * 分片上传: 合并分片并创建图片
+     *
+     * @param uploadRequest 分片上传 id 与图片名称
+     * @param request       获取当前登录用户
+     * @return PictureVO
+     */
+    @PostMapping("/upload/multipart/complete")
+    public BaseResponse<PictureVO> completeMultipartUpload(@RequestBody PictureMultipartUploadRequest uploadRequest, HttpServletRequest request) {
+        User currentUser = userService.getCurrentUser(request);
+        return ResultUtils.success(pictureMultipartUploadService.complete(uploadRequest, currentUser));
+    }
+
+    /**
+     * 分片上传: 取消
+     *
+     * @param uploadRequest 分片上传 id
+     * @param request       获取当前登录用户
+     * @return 是否成功
+     */
+    @PostMapping("/upload/multipart/abort")
+    public BaseResponse<Boolean> abortMultipartUpload(@RequestBody PictureMultipartUploadRequest uploadRequest, HttpServletRequest request) {
+        User currentUser = userService.getCurrentUser(request);
+        pictureMultipartUploadService.abort(uploadRequest, currentUser);
+        return ResultUtils.success(true);
+    }
+
+    /**
+     * 批量抓取图片(后台执行)
      *
      * @param byBatchRequest DTO
      * @param request        当前登录用户
-     * @return 抓取数量
+     * @return 抓取任务 id
      */
     @PostMapping("/upload/batch")
     @AuthCheck(mustRole = UserConstant.ADMIN_ROLE)
-    public BaseResponse<Integer> uploadPictureByBatch(@RequestBody PictureUploadByBatchRequest byBatchRequest, HttpServletRequest request) {
+    public BaseResponse<String> uploadPictureByBatch(@RequestBody PictureUploadByBatchRequest byBatchRequest, HttpServletRequest request) {
         ThrowUtils.throwIf(byBatchRequest == null, ErrorCode.PARAMS_ERROR);
         User currentUser = userService.getCurrentUser(request);
-        int count = pictureService.uploadPictureByBatch(byBatchRequest, currentUser);
-        return ResultUtils.success(count);
+        String jobId = pictureService.uploadPictureByBatch(byBatchRequest, currentUser);
+        return ResultUtils.success(jobId);
+    }
+
+    /**
+     * 查询批量抓取任务进度
+     *
+     * @param jobId 抓取任务 id
+     * @return 任务进度
+     */
+    @GetMapping("/upload/batch/get")
+    @AuthCheck(mustRole = UserConstant.ADMIN_ROLE)
+    public BaseResponse<PictureGrabJobVO> getUploadByBatchJob(String jobId) {
+        return ResultUtils.success(pictureService.getUploadByBatchJob(jobId));
     }
 
 
@@ -455,6 +551,21 @@ public class PictureController {
         return ResultUtils.success(resultList);
     }
 
+    /**
+     * 站内以图搜图请求(基于感知哈希, 在图片所在空间或公共图库内查找相似图片)
+     *
+     * @param searchPictureByPictureRequest 请求参数
+     * @return 相似图片列表
+     */
+    @ApiOperation(value = "站内以图搜图")
+    @PostMapping("/search/picture/local")
+    @SaSpaceCheckPermission(value = SpaceUserPermissionConstant.PICTURE_VIEW)
+    public BaseResponse<List<PictureVO>> searchSimilarPicture(@RequestBody SearchPictureByPictureRequest searchPictureByPictureRequest) {
+        ThrowUtils.throwIf(searchPictureByPictureRequest == null, ErrorCode.PARAMS_ERROR);
+        List<PictureVO> pictureVOList = pictureService.searchSimilarPicture(searchPictureByPictureRequest);
+        return ResultUtils.success(pictureVOList);
+    }
+
     /**
      * 以色搜图请求
      *
@@ -468,10 +579,8 @@ public class PictureController {
     @SaSpaceCheckPermission(value = SpaceUserPermissionConstant.PICTURE_VIEW)
     public BaseResponse<List<PictureVO>> searchPictureByColor(@RequestBody SearchPictureByColorRequest searchPictureByColorRequest, HttpServletRequest request) {
         ThrowUtils.throwIf(searchPictureByColorRequest == null, ErrorCode.PARAMS_ERROR);
-        Long spaceId = searchPictureByColorRequest.getSpaceId();
-        String picColor = searchPictureByColorRequest.getPicColor();
         User currentUser = userService.getCurrentUser(request);
-        List<PictureVO> pictureVOList = pictureService.searchPictureByColor(spaceId, picColor, currentUser);
+        List<PictureVO> pictureVOList = pictureService.searchPictureByColor(searchPictureByColorRequest, currentUser);
         return ResultUtils.success(pictureVOList);
     }
 
@@ -1,5 +1,7 @@
 package com.zbc.controller;
 
+import com.zbc.annotations.AuthCheck;
+import com.zbc.constants.UserConstant;
 import com.zbc.domain.dto.space.analyze.*;
 import com.zbc.domain.pojo.User;
 import com.zbc.domain.vo.BaseResponse;
@@ -102,5 +104,19 @@ public class SpaceAnalyzeController {
         return ResultUtils.success(resultList);
     }
 
-
+    /**
+     * 从图片表重建空间汇总(管理员)
+     *
+     * @param spaceAnalyzeRequest 重建范围
+     * @param request             当前登录用户
+     * @return 是否成功
+     */
+    @PostMapping("/stat/rebuild")
+    @AuthCheck(mustRole = UserConstant.ADMIN_ROLE)
+    public BaseResponse<Boolean> rebuildSpaceStat(@RequestBody SpaceAnalyzeRequest spaceAnalyzeRequest, HttpServletRequest request) {
+        ThrowUtils.throwIf(spaceAnalyzeRequest == null, ErrorCode.PARAMS_ERROR);
+        User loginUser = userService.getCurrentUser(request);
+        spaceAnalyzeService.rebuildSpaceStat(spaceAnalyzeRequest, loginUser);
+        return ResultUtils.success(true);
+    }
 }
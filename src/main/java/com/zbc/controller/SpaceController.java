@@ -18,6 +18,7 @@ import com.zbc.enums.SpaceLevelEnum;
 import com.zbc.exception.BusinessException;
 import com.zbc.exception.ErrorCode;
 import com.zbc.manage.auth.SpaceUserAuthManager;
+import com.zbc.manage.quota.SpaceQuotaManager;
 import com.zbc.service.SpaceService;
 import com.zbc.service.UserService;
 import com.zbc.utils.ResultUtils;
@@ -44,6 +45,8 @@ public class SpaceController {
     private SpaceService spaceService;
     @Resource
     private SpaceUserAuthManager spaceUserAuthManager;
+    @Resource
+    private SpaceQuotaManager spaceQuotaManager;
 
     /**
      * 删除空间
@@ -71,6 +74,7 @@ public class SpaceController {
         // 操作数据库
         boolean result = spaceService.removeById(id);
         ThrowUtils.throwIf(!result, ErrorCode.OPERATION_ERROR);
+        spaceQuotaManager.evict(id);
         return ResultUtils.success(true);
     }
 
@@ -101,6 +105,8 @@ public class SpaceController {
         // 操作数据库
         boolean result = spaceService.updateById(space);
         ThrowUtils.throwIf(!result, ErrorCode.OPERATION_ERROR);
+        // 同步额度上限
+        spaceQuotaManager.refreshLimit(spaceService.getById(id));
         return ResultUtils.success(true);
     }
 
@@ -114,6 +120,7 @@ public class SpaceController {
         // 查询数据库
         Space space = spaceService.getById(id);
         ThrowUtils.throwIf(space == null, ErrorCode.NOT_FOUND_ERROR);
+        spaceQuotaManager.fillUsage(space);
         // 获取封装类
         return ResultUtils.success(space);
     }
@@ -192,6 +199,8 @@ public class SpaceController {
         // 操作数据库
         boolean result = spaceService.updateById(space);
         ThrowUtils.throwIf(!result, ErrorCode.OPERATION_ERROR);
+        // 同步额度上限
+        spaceQuotaManager.refreshLimit(spaceService.getById(id));
         return ResultUtils.success(true);
     }
 
@@ -31,4 +31,13 @@ public class PictureEditEvent {
      */
     private Long pictureId;
 
+    /**
+     * 处理完成后清空引用
+     */
+    public void clear() {
+        this.pictureEditRequestMessage = null;
+        this.session = null;
+        this.user = null;
+        this.pictureId = null;
+    }
 }
@@ -1,7 +1,11 @@
 package com.zbc.disruptor;
 
 import cn.hutool.core.thread.ThreadFactoryBuilder;
+import com.lmax.disruptor.*;
 import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -9,26 +13,86 @@ import javax.annotation.Resource;
 
 /**
  * disruptor 配置
+ * <p>
+ * 按图片 id 分片消费: 同一张图片的进入、编辑、退出事件由同一个线程按顺序处理, 不同图片并行处理。
  */
+@Slf4j
 @Configuration
 public class PictureEditEventDisruptorConfig {
 
     @Resource
     private PictureEditEventWorkHandler pictureEditEventWorkHandler;
 
+    /**
+     * ringBuffer 的大小, 必须是 2 的幂
+     */
+    @Value("${picture.edit.disruptor.ring-size:262144}")
+    private int ringSize;
+
+    /**
+     * 消费者等待策略: blocking / sleeping / yielding / busy-spin
+     */
+    @Value("${picture.edit.disruptor.wait-strategy:blocking}")
+    private String waitStrategy;
+
+    /**
+     * 分片数(消费线程数), 小于等于 0 时使用 CPU 核数
+     */
+    @Value("${picture.edit.disruptor.handler-count:0}")
+    private int handlerCount;
+
     @Bean("pictureEditEventDisruptor")
     public Disruptor<PictureEditEvent> messageModelRingBuffer() {
-        // ringBuffer 的大小
-        int bufferSize = 1024 * 256;
+        int shardCount = handlerCount > 0 ? handlerCount : Runtime.getRuntime().availableProcessors();
         Disruptor<PictureEditEvent> disruptor = new Disruptor<>(
                 PictureEditEvent::new,
-                bufferSize,
-                ThreadFactoryBuilder.create().setNamePrefix("pictureEditEventDisruptor").build()
+                ringSize,
+                ThreadFactoryBuilder.create().setNamePrefix("pictureEditEventDisruptor").build(),
+                // 多个 WebSocket 线程同时发布
+                ProducerType.MULTI,
+                createWaitStrategy(waitStrategy)
         );
-        // 设置消费者
-        disruptor.handleEventsWithWorkerPool(pictureEditEventWorkHandler);
+        // 单个事件处理失败只记录日志, 不影响该分片后续的事件
+        disruptor.setDefaultExceptionHandler(new ExceptionHandler<PictureEditEvent>() {
+            @Override
+            public void handleEventException(Throwable ex, long sequence, PictureEditEvent event) {
+                log.error("处理图片编辑事件失败, pictureId = {}", event.getPictureId(), ex);
+            }
+
+            @Override
+            public void handleOnStartException(Throwable ex) {
+                log.error("图片编辑事件处理器启动失败", ex);
+            }
+
+            @Override
+            public void handleOnShutdownException(Throwable ex) {
+                log.error("图片编辑事件处理器关闭失败", ex);
+            }
+        });
+        // 设置消费者: 每个分片一个处理器, 全部处理完后清空事件, 避免 ringBuffer 长期持有会话
+        PictureEditEventShardHandler[] shardHandlers = new PictureEditEventShardHandler[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shardHandlers[i] = new PictureEditEventShardHandler(pictureEditEventWorkHandler, i, shardCount);
+        }
+        disruptor.handleEventsWith(shardHandlers).then((event, sequence, endOfBatch) -> event.clear());
         // 开启 disruptor
         disruptor.start();
+        log.info("图片编辑 disruptor 已启动, ringSize = {}, waitStrategy = {}, handlerCount = {}", ringSize, waitStrategy, shardCount);
         return disruptor;
     }
+
+    private static WaitStrategy createWaitStrategy(String name) {
+        switch (name) {
+            case "blocking":
+                return new BlockingWaitStrategy();
+            case "sleeping":
+                return new SleepingWaitStrategy();
+            case "yielding":
+                return new YieldingWaitStrategy();
+            case "busy-spin":
+                return new BusySpinWaitStrategy();
+            default:
+                throw new IllegalArgumentException("不支持的等待策略: " + name);
+        }
+    }
 }
@@ -1,5 +1,6 @@
 package com.zbc.disruptor;
 
+import com.lmax.disruptor.InsufficientCapacityException;
 import com.lmax.disruptor.RingBuffer;
 import com.lmax.disruptor.dsl.Disruptor;
 import com.zbc.domain.pojo.User;
@@ -25,6 +26,28 @@ public class PictureEditEventProducer {
         RingBuffer<PictureEditEvent> ringBuffer = pictureEditEventDisruptor.getRingBuffer();
         // 获取可以生成的位置
         long next = ringBuffer.next();
+        publish(ringBuffer, next, pictureEditRequestMessage, session, user, pictureId);
+    }
+
+    /**
+     * 尝试发布事件, 队列已满时不等待直接返回(用于不能阻塞的定时器线程)
+     *
+     * @return 是否发布成功
+     */
+    public boolean tryPublishEvent(PictureEditRequestMessage pictureEditRequestMessage, WebSocketSession session, User user, Long pictureId) {
+        RingBuffer<PictureEditEvent> ringBuffer = pictureEditEventDisruptor.getRingBuffer();
+        long next;
+        try {
+            next = ringBuffer.tryNext();
+        } catch (InsufficientCapacityException e) {
+            return false;
+        }
+        publish(ringBuffer, next, pictureEditRequestMessage, session, user, pictureId);
+        return true;
+    }
+
+    private void publish(RingBuffer<PictureEditEvent> ringBuffer, long next, PictureEditRequestMessage pictureEditRequestMessage,
+                         WebSocketSession session, User user, Long pictureId) {
         PictureEditEvent pictureEditEvent = ringBuffer.get(next);
         pictureEditEvent.setSession(session);
         pictureEditEvent.setPictureEditRequestMessage(pictureEditRequestMessage);
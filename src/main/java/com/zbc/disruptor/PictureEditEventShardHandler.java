@@ -0,0 +1,41 @@
+package com.zbc.disruptor;
+
+import com.lmax.disruptor.EventHandler;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 按图片分片的事件处理器
+ * <p>
+ * 每个分片一个线程, 只处理 hash(pictureId) % 分片数 等于自己序号的事件, 其余事件直接跳过。
+ * 同一张图片的事件始终由同一个线程按发布顺序处理, 不同图片之间互不阻塞。
+ */
+@Slf4j
+public class PictureEditEventShardHandler implements EventHandler<PictureEditEvent> {
+
+    private final PictureEditEventWorkHandler pictureEditEventWorkHandler;
+
+    private final int shardIndex;
+
+    private final int shardCount;
+
+    public PictureEditEventShardHandler(PictureEditEventWorkHandler pictureEditEventWorkHandler, int shardIndex, int shardCount) {
+        this.pictureEditEventWorkHandler = pictureEditEventWorkHandler;
+        this.shardIndex = shardIndex;
+        this.shardCount = shardCount;
+    }
+
+    @Override
+    public void onEvent(PictureEditEvent event, long sequence, boolean endOfBatch) throws Exception {
+        if (getShard(event.getPictureId(), shardCount) != shardIndex) {
+            return;
+        }
+        pictureEditEventWorkHandler.onEvent(event);
+    }
+
+    /**
+     * 计算图片所属的分片
+     */
+    public static int getShard(Long pictureId, int shardCount) {
+        return pictureId == null ? 0 : Math.floorMod(Long.hashCode(pictureId), shardCount);
+    }
+}
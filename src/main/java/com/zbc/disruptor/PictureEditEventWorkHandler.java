@@ -1,17 +1,14 @@
 package com.zbc.disruptor;
 
-import cn.hutool.json.JSONUtil;
 import com.lmax.disruptor.WorkHandler;
 import com.zbc.domain.pojo.User;
 import com.zbc.enums.PictureEditMessageTypeEnum;
-import com.zbc.service.UserService;
 import com.zbc.websocket.PictureEditHandler;
 import com.zbc.websocket.domain.PictureEditRequestMessage;
 import com.zbc.websocket.domain.PictureEditResponseMessage;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
-import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 
 import javax.annotation.Resource;
@@ -27,9 +24,6 @@ public class PictureEditEventWorkHandler implements WorkHandler<PictureEditEvent
     @Lazy
     private PictureEditHandler pictureEditHandler;
 
-    @Resource
-    private UserService userService;
-
     @Override
     public void onEvent(PictureEditEvent event) throws Exception {
         PictureEditRequestMessage pictureEditRequestMessage = event.getPictureEditRequestMessage();
@@ -50,12 +44,15 @@ public class PictureEditEventWorkHandler implements WorkHandler<PictureEditEvent
             case EXIT_EDIT:
                 pictureEditHandler.handleExitEditMessage(pictureEditRequestMessage, session, user, pictureId);
                 break;
+            case HEARTBEAT:
+                pictureEditHandler.handleHeartbeatMessage(pictureEditRequestMessage, session, user, pictureId);
+                break;
             default:
                 PictureEditResponseMessage pictureEditResponseMessage = new PictureEditResponseMessage();
                 pictureEditResponseMessage.setType(PictureEditMessageTypeEnum.ERROR.getValue());
                 pictureEditResponseMessage.setMessage("消息类型错误");
-                pictureEditResponseMessage.setUser(userService.getUserVO(user));
-                session.sendMessage(new TextMessage(JSONUtil.toJsonStr(pictureEditResponseMessage)));
+                pictureEditResponseMessage.setUser(pictureEditHandler.getUserVO(session, user));
+                pictureEditHandler.sendToSession(session, pictureEditResponseMessage);
         }
     }
 }
@@ -52,4 +52,19 @@ public class UploadPictureResult {
      */
     private String picFormat;
 
+    /**
+     * 图片感知哈希(pHash)
+     */
+    private Long picPhash;
+
+    /**
+     * 文件内容哈希(SHA-256)
+     */
+    private String fileHash;
+
+    /**
+     * 文件记录是否由本次上传新保存(图片入库失败时需要清理)
+     */
+    private boolean newFile;
+
 }
@@ -0,0 +1,23 @@
+package com.zbc.domain.dto.picture;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+import java.io.Serializable;
+
+/**
+ * 游标(keyset)分页查询图片DTO
+ * <p>
+ * 排序字段仅支持 id、createTime、editTime、updateTime, 不查询总数
+ */
+@EqualsAndHashCode(callSuper = true)
+@Data
+public class PictureCursorQueryRequest extends PictureQueryRequest implements Serializable {
+
+    /**
+     * 上一页返回的游标(首页不传)
+     */
+    private String cursor;
+
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,34 @@
+package com.zbc.domain.dto.picture;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * 分片上传初始化请求
+ */
+@Data
+public class PictureMultipartUploadInitRequest implements Serializable {
+
+    /**
+     * 原始文件名
+     */
+    private String fileName;
+
+    /**
+     * 文件大小(字节)
+     */
+    private Long fileSize;
+
+    /**
+     * 空间 id(仅专业版、旗舰版空间支持分片上传)
+     */
+    private Long spaceId;
+
+    /**
+     * 图片 id(用于修改)
+     */
+    private Long pictureId;
+
+    private static final long serialVersionUID = 1L;
+}
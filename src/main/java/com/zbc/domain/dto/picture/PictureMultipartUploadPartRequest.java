@@ -0,0 +1,24 @@
+package com.zbc.domain.dto.picture;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * 上传分片请求
+ */
+@Data
+public class PictureMultipartUploadPartRequest implements Serializable {
+
+    /**
+     * 分片上传 id
+     */
+    private String uploadId;
+
+    /**
+     * 分片序号(从 1 开始)
+     */
+    private Integer partNumber;
+
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,24 @@
+package com.zbc.domain.dto.picture;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * 完成或取消分片上传请求
+ */
+@Data
+public class PictureMultipartUploadRequest implements Serializable {
+
+    /**
+     * 分片上传 id
+     */
+    private String uploadId;
+
+    /**
+     * 图片名称(完成时使用, 为空则使用原始文件名)
+     */
+    private String picName;
+
+    private static final long serialVersionUID = 1L;
+}
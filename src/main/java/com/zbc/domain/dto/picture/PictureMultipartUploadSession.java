@@ -0,0 +1,64 @@
+package com.zbc.domain.dto.picture;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * 分片上传会话(保存在 redis 中)
+ */
+@Data
+public class PictureMultipartUploadSession implements Serializable {
+
+    /**
+     * 分片上传 id
+     */
+    private String uploadId;
+
+    /**
+     * 存储侧的分片上传 id
+     */
+    private String storageUploadId;
+
+    /**
+     * 对象键(上传路径)
+     */
+    private String key;
+
+    /**
+     * 原始文件名
+     */
+    private String fileName;
+
+    /**
+     * 文件大小(字节)
+     */
+    private Long fileSize;
+
+    /**
+     * 分片大小(字节), 最后一片可以更小
+     */
+    private Long partSize;
+
+    /**
+     * 分片数量
+     */
+    private Integer partCount;
+
+    /**
+     * 发起上传的用户 id
+     */
+    private Long userId;
+
+    /**
+     * 空间 id
+     */
+    private Long spaceId;
+
+    /**
+     * 图片 id(用于修改)
+     */
+    private Long pictureId;
+
+    private static final long serialVersionUID = 1L;
+}
@@ -20,5 +20,20 @@ public class SearchPictureByColorRequest implements Serializable {
      */
     private Long spaceId;
 
+    /**
+     * 返回的图片数量, 默认 12, 最大 100
+     */
+    private Integer topK;
+
+    /**
+     * 颜色距离度量: rgb(默认)-RGB 欧氏距离, lab-CIE Lab 色差(ΔE76)
+     */
+    private String metric;
+
+    /**
+     * 距离上限, 为空表示不限制(RGB 欧氏距离 0 ~ 441, Lab 色差一般 0 ~ 100)
+     */
+    private Double maxDistance;
+
     private static final long serialVersionUID = 1L;
 }
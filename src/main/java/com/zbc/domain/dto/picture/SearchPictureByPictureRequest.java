@@ -15,5 +15,15 @@ public class SearchPictureByPictureRequest implements Serializable {
      */
     private Long pictureId;
 
+    /**
+     * 最大汉明距离(站内搜索), 默认 10
+     */
+    private Integer maxDistance;
+
+    /**
+     * 返回的图片数量(站内搜索), 默认 12, 最大 100
+     */
+    private Integer topK;
+
     private static final long serialVersionUID = 1L;
 }
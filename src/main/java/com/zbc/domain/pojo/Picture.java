@@ -87,6 +87,21 @@ public class Picture implements Serializable {
      */
     private String picColor;
 
+    /**
+     * 图片主色调(打包的 0xRRGGBB), 写入时由 picColor 解析
+     */
+    private Integer picColorValue;
+
+    /**
+     * 图片感知哈希(pHash), 用于以图搜图
+     */
+    private Long picPhash;
+
+    /**
+     * 文件内容哈希(SHA-256), 关联 picture_file
+     */
+    private String fileHash;
+
     /**
      * 审核状态：0-待审核; 1-通过; 2-拒绝
      */
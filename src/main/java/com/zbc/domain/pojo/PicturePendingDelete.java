@@ -0,0 +1,51 @@
+package com.zbc.domain.pojo;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.util.Date;
+
+/**
+ * 待删除的存储对象
+ */
+@TableName(value = "picture_pending_delete")
+@Data
+public class PicturePendingDelete {
+    /**
+     * id
+     */
+    @TableId(type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 对象键(不以 / 开头)
+     */
+    private String objectKey;
+
+    /**
+     * 已尝试删除次数
+     */
+    private Integer attempts;
+
+    /**
+     * 下次尝试删除时间
+     */
+    private Date nextAttemptTime;
+
+    /**
+     * 最近一次删除失败原因
+     */
+    private String lastError;
+
+    /**
+     * 创建时间
+     */
+    private Date createTime;
+
+    /**
+     * 更新时间
+     */
+    private Date updateTime;
+}
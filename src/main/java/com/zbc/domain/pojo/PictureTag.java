@@ -0,0 +1,41 @@
+package com.zbc.domain.pojo;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.util.Date;
+
+/**
+ * 图片标签关联
+ */
+@TableName(value = "picture_tag")
+@Data
+public class PictureTag {
+    /**
+     * id
+     */
+    @TableId(type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 图片 id
+     */
+    private Long pictureId;
+
+    /**
+     * 标签
+     */
+    private String tag;
+
+    /**
+     * 空间 id（冗余，为空表示公共空间）
+     */
+    private Long spaceId;
+
+    /**
+     * 创建时间
+     */
+    private Date createTime;
+}
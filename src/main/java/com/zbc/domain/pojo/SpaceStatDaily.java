@@ -0,0 +1,61 @@
+package com.zbc.domain.pojo;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.util.Date;
+
+/**
+ * 空间图片按天汇总(空间 × 日期 × 用户 × 分类 × 大小区间)
+ */
+@TableName(value = "space_stat_daily")
+@Data
+public class SpaceStatDaily {
+    /**
+     * id
+     */
+    @TableId(type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 空间 id(0 表示公共图库)
+     */
+    private Long spaceId;
+
+    /**
+     * 日期(图片创建日期)
+     */
+    private Date statDate;
+
+    /**
+     * 创建用户 id
+     */
+    private Long userId;
+
+    /**
+     * 分类(空字符串表示未分类)
+     */
+    private String category;
+
+    /**
+     * 大小区间
+     */
+    private Integer sizeBucket;
+
+    /**
+     * 图片数量
+     */
+    private Long pictureCount;
+
+    /**
+     * 图片总大小
+     */
+    private Long totalSize;
+
+    /**
+     * 更新时间
+     */
+    private Date updateTime;
+}
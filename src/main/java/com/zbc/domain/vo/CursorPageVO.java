@@ -0,0 +1,38 @@
+package com.zbc.domain.vo;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 游标分页结果
+ *
+ * @param <T> 数据类型
+ */
+@Data
+public class CursorPageVO<T> implements Serializable {
+
+    /**
+     * 当前页数据
+     */
+    private List<T> records = new ArrayList<>();
+
+    /**
+     * 页面大小
+     */
+    private long size;
+
+    /**
+     * 下一页游标(没有下一页时为空)
+     */
+    private String nextCursor;
+
+    /**
+     * 是否还有下一页
+     */
+    private boolean hasMore;
+
+    private static final long serialVersionUID = 1L;
+}
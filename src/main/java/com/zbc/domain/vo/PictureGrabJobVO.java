@@ -0,0 +1,71 @@
+package com.zbc.domain.vo;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 批量抓取任务进度
+ */
+@Data
+public class PictureGrabJobVO implements Serializable {
+
+    /**
+     * 任务 id
+     */
+    private String jobId;
+
+    /**
+     * 任务状态: running / finished / failed
+     */
+    private String status;
+
+    /**
+     * 搜索词
+     */
+    private String searchText;
+
+    /**
+     * 抓取数量
+     */
+    private Integer count;
+
+    /**
+     * 解析到的候选图片数量
+     */
+    private Integer candidateCount;
+
+    /**
+     * 成功数量
+     */
+    private Integer successCount;
+
+    /**
+     * 失败数量(失败后会用下一张候选图片补位)
+     */
+    private Integer failCount;
+
+    /**
+     * 已上传的图片 id
+     */
+    private List<Long> pictureIdList;
+
+    /**
+     * 任务失败原因
+     */
+    private String errorMessage;
+
+    /**
+     * 创建时间
+     */
+    private Date createTime;
+
+    /**
+     * 结束时间
+     */
+    private Date finishTime;
+
+    private static final long serialVersionUID = 1L;
+}
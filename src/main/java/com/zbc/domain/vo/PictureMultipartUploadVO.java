@@ -0,0 +1,45 @@
+package com.zbc.domain.vo;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 分片上传进度
+ */
+@Data
+public class PictureMultipartUploadVO implements Serializable {
+
+    /**
+     * 分片上传 id
+     */
+    private String uploadId;
+
+    /**
+     * 原始文件名
+     */
+    private String fileName;
+
+    /**
+     * 文件大小(字节)
+     */
+    private Long fileSize;
+
+    /**
+     * 分片大小(字节), 最后一片可以更小
+     */
+    private Long partSize;
+
+    /**
+     * 分片数量
+     */
+    private Integer partCount;
+
+    /**
+     * 已上传的分片序号(升序), 断点续传时只需上传其余分片
+     */
+    private List<Integer> uploadedPartList;
+
+    private static final long serialVersionUID = 1L;
+}
@@ -9,6 +9,7 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 @Data
 public class PictureVO implements Serializable {
@@ -94,6 +95,11 @@ public class PictureVO implements Serializable {
      */
     private String thumbnailUrl;
 
+    /**
+     * 各尺寸缩略图地址, key: 最大边长(只包含小于原图的尺寸)
+     */
+    private Map<Integer, String> srcset;
+
     /**
      * 创建时间
      */
@@ -0,0 +1,36 @@
+package com.zbc.enums;
+
+import lombok.Getter;
+
+/**
+ * 颜色距离度量枚举
+ */
+@Getter
+public enum ColorMetricEnum {
+
+    RGB("RGB 欧氏距离", "rgb"),
+    LAB("CIE Lab 色差", "lab");
+
+    private final String text;
+    private final String value;
+
+    ColorMetricEnum(String text, String value) {
+        this.text = text;
+        this.value = value;
+    }
+
+    /**
+     * 根据 value 获取枚举
+     */
+    public static ColorMetricEnum getEnumByValue(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        for (ColorMetricEnum metricEnum : ColorMetricEnum.values()) {
+            if (metricEnum.value.equals(value)) {
+                return metricEnum;
+            }
+        }
+        return null;
+    }
+}
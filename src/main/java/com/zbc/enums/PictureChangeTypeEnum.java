@@ -0,0 +1,37 @@
+package com.zbc.enums;
+
+import lombok.Getter;
+
+/**
+ * 图片变更类型枚举
+ */
+@Getter
+public enum PictureChangeTypeEnum {
+
+    CREATE("创建", "CREATE"),
+    UPDATE("更新", "UPDATE"),
+    DELETE("删除", "DELETE");
+
+    private final String text;
+    private final String value;
+
+    PictureChangeTypeEnum(String text, String value) {
+        this.text = text;
+        this.value = value;
+    }
+
+    /**
+     * 根据 value 获取枚举
+     */
+    public static PictureChangeTypeEnum getEnumByValue(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        for (PictureChangeTypeEnum typeEnum : PictureChangeTypeEnum.values()) {
+            if (typeEnum.value.equals(value)) {
+                return typeEnum;
+            }
+        }
+        return null;
+    }
+}
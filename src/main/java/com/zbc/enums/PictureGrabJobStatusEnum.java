@@ -0,0 +1,42 @@
+package com.zbc.enums;
+
+import cn.hutool.core.util.ObjUtil;
+import lombok.Getter;
+
+/**
+ * 批量抓取任务状态枚举
+ */
+@Getter
+public enum PictureGrabJobStatusEnum {
+
+    RUNNING("抓取中", "running"),
+    FINISHED("已完成", "finished"),
+    FAILED("失败", "failed");
+
+    private final String text;
+
+    private final String value;
+
+    PictureGrabJobStatusEnum(String text, String value) {
+        this.text = text;
+        this.value = value;
+    }
+
+    /**
+     * 根据 value 获取枚举
+     *
+     * @param value 枚举值的 value
+     * @return 枚举值
+     */
+    public static PictureGrabJobStatusEnum getEnumByValue(String value) {
+        if (ObjUtil.isEmpty(value)) {
+            return null;
+        }
+        for (PictureGrabJobStatusEnum anEnum : PictureGrabJobStatusEnum.values()) {
+            if (anEnum.value.equals(value)) {
+                return anEnum;
+            }
+        }
+        return null;
+    }
+}
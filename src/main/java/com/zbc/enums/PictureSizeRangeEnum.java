@@ -0,0 +1,57 @@
+package com.zbc.enums;
+
+import cn.hutool.core.util.ObjUtil;
+import lombok.Getter;
+
+/**
+ * 图片大小区间枚举(空间分析)
+ */
+@Getter
+public enum PictureSizeRangeEnum {
+    SMALL("<100KB", 0, 100 * 1024L),
+    MEDIUM("100KB - 500KB", 1, 500 * 1024L),
+    LARGE("500KB - 1MB", 2, 1024 * 1024L),
+    HUGE(">1MB", 3, Long.MAX_VALUE);
+
+    private final String text;
+    private final int value;
+
+    /**
+     * 区间上限(字节, 不包含)
+     */
+    private final long maxSize;
+
+    PictureSizeRangeEnum(String text, int value, long maxSize) {
+        this.text = text;
+        this.value = value;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * 根据图片大小获取区间
+     */
+    public static PictureSizeRangeEnum getEnumBySize(Long size) {
+        long picSize = size == null ? 0 : size;
+        for (PictureSizeRangeEnum pictureSizeRangeEnum : PictureSizeRangeEnum.values()) {
+            if (picSize < pictureSizeRangeEnum.maxSize) {
+                return pictureSizeRangeEnum;
+            }
+        }
+        return HUGE;
+    }
+
+    /**
+     * 根据 value 获取枚举
+     */
+    public static PictureSizeRangeEnum getEnumByValue(Integer value) {
+        if (ObjUtil.isEmpty(value)) {
+            return null;
+        }
+        for (PictureSizeRangeEnum pictureSizeRangeEnum : PictureSizeRangeEnum.values()) {
+            if (pictureSizeRangeEnum.value == value) {
+                return pictureSizeRangeEnum;
+            }
+        }
+        return null;
+    }
+}
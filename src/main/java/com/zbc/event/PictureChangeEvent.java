@@ -0,0 +1,45 @@
+package com.zbc.event;
+
+import com.zbc.domain.pojo.Picture;
+import com.zbc.enums.PictureChangeTypeEnum;
+import lombok.Data;
+
+/**
+ * 图片变更事件(事务提交后由各个缓存、索引订阅)
+ */
+@Data
+public class PictureChangeEvent {
+
+    /**
+     * 变更类型
+     */
+    private PictureChangeTypeEnum type;
+
+    /**
+     * 变更前的图片(创建时为空)
+     */
+    private Picture oldPicture;
+
+    /**
+     * 变更后的图片(删除时为空)
+     */
+    private Picture newPicture;
+
+    public PictureChangeEvent(PictureChangeTypeEnum type, Picture oldPicture, Picture newPicture) {
+        this.type = type;
+        this.oldPicture = oldPicture;
+        this.newPicture = newPicture;
+    }
+
+    public static PictureChangeEvent create(Picture newPicture) {
+        return new PictureChangeEvent(PictureChangeTypeEnum.CREATE, null, newPicture);
+    }
+
+    public static PictureChangeEvent update(Picture oldPicture, Picture newPicture) {
+        return new PictureChangeEvent(PictureChangeTypeEnum.UPDATE, oldPicture, newPicture);
+    }
+
+    public static PictureChangeEvent delete(Picture oldPicture) {
+        return new PictureChangeEvent(PictureChangeTypeEnum.DELETE, oldPicture, null);
+    }
+}
@@ -0,0 +1,21 @@
+package com.zbc.event;
+
+import lombok.Data;
+
+/**
+ * 其他节点的图片变更事件(由 redis 发布订阅转发, 只由各节点的内存索引订阅)
+ * <p>
+ * 与 {@link PictureChangeEvent} 分开, 避免缓存版本号、统计、处理队列等已由发生变更的节点完成的工作被重复执行。
+ */
+@Data
+public class PictureRemoteChangeEvent {
+
+    /**
+     * 变更内容, 变更后的图片为本节点从数据库重新读取的最新数据
+     */
+    private PictureChangeEvent changeEvent;
+
+    public PictureRemoteChangeEvent(PictureChangeEvent changeEvent) {
+        this.changeEvent = changeEvent;
+    }
+}
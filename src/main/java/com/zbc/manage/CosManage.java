@@ -4,14 +4,20 @@ import cn.hutool.core.io.FileUtil;
 import cn.hutool.core.util.StrUtil;
 import com.qcloud.cos.COSClient;
 import com.qcloud.cos.model.*;
+import com.qcloud.cos.model.ciModel.common.ImageProcessRequest;
+import com.qcloud.cos.model.ciModel.persistence.CIUploadResult;
 import com.qcloud.cos.model.ciModel.persistence.PicOperations;
+import com.qcloud.cos.exception.MultiObjectDeleteException;
 import com.zbc.config.CosClientConfig;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
 import java.io.File;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 通用的文件上传与下载
@@ -38,6 +44,24 @@ public class CosManage {
         return cosClient.putObject(putObjectRequest);
     }
 
+    /**
+     * 以流的方式上传文件
+     *
+     * @param key           唯一键,简单理解为文件路径
+     * @param inputStream   文件内容(由调用方关闭)
+     * @param contentLength 内容长度
+     * @param contentType   内容类型
+     */
+    public PutObjectResult putObject(String key, InputStream inputStream, long contentLength, String contentType) {
+        String bucketName = cosClientConfig.getBucket();
+        ObjectMetadata objectMetadata = new ObjectMetadata();
+        objectMetadata.setContentLength(contentLength);
+        objectMetadata.setContentType(contentType);
+        PutObjectRequest putObjectRequest = new PutObjectRequest(bucketName, key, inputStream, objectMetadata);
+        putObjectRequest.setStorageClass(StorageClass.Standard);
+        return cosClient.putObject(putObjectRequest);
+    }
+
     /**
      * 下载文件到本地
      *
@@ -49,6 +73,42 @@ public class CosManage {
         return cosClient.getObject(getObjectRequest);
     }
 
+    /**
+     * 下载文件的指定范围
+     *
+     * @param key   唯一键,简单理解为文件路径
+     * @param start 起始位置(包含)
+     * @param end   结束位置(包含)
+     */
+    public COSObject getObject(String key, long start, long end) {
+        String bucketName = cosClientConfig.getBucket();
+        GetObjectRequest getObjectRequest = new GetObjectRequest(bucketName, key);
+        getObjectRequest.setRange(start, end);
+        return cosClient.getObject(getObjectRequest);
+    }
+
+    /**
+     * 获取文件元信息(不下载内容)
+     *
+     * @param key 唯一键,简单理解为文件路径
+     */
+    public ObjectMetadata getObjectMetadata(String key) {
+        return cosClient.getObjectMetadata(cosClientConfig.getBucket(), key);
+    }
+
+    /**
+     * 下载图片, 下载时按规则处理(云上数据处理), 不保存处理结果
+     *
+     * @param key  唯一键,简单理解为文件路径
+     * @param rule 处理规则, 如 imageMogr2/thumbnail/512x512>
+     */
+    public COSObject getPictureObject(String key, String rule) {
+        String bucketName = cosClientConfig.getBucket();
+        GetObjectRequest getObjectRequest = new GetObjectRequest(bucketName, key);
+        getObjectRequest.putCustomQueryParameter(rule, null);
+        return cosClient.getObject(getObjectRequest);
+    }
+
     /**
      * 上传并解析图片
      * 数据万象: 图片处理
@@ -60,6 +120,120 @@ public class CosManage {
     public PutObjectResult putPictureObject(String key, File file) {
         String bucketName = cosClientConfig.getBucket();
         PutObjectRequest putObjectRequest = new PutObjectRequest(bucketName, key, file);
+        putObjectRequest.setPicOperations(buildPicOperations(key, file.length()));
+        return cosClient.putObject(putObjectRequest);
+    }
+
+    /**
+     * 以流的方式上传图片, 不落盘
+     * 只解析原图信息(宽高、格式、主色调), 压缩图与缩略图由后台处理队列生成, 不占用上传耗时
+     *
+     * @param key           唯一键,简单理解为文件路径
+     * @param inputStream   文件内容(由调用方关闭)
+     * @param contentLength 内容长度, 已知长度时 SDK 不需要缓冲整个流
+     * @param contentType   内容类型
+     */
+    public PutObjectResult putPictureObject(String key, InputStream inputStream, long contentLength, String contentType) {
+        String bucketName = cosClientConfig.getBucket();
+        ObjectMetadata objectMetadata = new ObjectMetadata();
+        objectMetadata.setContentLength(contentLength);
+        objectMetadata.setContentType(contentType);
+        PutObjectRequest putObjectRequest = new PutObjectRequest(bucketName, key, inputStream, objectMetadata);
+        PicOperations picOperations = new PicOperations();
+        // 1: 返回原图信息
+        picOperations.setIsPicInfo(1);
+        putObjectRequest.setPicOperations(picOperations);
+        return cosClient.putObject(putObjectRequest);
+    }
+
+    /**
+     * 处理已上传的图片(云上数据处理): 生成压缩图与缩略图
+     * 生成的对象键由原图键确定, 重复处理会覆盖, 可以安全重试
+     *
+     * @param key           唯一键,简单理解为文件路径
+     * @param contentLength 原图大小
+     * @return 图片处理结果
+     */
+    public CIUploadResult processPictureObject(String key, long contentLength) {
+        ImageProcessRequest imageProcessRequest = new ImageProcessRequest(cosClientConfig.getBucket(), key);
+        imageProcessRequest.setPicOperations(buildPicOperations(key, contentLength));
+        return cosClient.processImage(imageProcessRequest);
+    }
+
+    /**
+     * 初始化分片上传
+     *
+     * @param key         唯一键,简单理解为文件路径
+     * @param contentType 内容类型
+     * @return COS 分片上传 id
+     */
+    public String initiateMultipartUpload(String key, String contentType) {
+        ObjectMetadata objectMetadata = new ObjectMetadata();
+        objectMetadata.setContentType(contentType);
+        InitiateMultipartUploadRequest request = new InitiateMultipartUploadRequest(cosClientConfig.getBucket(), key, objectMetadata);
+        request.setStorageClass(StorageClass.Standard);
+        return cosClient.initiateMultipartUpload(request).getUploadId();
+    }
+
+    /**
+     * 上传分片
+     *
+     * @param key         唯一键,简单理解为文件路径
+     * @param uploadId    COS 分片上传 id
+     * @param partNumber  分片序号(从 1 开始)
+     * @param inputStream 分片内容(由调用方关闭)
+     * @param partSize    分片大小
+     * @return 分片 ETag
+     */
+    public String uploadPart(String key, String uploadId, int partNumber, InputStream inputStream, long partSize) {
+        UploadPartRequest request = new UploadPartRequest();
+        request.setBucketName(cosClientConfig.getBucket());
+        request.setKey(key);
+        request.setUploadId(uploadId);
+        request.setPartNumber(partNumber);
+        request.setInputStream(inputStream);
+        request.setPartSize(partSize);
+        return cosClient.uploadPart(request).getETag();
+    }
+
+    /**
+     * 完成分片上传并处理图片(压缩、缩略图)
+     * 合并时未返回处理结果的, 再对合并后的对象发起一次图片处理
+     *
+     * @param key           唯一键,简单理解为文件路径
+     * @param uploadId      COS 分片上传 id
+     * @param partETagList  所有分片(按序号升序)
+     * @param contentLength 文件大小
+     * @return 图片处理结果
+     */
+    public CIUploadResult completePictureMultipartUpload(String key, String uploadId, List<PartETag> partETagList, long contentLength) {
+        String bucketName = cosClientConfig.getBucket();
+        CompleteMultipartUploadRequest request = new CompleteMultipartUploadRequest(bucketName, key, uploadId, partETagList);
+        request.setPicOperations(buildPicOperations(key, contentLength));
+        CIUploadResult ciUploadResult = cosClient.completeMultipartUpload(request).getCiUploadResult();
+        if (ciUploadResult != null && ciUploadResult.getOriginalInfo() != null) {
+            return ciUploadResult;
+        }
+        return processPictureObject(key, contentLength);
+    }
+
+    /**
+     * 取消分片上传, 清理已上传的分片
+     *
+     * @param key      唯一键,简单理解为文件路径
+     * @param uploadId COS 分片上传 id
+     */
+    public void abortMultipartUpload(String key, String uploadId) {
+        cosClient.abortMultipartUpload(new AbortMultipartUploadRequest(cosClientConfig.getBucket(), key, uploadId));
+    }
+
+    /**
+     * 构造图片处理参数
+     *
+     * @param key           唯一键,简单理解为文件路径
+     * @param contentLength 文件大小
+     */
+    private PicOperations buildPicOperations(String key, long contentLength) {
         // 对图片进行处理(获取基本信息也被视作为一种处理)
         PicOperations picOperations = new PicOperations();
         // 1: 返回原图信息; 0: 不返回原图信息(默认)
@@ -77,7 +251,7 @@ public class CosManage {
         /*
            缩略图处理, 仅对 > 30kb 的图片进行处理
          */
-        if (file.length() > 3 * 1024) {
+        if (contentLength > 3 * 1024) {
             PicOperations.Rule thumbnailRule = new PicOperations.Rule();
             // 拼接路径(以防万一设置默认值)
             String suffix = StrUtil.blankToDefault(FileUtil.getSuffix(key), "jpg");
@@ -90,8 +264,7 @@ public class CosManage {
         }
         // 构造处理参数
         picOperations.setRules(rules);
-        putObjectRequest.setPicOperations(picOperations);
-        return cosClient.putObject(putObjectRequest);
+        return picOperations;
     }
 
     /**
@@ -103,4 +276,50 @@ public class CosManage {
         String bucketName = cosClientConfig.getBucket();
         cosClient.deleteObject(bucketName, key);
     }
+
+    /**
+     * 批量删除文件(单次最多 1000 个), 不存在的文件视为删除成功
+     *
+     * @param keys 唯一键(不以 / 开头)
+     * @return 删除失败的文件, key: 唯一键, value: 失败原因
+     */
+    public Map<String, String> deleteObjects(List<String> keys) {
+        Map<String, String> failedMap = new HashMap<>();
+        if (keys.isEmpty()) {
+            return failedMap;
+        }
+        DeleteObjectsRequest deleteObjectsRequest = new DeleteObjectsRequest(cosClientConfig.getBucket());
+        List<DeleteObjectsRequest.KeyVersion> keyVersionList = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            keyVersionList.add(new DeleteObjectsRequest.KeyVersion(key));
+        }
+        deleteObjectsRequest.setKeys(keyVersionList);
+        // 只返回删除失败的文件
+        deleteObjectsRequest.setQuiet(true);
+        try {
+            cosClient.deleteObjects(deleteObjectsRequest);
+        } catch (MultiObjectDeleteException e) {
+            for (MultiObjectDeleteException.DeleteError deleteError : e.getErrors()) {
+                failedMap.put(deleteError.getKey(), deleteError.getCode() + ": " + deleteError.getMessage());
+            }
+        }
+        return failedMap;
+    }
+
+    /**
+     * 分页列出文件
+     *
+     * @param prefix  前缀
+     * @param marker  上一页的结束位置, 第一页为 null
+     * @param maxKeys 每页数量(最多 1000)
+     * @return 文件列表
+     */
+    public ObjectListing listObjects(String prefix, String marker, int maxKeys) {
+        ListObjectsRequest listObjectsRequest = new ListObjectsRequest();
+        listObjectsRequest.setBucketName(cosClientConfig.getBucket());
+        listObjectsRequest.setPrefix(prefix);
+        listObjectsRequest.setMarker(marker);
+        listObjectsRequest.setMaxKeys(maxKeys);
+        return cosClient.listObjects(listObjectsRequest);
+    }
 }
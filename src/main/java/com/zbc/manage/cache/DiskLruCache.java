@@ -0,0 +1,202 @@
+package com.zbc.manage.cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * 磁盘 LRU 缓存
+ * <p>
+ * 每个缓存项对应目录下的一个文件, 内存中只记录文件大小与访问顺序, 总大小超过上限时淘汰最久未访问的文件。
+ * 写入先落到临时文件, 写完再原子重命名, 读取方不会看到写了一半的文件; 启动时按修改时间恢复已有文件。
+ */
+@Slf4j
+public class DiskLruCache {
+
+    /**
+     * 缓存键只允许作为文件名的安全字符, 不能以 . 开头(临时文件、上级目录)
+     */
+    private static final Pattern KEY_PATTERN = Pattern.compile("[A-Za-z0-9_-][A-Za-z0-9._-]{0,199}");
+
+    private static final String TEMP_PREFIX = ".tmp-";
+
+    private final File directory;
+
+    private final long maxBytes;
+
+    /**
+     * key: 缓存键, value: 文件大小, 按访问顺序排列
+     */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long totalBytes;
+
+    /**
+     * @param directory 缓存目录
+     * @param maxBytes  缓存总大小上限(字节)
+     */
+    public DiskLruCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalStateException("无法创建缓存目录: " + directory.getAbsolutePath());
+        }
+        load();
+    }
+
+    /**
+     * 获取缓存文件
+     *
+     * @param key 缓存键
+     * @return 缓存文件, 不存在返回 null
+     */
+    public synchronized File get(String key) {
+        checkKey(key);
+        // get 会更新访问顺序
+        if (entries.get(key) == null) {
+            return null;
+        }
+        File file = new File(directory, key);
+        if (!file.isFile()) {
+            // 文件被外部删除
+            totalBytes -= entries.remove(key);
+            return null;
+        }
+        return file;
+    }
+
+    /**
+     * 写入缓存
+     *
+     * @param key     缓存键
+     * @param content 内容
+     * @return 缓存文件
+     */
+    public File put(String key, byte[] content) throws IOException {
+        checkKey(key);
+        File tempFile = File.createTempFile(TEMP_PREFIX, null, directory);
+        try {
+            Files.write(tempFile.toPath(), content);
+            return commit(key, tempFile);
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    /**
+     * 写入缓存
+     *
+     * @param key         缓存键
+     * @param inputStream 内容(由调用方关闭)
+     * @return 缓存文件
+     */
+    public File put(String key, InputStream inputStream) throws IOException {
+        checkKey(key);
+        File tempFile = File.createTempFile(TEMP_PREFIX, null, directory);
+        try {
+            Files.copy(inputStream, tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return commit(key, tempFile);
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    /**
+     * 删除缓存
+     *
+     * @param key 缓存键
+     */
+    public synchronized void remove(String key) {
+        checkKey(key);
+        Long size = entries.remove(key);
+        if (size != null) {
+            totalBytes -= size;
+            deleteFile(new File(directory, key));
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * 临时文件重命名为缓存文件并登记, 超过上限时淘汰最久未访问的文件(不淘汰刚写入的文件)
+     * 正在被读取的文件被淘汰时, 已打开的文件句柄仍然可以读完
+     */
+    private synchronized File commit(String key, File tempFile) throws IOException {
+        File file = new File(directory, key);
+        long size = tempFile.length();
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Long oldSize = entries.put(key, size);
+        totalBytes += size - (oldSize == null ? 0 : oldSize);
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            if (eldest.getKey().equals(key)) {
+                continue;
+            }
+            iterator.remove();
+            totalBytes -= eldest.getValue();
+            deleteFile(new File(directory, eldest.getKey()));
+        }
+        return file;
+    }
+
+    /**
+     * 恢复目录中已有的缓存文件, 清理上次未完成写入的临时文件
+     */
+    private void load() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            if (!file.isFile()) {
+                continue;
+            }
+            if (file.getName().startsWith(TEMP_PREFIX)) {
+                deleteFile(file);
+                continue;
+            }
+            if (!KEY_PATTERN.matcher(file.getName()).matches()) {
+                continue;
+            }
+            entries.put(file.getName(), file.length());
+            totalBytes += file.length();
+        }
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            totalBytes -= eldest.getValue();
+            deleteFile(new File(directory, eldest.getKey()));
+        }
+    }
+
+    private static void checkKey(String key) {
+        if (key == null || !KEY_PATTERN.matcher(key).matches()) {
+            throw new IllegalArgumentException("缓存键格式错误: " + key);
+        }
+    }
+
+    private static void deleteFile(File file) {
+        if (file.exists() && !file.delete()) {
+            log.error("文件删除失败: {}", file.getAbsolutePath());
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package com.zbc.manage.cache;
+
+import cn.hutool.core.util.RandomUtil;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 多级缓存: Caffeine 本地缓存(L1) + Redis 分布式缓存(L2)
+ * <p>
+ * 1. 读穿透: L1 -> L2 -> 数据源, 回源结果同时写入 L1 和 L2
+ * 2. 单飞加载: 同一个 key 并发未命中时只有一个线程回源, 其余线程等待其结果
+ * 3. 随机过期: 每个条目的 TTL 增加随机抖动, 避免缓存雪崩
+ * 4. 统计: 记录 L1/L2 命中、未命中以及回源耗时
+ *
+ * @param <V> 缓存值类型
+ */
+@Slf4j
+public class MultiLevelCache<V> {
+
+    /**
+     * 序列化器(不做 Long 转 String, 保持数值类型)
+     */
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    /**
+     * 缓存名称, 同时作为 key 前缀
+     */
+    private final String name;
+
+    /**
+     * 缓存值的类型, 用于 L2 反序列化
+     */
+    private final JavaType valueType;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final long remoteTtlSeconds;
+
+    /**
+     * 随机抖动的最大秒数
+     */
+    private final long jitterSeconds;
+
+    private final Cache<String, V> localCache;
+
+    /**
+     * 正在回源的 key
+     */
+    private final ConcurrentMap<String, CompletableFuture<V>> loadingMap = new ConcurrentHashMap<>();
+
+    private final LongAdder localHitCount = new LongAdder();
+    private final LongAdder remoteHitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder sharedLoadCount = new LongAdder();
+    private final LongAdder loadSuccessCount = new LongAdder();
+    private final LongAdder loadFailureCount = new LongAdder();
+    private final LongAdder totalLoadTimeNanos = new LongAdder();
+
+    /**
+     * @param name                缓存名称
+     * @param valueType           缓存值类型
+     * @param stringRedisTemplate redis
+     * @param localMaximumSize    本地缓存最大条数
+     * @param localTtlSeconds     本地缓存有效期(秒)
+     * @param remoteTtlSeconds    redis 缓存有效期(秒)
+     * @param jitterSeconds       有效期随机抖动(秒)
+     */
+    public MultiLevelCache(String name, JavaType valueType, StringRedisTemplate stringRedisTemplate,
+                           long localMaximumSize, long localTtlSeconds, long remoteTtlSeconds, long jitterSeconds) {
+        this.name = name;
+        this.valueType = valueType;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.remoteTtlSeconds = remoteTtlSeconds;
+        this.jitterSeconds = jitterSeconds;
+        this.localCache = Caffeine.newBuilder()
+                .initialCapacity(1024)
+                .maximumSize(localMaximumSize)
+                .expireAfter(new JitterExpiry<V>(localTtlSeconds, jitterSeconds))
+                .build();
+    }
+
+    /**
+     * 获取序列化器, 用于构造缓存值类型
+     */
+    public static ObjectMapper getObjectMapper() {
+        return OBJECT_MAPPER;
+    }
+
+    /**
+     * 读取缓存, 未命中则调用 loader 回源
+     *
+     * @param key    缓存 key(不含前缀)
+     * @param loader 回源逻辑
+     * @return 缓存值
+     */
+    public V get(String key, Supplier<V> loader) {
+        String cacheKey = buildKey(key);
+        // 1. 查询本地缓存
+        V value = localCache.getIfPresent(cacheKey);
+        if (value != null) {
+            localHitCount.increment();
+            return value;
+        }
+        // 2. 单飞: 同一个 key 只允许一个线程查询 redis 与数据源
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> running = loadingMap.putIfAbsent(cacheKey, future);
+        if (running != null) {
+            return join(running);
+        }
+        try {
+            value = loadFromRemoteOrSource(cacheKey, loader);
+            future.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loadingMap.remove(cacheKey, future);
+        }
+    }
+
+    /**
+     * 删除单个缓存
+     *
+     * @param key 缓存 key(不含前缀)
+     */
+    public void invalidate(String key) {
+        String cacheKey = buildKey(key);
+        localCache.invalidate(cacheKey);
+        try {
+            stringRedisTemplate.delete(cacheKey);
+        } catch (Exception e) {
+            log.warn("[{}] 删除 redis 缓存失败, key = {}", name, cacheKey, e);
+        }
+    }
+
+    /**
+     * 删除指定前缀的本地缓存
+     *
+     * @param keyPrefix 缓存 key 前缀(不含缓存名称)
+     */
+    public void invalidateLocalByPrefix(String keyPrefix) {
+        String cacheKeyPrefix = buildKey(keyPrefix);
+        localCache.asMap().keySet().removeIf(cacheKey -> cacheKey.startsWith(cacheKeyPrefix));
+    }
+
+    /**
+     * 清空本地缓存(redis 中的数据依赖过期时间)
+     */
+    public void invalidateAllLocal() {
+        localCache.invalidateAll();
+    }
+
+    /**
+     * 获取缓存统计
+     */
+    public MultiLevelCacheStats stats() {
+        MultiLevelCacheStats stats = new MultiLevelCacheStats();
+        stats.setName(name);
+        stats.setLocalSize(localCache.estimatedSize());
+        stats.setLocalHitCount(localHitCount.sum());
+        stats.setRemoteHitCount(remoteHitCount.sum());
+        stats.setMissCount(missCount.sum());
+        stats.setSharedLoadCount(sharedLoadCount.sum());
+        stats.setLoadSuccessCount(loadSuccessCount.sum());
+        stats.setLoadFailureCount(loadFailureCount.sum());
+        long loadCount = stats.getLoadSuccessCount() + stats.getLoadFailureCount();
+        long totalLoadTimeMillis = TimeUnit.NANOSECONDS.toMillis(totalLoadTimeNanos.sum());
+        stats.setTotalLoadTimeMillis(totalLoadTimeMillis);
+        stats.setAverageLoadTimeMillis(loadCount == 0 ? 0 : totalLoadTimeMillis * 1.0 / loadCount);
+        long requestCount = stats.getLocalHitCount() + stats.getRemoteHitCount() + stats.getMissCount() + stats.getSharedLoadCount();
+        stats.setHitRate(requestCount == 0 ? 0 : (requestCount - stats.getMissCount()) * 1.0 / requestCount);
+        return stats;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 查询 redis, 未命中再回源, 并回填两级缓存
+     */
+    private V loadFromRemoteOrSource(String cacheKey, Supplier<V> loader) {
+        // 再查一次本地缓存, 防止等待期间已被其他线程回填
+        V value = localCache.getIfPresent(cacheKey);
+        if (value != null) {
+            localHitCount.increment();
+            return value;
+        }
+        value = getRemote(cacheKey);
+        if (value != null) {
+            remoteHitCount.increment();
+            localCache.put(cacheKey, value);
+            return value;
+        }
+        missCount.increment();
+        long start = System.nanoTime();
+        try {
+            value = loader.get();
+            loadSuccessCount.increment();
+        } catch (RuntimeException e) {
+            loadFailureCount.increment();
+            throw e;
+        } finally {
+            totalLoadTimeNanos.add(System.nanoTime() - start);
+        }
+        if (value != null) {
+            // 不缓存空值
+            setRemote(cacheKey, value);
+            localCache.put(cacheKey, value);
+        }
+        return value;
+    }
+
+    private V getRemote(String cacheKey) {
+        try {
+            String json = stringRedisTemplate.opsForValue().get(cacheKey);
+            if (json == null) {
+                return null;
+            }
+            return OBJECT_MAPPER.readValue(json, valueType);
+        } catch (Exception e) {
+            // redis 不可用或数据损坏时降级为回源
+            log.warn("[{}] 读取 redis 缓存失败, key = {}", name, cacheKey, e);
+            return null;
+        }
+    }
+
+    private void setRemote(String cacheKey, V value) {
+        try {
+            String json = OBJECT_MAPPER.writeValueAsString(value);
+            long timeout = remoteTtlSeconds + RandomUtil.randomLong(0, jitterSeconds + 1);
+            stringRedisTemplate.opsForValue().set(cacheKey, json, timeout, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            log.warn("[{}] 写入 redis 缓存失败, key = {}", name, cacheKey, e);
+        }
+    }
+
+    private V join(CompletableFuture<V> future) {
+        try {
+            V value = future.join();
+            sharedLoadCount.increment();
+            return value;
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        }
+    }
+
+    private String buildKey(String key) {
+        return name + ":" + key;
+    }
+
+    /**
+     * 带随机抖动的过期策略
+     */
+    private static class JitterExpiry<V> implements Expiry<String, V> {
+
+        private final long ttlNanos;
+
+        private final long jitterNanos;
+
+        JitterExpiry(long ttlSeconds, long jitterSeconds) {
+            this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+            this.jitterNanos = TimeUnit.SECONDS.toNanos(jitterSeconds);
+        }
+
+        @Override
+        public long expireAfterCreate(String key, V value, long currentTime) {
+            return ttlNanos + RandomUtil.randomLong(0, jitterNanos + 1);
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, V value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, V value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
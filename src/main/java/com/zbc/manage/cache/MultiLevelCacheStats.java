@@ -0,0 +1,69 @@
+package com.zbc.manage.cache;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * 多级缓存统计信息
+ */
+@Data
+public class MultiLevelCacheStats implements Serializable {
+
+    /**
+     * 缓存名称
+     */
+    private String name;
+
+    /**
+     * 本地缓存条数(估算)
+     */
+    private long localSize;
+
+    /**
+     * 本地缓存命中次数
+     */
+    private long localHitCount;
+
+    /**
+     * redis 缓存命中次数
+     */
+    private long remoteHitCount;
+
+    /**
+     * 未命中(回源)次数
+     */
+    private long missCount;
+
+    /**
+     * 等待其他线程回源结果的次数(单飞合并)
+     */
+    private long sharedLoadCount;
+
+    /**
+     * 回源成功次数
+     */
+    private long loadSuccessCount;
+
+    /**
+     * 回源失败次数
+     */
+    private long loadFailureCount;
+
+    /**
+     * 回源总耗时(毫秒)
+     */
+    private long totalLoadTimeMillis;
+
+    /**
+     * 平均回源耗时(毫秒)
+     */
+    private double averageLoadTimeMillis;
+
+    /**
+     * 命中率
+     */
+    private double hitRate;
+
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,201 @@
+package com.zbc.manage.cache;
+
+import cn.hutool.core.util.StrUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.zbc.event.PictureChangeEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 图片列表缓存的版本号管理
+ * <p>
+ * 每个缓存范围(公共图库、每个空间)维护一个版本号, 缓存 key 中带上版本号。
+ * 图片变更时递增 redis 中的版本号, 并通过 redis 发布订阅通知所有节点,
+ * 各节点更新本地版本号并清理对应范围的本地缓存, 旧版本的 redis 缓存自然不可达并等待过期。
+ */
+@Slf4j
+@Component
+public class PictureCacheVersionManager implements MessageListener {
+
+    /**
+     * 版本号失效广播频道
+     */
+    public static final String INVALIDATE_CHANNEL = "picture:cache:invalidate";
+
+    /**
+     * redis 中版本号的 key 前缀
+     */
+    private static final String VERSION_KEY_PREFIX = "picture:cache:version:";
+
+    /**
+     * 公共图库范围
+     */
+    private static final String PUBLIC_SCOPE = "public";
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 所有按范围划分的图片列表缓存
+     */
+    @Resource
+    private List<MultiLevelCache<?>> pictureListCaches;
+
+    /**
+     * 本地版本号的有效期(秒), 兜底防止漏掉广播消息
+     */
+    @Value("${picture.cache.version-refresh-seconds:60}")
+    private long versionRefreshSeconds;
+
+    /**
+     * 本地版本号缓存, key: 缓存范围, value: 版本号
+     */
+    private Cache<String, Long> localVersionCache;
+
+    @PostConstruct
+    public void init() {
+        localVersionCache = Caffeine.newBuilder()
+                .maximumSize(100000L)
+                .expireAfterWrite(versionRefreshSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * 获取缓存范围
+     *
+     * @param spaceId 空间 id, 为空表示公共图库
+     * @return 缓存范围
+     */
+    public static String getScope(Long spaceId) {
+        return spaceId == null ? PUBLIC_SCOPE : "space:" + spaceId;
+    }
+
+    /**
+     * 获取缓存范围当前的版本号
+     *
+     * @param spaceId 空间 id, 为空表示公共图库
+     * @return 版本号
+     */
+    public long getVersion(Long spaceId) {
+        String scope = getScope(spaceId);
+        Long version = localVersionCache.getIfPresent(scope);
+        if (version != null) {
+            return version;
+        }
+        long remoteVersion = 0;
+        try {
+            String value = stringRedisTemplate.opsForValue().get(VERSION_KEY_PREFIX + scope);
+            if (StrUtil.isNotBlank(value)) {
+                remoteVersion = Long.parseLong(value);
+            }
+        } catch (Exception e) {
+            log.warn("读取缓存版本号失败, scope = {}", scope, e);
+        }
+        return mergeLocalVersion(scope, remoteVersion);
+    }
+
+    /**
+     * 构造带版本号的缓存 key
+     *
+     * @param spaceId 空间 id, 为空表示公共图库
+     * @param key     业务 key
+     * @return 缓存 key
+     */
+    public String buildVersionedKey(Long spaceId, String key) {
+        return String.format("%s:v%d:%s", getScope(spaceId), getVersion(spaceId), key);
+    }
+
+    /**
+     * 递增缓存范围的版本号并广播给所有节点
+     *
+     * @param spaceId 空间 id, 为空表示公共图库
+     */
+    public void bumpVersion(Long spaceId) {
+        String scope = getScope(spaceId);
+        try {
+            Long version = stringRedisTemplate.opsForValue().increment(VERSION_KEY_PREFIX + scope);
+            if (version == null) {
+                return;
+            }
+            onVersionChanged(scope, version);
+            stringRedisTemplate.convertAndSend(INVALIDATE_CHANNEL, scope + "|" + version);
+        } catch (Exception e) {
+            // redis 不可用时至少保证本节点不读到旧数据
+            log.error("递增缓存版本号失败, scope = {}", scope, e);
+            localVersionCache.invalidate(scope);
+            invalidateLocalCaches(scope);
+        }
+    }
+
+    /**
+     * 图片变更后递增相关范围的版本号(事务提交后执行)
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPictureChange(PictureChangeEvent event) {
+        Set<Long> spaceIdSet = new HashSet<>();
+        if (event.getOldPicture() != null) {
+            spaceIdSet.add(event.getOldPicture().getSpaceId());
+        }
+        if (event.getNewPicture() != null) {
+            spaceIdSet.add(event.getNewPicture().getSpaceId());
+        }
+        spaceIdSet.forEach(this::bumpVersion);
+    }
+
+    /**
+     * 收到其他节点的版本号变更广播
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int index = body.lastIndexOf('|');
+        if (index <= 0) {
+            log.warn("无效的缓存失效消息: {}", body);
+            return;
+        }
+        try {
+            onVersionChanged(body.substring(0, index), Long.parseLong(body.substring(index + 1)));
+        } catch (NumberFormatException e) {
+            log.warn("无效的缓存失效消息: {}", body);
+        }
+    }
+
+    /**
+     * 更新本地版本号, 并清理该范围内的本地缓存
+     */
+    private void onVersionChanged(String scope, long version) {
+        long current = mergeLocalVersion(scope, version);
+        if (current == version) {
+            invalidateLocalCaches(scope);
+        }
+    }
+
+    /**
+     * 清理该范围内的本地缓存
+     */
+    private void invalidateLocalCaches(String scope) {
+        pictureListCaches.forEach(cache -> cache.invalidateLocalByPrefix(scope + ":"));
+    }
+
+    /**
+     * 本地版本号只增不减(广播消息可能乱序到达)
+     */
+    private long mergeLocalVersion(String scope, long version) {
+        Long merged = localVersionCache.asMap().merge(scope, version, Math::max);
+        return merged == null ? version : merged;
+    }
+}
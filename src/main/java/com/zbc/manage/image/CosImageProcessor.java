@@ -0,0 +1,92 @@
+package com.zbc.manage.image;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.io.IoUtil;
+import com.qcloud.cos.model.COSObject;
+import com.qcloud.cos.model.ciModel.persistence.CIObject;
+import com.qcloud.cos.model.ciModel.persistence.CIUploadResult;
+import com.qcloud.cos.model.ciModel.persistence.ImageInfo;
+import com.zbc.exception.BusinessException;
+import com.zbc.exception.ErrorCode;
+import com.zbc.manage.CosManage;
+import com.zbc.manage.upload.PictureUploadBuffer;
+import com.zbc.utils.ThrowUtils;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * 数据万象图片处理: 上传时解析原图信息, 后台处理时由云端生成 webp 压缩图与缩略图
+ */
+@Component
+public class CosImageProcessor implements ImageProcessor {
+
+    @Resource
+    private CosManage cosManage;
+
+    @Override
+    public ImageMetadata upload(String key, InputStreamSource source, long size, String format) {
+        CIUploadResult ciUploadResult;
+        try (InputStream inputStream = source.getInputStream()) {
+            ciUploadResult = cosManage.putPictureObject(key, inputStream, size, ImageProcessor.getContentType(format)).getCiUploadResult();
+        } catch (IOException e) {
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "上传失败");
+        }
+        ThrowUtils.throwIf(ciUploadResult == null || ciUploadResult.getOriginalInfo() == null, ErrorCode.SYSTEM_ERROR, "图片解析结果为空");
+        return toMetadata(ciUploadResult.getOriginalInfo().getImageInfo());
+    }
+
+    @Override
+    public ImageDerivatives process(String key, long size) {
+        CIUploadResult ciUploadResult = cosManage.processPictureObject(key, size);
+        List<CIObject> objectList = ciUploadResult.getProcessResults() == null ? null : ciUploadResult.getProcessResults().getObjectList();
+        ThrowUtils.throwIf(CollUtil.isEmpty(objectList), ErrorCode.SYSTEM_ERROR, "图片处理结果为空");
+        CIObject compressCiObject = objectList.get(0); // 压缩图
+        // 没有缩略图, 默认为压缩图
+        CIObject thumbnailCiObject = objectList.size() > 1 ? objectList.get(1) : compressCiObject;
+        ImageDerivatives imageDerivatives = new ImageDerivatives();
+        imageDerivatives.setCompressKey(compressCiObject.getKey());
+        imageDerivatives.setCompressFormat(compressCiObject.getFormat());
+        imageDerivatives.setThumbnailKey(thumbnailCiObject.getKey());
+        imageDerivatives.setThumbnailFormat(thumbnailCiObject.getFormat());
+        ImageInfo imageInfo = ciUploadResult.getOriginalInfo() == null ? null : ciUploadResult.getOriginalInfo().getImageInfo();
+        if (imageInfo != null) {
+            imageDerivatives.setPicColor(imageInfo.getAve());
+        }
+        return imageDerivatives;
+    }
+
+    @Override
+    public ImageThumbnail thumbnail(String key, long size, int maxSize) {
+        // 下载时处理: 缩放到最大边长, 小于该尺寸的图片不处理
+        String rule = String.format("imageMogr2/thumbnail/%sx%s>", maxSize, maxSize);
+        byte[] content;
+        try (COSObject cosObject = cosManage.getPictureObject(key, rule);
+             InputStream inputStream = cosObject.getObjectContent()) {
+            content = IoUtil.readBytes(inputStream);
+        } catch (IOException e) {
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "生成缩略图失败");
+        }
+        ThrowUtils.throwIf(content.length < PictureUploadBuffer.HEADER_LENGTH, ErrorCode.SYSTEM_ERROR, "生成缩略图失败");
+        ImageThumbnail imageThumbnail = new ImageThumbnail();
+        imageThumbnail.setContent(content);
+        imageThumbnail.setFormat(PictureUploadBuffer.detectFormat(content));
+        return imageThumbnail;
+    }
+
+    /**
+     * 数据万象返回的原图信息转换为原图信息(不含感知哈希)
+     */
+    public static ImageMetadata toMetadata(ImageInfo imageInfo) {
+        ImageMetadata imageMetadata = new ImageMetadata();
+        imageMetadata.setWidth(imageInfo.getWidth());
+        imageMetadata.setHeight(imageInfo.getHeight());
+        imageMetadata.setFormat(imageInfo.getFormat());
+        imageMetadata.setPicColor(imageInfo.getAve());
+        return imageMetadata;
+    }
+}
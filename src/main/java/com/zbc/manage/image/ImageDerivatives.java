@@ -0,0 +1,34 @@
+package com.zbc.manage.image;
+
+import lombok.Data;
+
+/**
+ * 衍生图信息
+ */
+@Data
+public class ImageDerivatives {
+
+    /**
+     * 压缩图对象键, 压缩后没有变小时为原图键
+     */
+    private String compressKey;
+
+    private String compressFormat;
+
+    /**
+     * 缩略图对象键, 没有缩略图时为压缩图键
+     */
+    private String thumbnailKey;
+
+    private String thumbnailFormat;
+
+    /**
+     * 主色调: 0xRRGGBB
+     */
+    private String picColor;
+
+    /**
+     * 感知哈希, 未计算为 null
+     */
+    private Long picPhash;
+}
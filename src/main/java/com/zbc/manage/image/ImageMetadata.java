@@ -0,0 +1,29 @@
+package com.zbc.manage.image;
+
+import lombok.Data;
+
+/**
+ * 原图信息
+ */
+@Data
+public class ImageMetadata {
+
+    private int width;
+
+    private int height;
+
+    /**
+     * 格式: jpg / png / webp
+     */
+    private String format;
+
+    /**
+     * 主色调: 0xRRGGBB
+     */
+    private String picColor;
+
+    /**
+     * 感知哈希, 解码时顺便计算, 未计算为 null
+     */
+    private Long picPhash;
+}
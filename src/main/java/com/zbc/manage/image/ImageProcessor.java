@@ -0,0 +1,49 @@
+package com.zbc.manage.image;
+
+import org.springframework.core.io.InputStreamSource;
+
+/**
+ * 图片处理引擎
+ * <p>
+ * 上传时存储原图并解析原图信息; 入库后由后台处理队列为原图生成压缩图与缩略图。
+ * 默认使用 COS 数据万象, 也可以使用进程内的纯 Java 实现(离线可测, 小图不产生数据万象费用)。
+ */
+public interface ImageProcessor {
+
+    /**
+     * 上传原图并解析原图信息
+     *
+     * @param key    对象键
+     * @param source 原图内容(可多次读取)
+     * @param size   原图大小
+     * @param format 原图格式(根据文件头识别)
+     * @return 原图信息
+     */
+    ImageMetadata upload(String key, InputStreamSource source, long size, String format);
+
+    /**
+     * 为已上传的原图生成压缩图与缩略图, 衍生图的对象键由原图键确定, 可以重复执行
+     *
+     * @param key  原图对象键
+     * @param size 原图大小
+     * @return 衍生图信息
+     */
+    ImageDerivatives process(String key, long size);
+
+    /**
+     * 按需生成指定尺寸的缩略图, 不存储
+     *
+     * @param key     图片对象键
+     * @param size    图片大小
+     * @param maxSize 缩略图最大边长, 小于该尺寸的图片不放大
+     * @return 缩略图
+     */
+    ImageThumbnail thumbnail(String key, long size, int maxSize);
+
+    /**
+     * 根据图片格式获取内容类型
+     */
+    static String getContentType(String format) {
+        return "jpg".equals(format) ? "image/jpeg" : "image/" + format;
+    }
+}
@@ -0,0 +1,20 @@
+package com.zbc.manage.image;
+
+import lombok.Data;
+
+/**
+ * 按需生成的缩略图
+ */
+@Data
+public class ImageThumbnail {
+
+    /**
+     * 图片内容
+     */
+    private byte[] content;
+
+    /**
+     * 格式: jpg / png / webp
+     */
+    private String format;
+}
@@ -0,0 +1,413 @@
+package com.zbc.manage.image;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.IoUtil;
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import com.qcloud.cos.model.COSObject;
+import com.zbc.exception.BusinessException;
+import com.zbc.exception.ErrorCode;
+import com.zbc.manage.CosManage;
+import com.zbc.utils.ImageHashUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.imageio.*;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.concurrent.*;
+
+/**
+ * 进程内图片处理(纯 Java, 基于 ImageIO)
+ * <p>
+ * 解析原图信息时按目标尺寸设置 ImageReadParam 的行列采样, 解码时直接跳过多余像素, 大图也只占用少量内存;
+ * 缩略图逐级减半缩放, 最后一步缩放到目标尺寸, 效果接近高质量缩放而开销远小于一次性缩放。
+ * 解码与编码都是 CPU 密集型操作, 在独立的有界线程池中执行, 队列满时拒绝而不是无限堆积。
+ * 只支持 ImageIO 能解码的格式(jpg、png), 压缩图为 jpg(带透明通道的图片不压缩)。
+ */
+@Slf4j
+@Component
+public class LocalImageProcessor implements ImageProcessor {
+
+    /**
+     * 解析原图信息时解码的目标边长(短边), 足够计算主色调与感知哈希
+     */
+    private static final int ANALYZE_SIZE = 256;
+
+    /**
+     * 主色调统计时每个颜色通道保留的位数
+     */
+    private static final int COLOR_BITS = 4;
+
+    @Resource
+    private CosManage cosManage;
+
+    /**
+     * 图片处理线程数, 不大于 CPU 核数
+     */
+    @Value("${picture.image.local.threads:2}")
+    private int threads;
+
+    /**
+     * 等待处理的最大任务数, 超过后拒绝
+     */
+    @Value("${picture.image.local.queue-size:32}")
+    private int queueSize;
+
+    /**
+     * 单张图片处理的超时时间(秒)
+     */
+    @Value("${picture.image.local.timeout-seconds:30}")
+    private long timeoutSeconds;
+
+    /**
+     * 允许解码的最大像素数, 防止解压炸弹
+     */
+    @Value("${picture.image.local.max-pixels:50000000}")
+    private long maxPixels;
+
+    /**
+     * 压缩图的 jpg 质量(0 ~ 1)
+     */
+    @Value("${picture.image.local.compress-quality:0.8}")
+    private float compressQuality;
+
+    /**
+     * 缩略图最大边长, 小于该尺寸的图片不生成缩略图
+     */
+    @Value("${picture.image.thumbnail-size:256}")
+    private int thumbnailSize;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        int poolSize = Math.max(1, Math.min(threads, Runtime.getRuntime().availableProcessors()));
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueSize)),
+                ThreadFactoryBuilder.create().setNamePrefix("picture-image-").setDaemon(true).build(),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public ImageMetadata upload(String key, InputStreamSource source, long size, String format) {
+        // 先解析, 无法解码的图片不上传
+        ImageMetadata imageMetadata = execute(() -> analyze(source));
+        try (InputStream inputStream = source.getInputStream()) {
+            cosManage.putObject(key, inputStream, size, ImageProcessor.getContentType(format));
+        } catch (IOException e) {
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "上传失败");
+        }
+        return imageMetadata;
+    }
+
+    @Override
+    public ImageDerivatives process(String key, long size) {
+        byte[] original = readObject(key);
+        return execute(() -> createDerivatives(key, original));
+    }
+
+    @Override
+    public ImageThumbnail thumbnail(String key, long size, int maxSize) {
+        byte[] original = readObject(key);
+        return execute(() -> {
+            // 采样解码到不小于目标尺寸, 再逐级缩放
+            DecodedImage decodedImage = decode(() -> new ByteArrayInputStream(original), maxSize);
+            BufferedImage thumbnail = scaleDown(decodedImage.image, maxSize);
+            boolean hasAlpha = thumbnail.getColorModel().hasAlpha();
+            String format = hasAlpha ? "png" : decodedImage.format;
+            ImageThumbnail imageThumbnail = new ImageThumbnail();
+            imageThumbnail.setContent("jpg".equals(format) ? encodeJpg(thumbnail, compressQuality) : encode(thumbnail, format));
+            imageThumbnail.setFormat(format);
+            return imageThumbnail;
+        });
+    }
+
+    /**
+     * 解析原图信息: 采样解码后计算主色调与感知哈希
+     *
+     * @param source 原图内容
+     * @return 原图信息
+     */
+    public ImageMetadata analyze(InputStreamSource source) throws IOException {
+        DecodedImage decodedImage = decode(source, ANALYZE_SIZE);
+        ImageMetadata imageMetadata = new ImageMetadata();
+        imageMetadata.setWidth(decodedImage.width);
+        imageMetadata.setHeight(decodedImage.height);
+        imageMetadata.setFormat(decodedImage.format);
+        imageMetadata.setPicColor(dominantColor(decodedImage.image));
+        imageMetadata.setPicPhash(ImageHashUtils.pHash(decodedImage.image));
+        return imageMetadata;
+    }
+
+    /**
+     * 生成并上传压缩图与缩略图, 对象键与数据万象的规则一致: 原图名_compress.jpg、原图名_thumbnail.原图后缀
+     */
+    private ImageDerivatives createDerivatives(String key, byte[] original) throws IOException {
+        DecodedImage decodedImage = decode(() -> new ByteArrayInputStream(original), 0);
+        BufferedImage image = decodedImage.image;
+        boolean hasAlpha = image.getColorModel().hasAlpha();
+        String baseKey = key.substring(0, key.lastIndexOf('/') + 1) + FileUtil.mainName(key);
+        ImageDerivatives imageDerivatives = new ImageDerivatives();
+        // 1. 压缩图: 重新编码为 jpg, 没有变小时直接使用原图
+        imageDerivatives.setCompressKey(key);
+        imageDerivatives.setCompressFormat(decodedImage.format);
+        if (!hasAlpha) {
+            byte[] compressed = encodeJpg(image, compressQuality);
+            if (compressed.length < original.length) {
+                String compressKey = baseKey + "_compress.jpg";
+                cosManage.putObject(compressKey, new ByteArrayInputStream(compressed), compressed.length, ImageProcessor.getContentType("jpg"));
+                imageDerivatives.setCompressKey(compressKey);
+                imageDerivatives.setCompressFormat("jpg");
+            }
+        }
+        // 2. 缩略图: 逐级缩放, 格式与原图一致
+        BufferedImage thumbnail = image;
+        imageDerivatives.setThumbnailKey(imageDerivatives.getCompressKey());
+        imageDerivatives.setThumbnailFormat(imageDerivatives.getCompressFormat());
+        if (Math.max(image.getWidth(), image.getHeight()) > thumbnailSize) {
+            thumbnail = scaleDown(image, thumbnailSize);
+            String thumbnailFormat = hasAlpha ? "png" : decodedImage.format;
+            byte[] thumbnailBytes = "jpg".equals(thumbnailFormat) ? encodeJpg(thumbnail, compressQuality) : encode(thumbnail, thumbnailFormat);
+            String thumbnailKey = baseKey + "_thumbnail." + thumbnailFormat;
+            cosManage.putObject(thumbnailKey, new ByteArrayInputStream(thumbnailBytes), thumbnailBytes.length, ImageProcessor.getContentType(thumbnailFormat));
+            imageDerivatives.setThumbnailKey(thumbnailKey);
+            imageDerivatives.setThumbnailFormat(thumbnailFormat);
+        }
+        // 3. 主色调与感知哈希使用缩略图计算即可
+        imageDerivatives.setPicColor(dominantColor(thumbnail));
+        imageDerivatives.setPicPhash(ImageHashUtils.pHash(thumbnail));
+        return imageDerivatives;
+    }
+
+    private byte[] readObject(String key) {
+        try (COSObject cosObject = cosManage.getObject(key);
+             InputStream inputStream = cosObject.getObjectContent()) {
+            return IoUtil.readBytes(inputStream);
+        } catch (IOException e) {
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "读取原图失败");
+        }
+    }
+
+    /**
+     * 在图片处理线程池中执行, 等待结果
+     */
+    private <T> T execute(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            throw new BusinessException(ErrorCode.OPERATION_ERROR, "图片处理繁忙, 请稍后重试");
+        }
+        try {
+            return future.get(timeoutSeconds, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new BusinessException(ErrorCode.OPERATION_ERROR, "图片处理超时");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new BusinessException(ErrorCode.OPERATION_ERROR, "图片处理被中断");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof BusinessException) {
+                throw (BusinessException) e.getCause();
+            }
+            log.warn("图片处理失败", e.getCause());
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, "图片格式无法解析");
+        }
+    }
+
+    /**
+     * 解码图片
+     *
+     * @param source     图片内容
+     * @param targetSize 目标边长(短边), 按该尺寸设置行列采样; 小于等于 0 时完整解码
+     * @return 解码结果, 宽高为原图宽高
+     */
+    private DecodedImage decode(InputStreamSource source, int targetSize) throws IOException {
+        try (InputStream inputStream = source.getInputStream();
+             ImageInputStream imageInputStream = ImageIO.createImageInputStream(inputStream)) {
+            Iterator<ImageReader> readers = imageInputStream == null ? null : ImageIO.getImageReaders(imageInputStream);
+            if (readers == null || !readers.hasNext()) {
+                throw new BusinessException(ErrorCode.PARAMS_ERROR, "图片格式无法解析");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(imageInputStream, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > maxPixels) {
+                    throw new BusinessException(ErrorCode.PARAMS_ERROR, "图片分辨率过大");
+                }
+                ImageReadParam readParam = reader.getDefaultReadParam();
+                if (targetSize > 0) {
+                    int subsampling = Math.max(1, Math.min(width, height) / targetSize);
+                    readParam.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                DecodedImage decodedImage = new DecodedImage();
+                decodedImage.image = reader.read(0, readParam);
+                decodedImage.width = width;
+                decodedImage.height = height;
+                String formatName = reader.getFormatName().toLowerCase();
+                decodedImage.format = "jpeg".equals(formatName) ? "jpg" : formatName;
+                return decodedImage;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * 逐级缩放: 每次缩小一半, 最后一步缩放到目标尺寸
+     *
+     * @param image   原图
+     * @param maxSize 最大边长
+     * @return 缩放后的图片
+     */
+    static BufferedImage scaleDown(BufferedImage image, int maxSize) {
+        double ratio = Math.min(1.0, maxSize * 1.0 / Math.max(image.getWidth(), image.getHeight()));
+        int targetWidth = Math.max(1, (int) Math.round(image.getWidth() * ratio));
+        int targetHeight = Math.max(1, (int) Math.round(image.getHeight() * ratio));
+        BufferedImage current = image;
+        int width = image.getWidth();
+        int height = image.getHeight();
+        while (width / 2 >= targetWidth && height / 2 >= targetHeight) {
+            width /= 2;
+            height /= 2;
+            current = resize(current, width, height);
+        }
+        if (width != targetWidth || height != targetHeight) {
+            current = resize(current, targetWidth, targetHeight);
+        }
+        return current;
+    }
+
+    private static BufferedImage resize(BufferedImage image, int width, int height) {
+        int type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage resized = new BufferedImage(width, height, type);
+        Graphics2D graphics = resized.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return resized;
+    }
+
+    /**
+     * 主色调: 颜色量化后出现次数最多的颜色(取该颜色内像素的平均值), 格式与数据万象一致: 0xRRGGBB
+     */
+    static String dominantColor(BufferedImage image) {
+        // 按步长采样, 最多统计约 256 × 256 个像素
+        int step = Math.max(1, Math.max(image.getWidth(), image.getHeight()) / 256);
+        int shift = 8 - COLOR_BITS;
+        int bucketCount = 1 << (COLOR_BITS * 3);
+        int[] counts = new int[bucketCount];
+        long[] reds = new long[bucketCount];
+        long[] greens = new long[bucketCount];
+        long[] blues = new long[bucketCount];
+        for (int y = 0; y < image.getHeight(); y += step) {
+            for (int x = 0; x < image.getWidth(); x += step) {
+                int argb = image.getRGB(x, y);
+                // 忽略几乎透明的像素
+                if ((argb >>> 24) < 16) {
+                    continue;
+                }
+                int red = (argb >> 16) & 0xff;
+                int green = (argb >> 8) & 0xff;
+                int blue = argb & 0xff;
+                int bucket = ((red >> shift) << (COLOR_BITS * 2)) | ((green >> shift) << COLOR_BITS) | (blue >> shift);
+                counts[bucket]++;
+                reds[bucket] += red;
+                greens[bucket] += green;
+                blues[bucket] += blue;
+            }
+        }
+        int best = 0;
+        for (int i = 1; i < bucketCount; i++) {
+            if (counts[i] > counts[best]) {
+                best = i;
+            }
+        }
+        if (counts[best] == 0) {
+            return "0x000000";
+        }
+        return String.format("0x%02x%02x%02x", reds[best] / counts[best], greens[best] / counts[best], blues[best] / counts[best]);
+    }
+
+    private static byte[] encodeJpg(BufferedImage image, float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpg").next();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (MemoryCacheImageOutputStream imageOutputStream = new MemoryCacheImageOutputStream(outputStream)) {
+            writer.setOutput(imageOutputStream);
+            ImageWriteParam writeParam = writer.getDefaultWriteParam();
+            writeParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            writeParam.setCompressionQuality(quality);
+            writer.write(null, new IIOImage(toRgb(image), null, null), writeParam);
+        } finally {
+            writer.dispose();
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] encode(BufferedImage image, String format) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        if (!ImageIO.write(image, format, outputStream)) {
+            throw new IOException("不支持的图片格式: " + format);
+        }
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * jpg 编码只支持 RGB 与灰度图, 其他类型先转换
+     */
+    private static BufferedImage toRgb(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_RGB || image.getType() == BufferedImage.TYPE_3BYTE_BGR
+                || image.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+            return image;
+        }
+        BufferedImage rgbImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = rgbImage.createGraphics();
+        try {
+            graphics.drawImage(image, 0, 0, null);
+        } finally {
+            graphics.dispose();
+        }
+        return rgbImage;
+    }
+
+    /**
+     * 解码结果
+     */
+    private static class DecodedImage {
+
+        private BufferedImage image;
+
+        /**
+         * 原图宽高(采样前)
+         */
+        private int width;
+
+        private int height;
+
+        private String format;
+    }
+}
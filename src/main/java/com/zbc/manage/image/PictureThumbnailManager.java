@@ -0,0 +1,177 @@
+package com.zbc.manage.image;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.SecureUtil;
+import com.zbc.domain.pojo.Picture;
+import com.zbc.domain.vo.PictureVO;
+import com.zbc.exception.BusinessException;
+import com.zbc.exception.ErrorCode;
+import com.zbc.manage.cache.DiskLruCache;
+import com.zbc.manage.upload.PictureUploadBuffer;
+import com.zbc.utils.ObjectKeyUtils;
+import com.zbc.utils.ThrowUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 多尺寸缩略图
+ * <p>
+ * 按配置的尺寸阶梯(最大边长)在首次访问时生成, 结果写入磁盘 LRU 缓存, 总大小超过上限时淘汰最久未访问的缩略图。
+ * 缓存键为文件内容哈希 + 尺寸, 相同内容的图片共用缩略图, 图片内容变化后自然使用新的缓存键, 不需要主动失效。
+ * 同一缩略图并发请求时只生成一次。
+ */
+@Slf4j
+@Component
+public class PictureThumbnailManager {
+
+    @Resource
+    private ImageProcessor imageProcessor;
+
+    /**
+     * 缩略图尺寸阶梯(最大边长), 升序
+     */
+    @Value("${picture.image.sizes:128,256,512,1024}")
+    private int[] sizes;
+
+    /**
+     * 缩略图访问地址
+     */
+    @Value("${picture.image.thumbnail-base-url:/api/picture/thumbnail}")
+    private String thumbnailBaseUrl;
+
+    /**
+     * 缩略图缓存目录, 为空时使用系统临时目录
+     */
+    @Value("${picture.image.thumbnail-cache.dir:}")
+    private String cacheDir;
+
+    /**
+     * 缩略图缓存总大小上限(字节)
+     */
+    @Value("${picture.image.thumbnail-cache.max-bytes:1073741824}")
+    private long cacheMaxBytes;
+
+    private DiskLruCache diskLruCache;
+
+    /**
+     * 正在生成的缩略图, key: 缓存键
+     */
+    private final Map<String, CompletableFuture<File>> generatingMap = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        Arrays.sort(sizes);
+        File directory = StrUtil.isBlank(cacheDir)
+                ? new File(System.getProperty("java.io.tmpdir"), "picture-thumbnail")
+                : new File(cacheDir);
+        diskLruCache = new DiskLruCache(directory, cacheMaxBytes);
+    }
+
+    /**
+     * 填充各尺寸缩略图地址, 只包含小于原图的尺寸
+     *
+     * @param pictureVO 图片
+     */
+    public void fillSrcset(PictureVO pictureVO) {
+        if (pictureVO == null || pictureVO.getId() == null) {
+            return;
+        }
+        int maxSide = Math.max(pictureVO.getPicWidth() == null ? 0 : pictureVO.getPicWidth(),
+                pictureVO.getPicHeight() == null ? 0 : pictureVO.getPicHeight());
+        Map<Integer, String> srcset = new LinkedHashMap<>();
+        for (int size : sizes) {
+            // 宽高未知时给出全部尺寸
+            if (maxSide > 0 && size >= maxSide) {
+                break;
+            }
+            srcset.put(size, String.format("%s?id=%d&size=%d", thumbnailBaseUrl, pictureVO.getId(), size));
+        }
+        pictureVO.setSrcset(srcset);
+    }
+
+    /**
+     * 获取指定尺寸的缩略图, 不存在时生成
+     *
+     * @param picture 图片
+     * @param size    尺寸(最大边长), 必须是尺寸阶梯中的值
+     * @return 缩略图文件
+     */
+    public File getThumbnail(Picture picture, int size) {
+        ThrowUtils.throwIf(Arrays.binarySearch(sizes, size) < 0, ErrorCode.PARAMS_ERROR, "不支持的缩略图尺寸");
+        ThrowUtils.throwIf(StrUtil.isBlank(picture.getUrl()), ErrorCode.NOT_FOUND_ERROR);
+        String cacheKey = buildCacheKey(picture, size);
+        File file = diskLruCache.get(cacheKey);
+        if (file != null) {
+            return file;
+        }
+        // 同一缩略图只生成一次, 其他请求等待结果
+        CompletableFuture<File> future = new CompletableFuture<>();
+        CompletableFuture<File> generating = generatingMap.putIfAbsent(cacheKey, future);
+        if (generating != null) {
+            try {
+                return generating.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof BusinessException ? (BusinessException) e.getCause()
+                        : new BusinessException(ErrorCode.SYSTEM_ERROR, "生成缩略图失败");
+            }
+        }
+        try {
+            file = diskLruCache.get(cacheKey);
+            if (file == null) {
+                ImageThumbnail imageThumbnail = imageProcessor.thumbnail(ObjectKeyUtils.toObjectKey(picture.getUrl()),
+                        picture.getPicSize() == null ? 0 : picture.getPicSize(), size);
+                file = diskLruCache.put(cacheKey, imageThumbnail.getContent());
+            }
+            future.complete(file);
+            return file;
+        } catch (IOException e) {
+            log.error("写入缩略图缓存失败: {}", cacheKey, e);
+            BusinessException exception = new BusinessException(ErrorCode.SYSTEM_ERROR, "生成缩略图失败");
+            future.completeExceptionally(exception);
+            throw exception;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            generatingMap.remove(cacheKey, future);
+        }
+    }
+
+    /**
+     * 根据文件头获取缩略图的内容类型
+     *
+     * @param file 缩略图文件
+     * @return 内容类型
+     */
+    public String getContentType(File file) throws IOException {
+        byte[] header = new byte[PictureUploadBuffer.HEADER_LENGTH];
+        try (InputStream inputStream = Files.newInputStream(file.toPath())) {
+            if (inputStream.read(header) < header.length) {
+                return "application/octet-stream";
+            }
+        }
+        return ImageProcessor.getContentType(PictureUploadBuffer.detectFormat(header));
+    }
+
+    /**
+     * 缓存键: 文件内容哈希(旧图片没有时使用地址的哈希)_尺寸
+     */
+    private static String buildCacheKey(Picture picture, int size) {
+        String hash = StrUtil.isNotBlank(picture.getFileHash()) ? picture.getFileHash() : SecureUtil.sha256(picture.getUrl());
+        return hash + "_" + size;
+    }
+}
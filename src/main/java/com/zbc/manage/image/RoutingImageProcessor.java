@@ -0,0 +1,107 @@
+package com.zbc.manage.image;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+
+/**
+ * 按配置选择图片处理引擎
+ * <p>
+ * cos: 全部使用数据万象; local: 全部在进程内处理(可离线运行);
+ * auto: 小图(jpg、png)在进程内处理, 节省数据万象费用, 大图、其他格式或本地处理失败(无法解码、线程池繁忙)时使用数据万象。
+ * 后台处理与上传按同样的规则(原图大小、格式)选择, 同一张图片通常由同一引擎处理。
+ */
+@Slf4j
+@Primary
+@Component
+public class RoutingImageProcessor implements ImageProcessor {
+
+    @Resource
+    private CosImageProcessor cosImageProcessor;
+    @Resource
+    private LocalImageProcessor localImageProcessor;
+
+    /**
+     * 图片处理引擎: cos / local / auto
+     */
+    @Value("${picture.image.processor:cos}")
+    private String processor;
+
+    /**
+     * auto 模式下进程内处理的最大原图大小(字节)
+     */
+    @Value("${picture.image.local-max-size-bytes:524288}")
+    private long localMaxSizeBytes;
+
+    @Override
+    public ImageMetadata upload(String key, InputStreamSource source, long size, String format) {
+        if (!useLocal(size, format)) {
+            return cosImageProcessor.upload(key, source, size, format);
+        }
+        if (!isAuto()) {
+            return localImageProcessor.upload(key, source, size, format);
+        }
+        try {
+            return localImageProcessor.upload(key, source, size, format);
+        } catch (Exception e) {
+            log.info("本地图片处理失败, 改用数据万象: {}, {}", key, e.getMessage());
+            return cosImageProcessor.upload(key, source, size, format);
+        }
+    }
+
+    @Override
+    public ImageDerivatives process(String key, long size) {
+        String format = getFormat(key);
+        if (!useLocal(size, format)) {
+            return cosImageProcessor.process(key, size);
+        }
+        if (!isAuto()) {
+            return localImageProcessor.process(key, size);
+        }
+        try {
+            return localImageProcessor.process(key, size);
+        } catch (Exception e) {
+            log.info("本地图片处理失败, 改用数据万象: {}, {}", key, e.getMessage());
+            return cosImageProcessor.process(key, size);
+        }
+    }
+
+    @Override
+    public ImageThumbnail thumbnail(String key, long size, int maxSize) {
+        String format = getFormat(key);
+        if (!useLocal(size, format)) {
+            return cosImageProcessor.thumbnail(key, size, maxSize);
+        }
+        if (!isAuto()) {
+            return localImageProcessor.thumbnail(key, size, maxSize);
+        }
+        try {
+            return localImageProcessor.thumbnail(key, size, maxSize);
+        } catch (Exception e) {
+            log.info("本地图片处理失败, 改用数据万象: {}, {}", key, e.getMessage());
+            return cosImageProcessor.thumbnail(key, size, maxSize);
+        }
+    }
+
+    /**
+     * 根据对象键后缀获取格式
+     */
+    private static String getFormat(String key) {
+        return key.substring(key.lastIndexOf('.') + 1).toLowerCase();
+    }
+
+    private boolean isAuto() {
+        return "auto".equalsIgnoreCase(processor);
+    }
+
+    private boolean useLocal(long size, String format) {
+        if ("local".equalsIgnoreCase(processor)) {
+            return true;
+        }
+        return isAuto() && size <= localMaxSizeBytes && ("jpg".equals(format) || "png".equals(format));
+    }
+}
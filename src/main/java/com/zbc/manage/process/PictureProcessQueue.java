@@ -0,0 +1,264 @@
+package com.zbc.manage.process;
+
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.StrUtil;
+import com.zbc.domain.pojo.Picture;
+import com.zbc.event.PictureChangeEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 图片处理队列(redis stream)
+ * <p>
+ * 新文件的图片入库(事务提交)后入队, 由本地工作线程以消费组方式消费, 处理成功后确认。
+ * 处理失败或消费者宕机的消息留在待确认列表中, 空闲超过重试间隔后被重新认领处理; 超过最大次数转入死信流。
+ */
+@Slf4j
+@Component
+public class PictureProcessQueue {
+
+    private static final String STREAM_KEY = "picture:process:stream";
+
+    private static final String DEAD_LETTER_KEY = "picture:process:dead";
+
+    private static final String GROUP_NAME = "picture-process";
+
+    private static final String FILE_HASH_FIELD = "fileHash";
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private PictureProcessor pictureProcessor;
+
+    /**
+     * 工作线程数
+     */
+    @Value("${picture.process.worker-threads:2}")
+    private int workerThreads;
+
+    /**
+     * 每次读取的消息数
+     */
+    @Value("${picture.process.batch-size:10}")
+    private int batchSize;
+
+    /**
+     * 没有消息时阻塞等待的时间(毫秒)
+     */
+    @Value("${picture.process.block-millis:2000}")
+    private long blockMillis;
+
+    /**
+     * 消息未确认多久后重新处理(秒)
+     */
+    @Value("${picture.process.retry-idle-seconds:60}")
+    private long retryIdleSeconds;
+
+    /**
+     * 最大处理次数, 超过后转入死信流
+     */
+    @Value("${picture.process.max-attempts:5}")
+    private int maxAttempts;
+
+    /**
+     * 队列最大长度(近似裁剪)
+     */
+    @Value("${picture.process.max-length:100000}")
+    private long maxLength;
+
+    /**
+     * 消费者名称, 每个实例唯一
+     */
+    private final String consumerName = IdUtil.fastSimpleUUID();
+
+    private volatile boolean running;
+
+    private ExecutorService workerExecutor;
+
+    private ScheduledExecutorService retryScheduler;
+
+    /**
+     * 入队
+     *
+     * @param fileHash 文件内容哈希
+     */
+    public void enqueue(String fileHash) {
+        try {
+            stringRedisTemplate.opsForStream().add(StreamRecords.newRecord()
+                    .in(STREAM_KEY)
+                    .ofMap(Collections.singletonMap(FILE_HASH_FIELD, fileHash)));
+            stringRedisTemplate.opsForStream().trim(STREAM_KEY, maxLength, true);
+        } catch (Exception e) {
+            // 入队失败不影响上传, 图片继续使用原图
+            log.error("图片处理入队失败, fileHash = {}", fileHash, e);
+        }
+    }
+
+    /**
+     * 新文件的图片入库后入队(事务提交后执行)
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPictureChange(PictureChangeEvent event) {
+        Picture newPicture = event.getNewPicture();
+        if (newPicture == null || StrUtil.isBlank(newPicture.getFileHash()) || StrUtil.isNotBlank(newPicture.getThumbnailUrl())) {
+            return;
+        }
+        Picture oldPicture = event.getOldPicture();
+        if (oldPicture != null && newPicture.getFileHash().equals(oldPicture.getFileHash())) {
+            // 文件没有变化(编辑、审核等)
+            return;
+        }
+        enqueue(newPicture.getFileHash());
+    }
+
+    /**
+     * 应用启动后创建消费组, 启动工作线程与重试任务
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        try {
+            stringRedisTemplate.execute((RedisCallback<String>) connection -> connection.streamCommands()
+                    .xGroupCreate(STREAM_KEY.getBytes(StandardCharsets.UTF_8), GROUP_NAME, ReadOffset.from("0"), true));
+        } catch (Exception e) {
+            // 消费组已存在(BUSYGROUP)
+            log.debug("图片处理消费组已存在: {}", e.getMessage());
+        }
+        running = true;
+        workerExecutor = Executors.newFixedThreadPool(workerThreads,
+                ThreadFactoryBuilder.create().setNamePrefix("pictureProcessWorker").build());
+        for (int i = 0; i < workerThreads; i++) {
+            workerExecutor.execute(this::consumeLoop);
+        }
+        retryScheduler = Executors.newSingleThreadScheduledExecutor(
+                ThreadFactoryBuilder.create().setNamePrefix("pictureProcessRetry").setDaemon(true).build());
+        retryScheduler.scheduleWithFixedDelay(this::retryPending, retryIdleSeconds, retryIdleSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (workerExecutor != null) {
+            workerExecutor.shutdownNow();
+        }
+        if (retryScheduler != null) {
+            retryScheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * 消费新消息
+     */
+    private void consumeLoop() {
+        Consumer consumer = Consumer.from(GROUP_NAME, consumerName);
+        StreamReadOptions readOptions = StreamReadOptions.empty().count(batchSize).block(Duration.ofMillis(blockMillis));
+        while (running && !Thread.currentThread().isInterrupted()) {
+            try {
+                List<MapRecord<String, Object, Object>> recordList = stringRedisTemplate.opsForStream()
+                        .read(consumer, readOptions, StreamOffset.create(STREAM_KEY, ReadOffset.lastConsumed()));
+                if (recordList == null) {
+                    continue;
+                }
+                for (MapRecord<String, Object, Object> record : recordList) {
+                    handle(record.getId(), (String) record.getValue().get(FILE_HASH_FIELD));
+                }
+            } catch (Exception e) {
+                if (!running) {
+                    return;
+                }
+                log.error("读取图片处理队列失败", e);
+                sleepQuietly();
+            }
+        }
+    }
+
+    /**
+     * 处理消息, 成功后确认; 失败不确认, 等待重试
+     */
+    private void handle(RecordId recordId, String fileHash) {
+        try {
+            if (StrUtil.isNotBlank(fileHash)) {
+                pictureProcessor.process(fileHash);
+            }
+            stringRedisTemplate.opsForStream().acknowledge(STREAM_KEY, GROUP_NAME, recordId);
+        } catch (Exception e) {
+            log.error("图片处理失败, 稍后重试, fileHash = {}", fileHash, e);
+        }
+    }
+
+    /**
+     * 认领空闲超时的待确认消息(包括其他已宕机实例的消息)并重新处理
+     */
+    private void retryPending() {
+        try {
+            PendingMessages pendingMessages = stringRedisTemplate.opsForStream()
+                    .pending(STREAM_KEY, GROUP_NAME, Range.unbounded(), batchSize * 10L);
+            Duration minIdle = Duration.ofSeconds(retryIdleSeconds);
+            for (PendingMessage pendingMessage : pendingMessages) {
+                if (pendingMessage.getElapsedTimeSinceLastDelivery().compareTo(minIdle) < 0) {
+                    continue;
+                }
+                List<ByteRecord> claimedList = stringRedisTemplate.execute((RedisCallback<List<ByteRecord>>) connection ->
+                        claim(connection, pendingMessage.getId(), minIdle));
+                if (claimedList == null || claimedList.isEmpty()) {
+                    // 已被其他实例认领, 或消息已被裁剪
+                    continue;
+                }
+                String fileHash = getFileHash(claimedList.get(0));
+                if (pendingMessage.getTotalDeliveryCount() >= maxAttempts) {
+                    log.error("图片处理多次失败, 转入死信, fileHash = {}", fileHash);
+                    stringRedisTemplate.opsForStream().add(StreamRecords.newRecord()
+                            .in(DEAD_LETTER_KEY)
+                            .ofMap(Collections.singletonMap(FILE_HASH_FIELD, StrUtil.nullToEmpty(fileHash))));
+                    stringRedisTemplate.opsForStream().acknowledge(STREAM_KEY, GROUP_NAME, pendingMessage.getId());
+                    continue;
+                }
+                handle(pendingMessage.getId(), fileHash);
+            }
+        } catch (Exception e) {
+            log.error("图片处理重试失败", e);
+        }
+    }
+
+    private List<ByteRecord> claim(RedisConnection connection, RecordId recordId, Duration minIdle) {
+        return connection.streamCommands().xClaim(STREAM_KEY.getBytes(StandardCharsets.UTF_8), GROUP_NAME, consumerName, minIdle, recordId);
+    }
+
+    private static String getFileHash(ByteRecord byteRecord) {
+        for (Map.Entry<byte[], byte[]> entry : byteRecord.getValue().entrySet()) {
+            if (FILE_HASH_FIELD.equals(new String(entry.getKey(), StandardCharsets.UTF_8))) {
+                return new String(entry.getValue(), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    private static void sleepQuietly() {
+        try {
+            Thread.sleep(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.zbc.manage.process;
+
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
+import com.qcloud.cos.model.COSObject;
+import com.zbc.config.CosClientConfig;
+import com.zbc.domain.pojo.Picture;
+import com.zbc.domain.pojo.PictureFile;
+import com.zbc.event.PictureChangeEvent;
+import com.zbc.manage.CosManage;
+import com.zbc.manage.image.ImageDerivatives;
+import com.zbc.manage.image.ImageProcessor;
+import com.zbc.mapper.PictureMapper;
+import com.zbc.service.PictureFileService;
+import com.zbc.service.PicturePendingDeleteService;
+import com.zbc.utils.ColorTransformUtils;
+import com.zbc.utils.ImageHashUtils;
+import com.zbc.utils.ObjectKeyUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.Resource;
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 上传后的图片处理: 生成压缩图与缩略图, 计算主色调与感知哈希, 再同步到引用该文件的图片
+ * <p>
+ * 处理结果先写入文件记录(picture_file), 缩略图地址非空即表示处理完成; 每一步都可以重复执行, 失败后整体重试即可。
+ * 被压缩图替代的原图在所有引用它的图片同步完成后才登记删除, 同步失败时图片仍指向原图, 重试时再登记。
+ */
+@Slf4j
+@Component
+public class PictureProcessor {
+
+    @Resource
+    private CosClientConfig cosClientConfig;
+    @Resource
+    private CosManage cosManage;
+    @Resource
+    private ImageProcessor imageProcessor;
+    @Resource
+    private PictureFileService pictureFileService;
+    @Resource
+    private PictureMapper pictureMapper;
+    @Resource
+    private TransactionTemplate transactionTemplate;
+    @Resource
+    private ApplicationEventPublisher applicationEventPublisher;
+    @Resource
+    private PicturePendingDeleteService picturePendingDeleteService;
+
+    /**
+     * 被压缩图替代的原图延迟删除的时间(秒)
+     */
+    @Value("${picture.cleanup.replaced-original-delay-seconds:3600}")
+    private long replacedOriginalDelaySeconds;
+
+    /**
+     * 处理文件
+     *
+     * @param fileHash 文件内容哈希
+     */
+    public void process(String fileHash) {
+        PictureFile pictureFile = pictureFileService.getByFileHash(fileHash);
+        if (pictureFile == null) {
+            // 文件已被删除
+            return;
+        }
+        // 1. 生成衍生图(已完成则跳过)
+        Set<String> replacedKeySet = new HashSet<>();
+        if (StrUtil.isBlank(pictureFile.getThumbnailUrl())) {
+            replacedKeySet.add(processFile(pictureFile));
+        }
+        // 2. 同步到引用该文件且尚未更新的图片, 失败时抛出异常, 不删除原图
+        replacedKeySet.addAll(syncPictures(pictureFile));
+        // 3. 登记删除已被压缩图替代的原图(延迟删除, 给正在读取原图的请求留出时间)
+        String currentKey = normalizeKey(ObjectKeyUtils.toObjectKey(pictureFile.getUrl()));
+        List<String> deleteKeyList = replacedKeySet.stream()
+                .map(PictureProcessor::normalizeKey)
+                .filter(key -> !key.equals(currentKey))
+                .collect(Collectors.toList());
+        picturePendingDeleteService.enqueue(deleteKeyList, replacedOriginalDelaySeconds);
+    }
+
+    /**
+     * 生成衍生图并更新文件记录
+     *
+     * @return 原图的对象键
+     */
+    private String processFile(PictureFile pictureFile) {
+        String originalKey = ObjectKeyUtils.toObjectKey(pictureFile.getUrl());
+        ImageDerivatives imageDerivatives = imageProcessor.process(originalKey, pictureFile.getPicSize());
+        if (StrUtil.isNotBlank(imageDerivatives.getPicColor())) {
+            pictureFile.setPicColor(imageDerivatives.getPicColor());
+        }
+        if (pictureFile.getPicPhash() == null) {
+            if (imageDerivatives.getPicPhash() != null) {
+                pictureFile.setPicPhash(imageDerivatives.getPicPhash());
+            } else {
+                // 优先解码缩略图(尺寸小), webp 无法解码时使用原图
+                String hashKey = "webp".equalsIgnoreCase(imageDerivatives.getThumbnailFormat()) ? originalKey : imageDerivatives.getThumbnailKey();
+                pictureFile.setPicPhash(computePhash(hashKey));
+            }
+        }
+        pictureFile.setUrl(cosClientConfig.getHost() + "/" + imageDerivatives.getCompressKey());
+        pictureFile.setThumbnailUrl(cosClientConfig.getHost() + "/" + imageDerivatives.getThumbnailKey());
+        pictureFile.setPicFormat(imageDerivatives.getCompressFormat());
+        pictureFileService.updateById(pictureFile);
+        return originalKey;
+    }
+
+    /**
+     * 同步到引用该文件且尚未更新的图片
+     *
+     * @return 同步前图片引用的原图对象键
+     */
+    private Set<String> syncPictures(PictureFile pictureFile) {
+        QueryWrapper<Picture> queryWrapper = new QueryWrapper<>();
+        queryWrapper.eq("fileHash", pictureFile.getFileHash())
+                .and(qw -> qw.isNull("thumbnailUrl").or().ne("thumbnailUrl", pictureFile.getThumbnailUrl()));
+        String picColor = ColorTransformUtils.getStandardColor(pictureFile.getPicColor());
+        Integer picColorValue = ColorTransformUtils.toColorValue(picColor);
+        Set<String> replacedKeySet = new HashSet<>();
+        for (Picture oldPicture : pictureMapper.selectList(queryWrapper)) {
+            Picture newPicture = BeanUtil.copyProperties(oldPicture, Picture.class);
+            newPicture.setUrl(pictureFile.getUrl());
+            newPicture.setThumbnailUrl(pictureFile.getThumbnailUrl());
+            newPicture.setPicFormat(pictureFile.getPicFormat());
+            newPicture.setPicColor(picColor);
+            newPicture.setPicColorValue(picColorValue);
+            newPicture.setPicPhash(pictureFile.getPicPhash());
+            transactionTemplate.execute(status -> {
+                UpdateWrapper<Picture> updateWrapper = new UpdateWrapper<>();
+                updateWrapper.eq("id", oldPicture.getId())
+                        .eq(oldPicture.getSpaceId() != null, "spaceId", oldPicture.getSpaceId())
+                        .set("url", newPicture.getUrl())
+                        .set("thumbnailUrl", newPicture.getThumbnailUrl())
+                        .set("picFormat", newPicture.getPicFormat())
+                        .set("picColor", newPicture.getPicColor())
+                        .set("picColorValue", newPicture.getPicColorValue())
+                        .set("picPhash", newPicture.getPicPhash());
+                pictureMapper.update(null, updateWrapper);
+                applicationEventPublisher.publishEvent(PictureChangeEvent.update(oldPicture, newPicture));
+                return null;
+            });
+            if (StrUtil.isNotBlank(oldPicture.getUrl())) {
+                replacedKeySet.add(ObjectKeyUtils.toObjectKey(oldPicture.getUrl()));
+            }
+        }
+        return replacedKeySet;
+    }
+
+    /**
+     * 计算感知哈希, 无法解码的格式返回 null
+     */
+    private Long computePhash(String key) {
+        try (COSObject cosObject = cosManage.getObject(key);
+             InputStream inputStream = cosObject.getObjectContent()) {
+            BufferedImage image = ImageIO.read(inputStream);
+            return image == null ? null : ImageHashUtils.pHash(image);
+        } catch (Exception e) {
+            log.warn("计算图片感知哈希失败: {}", key, e);
+            return null;
+        }
+    }
+
+    /**
+     * 对象键统一为不以 / 开头的格式
+     */
+    private static String normalizeKey(String key) {
+        return key.replaceFirst("^/+", "");
+    }
+}
@@ -0,0 +1,540 @@
+package com.zbc.manage.quota;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.convert.Convert;
+import cn.hutool.core.util.IdUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.zbc.domain.pojo.Picture;
+import com.zbc.domain.pojo.Space;
+import com.zbc.exception.BusinessException;
+import com.zbc.exception.ErrorCode;
+import com.zbc.mapper.PictureMapper;
+import com.zbc.mapper.SpaceMapper;
+import com.zbc.utils.ThrowUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * 空间额度
+ * <p>
+ * 每个空间的额度保存在 redis 的一个 hash 中: 上限(maxSize、maxCount)、已使用(usedSize、usedCount)、预留中(reservedSize、reservedCount)
+ * 以及每个预留的明细, 所有读写都通过 lua 脚本原子执行。上传前先预留额度(已使用 + 预留中 + 本次不能超过上限),
+ * 入库成功后提交(预留转为已使用), 失败则释放, 并发上传不会超出额度, 也不再每次更新 space 表的同一行。
+ * 额度变更的空间记入待同步集合, 由 {@link SpaceQuotaReconciler} 定期批量写回 space 表。
+ * redis 中没有空间额度时(首次使用、过期)从图片表统计已使用的额度重新加载。
+ * 额度变更的空间同时记入待核对集合, 一段时间没有变更且没有进行中的预留后, 由同步任务从图片表重新统计, 修正漏记、重复记的额度。
+ * 重新上传按新旧文件的大小差预留, 提交后直接替换旧文件占用的额度。
+ */
+@Slf4j
+@Component
+public class SpaceQuotaManager {
+
+    private static final String QUOTA_KEY_PREFIX = "picture:space:quota:";
+
+    /**
+     * 待同步到数据库的空间 id 集合
+     */
+    static final String DIRTY_KEY = "picture:space:quota:dirty";
+
+    /**
+     * 预留的过期时间, member: 空间id:预留标识, score: 过期时间戳
+     */
+    static final String RESERVATION_KEY = "picture:space:quota:reservations";
+
+    /**
+     * 待核对的空间, member: 空间 id, score: 最后一次变更的时间戳
+     */
+    static final String RECOUNT_KEY = "picture:space:quota:recount";
+
+    /**
+     * 加载额度(已存在时不覆盖)
+     * KEYS[1]: 额度, KEYS[2]: 待同步集合; ARGV: maxSize, maxCount, usedSize, usedCount, 有效期(毫秒), 空间 id
+     */
+    private static final DefaultRedisScript<Long> LOAD_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[1]) == 1 then return 0 end\n" +
+                    "redis.call('hmset', KEYS[1], 'maxSize', ARGV[1], 'maxCount', ARGV[2], 'usedSize', ARGV[3], 'usedCount', ARGV[4], " +
+                    "'reservedSize', 0, 'reservedCount', 0)\n" +
+                    "redis.call('pexpire', KEYS[1], ARGV[5])\n" +
+                    "redis.call('sadd', KEYS[2], ARGV[6])\n" +
+                    "return 1", Long.class);
+
+    /**
+     * 预留额度, 返回 1: 成功, -1: 额度未加载, -2: 数量不足, -3: 大小不足
+     * KEYS[1]: 额度, KEYS[2]: 预留过期时间; ARGV: 预留标识, 大小, 数量, 过期时间戳, 有效期(毫秒), 预留过期时间的 member
+     */
+    private static final DefaultRedisScript<Long> RESERVE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[1]) == 0 then return -1 end\n" +
+                    "local q = redis.call('hmget', KEYS[1], 'maxSize', 'maxCount', 'usedSize', 'usedCount', 'reservedSize', 'reservedCount')\n" +
+                    "local size = tonumber(ARGV[2])\n" +
+                    "local count = tonumber(ARGV[3])\n" +
+                    "if count > 0 and tonumber(q[4]) + tonumber(q[6]) + count > tonumber(q[2]) then return -2 end\n" +
+                    "if size > 0 and tonumber(q[3]) + tonumber(q[5]) + size > tonumber(q[1]) then return -3 end\n" +
+                    "redis.call('hincrby', KEYS[1], 'reservedSize', ARGV[2])\n" +
+                    "redis.call('hincrby', KEYS[1], 'reservedCount', ARGV[3])\n" +
+                    "redis.call('hincrby', KEYS[1], 'openCount', 1)\n" +
+                    "redis.call('hset', KEYS[1], 'r:' .. ARGV[1], ARGV[2] .. ',' .. ARGV[3])\n" +
+                    "redis.call('pexpire', KEYS[1], ARGV[5])\n" +
+                    "redis.call('zadd', KEYS[2], ARGV[4], ARGV[6])\n" +
+                    "return 1", Long.class);
+
+    /**
+     * 修改预留的大小, 返回 1: 成功, -1: 预留不存在, -3: 大小不足
+     * KEYS[1]: 额度; ARGV: 预留标识, 新的大小
+     */
+    private static final DefaultRedisScript<Long> RESIZE_SCRIPT = new DefaultRedisScript<>(
+            "local r = redis.call('hget', KEYS[1], 'r:' .. ARGV[1])\n" +
+                    "if not r then return -1 end\n" +
+                    "local oldSize, count = string.match(r, '^(-?%d+),(-?%d+)$')\n" +
+                    "local delta = tonumber(ARGV[2]) - tonumber(oldSize)\n" +
+                    "if delta > 0 then\n" +
+                    "  local q = redis.call('hmget', KEYS[1], 'maxSize', 'usedSize', 'reservedSize')\n" +
+                    "  if tonumber(q[2]) + tonumber(q[3]) + delta > tonumber(q[1]) then return -3 end\n" +
+                    "end\n" +
+                    "redis.call('hincrby', KEYS[1], 'reservedSize', delta)\n" +
+                    "redis.call('hset', KEYS[1], 'r:' .. ARGV[1], ARGV[2] .. ',' .. count)\n" +
+                    "return 1", Long.class);
+
+    /**
+     * 提交预留(转为已使用), 返回 1: 成功, 2: 预留不存在(已超时释放), 直接按本次的大小与数量计入已使用, 0: 额度未加载
+     * KEYS[1]: 额度, KEYS[2]: 预留过期时间, KEYS[3]: 待同步集合, KEYS[4]: 待核对集合;
+     * ARGV: 预留标识, 预留过期时间的 member, 空间 id, 有效期(毫秒), 大小, 数量, 当前时间戳
+     */
+    private static final DefaultRedisScript<Long> COMMIT_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('zrem', KEYS[2], ARGV[2])\n" +
+                    "if redis.call('exists', KEYS[1]) == 0 then return 0 end\n" +
+                    "local size, count = ARGV[5], ARGV[6]\n" +
+                    "local result = 2\n" +
+                    "local r = redis.call('hget', KEYS[1], 'r:' .. ARGV[1])\n" +
+                    "if r then\n" +
+                    "  size, count = string.match(r, '^(-?%d+),(-?%d+)$')\n" +
+                    "  redis.call('hdel', KEYS[1], 'r:' .. ARGV[1])\n" +
+                    "  redis.call('hincrby', KEYS[1], 'reservedSize', -tonumber(size))\n" +
+                    "  redis.call('hincrby', KEYS[1], 'reservedCount', -tonumber(count))\n" +
+                    "  if tonumber(redis.call('hget', KEYS[1], 'openCount') or '0') > 0 then redis.call('hincrby', KEYS[1], 'openCount', -1) end\n" +
+                    "  result = 1\n" +
+                    "end\n" +
+                    "redis.call('hincrby', KEYS[1], 'usedSize', size)\n" +
+                    "redis.call('hincrby', KEYS[1], 'usedCount', count)\n" +
+                    "redis.call('hincrby', KEYS[1], 'version', 1)\n" +
+                    "redis.call('pexpire', KEYS[1], ARGV[4])\n" +
+                    "redis.call('sadd', KEYS[3], ARGV[3])\n" +
+                    "redis.call('zadd', KEYS[4], ARGV[7], ARGV[3])\n" +
+                    "return result", Long.class);
+
+    /**
+     * 释放预留, 返回 1: 成功, 0: 预留不存在
+     * KEYS[1]: 额度, KEYS[2]: 预留过期时间; ARGV: 预留标识, 预留过期时间的 member
+     */
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('zrem', KEYS[2], ARGV[2])\n" +
+                    "local r = redis.call('hget', KEYS[1], 'r:' .. ARGV[1])\n" +
+                    "if not r then return 0 end\n" +
+                    "local size, count = string.match(r, '^(-?%d+),(-?%d+)$')\n" +
+                    "redis.call('hdel', KEYS[1], 'r:' .. ARGV[1])\n" +
+                    "redis.call('hincrby', KEYS[1], 'reservedSize', -tonumber(size))\n" +
+                    "redis.call('hincrby', KEYS[1], 'reservedCount', -tonumber(count))\n" +
+                    "if tonumber(redis.call('hget', KEYS[1], 'openCount') or '0') > 0 then redis.call('hincrby', KEYS[1], 'openCount', -1) end\n" +
+                    "return 1", Long.class);
+
+    /**
+     * 直接修改已使用的额度(删除图片等), 额度未加载时忽略(加载时会重新统计)
+     * KEYS[1]: 额度, KEYS[2]: 待同步集合, KEYS[3]: 待核对集合; ARGV: 大小增量, 数量增量, 空间 id, 当前时间戳
+     */
+    private static final DefaultRedisScript<Long> INCREASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[1]) == 0 then return 0 end\n" +
+                    "redis.call('hincrby', KEYS[1], 'usedSize', ARGV[1])\n" +
+                    "redis.call('hincrby', KEYS[1], 'usedCount', ARGV[2])\n" +
+                    "redis.call('hincrby', KEYS[1], 'version', 1)\n" +
+                    "redis.call('sadd', KEYS[2], ARGV[3])\n" +
+                    "redis.call('zadd', KEYS[3], ARGV[4], ARGV[3])\n" +
+                    "return 1", Long.class);
+
+    /**
+     * 按图片表的统计结果修正已使用的额度, 返回 1: 已修正, 0: 无需修正或额度未加载, -1: 统计期间额度有变化或有进行中的预留
+     * KEYS[1]: 额度, KEYS[2]: 待同步集合; ARGV: 统计前的版本号, usedSize, usedCount, 空间 id
+     */
+    private static final DefaultRedisScript<Long> RECOUNT_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[1]) == 0 then return 0 end\n" +
+                    "local q = redis.call('hmget', KEYS[1], 'version', 'openCount', 'usedSize', 'usedCount')\n" +
+                    "if (q[1] or '0') ~= ARGV[1] or tonumber(q[2] or '0') > 0 then return -1 end\n" +
+                    "if q[3] == ARGV[2] and q[4] == ARGV[3] then return 0 end\n" +
+                    "redis.call('hmset', KEYS[1], 'usedSize', ARGV[2], 'usedCount', ARGV[3])\n" +
+                    "redis.call('sadd', KEYS[2], ARGV[4])\n" +
+                    "return 1", Long.class);
+
+    /**
+     * 修改额度上限, 额度未加载时忽略
+     * KEYS[1]: 额度; ARGV: maxSize, maxCount
+     */
+    private static final DefaultRedisScript<Long> LIMIT_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[1]) == 0 then return 0 end\n" +
+                    "redis.call('hmset', KEYS[1], 'maxSize', ARGV[1], 'maxCount', ARGV[2])\n" +
+                    "return 1", Long.class);
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private SpaceMapper spaceMapper;
+    @Resource
+    private PictureMapper pictureMapper;
+
+    /**
+     * 预留的有效期(秒), 超时未提交的预留由同步任务释放
+     */
+    @Value("${picture.quota.reservation-timeout-seconds:600}")
+    private long reservationTimeoutSeconds;
+
+    /**
+     * redis 中额度的有效期(小时), 每次使用时续期
+     */
+    @Value("${picture.quota.ttl-hours:168}")
+    private long ttlHours;
+
+    /**
+     * 空间额度多久没有变更后才从图片表重新统计(秒), 避免与正在进行的上传、删除交错
+     */
+    @Value("${picture.quota.recount-quiet-seconds:60}")
+    private long recountQuietSeconds;
+
+    /**
+     * 预留额度
+     *
+     * @param spaceId 空间 id
+     * @param count   数量
+     * @param size    大小(字节), 未知时传 0, 之后通过 {@link #resize} 修改; 重新上传时为新旧文件的大小差, 可以为负数
+     * @return 预留
+     */
+    public SpaceQuotaReservation reserve(Long spaceId, long count, long size) {
+        SpaceQuotaReservation reservation = new SpaceQuotaReservation();
+        reservation.setSpaceId(spaceId);
+        reservation.setToken(IdUtil.fastSimpleUUID());
+        reservation.setCount(count);
+        reservation.setSize(size);
+        String expireAt = String.valueOf(System.currentTimeMillis() + reservationTimeoutSeconds * 1000);
+        List<String> keys = Arrays.asList(getQuotaKey(spaceId), RESERVATION_KEY);
+        Object[] args = {reservation.getToken(), String.valueOf(size), String.valueOf(count), expireAt, getTtlMillis(),
+                getReservationMember(reservation)};
+        Long result = stringRedisTemplate.execute(RESERVE_SCRIPT, keys, args);
+        if (result != null && result == -1) {
+            load(spaceId);
+            result = stringRedisTemplate.execute(RESERVE_SCRIPT, keys, args);
+        }
+        checkResult(result);
+        return reservation;
+    }
+
+    /**
+     * 修改预留的大小(上传完成后得到实际大小)
+     *
+     * @param reservation 预留
+     * @param size        新的大小(字节), 重新上传时为新旧文件的大小差
+     */
+    public void resize(SpaceQuotaReservation reservation, long size) {
+        if (reservation.getSize() == size) {
+            return;
+        }
+        Long result = stringRedisTemplate.execute(RESIZE_SCRIPT, Collections.singletonList(getQuotaKey(reservation.getSpaceId())),
+                reservation.getToken(), String.valueOf(size));
+        ThrowUtils.throwIf(result != null && result == -1, ErrorCode.OPERATION_ERROR, "额度预留已失效, 请重试");
+        checkResult(result);
+        reservation.setSize(size);
+    }
+
+    /**
+     * 提交预留, 在入库事务提交后调用
+     *
+     * @param reservation 预留
+     */
+    public void commit(SpaceQuotaReservation reservation) {
+        Long result = stringRedisTemplate.execute(COMMIT_SCRIPT,
+                Arrays.asList(getQuotaKey(reservation.getSpaceId()), RESERVATION_KEY, DIRTY_KEY, RECOUNT_KEY),
+                reservation.getToken(), getReservationMember(reservation), String.valueOf(reservation.getSpaceId()), getTtlMillis(),
+                String.valueOf(reservation.getSize()), String.valueOf(reservation.getCount()), String.valueOf(System.currentTimeMillis()));
+        if (result != null && result == 2) {
+            // 预留已超时释放, 图片已经入库, 直接计入已使用
+            log.warn("额度预留不存在, 已直接计入: spaceId = {}, token = {}", reservation.getSpaceId(), reservation.getToken());
+        } else if (result == null || result == 0) {
+            // 额度已过期, 下次加载时从图片表重新统计
+            log.warn("空间额度未加载, 提交忽略: spaceId = {}, token = {}", reservation.getSpaceId(), reservation.getToken());
+        }
+    }
+
+    /**
+     * 释放预留, 上传或入库失败时调用
+     *
+     * @param reservation 预留, 为空时忽略
+     */
+    public void release(SpaceQuotaReservation reservation) {
+        if (reservation == null) {
+            return;
+        }
+        try {
+            stringRedisTemplate.execute(RELEASE_SCRIPT, Arrays.asList(getQuotaKey(reservation.getSpaceId()), RESERVATION_KEY),
+                    reservation.getToken(), getReservationMember(reservation));
+        } catch (Exception e) {
+            // 未释放的预留超时后由同步任务释放
+            log.error("释放额度预留失败: spaceId = {}, token = {}", reservation.getSpaceId(), reservation.getToken(), e);
+        }
+    }
+
+    /**
+     * 修改已使用的额度, 在事务提交后调用
+     *
+     * @param spaceId 空间 id
+     * @param size    大小增量(字节)
+     * @param count   数量增量
+     */
+    public void increase(Long spaceId, long size, long count) {
+        stringRedisTemplate.execute(INCREASE_SCRIPT, Arrays.asList(getQuotaKey(spaceId), DIRTY_KEY, RECOUNT_KEY),
+                String.valueOf(size), String.valueOf(count), String.valueOf(spaceId), String.valueOf(System.currentTimeMillis()));
+    }
+
+    /**
+     * 校验剩余额度(不预留), 用于提前拒绝明显超出额度的请求
+     *
+     * @param spaceId 空间 id
+     * @param count   数量
+     * @param size    大小(字节)
+     */
+    public void checkAvailable(Long spaceId, long count, long size) {
+        String quotaKey = getQuotaKey(spaceId);
+        if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(quotaKey))) {
+            load(spaceId);
+        }
+        List<Object> values = stringRedisTemplate.opsForHash().multiGet(quotaKey,
+                Arrays.asList("maxSize", "maxCount", "usedSize", "usedCount", "reservedSize", "reservedCount"));
+        if (values.contains(null)) {
+            // 刚好过期, 交给预留时校验
+            return;
+        }
+        long[] quota = values.stream().mapToLong(value -> Long.parseLong((String) value)).toArray();
+        ThrowUtils.throwIf(quota[3] + quota[5] + count > quota[1], ErrorCode.PARAMS_ERROR, "空间图片数量已满");
+        ThrowUtils.throwIf(quota[2] + quota[4] + size > quota[0], ErrorCode.PARAMS_ERROR, "空间大小不足");
+    }
+
+    /**
+     * 用 redis 中实时的已使用额度覆盖空间记录中的值(数据库中的值最多落后一个同步周期), 用于展示与分析
+     *
+     * @param space 空间
+     */
+    public void fillUsage(Space space) {
+        if (space != null) {
+            fillUsage(Collections.singletonList(space));
+        }
+    }
+
+    /**
+     * 批量覆盖已使用额度, 一次往返读取
+     *
+     * @param spaceList 空间列表
+     */
+    public void fillUsage(List<Space> spaceList) {
+        if (CollUtil.isEmpty(spaceList)) {
+            return;
+        }
+        List<Object> resultList;
+        try {
+            resultList = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringRedisConnection = (StringRedisConnection) connection;
+                for (Space space : spaceList) {
+                    stringRedisConnection.hMGet(getQuotaKey(space.getId()), "usedSize", "usedCount");
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            // 读取失败时使用数据库中的值
+            log.warn("读取空间额度失败", e);
+            return;
+        }
+        for (int i = 0; i < spaceList.size(); i++) {
+            List<?> values = (List<?>) resultList.get(i);
+            if (values == null || values.contains(null)) {
+                continue;
+            }
+            spaceList.get(i).setTotalSize(Long.parseLong((String) values.get(0)));
+            spaceList.get(i).setTotalCount(Long.parseLong((String) values.get(1)));
+        }
+    }
+
+    /**
+     * 空间级别变更后更新额度上限
+     *
+     * @param space 空间
+     */
+    public void refreshLimit(Space space) {
+        if (space == null || space.getMaxSize() == null || space.getMaxCount() == null) {
+            return;
+        }
+        stringRedisTemplate.execute(LIMIT_SCRIPT, Collections.singletonList(getQuotaKey(space.getId())),
+                String.valueOf(space.getMaxSize()), String.valueOf(space.getMaxCount()));
+    }
+
+    /**
+     * 删除空间后清理额度
+     *
+     * @param spaceId 空间 id
+     */
+    public void evict(Long spaceId) {
+        stringRedisTemplate.delete(getQuotaKey(spaceId));
+        stringRedisTemplate.opsForSet().remove(DIRTY_KEY, String.valueOf(spaceId));
+        stringRedisTemplate.opsForZSet().remove(RECOUNT_KEY, String.valueOf(spaceId));
+    }
+
+    /**
+     * 取出一批待同步的空间 id
+     */
+    List<Long> popDirtySpaceIds(int limit) {
+        List<String> members = stringRedisTemplate.opsForSet().pop(DIRTY_KEY, limit);
+        if (CollUtil.isEmpty(members)) {
+            return Collections.emptyList();
+        }
+        return members.stream().map(Long::valueOf).collect(Collectors.toList());
+    }
+
+    /**
+     * 待同步的空间数量
+     */
+    long countDirty() {
+        Long size = stringRedisTemplate.opsForSet().size(DIRTY_KEY);
+        return size == null ? 0 : size;
+    }
+
+    /**
+     * 同步失败时重新标记为待同步
+     */
+    void markDirty(Collection<Long> spaceIds) {
+        if (CollUtil.isEmpty(spaceIds)) {
+            return;
+        }
+        stringRedisTemplate.opsForSet().add(DIRTY_KEY, spaceIds.stream().map(String::valueOf).toArray(String[]::new));
+    }
+
+    /**
+     * 获取已使用的额度
+     *
+     * @return [大小, 数量], 额度未加载时返回 null
+     */
+    long[] getUsage(Long spaceId) {
+        List<Object> values = stringRedisTemplate.opsForHash().multiGet(getQuotaKey(spaceId), Arrays.asList("usedSize", "usedCount"));
+        if (values.contains(null)) {
+            return null;
+        }
+        return new long[]{Long.parseLong((String) values.get(0)), Long.parseLong((String) values.get(1))};
+    }
+
+    /**
+     * 获取一批已超时的预留
+     *
+     * @return 预留过期时间的 member(空间id:预留标识)
+     */
+    Set<String> listExpiredReservations(int limit) {
+        Set<String> members = stringRedisTemplate.opsForZSet().rangeByScore(RESERVATION_KEY, 0, System.currentTimeMillis(), 0, limit);
+        return members == null ? Collections.emptySet() : members;
+    }
+
+    /**
+     * 释放已超时的预留
+     *
+     * @param member 预留过期时间的 member(空间id:预留标识)
+     * @return 是否释放了预留
+     */
+    boolean releaseExpired(String member) {
+        int index = member.indexOf(':');
+        Long spaceId = Long.valueOf(member.substring(0, index));
+        String token = member.substring(index + 1);
+        Long result = stringRedisTemplate.execute(RELEASE_SCRIPT, Arrays.asList(getQuotaKey(spaceId), RESERVATION_KEY), token, member);
+        return result != null && result == 1;
+    }
+
+    /**
+     * 获取一批可以核对的空间(最后一次变更已超过静默时间)
+     */
+    List<Long> listRecountCandidates(int limit) {
+        long maxScore = System.currentTimeMillis() - recountQuietSeconds * 1000;
+        Set<String> members = stringRedisTemplate.opsForZSet().rangeByScore(RECOUNT_KEY, 0, maxScore, 0, limit);
+        if (CollUtil.isEmpty(members)) {
+            return Collections.emptyList();
+        }
+        return members.stream().map(Long::valueOf).collect(Collectors.toList());
+    }
+
+    /**
+     * 从图片表重新统计已使用的额度并修正 redis 中的值
+     * 统计前记录版本号, 统计期间额度有变化或有进行中的预留时放弃, 稍后重试
+     *
+     * @return 是否修正了额度
+     */
+    boolean recount(Long spaceId) {
+        String member = String.valueOf(spaceId);
+        // 多个实例同时执行时只有一个实例移除成功
+        Long removed = stringRedisTemplate.opsForZSet().remove(RECOUNT_KEY, member);
+        if (removed == null || removed == 0) {
+            return false;
+        }
+        String quotaKey = getQuotaKey(spaceId);
+        Object version = stringRedisTemplate.opsForHash().get(quotaKey, "version");
+        long[] usage = countUsage(spaceId);
+        Long result = stringRedisTemplate.execute(RECOUNT_SCRIPT, Arrays.asList(quotaKey, DIRTY_KEY),
+                version == null ? "0" : (String) version, String.valueOf(usage[0]), String.valueOf(usage[1]), member);
+        if (result != null && result == -1) {
+            stringRedisTemplate.opsForZSet().add(RECOUNT_KEY, member, System.currentTimeMillis());
+            return false;
+        }
+        return result != null && result == 1;
+    }
+
+    /**
+     * 从数据库加载额度: 上限取自空间, 已使用的额度由图片表统计
+     */
+    private void load(Long spaceId) {
+        Space space = spaceMapper.selectById(spaceId);
+        ThrowUtils.throwIf(space == null, ErrorCode.NOT_FOUND_ERROR, "空间不存在");
+        long[] usage = countUsage(spaceId);
+        stringRedisTemplate.execute(LOAD_SCRIPT, Arrays.asList(getQuotaKey(spaceId), DIRTY_KEY),
+                String.valueOf(space.getMaxSize()), String.valueOf(space.getMaxCount()),
+                String.valueOf(usage[0]), String.valueOf(usage[1]),
+                getTtlMillis(), String.valueOf(spaceId));
+    }
+
+    /**
+     * 从图片表统计已使用的额度
+     *
+     * @return [大小, 数量]
+     */
+    private long[] countUsage(Long spaceId) {
+        List<Map<String, Object>> usageList = pictureMapper.selectMaps(new QueryWrapper<Picture>()
+                .select("count(*) as totalCount", "ifnull(sum(picSize), 0) as totalSize")
+                .eq("spaceId", spaceId));
+        Map<String, Object> usage = CollUtil.isEmpty(usageList) || usageList.get(0) == null ? Collections.emptyMap() : usageList.get(0);
+        return new long[]{Convert.toLong(usage.get("totalSize"), 0L), Convert.toLong(usage.get("totalCount"), 0L)};
+    }
+
+    private static void checkResult(Long result) {
+        if (result == null || result == -1) {
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "空间额度加载失败");
+        }
+        ThrowUtils.throwIf(result == -2, ErrorCode.PARAMS_ERROR, "空间图片数量已满");
+        ThrowUtils.throwIf(result == -3, ErrorCode.PARAMS_ERROR, "空间大小不足");
+    }
+
+    private String getTtlMillis() {
+        return String.valueOf(ttlHours * 3600 * 1000);
+    }
+
+    private static String getQuotaKey(Long spaceId) {
+        return QUOTA_KEY_PREFIX + spaceId;
+    }
+
+    private static String getReservationMember(SpaceQuotaReservation reservation) {
+        return reservation.getSpaceId() + ":" + reservation.getToken();
+    }
+}
@@ -0,0 +1,143 @@
+package com.zbc.manage.quota;
+
+import com.zbc.domain.pojo.Space;
+import com.zbc.service.SpaceService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 空间额度同步
+ * <p>
+ * 定期释放超时未提交的预留, 并将额度有变化的空间按批写回 space 表(写入 redis 中的绝对值, 重复执行结果相同)。
+ * 同一空间的多次变更在 redis 中合并, 写回时只更新一次; 到达同步间隔或待同步的空间数量达到阈值时执行。
+ * 多实例同时执行时各自取出不同的空间, 不需要加锁。
+ * 另外定期从图片表重新统计最近有变更的空间, 修正 redis 中漏记(预留过期后提交等)或重复记的额度。
+ */
+@Slf4j
+@Component
+public class SpaceQuotaReconciler {
+
+    /**
+     * 每批处理的数量
+     */
+    private static final int BATCH_SIZE = 500;
+
+    @Resource
+    private SpaceQuotaManager spaceQuotaManager;
+    @Resource
+    private SpaceService spaceService;
+
+    /**
+     * 每次执行最多同步的批数
+     */
+    @Value("${picture.quota.reconcile-max-batches:20}")
+    private int maxBatches;
+
+    /**
+     * 同步间隔(毫秒)
+     */
+    @Value("${picture.quota.reconcile-interval-millis:5000}")
+    private long reconcileIntervalMillis;
+
+    /**
+     * 待同步的空间数量达到该值时不等同步间隔, 提前写回
+     */
+    @Value("${picture.quota.reconcile-threshold:200}")
+    private long reconcileThreshold;
+
+    private volatile long lastReconcileMillis;
+
+    @Scheduled(initialDelayString = "${picture.quota.reconcile-poll-millis:1000}",
+            fixedDelayString = "${picture.quota.reconcile-poll-millis:1000}")
+    public void reconcile() {
+        try {
+            long now = System.currentTimeMillis();
+            if (now - lastReconcileMillis < reconcileIntervalMillis && spaceQuotaManager.countDirty() < reconcileThreshold) {
+                return;
+            }
+            lastReconcileMillis = now;
+            releaseExpiredReservations();
+            for (int i = 0; i < maxBatches; i++) {
+                if (flushBatch() < BATCH_SIZE) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            log.error("同步空间额度失败", e);
+        }
+    }
+
+    /**
+     * 从图片表重新统计最近有变更且已静默的空间
+     */
+    @Scheduled(initialDelayString = "${picture.quota.recount-interval-millis:60000}",
+            fixedDelayString = "${picture.quota.recount-interval-millis:60000}")
+    public void recount() {
+        try {
+            for (int i = 0; i < maxBatches; i++) {
+                List<Long> spaceIdList = spaceQuotaManager.listRecountCandidates(BATCH_SIZE);
+                for (Long spaceId : spaceIdList) {
+                    if (spaceQuotaManager.recount(spaceId)) {
+                        log.warn("空间额度与图片表不一致, 已按图片表修正: spaceId = {}", spaceId);
+                    }
+                }
+                if (spaceIdList.size() < BATCH_SIZE) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            log.error("核对空间额度失败", e);
+        }
+    }
+
+    /**
+     * 释放超时未提交的预留(上传中途进程退出等)
+     */
+    private void releaseExpiredReservations() {
+        Set<String> members = spaceQuotaManager.listExpiredReservations(BATCH_SIZE);
+        for (String member : members) {
+            if (spaceQuotaManager.releaseExpired(member)) {
+                log.warn("释放超时的额度预留: {}", member);
+            }
+        }
+    }
+
+    /**
+     * 写回一批空间的已使用额度
+     *
+     * @return 本批取出的空间数量
+     */
+    private int flushBatch() {
+        List<Long> spaceIdList = spaceQuotaManager.popDirtySpaceIds(BATCH_SIZE);
+        if (spaceIdList.isEmpty()) {
+            return 0;
+        }
+        List<Space> spaceList = new ArrayList<>();
+        for (Long spaceId : spaceIdList) {
+            long[] usage = spaceQuotaManager.getUsage(spaceId);
+            if (usage == null) {
+                // 额度已过期, 重新加载时会标记为待同步
+                continue;
+            }
+            Space space = new Space();
+            space.setId(spaceId);
+            space.setTotalSize(usage[0]);
+            space.setTotalCount(usage[1]);
+            spaceList.add(space);
+        }
+        try {
+            spaceService.updateBatchById(spaceList, BATCH_SIZE);
+        } catch (Exception e) {
+            spaceQuotaManager.markDirty(spaceIdList);
+            throw e;
+        }
+        return spaceIdList.size();
+    }
+}
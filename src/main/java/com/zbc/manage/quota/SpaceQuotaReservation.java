@@ -0,0 +1,30 @@
+package com.zbc.manage.quota;
+
+import lombok.Data;
+
+/**
+ * 空间额度预留
+ */
+@Data
+public class SpaceQuotaReservation {
+
+    /**
+     * 空间 id
+     */
+    private Long spaceId;
+
+    /**
+     * 预留标识
+     */
+    private String token;
+
+    /**
+     * 预留的大小(字节)
+     */
+    private long size;
+
+    /**
+     * 预留的数量
+     */
+    private long count;
+}
@@ -0,0 +1,368 @@
+package com.zbc.manage.search;
+
+import cn.hutool.core.thread.ThreadUtil;
+import cn.hutool.core.util.ObjUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.zbc.domain.pojo.Picture;
+import com.zbc.event.PictureChangeEvent;
+import com.zbc.event.PictureRemoteChangeEvent;
+import com.zbc.mapper.PictureMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 进程内倒排索引实现(默认)
+ * <p>
+ * 启动后从数据库全量构建索引, 之后通过图片变更事件(包括其他节点转发的事件)增量维护。
+ * 查询时所有词项都必须命中(与 like 的语义一致), 相关度 = Σ 字段权重 × 词频 × idf
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "picture.search.engine", havingValue = "local", matchIfMissing = true)
+public class LocalPictureSearchEngine implements PictureSearchEngine {
+
+    /**
+     * 字段权重
+     */
+    private static final float NAME_WEIGHT = 3.0f;
+    private static final float TAG_WEIGHT = 2.0f;
+    private static final float CATEGORY_WEIGHT = 2.0f;
+    private static final float INTRODUCTION_WEIGHT = 1.0f;
+
+    /**
+     * 全量构建时每批读取的数量
+     */
+    private static final int LOAD_BATCH_SIZE = 1000;
+
+    @Resource
+    private PictureMapper pictureMapper;
+
+    /**
+     * 倒排表, key: 词项, value: (图片 id -> 加权词频)
+     */
+    private final Map<String, Map<Long, Float>> postingMap = new HashMap<>();
+
+    /**
+     * 正排表, key: 图片 id, value: 图片过滤字段与词项
+     */
+    private final Map<Long, IndexedPicture> documentMap = new HashMap<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * 全量构建期间被变更事件更新过的图片 id, 构建时不再用读到的旧数据覆盖(由写锁保护)
+     */
+    private final Set<Long> changedDuringRebuild = new HashSet<>();
+
+    private boolean rebuilding = false;
+
+    private volatile boolean ready = false;
+
+    /**
+     * 应用启动后异步构建全量索引
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        ThreadUtil.execAsync(() -> {
+            long start = System.currentTimeMillis();
+            lock.writeLock().lock();
+            try {
+                rebuilding = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            try {
+                long lastId = 0;
+                int total = 0;
+                while (true) {
+                    QueryWrapper<Picture> queryWrapper = new QueryWrapper<>();
+                    queryWrapper.select("id", "name", "introduction", "category", "tags", "spaceId", "reviewStatus", "userId")
+                            .gt("id", lastId)
+                            .orderByAsc("id")
+                            .last("limit " + LOAD_BATCH_SIZE);
+                    List<Picture> pictureList = pictureMapper.selectList(queryWrapper);
+                    if (pictureList.isEmpty()) {
+                        break;
+                    }
+                    indexBatch(pictureList);
+                    total += pictureList.size();
+                    lastId = pictureList.get(pictureList.size() - 1).getId();
+                }
+                ready = true;
+                log.info("图片全文索引构建完成, 共 {} 张图片, 耗时 {} ms", total, System.currentTimeMillis() - start);
+            } catch (Exception e) {
+                log.error("图片全文索引构建失败, 搜索将降级为数据库查询", e);
+            } finally {
+                lock.writeLock().lock();
+                try {
+                    rebuilding = false;
+                    changedDuringRebuild.clear();
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        });
+    }
+
+    /**
+     * 图片变更后增量更新索引(事务提交后执行)
+     * 需先于列表缓存失效执行, 避免失效后立即回源读到旧索引
+     */
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPictureChange(PictureChangeEvent event) {
+        if (event.getNewPicture() != null) {
+            index(event.getNewPicture());
+        } else if (event.getOldPicture() != null) {
+            remove(event.getOldPicture().getId());
+        }
+    }
+
+    /**
+     * 其他节点的图片变更
+     */
+    @EventListener
+    public void onRemotePictureChange(PictureRemoteChangeEvent event) {
+        onPictureChange(event.getChangeEvent());
+    }
+
+    @Override
+    public boolean isReady() {
+        return ready;
+    }
+
+    @Override
+    public void index(Picture picture) {
+        if (picture == null || picture.getId() == null) {
+            return;
+        }
+        // 1. 分词并计算加权词频(锁外完成)
+        AnalyzedPicture analyzedPicture = analyze(picture);
+        // 2. 写入索引
+        lock.writeLock().lock();
+        try {
+            if (rebuilding) {
+                changedDuringRebuild.add(picture.getId());
+            }
+            putInternal(analyzedPicture);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 全量构建时批量写入, 跳过构建期间已被变更事件更新过的图片
+     */
+    private void indexBatch(List<Picture> pictureList) {
+        List<AnalyzedPicture> analyzedPictureList = new ArrayList<>(pictureList.size());
+        for (Picture picture : pictureList) {
+            analyzedPictureList.add(analyze(picture));
+        }
+        lock.writeLock().lock();
+        try {
+            for (AnalyzedPicture analyzedPicture : analyzedPictureList) {
+                if (!changedDuringRebuild.contains(analyzedPicture.getPictureId())) {
+                    putInternal(analyzedPicture);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 分词并计算各词项的加权词频
+     */
+    private AnalyzedPicture analyze(Picture picture) {
+        Map<String, Float> termWeightMap = new HashMap<>();
+        addField(termWeightMap, picture.getName(), NAME_WEIGHT);
+        addField(termWeightMap, picture.getIntroduction(), INTRODUCTION_WEIGHT);
+        addField(termWeightMap, picture.getCategory(), CATEGORY_WEIGHT);
+        if (StrUtil.isNotBlank(picture.getTags())) {
+            try {
+                for (String tag : JSONUtil.toList(picture.getTags(), String.class)) {
+                    addField(termWeightMap, tag, TAG_WEIGHT);
+                }
+            } catch (Exception e) {
+                log.warn("图片标签格式错误, pictureId = {}", picture.getId());
+            }
+        }
+        IndexedPicture indexedPicture = new IndexedPicture(picture.getSpaceId(), picture.getReviewStatus(),
+                picture.getUserId(), termWeightMap.keySet().toArray(new String[0]));
+        return new AnalyzedPicture(picture.getId(), indexedPicture, termWeightMap);
+    }
+
+    @Override
+    public void remove(Long pictureId) {
+        if (pictureId == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (rebuilding) {
+                changedDuringRebuild.add(pictureId);
+            }
+            removeInternal(pictureId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Long> search(PictureSearchQuery searchQuery) {
+        Set<String> termSet = PictureTextTokenizer.tokenizeForQuery(searchQuery.getSearchText());
+        if (termSet.isEmpty() || searchQuery.getLimit() <= 0) {
+            return new ArrayList<>();
+        }
+        lock.readLock().lock();
+        try {
+            // 1. 取出所有词项的倒排列表, 任意一个不存在则没有结果
+            List<Map<Long, Float>> postingList = new ArrayList<>(termSet.size());
+            for (String term : termSet) {
+                Map<Long, Float> posting = postingMap.get(term);
+                if (posting == null) {
+                    return new ArrayList<>();
+                }
+                postingList.add(posting);
+            }
+            // 2. 从最短的倒排列表开始求交集
+            postingList.sort(Comparator.comparingInt(Map::size));
+            int documentCount = documentMap.size();
+            double[] idfArray = new double[postingList.size()];
+            for (int i = 0; i < postingList.size(); i++) {
+                idfArray[i] = Math.log(1 + documentCount * 1.0 / postingList.get(i).size());
+            }
+            // 小顶堆保留相关度最高的 limit 个结果
+            PriorityQueue<ScoredPicture> heap = new PriorityQueue<>(Comparator.comparingDouble(ScoredPicture::getScore));
+            for (Map.Entry<Long, Float> entry : postingList.get(0).entrySet()) {
+                Long pictureId = entry.getKey();
+                if (!matchFilter(documentMap.get(pictureId), searchQuery)) {
+                    continue;
+                }
+                double score = entry.getValue() * idfArray[0];
+                boolean matched = true;
+                for (int i = 1; i < postingList.size(); i++) {
+                    Float weight = postingList.get(i).get(pictureId);
+                    if (weight == null) {
+                        matched = false;
+                        break;
+                    }
+                    score += weight * idfArray[i];
+                }
+                if (!matched) {
+                    continue;
+                }
+                if (heap.size() < searchQuery.getLimit()) {
+                    heap.offer(new ScoredPicture(pictureId, score));
+                } else if (heap.peek().getScore() < score) {
+                    heap.poll();
+                    heap.offer(new ScoredPicture(pictureId, score));
+                }
+            }
+            // 3. 按相关度降序输出
+            List<Long> pictureIdList = new ArrayList<>(heap.size());
+            while (!heap.isEmpty()) {
+                pictureIdList.add(heap.poll().getPictureId());
+            }
+            Collections.reverse(pictureIdList);
+            return pictureIdList;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 调用方需持有写锁
+     */
+    private void putInternal(AnalyzedPicture analyzedPicture) {
+        Long pictureId = analyzedPicture.getPictureId();
+        removeInternal(pictureId);
+        documentMap.put(pictureId, analyzedPicture.getIndexedPicture());
+        analyzedPicture.getTermWeightMap().forEach((term, weight) ->
+                postingMap.computeIfAbsent(term, k -> new HashMap<>()).put(pictureId, weight));
+    }
+
+    /**
+     * 调用方需持有写锁
+     */
+    private void removeInternal(Long pictureId) {
+        IndexedPicture old = documentMap.remove(pictureId);
+        if (old == null) {
+            return;
+        }
+        for (String term : old.getTerms()) {
+            Map<Long, Float> posting = postingMap.get(term);
+            if (posting != null) {
+                posting.remove(pictureId);
+                if (posting.isEmpty()) {
+                    postingMap.remove(term);
+                }
+            }
+        }
+    }
+
+    private static void addField(Map<String, Float> termWeightMap, String text, float weight) {
+        for (String term : PictureTextTokenizer.tokenizeForIndex(text)) {
+            termWeightMap.merge(term, weight, Float::sum);
+        }
+    }
+
+    private static boolean matchFilter(IndexedPicture indexedPicture, PictureSearchQuery searchQuery) {
+        if (indexedPicture == null) {
+            return false;
+        }
+        if (searchQuery.isNullSpaceId() && indexedPicture.getSpaceId() != null) {
+            return false;
+        }
+        if (searchQuery.getSpaceId() != null && !searchQuery.getSpaceId().equals(indexedPicture.getSpaceId())) {
+            return false;
+        }
+        if (searchQuery.getReviewStatus() != null && !searchQuery.getReviewStatus().equals(indexedPicture.getReviewStatus())) {
+            return false;
+        }
+        return searchQuery.getUserId() == null || ObjUtil.equals(searchQuery.getUserId(), indexedPicture.getUserId());
+    }
+
+    /**
+     * 正排信息
+     */
+    @lombok.Value
+    private static class IndexedPicture {
+        Long spaceId;
+        Integer reviewStatus;
+        Long userId;
+        String[] terms;
+    }
+
+    /**
+     * 分词完成、等待写入的图片
+     */
+    @lombok.Value
+    private static class AnalyzedPicture {
+        Long pictureId;
+        IndexedPicture indexedPicture;
+        Map<String, Float> termWeightMap;
+    }
+
+    /**
+     * 带相关度的搜索结果
+     */
+    @lombok.Value
+    private static class ScoredPicture {
+        Long pictureId;
+        double score;
+    }
+}
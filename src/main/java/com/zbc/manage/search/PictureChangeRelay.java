@@ -0,0 +1,151 @@
+package com.zbc.manage.search;
+
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.json.JSONUtil;
+import com.zbc.domain.pojo.Picture;
+import com.zbc.enums.PictureChangeTypeEnum;
+import com.zbc.event.PictureChangeEvent;
+import com.zbc.event.PictureRemoteChangeEvent;
+import com.zbc.mapper.PictureMapper;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 图片变更的跨节点中转(redis 发布订阅)
+ * <p>
+ * 内存索引(全文、主色调、感知哈希)只能收到本节点的变更事件, 事务提交后将变更发布到频道,
+ * 其他节点收到后从数据库读取图片的最新数据, 以 {@link PictureRemoteChangeEvent} 在本节点发布。
+ * 消息只携带变更前图片中索引需要的字段与图片 id, 跳过自己发布的消息。
+ */
+@Slf4j
+@Component
+public class PictureChangeRelay implements MessageListener {
+
+    /**
+     * 图片变更广播频道
+     */
+    public static final String CHANGE_CHANNEL = "picture:change";
+
+    /**
+     * 当前节点 id
+     */
+    private final String nodeId = IdUtil.fastSimpleUUID();
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private PictureMapper pictureMapper;
+
+    @Resource
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    /**
+     * 本节点的图片变更发布到频道(事务提交后执行)
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPictureChange(PictureChangeEvent event) {
+        PictureChangeMessage message = new PictureChangeMessage();
+        message.setNodeId(nodeId);
+        message.setType(event.getType().getValue());
+        Picture oldPicture = event.getOldPicture();
+        if (oldPicture != null) {
+            message.setOldId(oldPicture.getId());
+            message.setOldSpaceId(oldPicture.getSpaceId());
+            message.setOldPicPhash(oldPicture.getPicPhash());
+        }
+        if (event.getNewPicture() != null) {
+            message.setNewId(event.getNewPicture().getId());
+        }
+        try {
+            stringRedisTemplate.convertAndSend(CHANGE_CHANNEL, JSONUtil.toJsonStr(message));
+        } catch (Exception e) {
+            // 其他节点的索引由定期重新加载兜底
+            log.error("发布图片变更消息失败, pictureId = {}", message.getNewId() != null ? message.getNewId() : message.getOldId(), e);
+        }
+    }
+
+    /**
+     * 收到其他节点的图片变更
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        PictureChangeMessage changeMessage;
+        try {
+            changeMessage = JSONUtil.toBean(body, PictureChangeMessage.class);
+        } catch (Exception e) {
+            log.warn("无效的图片变更消息: {}", body);
+            return;
+        }
+        if (nodeId.equals(changeMessage.getNodeId())) {
+            return;
+        }
+        PictureChangeTypeEnum type = PictureChangeTypeEnum.getEnumByValue(changeMessage.getType());
+        if (type == null) {
+            log.warn("无效的图片变更消息: {}", body);
+            return;
+        }
+        Picture oldPicture = null;
+        if (changeMessage.getOldId() != null) {
+            oldPicture = new Picture();
+            oldPicture.setId(changeMessage.getOldId());
+            oldPicture.setSpaceId(changeMessage.getOldSpaceId());
+            oldPicture.setPicPhash(changeMessage.getOldPicPhash());
+        }
+        // 读取最新数据, 已被删除时按删除处理
+        Picture newPicture = changeMessage.getNewId() == null ? null : pictureMapper.selectById(changeMessage.getNewId());
+        if (newPicture == null && oldPicture == null) {
+            return;
+        }
+        if (newPicture == null) {
+            type = PictureChangeTypeEnum.DELETE;
+        }
+        try {
+            applicationEventPublisher.publishEvent(new PictureRemoteChangeEvent(
+                    new PictureChangeEvent(type, oldPicture, newPicture)));
+        } catch (Exception e) {
+            log.error("处理其他节点的图片变更失败: {}", body, e);
+        }
+    }
+
+    /**
+     * 图片变更消息
+     */
+    @Data
+    public static class PictureChangeMessage {
+
+        /**
+         * 发布节点 id
+         */
+        private String nodeId;
+
+        /**
+         * 变更类型
+         */
+        private String type;
+
+        /**
+         * 变更前的图片 id、空间 id 与感知哈希(从旧位置删除索引时使用)
+         */
+        private Long oldId;
+
+        private Long oldSpaceId;
+
+        private Long oldPicPhash;
+
+        /**
+         * 变更后的图片 id(接收节点从数据库读取最新数据)
+         */
+        private Long newId;
+    }
+}
@@ -0,0 +1,391 @@
+package com.zbc.manage.search;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.zbc.domain.pojo.Picture;
+import com.zbc.enums.ColorMetricEnum;
+import com.zbc.event.PictureChangeEvent;
+import com.zbc.event.PictureRemoteChangeEvent;
+import com.zbc.mapper.PictureMapper;
+import com.zbc.utils.ColorSimilarUtils;
+import com.zbc.utils.ColorTransformUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 空间图片主色调索引
+ * <p>
+ * 每个空间在首次查询时从数据库加载, 之后通过图片变更事件(包括其他节点转发的事件)增量维护,
+ * 加载一段时间后重新加载, 长时间未访问的空间会被淘汰。
+ * 索引将 RGB 空间按每通道 32 划分为 8×8×8 个网格, 每个网格用并行数组保存图片 id、颜色以及预先计算好的 Lab 值。
+ * RGB 距离查询时从目标颜色所在网格逐圈向外扩展, 当下一圈网格的最小可能距离已超过当前第 k 个结果时提前结束;
+ * Lab 色差与 RGB 网格不对齐, 查询时扫描全部网格。两种方式都用定长的大顶堆保留最近的 k 个, 查询过程中不为候选创建对象。
+ */
+@Component
+public class PictureColorIndex {
+
+    /**
+     * 每个通道的网格宽度为 2^CELL_SHIFT
+     */
+    private static final int CELL_SHIFT = 5;
+
+    private static final int CELL_WIDTH = 1 << CELL_SHIFT;
+
+    /**
+     * 每个通道的网格数量
+     */
+    private static final int CELLS_PER_CHANNEL = 256 >> CELL_SHIFT;
+
+    @Resource
+    private PictureMapper pictureMapper;
+
+    /**
+     * 最多同时驻留内存的空间索引数量
+     */
+    @Value("${picture.color-index.max-spaces:1000}")
+    private long maxSpaces;
+
+    /**
+     * 空间索引未被访问多久后淘汰(分钟)
+     */
+    @Value("${picture.color-index.expire-minutes:30}")
+    private long expireMinutes;
+
+    /**
+     * 空间索引加载多久后重新加载(分钟), 兜底修正漏掉的跨节点变更
+     */
+    @Value("${picture.color-index.reload-minutes:10}")
+    private long reloadMinutes;
+
+    /**
+     * key: 空间 id, value: 该空间的颜色索引
+     */
+    private ScopedIndexCache<SpaceColorIndex> spaceIndexCache;
+
+    @PostConstruct
+    public void init() {
+        spaceIndexCache = new ScopedIndexCache<>(maxSpaces, expireMinutes, reloadMinutes, this::loadSpaceIndex);
+    }
+
+    /**
+     * 查询与目标颜色最接近的图片
+     *
+     * @param spaceId     空间 id
+     * @param targetColor 目标颜色(0xRRGGBB)
+     * @param topK        最多返回的数量
+     * @param maxDistance 距离上限(RGB 欧氏距离或 ΔE76), 为空表示不限制
+     * @param metric      距离度量
+     * @return 按距离升序排列的图片 id
+     */
+    public List<Long> searchNearest(Long spaceId, int targetColor, int topK, Double maxDistance, ColorMetricEnum metric) {
+        if (spaceId == null || topK <= 0) {
+            return new ArrayList<>();
+        }
+        SpaceColorIndex spaceColorIndex = spaceIndexCache.get(spaceId);
+        if (metric == ColorMetricEnum.LAB) {
+            return spaceColorIndex.searchNearestByLab(targetColor, topK, maxDistance);
+        }
+        return spaceColorIndex.searchNearestByRgb(targetColor, topK, maxDistance);
+    }
+
+    /**
+     * 图片变更后更新已加载的空间索引(事务提交后执行), 正在加载的空间在下次查询时重新加载
+     */
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPictureChange(PictureChangeEvent event) {
+        Picture oldPicture = event.getOldPicture();
+        Picture newPicture = event.getNewPicture();
+        if (oldPicture != null && oldPicture.getSpaceId() != null) {
+            spaceIndexCache.applyChange(oldPicture.getSpaceId(), spaceColorIndex -> spaceColorIndex.remove(oldPicture.getId()));
+        }
+        if (newPicture != null && newPicture.getSpaceId() != null) {
+            Integer color = getColorValue(newPicture);
+            if (color != null) {
+                spaceIndexCache.applyChange(newPicture.getSpaceId(), spaceColorIndex -> spaceColorIndex.put(newPicture.getId(), color));
+            }
+        }
+    }
+
+    /**
+     * 其他节点的图片变更
+     */
+    @EventListener
+    public void onRemotePictureChange(PictureRemoteChangeEvent event) {
+        onPictureChange(event.getChangeEvent());
+    }
+
+    /**
+     * 获取图片主色调, 优先使用写入时解析好的整数值
+     */
+    private static Integer getColorValue(Picture picture) {
+        if (picture.getPicColorValue() != null) {
+            return picture.getPicColorValue();
+        }
+        return ColorTransformUtils.toColorValue(picture.getPicColor());
+    }
+
+    /**
+     * 从数据库加载空间索引, 仅查询 id 与主色调
+     */
+    private SpaceColorIndex loadSpaceIndex(Long spaceId) {
+        QueryWrapper<Picture> queryWrapper = new QueryWrapper<>();
+        queryWrapper.select("id", "picColor", "picColorValue")
+                .eq("spaceId", spaceId)
+                .isNotNull("picColor");
+        SpaceColorIndex spaceColorIndex = new SpaceColorIndex();
+        for (Picture picture : pictureMapper.selectList(queryWrapper)) {
+            Integer color = getColorValue(picture);
+            if (color != null) {
+                spaceColorIndex.put(picture.getId(), color);
+            }
+        }
+        return spaceColorIndex;
+    }
+
+    private static int cellIndexOf(int color) {
+        return cellIndex(((color >> 16) & 0xFF) >> CELL_SHIFT, ((color >> 8) & 0xFF) >> CELL_SHIFT, (color & 0xFF) >> CELL_SHIFT);
+    }
+
+    private static int cellIndex(int cr, int cg, int cb) {
+        return (cr * CELLS_PER_CHANNEL + cg) * CELLS_PER_CHANNEL + cb;
+    }
+
+    /**
+     * 单个空间的网格索引
+     */
+    private static class SpaceColorIndex {
+
+        private final Cell[] cells = new Cell[CELLS_PER_CHANNEL * CELLS_PER_CHANNEL * CELLS_PER_CHANNEL];
+
+        /**
+         * key: 图片 id, value: 颜色, 用于更新和删除
+         */
+        private final Map<Long, Integer> colorMap = new HashMap<>();
+
+        /**
+         * 批量计算距离的缓冲区, 查询在锁内执行, 可以复用
+         */
+        private int[] squaredDistanceBuffer = new int[0];
+
+        private float[] deltaEBuffer = new float[0];
+
+        private final float[] targetLab = new float[3];
+
+        synchronized void put(Long pictureId, int color) {
+            remove(pictureId);
+            int index = cellIndexOf(color);
+            if (cells[index] == null) {
+                cells[index] = new Cell();
+            }
+            cells[index].add(pictureId, color);
+            colorMap.put(pictureId, color);
+        }
+
+        synchronized void remove(Long pictureId) {
+            Integer color = colorMap.remove(pictureId);
+            if (color == null) {
+                return;
+            }
+            cells[cellIndexOf(color)].remove(pictureId);
+        }
+
+        synchronized List<Long> searchNearestByRgb(int targetColor, int topK, Double maxDistance) {
+            int cr = ((targetColor >> 16) & 0xFF) >> CELL_SHIFT;
+            int cg = ((targetColor >> 8) & 0xFF) >> CELL_SHIFT;
+            int cb = (targetColor & 0xFF) >> CELL_SHIFT;
+            long maxSquaredDistance = maxDistance == null ? Long.MAX_VALUE : (long) Math.floor(maxDistance * maxDistance);
+            TopKHeap heap = new TopKHeap(topK);
+            for (int ring = 0; ring < CELLS_PER_CHANNEL; ring++) {
+                // 第 ring 圈网格中的点与目标颜色的距离大于 (ring - 1) * CELL_WIDTH
+                if (ring > 0) {
+                    long lowerBound = (long) (ring - 1) * CELL_WIDTH;
+                    long squaredLowerBound = lowerBound * lowerBound;
+                    if (squaredLowerBound > maxSquaredDistance || (heap.isFull() && squaredLowerBound >= heap.peekKey())) {
+                        break;
+                    }
+                }
+                for (int i = Math.max(0, cr - ring); i <= Math.min(CELLS_PER_CHANNEL - 1, cr + ring); i++) {
+                    for (int j = Math.max(0, cg - ring); j <= Math.min(CELLS_PER_CHANNEL - 1, cg + ring); j++) {
+                        for (int k = Math.max(0, cb - ring); k <= Math.min(CELLS_PER_CHANNEL - 1, cb + ring); k++) {
+                            // 只处理切比雪夫距离恰好为 ring 的网格(即本圈的外壳)
+                            if (Math.max(Math.abs(i - cr), Math.max(Math.abs(j - cg), Math.abs(k - cb))) != ring) {
+                                continue;
+                            }
+                            Cell cell = cells[cellIndex(i, j, k)];
+                            if (cell == null || cell.size == 0) {
+                                continue;
+                            }
+                            if (squaredDistanceBuffer.length < cell.size) {
+                                squaredDistanceBuffer = new int[cell.pictureIds.length];
+                            }
+                            ColorSimilarUtils.squaredDistances(targetColor, cell.colors, 0, cell.size, squaredDistanceBuffer);
+                            for (int n = 0; n < cell.size; n++) {
+                                if (squaredDistanceBuffer[n] <= maxSquaredDistance) {
+                                    heap.offer(squaredDistanceBuffer[n], cell.pictureIds[n]);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+            return heap.toAscendingList();
+        }
+
+        synchronized List<Long> searchNearestByLab(int targetColor, int topK, Double maxDistance) {
+            ColorSimilarUtils.toLab(targetColor, targetLab, 0);
+            float maxDeltaESquared = maxDistance == null ? Float.MAX_VALUE : (float) (maxDistance * maxDistance);
+            TopKHeap heap = new TopKHeap(topK);
+            for (Cell cell : cells) {
+                if (cell == null || cell.size == 0) {
+                    continue;
+                }
+                if (deltaEBuffer.length < cell.size) {
+                    deltaEBuffer = new float[cell.pictureIds.length];
+                }
+                ColorSimilarUtils.deltaESquared(targetLab, cell.labs, 0, cell.size, deltaEBuffer);
+                for (int n = 0; n < cell.size; n++) {
+                    float deltaESquared = deltaEBuffer[n];
+                    if (deltaESquared <= maxDeltaESquared) {
+                        // 非负 float 的位模式与数值大小顺序一致, 可以直接作为排序键
+                        heap.offer(Float.floatToIntBits(deltaESquared), cell.pictureIds[n]);
+                    }
+                }
+            }
+            return heap.toAscendingList();
+        }
+    }
+
+    /**
+     * 单个网格, 使用并行数组存储以避免每个元素一个对象
+     */
+    private static class Cell {
+
+        private long[] pictureIds = new long[8];
+
+        private int[] colors = new int[8];
+
+        /**
+         * 每个颜色的 Lab 值, 依次为 L、a、b
+         */
+        private float[] labs = new float[8 * 3];
+
+        private int size;
+
+        void add(long pictureId, int color) {
+            if (size == pictureIds.length) {
+                pictureIds = Arrays.copyOf(pictureIds, size * 2);
+                colors = Arrays.copyOf(colors, size * 2);
+                labs = Arrays.copyOf(labs, size * 2 * 3);
+            }
+            pictureIds[size] = pictureId;
+            colors[size] = color;
+            ColorSimilarUtils.toLab(color, labs, size * 3);
+            size++;
+        }
+
+        void remove(long pictureId) {
+            for (int i = 0; i < size; i++) {
+                if (pictureIds[i] == pictureId) {
+                    // 与最后一个元素交换, 不保证顺序
+                    size--;
+                    pictureIds[i] = pictureIds[size];
+                    colors[i] = colors[size];
+                    System.arraycopy(labs, size * 3, labs, i * 3, 3);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 定长的大顶堆, 堆顶为当前第 k 近的结果, 键为距离(越小越近)
+     */
+    private static class TopKHeap {
+
+        private final long[] keys;
+
+        private final long[] pictureIds;
+
+        private int size;
+
+        TopKHeap(int capacity) {
+            keys = new long[capacity];
+            pictureIds = new long[capacity];
+        }
+
+        boolean isFull() {
+            return size == keys.length;
+        }
+
+        long peekKey() {
+            return keys[0];
+        }
+
+        void offer(long key, long pictureId) {
+            if (size < keys.length) {
+                // 上浮
+                int i = size++;
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (keys[parent] >= key) {
+                        break;
+                    }
+                    keys[i] = keys[parent];
+                    pictureIds[i] = pictureIds[parent];
+                    i = parent;
+                }
+                keys[i] = key;
+                pictureIds[i] = pictureId;
+            } else if (key < keys[0]) {
+                // 替换堆顶并下沉
+                siftDown(0, key, pictureId);
+            }
+        }
+
+        /**
+         * 依次弹出堆顶, 得到按距离升序的图片 id
+         */
+        List<Long> toAscendingList() {
+            Long[] result = new Long[size];
+            while (size > 0) {
+                result[size - 1] = pictureIds[0];
+                size--;
+                if (size > 0) {
+                    siftDown(0, keys[size], pictureIds[size]);
+                }
+            }
+            return new ArrayList<>(Arrays.asList(result));
+        }
+
+        private void siftDown(int i, long key, long pictureId) {
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                int right = child + 1;
+                if (right < size && keys[right] > keys[child]) {
+                    child = right;
+                }
+                if (key >= keys[child]) {
+                    break;
+                }
+                keys[i] = keys[child];
+                pictureIds[i] = pictureIds[child];
+                i = child;
+            }
+            keys[i] = key;
+            pictureIds[i] = pictureId;
+        }
+    }
+}
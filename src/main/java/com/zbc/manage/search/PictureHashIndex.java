@@ -0,0 +1,296 @@
+package com.zbc.manage.search;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.zbc.domain.pojo.Picture;
+import com.zbc.enums.PictureReviewStatusEnum;
+import com.zbc.event.PictureChangeEvent;
+import com.zbc.event.PictureRemoteChangeEvent;
+import com.zbc.mapper.PictureMapper;
+import com.zbc.utils.ImageHashUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.*;
+
+/**
+ * 图片感知哈希索引(以图搜图)
+ * <p>
+ * 每个范围(公共图库或单个空间)一棵 BK 树, 节点键为 64 位 pHash, 边为汉明距离。
+ * 查询距离不超过 d 的哈希时, 利用三角不等式只需访问边权在 [dist - d, dist + d] 内的子树。
+ * 公共图库只收录审核通过的图片。范围在首次查询时加载, 之后通过图片变更事件(包括其他节点转发的事件)增量维护,
+ * 加载一段时间后重新加载; 删除采用标记方式, 空节点过多时重建。
+ */
+@Component
+public class PictureHashIndex {
+
+    /**
+     * 公共图库在缓存中的 key(空间 id 均为正数)
+     */
+    private static final long PUBLIC_SCOPE_KEY = 0L;
+
+    @Resource
+    private PictureMapper pictureMapper;
+
+    /**
+     * 最多同时驻留内存的范围数量
+     */
+    @Value("${picture.hash-index.max-scopes:1000}")
+    private long maxScopes;
+
+    /**
+     * 范围索引未被访问多久后淘汰(分钟)
+     */
+    @Value("${picture.hash-index.expire-minutes:30}")
+    private long expireMinutes;
+
+    /**
+     * 范围索引加载多久后重新加载(分钟), 兜底修正漏掉的跨节点变更
+     */
+    @Value("${picture.hash-index.reload-minutes:10}")
+    private long reloadMinutes;
+
+    /**
+     * key: 空间 id(公共图库为 0), value: 该范围的 BK 树
+     */
+    private ScopedIndexCache<BkTree> scopeIndexCache;
+
+    @PostConstruct
+    public void init() {
+        scopeIndexCache = new ScopedIndexCache<>(maxScopes, expireMinutes, reloadMinutes, this::loadScopeIndex);
+    }
+
+    /**
+     * 查询相似图片
+     *
+     * @param spaceId     空间 id, 为空表示公共图库
+     * @param hash        目标图片的感知哈希
+     * @param maxDistance 最大汉明距离
+     * @param limit       最多返回的数量
+     * @return 按汉明距离升序排列的图片 id
+     */
+    public List<Long> searchSimilar(Long spaceId, long hash, int maxDistance, int limit) {
+        if (limit <= 0 || maxDistance < 0) {
+            return new ArrayList<>();
+        }
+        return scopeIndexCache.get(toScopeKey(spaceId)).search(hash, Math.min(maxDistance, 64), limit);
+    }
+
+    /**
+     * 图片变更后更新已加载的范围索引(事务提交后执行), 正在加载的范围在下次查询时重新加载
+     */
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPictureChange(PictureChangeEvent event) {
+        Picture oldPicture = event.getOldPicture();
+        Picture newPicture = event.getNewPicture();
+        if (oldPicture != null && oldPicture.getPicPhash() != null) {
+            scopeIndexCache.applyChange(toScopeKey(oldPicture.getSpaceId()),
+                    bkTree -> bkTree.remove(oldPicture.getPicPhash(), oldPicture.getId()));
+        }
+        if (newPicture != null && newPicture.getPicPhash() != null && isIndexable(newPicture)) {
+            scopeIndexCache.applyChange(toScopeKey(newPicture.getSpaceId()),
+                    bkTree -> bkTree.add(newPicture.getPicPhash(), newPicture.getId()));
+        }
+    }
+
+    /**
+     * 其他节点的图片变更
+     */
+    @EventListener
+    public void onRemotePictureChange(PictureRemoteChangeEvent event) {
+        onPictureChange(event.getChangeEvent());
+    }
+
+    /**
+     * 公共图库中未审核通过的图片不参与搜索
+     */
+    private static boolean isIndexable(Picture picture) {
+        return picture.getSpaceId() != null || Integer.valueOf(PictureReviewStatusEnum.PASS.getValue()).equals(picture.getReviewStatus());
+    }
+
+    private static long toScopeKey(Long spaceId) {
+        return spaceId == null ? PUBLIC_SCOPE_KEY : spaceId;
+    }
+
+    /**
+     * 从数据库加载范围索引, 仅查询 id 与哈希
+     */
+    private BkTree loadScopeIndex(Long scopeKey) {
+        QueryWrapper<Picture> queryWrapper = new QueryWrapper<>();
+        queryWrapper.select("id", "picPhash").isNotNull("picPhash");
+        if (scopeKey == PUBLIC_SCOPE_KEY) {
+            queryWrapper.isNull("spaceId").eq("reviewStatus", PictureReviewStatusEnum.PASS.getValue());
+        } else {
+            queryWrapper.eq("spaceId", scopeKey);
+        }
+        BkTree bkTree = new BkTree();
+        for (Picture picture : pictureMapper.selectList(queryWrapper)) {
+            bkTree.add(picture.getPicPhash(), picture.getId());
+        }
+        return bkTree;
+    }
+
+    /**
+     * BK 树, 相同哈希的图片共用一个节点
+     */
+    static class BkTree {
+
+        private Node root;
+
+        /**
+         * 有效图片数量
+         */
+        private int size;
+
+        /**
+         * 没有图片的节点数量(删除后留下的空节点)
+         */
+        private int emptyNodeCount;
+
+        synchronized void add(long hash, long pictureId) {
+            if (root == null) {
+                root = new Node(hash);
+                emptyNodeCount++;
+            }
+            Node node = root;
+            while (true) {
+                int distance = ImageHashUtils.hammingDistance(hash, node.hash);
+                if (distance == 0) {
+                    if (node.pictureIds.isEmpty()) {
+                        emptyNodeCount--;
+                    }
+                    if (node.pictureIds.add(pictureId)) {
+                        size++;
+                    }
+                    return;
+                }
+                Node child = node.getChild(distance);
+                if (child == null) {
+                    child = new Node(hash);
+                    emptyNodeCount++;
+                    node.setChild(distance, child);
+                }
+                node = child;
+            }
+        }
+
+        synchronized void remove(long hash, long pictureId) {
+            Node node = root;
+            while (node != null) {
+                int distance = ImageHashUtils.hammingDistance(hash, node.hash);
+                if (distance == 0) {
+                    if (node.pictureIds.remove(pictureId)) {
+                        size--;
+                        if (node.pictureIds.isEmpty()) {
+                            emptyNodeCount++;
+                        }
+                    }
+                    break;
+                }
+                node = node.getChild(distance);
+            }
+            // 空节点超过一半时重建, 避免查询时遍历过多无效节点
+            if (emptyNodeCount > size) {
+                rebuild();
+            }
+        }
+
+        synchronized List<Long> search(long hash, int maxDistance, int limit) {
+            // 按距离分桶, 距离只有 0 ~ 64, 避免排序
+            List<List<Long>> buckets = new ArrayList<>(maxDistance + 1);
+            for (int i = 0; i <= maxDistance; i++) {
+                buckets.add(new ArrayList<>());
+            }
+            if (root != null) {
+                Deque<Node> stack = new ArrayDeque<>();
+                stack.push(root);
+                while (!stack.isEmpty()) {
+                    Node node = stack.pop();
+                    int distance = ImageHashUtils.hammingDistance(hash, node.hash);
+                    if (distance <= maxDistance) {
+                        buckets.get(distance).addAll(node.pictureIds);
+                    }
+                    int from = Math.max(1, distance - maxDistance);
+                    int to = Math.min(64, distance + maxDistance);
+                    for (int i = from; i <= to; i++) {
+                        Node child = node.getChild(i);
+                        if (child != null) {
+                            stack.push(child);
+                        }
+                    }
+                }
+            }
+            List<Long> pictureIdList = new ArrayList<>();
+            for (List<Long> bucket : buckets) {
+                for (Long pictureId : bucket) {
+                    if (pictureIdList.size() >= limit) {
+                        return pictureIdList;
+                    }
+                    pictureIdList.add(pictureId);
+                }
+            }
+            return pictureIdList;
+        }
+
+        private void rebuild() {
+            List<Node> nodeList = new ArrayList<>();
+            if (root != null) {
+                Deque<Node> stack = new ArrayDeque<>();
+                stack.push(root);
+                while (!stack.isEmpty()) {
+                    Node node = stack.pop();
+                    if (!node.pictureIds.isEmpty()) {
+                        nodeList.add(node);
+                    }
+                    for (int i = 1; i <= 64; i++) {
+                        Node child = node.getChild(i);
+                        if (child != null) {
+                            stack.push(child);
+                        }
+                    }
+                }
+            }
+            root = null;
+            size = 0;
+            emptyNodeCount = 0;
+            for (Node node : nodeList) {
+                for (Long pictureId : node.pictureIds) {
+                    add(node.hash, pictureId);
+                }
+            }
+        }
+    }
+
+    private static class Node {
+
+        private final long hash;
+
+        /**
+         * 子节点, 下标为与当前节点的汉明距离(1 ~ 64), 叶子节点不分配
+         */
+        private Node[] children;
+
+        private final Set<Long> pictureIds = new LinkedHashSet<>(2);
+
+        Node(long hash) {
+            this.hash = hash;
+        }
+
+        Node getChild(int distance) {
+            return children == null ? null : children[distance];
+        }
+
+        void setChild(int distance, Node child) {
+            if (children == null) {
+                children = new Node[65];
+            }
+            children[distance] = child;
+        }
+    }
+}
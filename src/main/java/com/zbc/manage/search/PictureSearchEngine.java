@@ -0,0 +1,40 @@
+package com.zbc.manage.search;
+
+import com.zbc.domain.pojo.Picture;
+
+import java.util.List;
+
+/**
+ * 图片全文检索引擎(名称、简介、分类、标签)
+ */
+public interface PictureSearchEngine {
+
+    /**
+     * 索引是否已经可用(未就绪时调用方应降级为数据库模糊查询)
+     *
+     * @return 是否可用
+     */
+    boolean isReady();
+
+    /**
+     * 新增或覆盖图片索引
+     *
+     * @param picture 图片
+     */
+    void index(Picture picture);
+
+    /**
+     * 删除图片索引
+     *
+     * @param pictureId 图片 id
+     */
+    void remove(Long pictureId);
+
+    /**
+     * 搜索图片
+     *
+     * @param searchQuery 搜索条件
+     * @return 按相关度降序排列的图片 id
+     */
+    List<Long> search(PictureSearchQuery searchQuery);
+}
@@ -0,0 +1,40 @@
+package com.zbc.manage.search;
+
+import lombok.Data;
+
+/**
+ * 图片全文检索条件
+ */
+@Data
+public class PictureSearchQuery {
+
+    /**
+     * 搜索词
+     */
+    private String searchText;
+
+    /**
+     * 空间 id
+     */
+    private Long spaceId;
+
+    /**
+     * 是否只查询公共图库
+     */
+    private boolean nullSpaceId;
+
+    /**
+     * 审核状态
+     */
+    private Integer reviewStatus;
+
+    /**
+     * 用户 id
+     */
+    private Long userId;
+
+    /**
+     * 最多返回的结果数
+     */
+    private int limit;
+}
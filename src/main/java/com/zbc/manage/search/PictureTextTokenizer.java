@@ -0,0 +1,113 @@
+package com.zbc.manage.search;
+
+import cn.hutool.core.util.StrUtil;
+
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 图片文本分词器
+ * <p>
+ * 1. 英文、数字: 按单词切分并转小写, 建索引时额外生成前缀(模拟 like 的前缀匹配)
+ * 2. 中日韩文字: 建索引时生成单字和双字, 查询时使用双字(单个字时使用单字)
+ */
+public class PictureTextTokenizer {
+
+    /**
+     * 英文前缀的最小长度
+     */
+    private static final int MIN_PREFIX_LENGTH = 2;
+
+    /**
+     * 英文前缀的最大长度
+     */
+    private static final int MAX_PREFIX_LENGTH = 16;
+
+    private PictureTextTokenizer() {
+        // 工具类不需要实例化
+    }
+
+    /**
+     * 建索引时分词
+     *
+     * @param text 文本
+     * @return 词项
+     */
+    public static Set<String> tokenizeForIndex(String text) {
+        return tokenize(text, true);
+    }
+
+    /**
+     * 查询时分词
+     *
+     * @param text 搜索词
+     * @return 词项
+     */
+    public static Set<String> tokenizeForQuery(String text) {
+        return tokenize(text, false);
+    }
+
+    private static Set<String> tokenize(String text, boolean forIndex) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (StrUtil.isBlank(text)) {
+            return tokens;
+        }
+        String lowerText = text.toLowerCase(Locale.ROOT);
+        int length = lowerText.length();
+        int i = 0;
+        while (i < length) {
+            char c = lowerText.charAt(i);
+            if (isCjk(c)) {
+                int start = i;
+                while (i < length && isCjk(lowerText.charAt(i))) {
+                    i++;
+                }
+                addCjkTokens(lowerText, start, i, forIndex, tokens);
+            } else if (Character.isLetterOrDigit(c)) {
+                int start = i;
+                while (i < length && Character.isLetterOrDigit(lowerText.charAt(i)) && !isCjk(lowerText.charAt(i))) {
+                    i++;
+                }
+                addWordTokens(lowerText.substring(start, i), forIndex, tokens);
+            } else {
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    private static void addCjkTokens(String text, int start, int end, boolean forIndex, Set<String> tokens) {
+        if (end - start == 1) {
+            tokens.add(text.substring(start, end));
+            return;
+        }
+        for (int i = start; i < end; i++) {
+            if (forIndex) {
+                tokens.add(text.substring(i, i + 1));
+            }
+            if (i + 1 < end) {
+                tokens.add(text.substring(i, i + 2));
+            }
+        }
+    }
+
+    private static void addWordTokens(String word, boolean forIndex, Set<String> tokens) {
+        tokens.add(word);
+        if (!forIndex) {
+            return;
+        }
+        int maxLength = Math.min(word.length() - 1, MAX_PREFIX_LENGTH);
+        for (int i = MIN_PREFIX_LENGTH; i <= maxLength; i++) {
+            tokens.add(word.substring(0, i));
+        }
+    }
+
+    private static boolean isCjk(char c) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(c);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+}
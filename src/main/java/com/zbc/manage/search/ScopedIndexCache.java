@@ -0,0 +1,98 @@
+package com.zbc.manage.search;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 按范围(公共图库或单个空间)懒加载的内存索引缓存
+ * <p>
+ * 范围在首次查询时从数据库加载, 之后由图片变更事件增量维护。
+ * 加载后超过一定时间重新加载(即使一直被访问), 兜底修正漏掉的跨节点变更。
+ * 每次变更递增全局序号, 加载开始前记录当前序号; 变更到达时该范围不在缓存中(可能正在加载)则记下序号,
+ * 查询时发现索引加载开始于这次变更之前, 说明加载结果可能不包含这次变更, 丢弃并重新加载。
+ *
+ * @param <T> 索引类型, 需自行保证线程安全
+ */
+class ScopedIndexCache<T> {
+
+    /**
+     * 变更序号
+     */
+    private final AtomicLong changeSequence = new AtomicLong();
+
+    /**
+     * key: 范围, value: 该范围的索引
+     */
+    private final LoadingCache<Long, LoadedIndex<T>> indexCache;
+
+    /**
+     * key: 范围, value: 未能应用到索引上的最新变更序号
+     */
+    private final Cache<Long, Long> missedChangeCache;
+
+    /**
+     * @param maxScopes     最多同时驻留内存的范围数量
+     * @param expireMinutes 范围索引未被访问多久后淘汰(分钟)
+     * @param reloadMinutes 范围索引加载多久后重新加载(分钟)
+     * @param loader        从数据库加载范围索引
+     */
+    ScopedIndexCache(long maxScopes, long expireMinutes, long reloadMinutes, Function<Long, T> loader) {
+        indexCache = Caffeine.newBuilder()
+                .maximumSize(maxScopes)
+                .expireAfterAccess(expireMinutes, TimeUnit.MINUTES)
+                .expireAfterWrite(reloadMinutes, TimeUnit.MINUTES)
+                .build(scopeKey -> {
+                    // 先取序号再查询, 之后提交的变更都会被记录或直接应用
+                    long sequence = changeSequence.get();
+                    return new LoadedIndex<>(loader.apply(scopeKey), sequence);
+                });
+        // 超过重新加载时间的记录已经没有意义
+        missedChangeCache = Caffeine.newBuilder()
+                .maximumSize(maxScopes)
+                .expireAfterWrite(reloadMinutes, TimeUnit.MINUTES)
+                .build();
+    }
+
+    /**
+     * 获取范围索引, 不存在时加载
+     */
+    T get(Long scopeKey) {
+        LoadedIndex<T> loadedIndex = indexCache.get(scopeKey);
+        Long missedSequence = missedChangeCache.getIfPresent(scopeKey);
+        if (missedSequence != null && missedSequence > loadedIndex.getSequence()) {
+            indexCache.asMap().remove(scopeKey, loadedIndex);
+            loadedIndex = indexCache.get(scopeKey);
+        }
+        return loadedIndex.getIndex();
+    }
+
+    /**
+     * 将变更应用到已加载的范围索引
+     */
+    void applyChange(Long scopeKey, Consumer<T> action) {
+        long sequence = changeSequence.incrementAndGet();
+        LoadedIndex<T> loadedIndex = indexCache.getIfPresent(scopeKey);
+        if (loadedIndex != null) {
+            action.accept(loadedIndex.getIndex());
+        } else {
+            missedChangeCache.asMap().merge(scopeKey, sequence, Math::max);
+        }
+    }
+
+    @lombok.Value
+    private static class LoadedIndex<T> {
+
+        T index;
+
+        /**
+         * 开始加载时的变更序号
+         */
+        long sequence;
+    }
+}
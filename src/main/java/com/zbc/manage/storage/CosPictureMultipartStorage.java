@@ -0,0 +1,47 @@
+package com.zbc.manage.storage;
+
+import com.qcloud.cos.model.PartETag;
+import com.qcloud.cos.model.ciModel.persistence.CIUploadResult;
+import com.zbc.manage.CosManage;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * COS 分片上传(默认)
+ */
+@Component
+@ConditionalOnProperty(name = "picture.multipart.storage", havingValue = "cos", matchIfMissing = true)
+public class CosPictureMultipartStorage implements PictureMultipartStorage {
+
+    @Resource
+    private CosManage cosManage;
+
+    @Override
+    public String initiate(String key, String contentType) {
+        return cosManage.initiateMultipartUpload(key, contentType);
+    }
+
+    @Override
+    public String uploadPart(String key, String uploadId, int partNumber, InputStream inputStream, long partSize) {
+        return cosManage.uploadPart(key, uploadId, partNumber, inputStream, partSize);
+    }
+
+    @Override
+    public CIUploadResult complete(String key, String uploadId, List<PartETag> partETagList, long contentLength) {
+        return cosManage.completePictureMultipartUpload(key, uploadId, partETagList, contentLength);
+    }
+
+    @Override
+    public InputStream openObject(String key) {
+        return cosManage.getObject(key).getObjectContent();
+    }
+
+    @Override
+    public void abort(String key, String uploadId) {
+        cosManage.abortMultipartUpload(key, uploadId);
+    }
+}
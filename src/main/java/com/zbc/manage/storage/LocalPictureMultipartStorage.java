@@ -0,0 +1,153 @@
+package com.zbc.manage.storage;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.IoUtil;
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.digest.DigestUtil;
+import com.qcloud.cos.model.PartETag;
+import com.qcloud.cos.model.ciModel.persistence.*;
+import com.zbc.exception.BusinessException;
+import com.zbc.exception.ErrorCode;
+import com.zbc.utils.ThrowUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 本地磁盘分片上传(开发与测试环境替代 COS)
+ * <p>
+ * 分片保存在 parts/{uploadId}/{partNumber}, 合并后写入 objects/{key}; 图片处理只返回原图信息, 不生成压缩图与缩略图。
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "picture.multipart.storage", havingValue = "local")
+public class LocalPictureMultipartStorage implements PictureMultipartStorage {
+
+    /**
+     * 存储根目录, 为空时使用系统临时目录
+     */
+    @Value("${picture.multipart.local-dir:}")
+    private String localDir;
+
+    private File rootDir;
+
+    @PostConstruct
+    public void init() {
+        rootDir = FileUtil.mkdir(StrUtil.isBlank(localDir) ? FileUtil.getTmpDirPath() + "/picture-multipart" : localDir);
+    }
+
+    @Override
+    public String initiate(String key, String contentType) {
+        String uploadId = IdUtil.fastSimpleUUID();
+        FileUtil.mkdir(getPartDir(uploadId));
+        return uploadId;
+    }
+
+    @Override
+    public String uploadPart(String key, String uploadId, int partNumber, InputStream inputStream, long partSize) {
+        File partDir = getPartDir(uploadId);
+        ThrowUtils.throwIf(!partDir.isDirectory(), ErrorCode.NOT_FOUND_ERROR, "分片上传不存在");
+        File partFile = new File(partDir, String.valueOf(partNumber));
+        try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(partFile))) {
+            IoUtil.copy(inputStream, outputStream);
+        } catch (IOException e) {
+            log.error("分片写入失败, uploadId = {}, partNumber = {}", uploadId, partNumber, e);
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "分片上传失败");
+        }
+        return DigestUtil.md5Hex(partFile);
+    }
+
+    @Override
+    public CIUploadResult complete(String key, String uploadId, List<PartETag> partETagList, long contentLength) {
+        File partDir = getPartDir(uploadId);
+        ThrowUtils.throwIf(!partDir.isDirectory(), ErrorCode.NOT_FOUND_ERROR, "分片上传不存在");
+        File objectFile = FileUtil.touch(getObjectFile(key));
+        try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(objectFile))) {
+            for (PartETag partETag : partETagList) {
+                FileUtil.writeToStream(new File(partDir, String.valueOf(partETag.getPartNumber())), outputStream);
+            }
+        } catch (IOException e) {
+            log.error("分片合并失败, uploadId = {}", uploadId, e);
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "分片合并失败");
+        }
+        FileUtil.del(partDir);
+        return buildCiUploadResult(key, objectFile);
+    }
+
+    @Override
+    public InputStream openObject(String key) {
+        File objectFile = getObjectFile(key);
+        ThrowUtils.throwIf(!objectFile.isFile(), ErrorCode.NOT_FOUND_ERROR, "对象不存在");
+        return FileUtil.getInputStream(objectFile);
+    }
+
+    @Override
+    public void abort(String key, String uploadId) {
+        FileUtil.del(getPartDir(uploadId));
+    }
+
+    private File getPartDir(String uploadId) {
+        return new File(rootDir, "parts/" + uploadId);
+    }
+
+    private File getObjectFile(String key) {
+        return new File(rootDir, "objects/" + StrUtil.removePrefix(key, "/"));
+    }
+
+    /**
+     * 读取合并后的图片, 模拟 COS 返回的原图信息
+     */
+    private static CIUploadResult buildCiUploadResult(String key, File objectFile) {
+        BufferedImage image;
+        try {
+            image = ImageIO.read(objectFile);
+        } catch (IOException e) {
+            image = null;
+        }
+        if (image == null) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, "图片格式无法解析");
+        }
+        ImageInfo imageInfo = new ImageInfo();
+        imageInfo.setWidth(image.getWidth());
+        imageInfo.setHeight(image.getHeight());
+        imageInfo.setFormat(FileUtil.getSuffix(key));
+        imageInfo.setAve(averageColor(image));
+        OriginalInfo originalInfo = new OriginalInfo();
+        originalInfo.setKey(key);
+        originalInfo.setImageInfo(imageInfo);
+        ProcessResults processResults = new ProcessResults();
+        processResults.setObjectList(new ArrayList<>());
+        CIUploadResult ciUploadResult = new CIUploadResult();
+        ciUploadResult.setOriginalInfo(originalInfo);
+        ciUploadResult.setProcessResults(processResults);
+        return ciUploadResult;
+    }
+
+    /**
+     * 主色调(平均色), 格式与 COS 一致: 0xRRGGBB
+     */
+    private static String averageColor(BufferedImage image) {
+        // 按步长采样, 大图不需要遍历所有像素
+        int step = Math.max(1, Math.max(image.getWidth(), image.getHeight()) / 256);
+        long red = 0, green = 0, blue = 0, count = 0;
+        for (int y = 0; y < image.getHeight(); y += step) {
+            for (int x = 0; x < image.getWidth(); x += step) {
+                int rgb = image.getRGB(x, y);
+                red += (rgb >> 16) & 0xff;
+                green += (rgb >> 8) & 0xff;
+                blue += rgb & 0xff;
+                count++;
+            }
+        }
+        return String.format("0x%02x%02x%02x", red / count, green / count, blue / count);
+    }
+}
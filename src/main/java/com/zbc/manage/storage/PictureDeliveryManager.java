@@ -0,0 +1,320 @@
+package com.zbc.manage.storage;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.IoUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.SecureUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.qcloud.cos.model.COSObject;
+import com.zbc.exception.BusinessException;
+import com.zbc.exception.ErrorCode;
+import com.zbc.manage.CosManage;
+import com.zbc.manage.cache.DiskLruCache;
+import com.zbc.manage.image.ImageProcessor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 图片分发: 支持 Range(单个范围)、ETag 与 If-None-Match(304)
+ * <p>
+ * 对象键包含随机串且内容不会被改写(重新处理生成的内容相同), 因此 ETag 直接由对象键得出, 协商缓存命中时不访问存储。
+ * 公共图库中短时间内多次访问的图片进入本地磁盘热点缓存(有总大小上限, LRU 淘汰), 之后从本地文件以 FileChannel.transferTo 输出;
+ * 其余请求从 COS 读取(Range 直接交给 COS), 以固定大小的缓冲区转发, 内存占用与文件大小无关。
+ */
+@Slf4j
+@Component
+public class PictureDeliveryManager {
+
+    @Resource
+    private CosManage cosManage;
+
+    /**
+     * 转发 COS 内容时的缓冲区大小(字节)
+     */
+    @Value("${picture.delivery.buffer-size:8192}")
+    private int bufferSize;
+
+    /**
+     * 热点缓存目录, 为空时使用系统临时目录
+     */
+    @Value("${picture.delivery.cache-dir:}")
+    private String cacheDir;
+
+    /**
+     * 热点缓存总大小上限(字节)
+     */
+    @Value("${picture.delivery.cache-max-bytes:2147483648}")
+    private long cacheMaxBytes;
+
+    /**
+     * 统计周期内访问达到该次数才进入热点缓存
+     */
+    @Value("${picture.delivery.admit-hits:2}")
+    private int admitHits;
+
+    /**
+     * 访问次数统计周期(分钟)
+     */
+    @Value("${picture.delivery.hit-window-minutes:10}")
+    private long hitWindowMinutes;
+
+    /**
+     * 浏览器缓存时间(秒)
+     */
+    @Value("${picture.delivery.max-age-seconds:86400}")
+    private long maxAgeSeconds;
+
+    private DiskLruCache hotCache;
+
+    /**
+     * key: 对象键, value: 统计周期内的访问次数
+     */
+    private Cache<String, AtomicInteger> hitCountCache;
+
+    /**
+     * key: 对象键, value: 文件大小, 减少处理 Range 请求时的元信息查询
+     */
+    private Cache<String, Long> contentLengthCache;
+
+    @PostConstruct
+    public void init() {
+        File directory = StrUtil.isBlank(cacheDir)
+                ? new File(System.getProperty("java.io.tmpdir"), "picture-delivery")
+                : new File(cacheDir);
+        hotCache = new DiskLruCache(directory, cacheMaxBytes);
+        hitCountCache = Caffeine.newBuilder()
+                .maximumSize(100_000)
+                .expireAfterWrite(hitWindowMinutes, TimeUnit.MINUTES)
+                .build();
+        contentLengthCache = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(10, TimeUnit.MINUTES)
+                .build();
+    }
+
+    /**
+     * 输出对象内容
+     *
+     * @param key       对象键
+     * @param cacheable 是否允许进入热点缓存(公共图库)
+     * @param request   请求
+     * @param response  响应
+     */
+    public void serve(String key, boolean cacheable, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        // 1. 协商缓存
+        String eTag = "\"" + SecureUtil.md5(key) + "\"";
+        response.setHeader("ETag", eTag);
+        response.setHeader("Accept-Ranges", "bytes");
+        response.setHeader("Cache-Control", (cacheable ? "public" : "private") + ", max-age=" + maxAgeSeconds);
+        if (matchesETag(request.getHeader("If-None-Match"), eTag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        response.setContentType(ImageProcessor.getContentType(StrUtil.blankToDefault(FileUtil.getSuffix(key), "jpg").toLowerCase()));
+        String rangeHeader = resolveRange(request.getHeader("Range"), request.getHeader("If-Range"), eTag);
+        // 2. 热点缓存
+        String cacheKey = SecureUtil.md5(key);
+        File file = hotCache.get(cacheKey);
+        if (file == null && cacheable && isHot(key)) {
+            file = loadToCache(key, cacheKey);
+        }
+        if (file != null) {
+            serveFile(file, rangeHeader, response);
+            return;
+        }
+        // 3. 从 COS 读取
+        serveObject(key, rangeHeader, response);
+    }
+
+    /**
+     * 从本地文件输出, 使用 FileChannel.transferTo
+     */
+    private void serveFile(File file, String rangeHeader, HttpServletResponse response) throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long length = fileChannel.size();
+            long[] range = parseRange(rangeHeader, length);
+            if (range != null && range.length == 0) {
+                sendRangeNotSatisfiable(length, response);
+                return;
+            }
+            long start = range == null ? 0 : range[0];
+            long count = range == null ? length : range[1] - range[0] + 1;
+            writeHeaders(range, length, response);
+            OutputStream outputStream = response.getOutputStream();
+            WritableByteChannel outputChannel = Channels.newChannel(outputStream);
+            while (count > 0) {
+                long transferred = fileChannel.transferTo(start, count, outputChannel);
+                if (transferred <= 0) {
+                    break;
+                }
+                start += transferred;
+                count -= transferred;
+            }
+            outputStream.flush();
+        }
+    }
+
+    /**
+     * 从 COS 输出, 以固定大小的缓冲区转发
+     */
+    private void serveObject(String key, String rangeHeader, HttpServletResponse response) throws IOException {
+        long[] range = null;
+        long length = -1;
+        if (rangeHeader != null) {
+            length = getContentLength(key);
+            range = parseRange(rangeHeader, length);
+            if (range != null && range.length == 0) {
+                sendRangeNotSatisfiable(length, response);
+                return;
+            }
+        }
+        try (COSObject cosObject = range == null ? cosManage.getObject(key) : cosManage.getObject(key, range[0], range[1]);
+             InputStream inputStream = cosObject.getObjectContent()) {
+            if (range == null) {
+                length = cosObject.getObjectMetadata().getContentLength();
+            }
+            writeHeaders(range, length, response);
+            OutputStream outputStream = response.getOutputStream();
+            IoUtil.copy(inputStream, outputStream, bufferSize);
+            outputStream.flush();
+        }
+    }
+
+    /**
+     * 统计访问次数, 判断是否为热点对象
+     */
+    private boolean isHot(String key) {
+        AtomicInteger hitCount = hitCountCache.get(key, k -> new AtomicInteger());
+        return hitCount.incrementAndGet() >= admitHits;
+    }
+
+    /**
+     * 下载对象到热点缓存, 失败时返回 null(改为直接从 COS 读取)
+     */
+    private File loadToCache(String key, String cacheKey) {
+        try (COSObject cosObject = cosManage.getObject(key);
+             InputStream inputStream = cosObject.getObjectContent()) {
+            File file = hotCache.put(cacheKey, inputStream);
+            hitCountCache.invalidate(key);
+            return file;
+        } catch (Exception e) {
+            log.warn("写入热点缓存失败: {}", key, e);
+            return null;
+        }
+    }
+
+    private long getContentLength(String key) {
+        Long length = contentLengthCache.get(key, k -> cosManage.getObjectMetadata(k).getContentLength());
+        if (length == null) {
+            throw new BusinessException(ErrorCode.NOT_FOUND_ERROR);
+        }
+        return length;
+    }
+
+    private static void writeHeaders(long[] range, long length, HttpServletResponse response) {
+        if (range == null) {
+            response.setContentLengthLong(length);
+            return;
+        }
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setHeader("Content-Range", String.format("bytes %d-%d/%d", range[0], range[1], length));
+        response.setContentLengthLong(range[1] - range[0] + 1);
+    }
+
+    private static void sendRangeNotSatisfiable(long length, HttpServletResponse response) {
+        response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+        response.setHeader("Content-Range", "bytes */" + length);
+    }
+
+    /**
+     * If-Range 与当前版本不一致时忽略 Range, 返回完整内容
+     *
+     * @return 生效的 Range 请求头, 忽略时返回 null
+     */
+    static String resolveRange(String rangeHeader, String ifRange, String eTag) {
+        if (ifRange != null && !ifRange.equals(eTag)) {
+            return null;
+        }
+        return rangeHeader;
+    }
+
+    /**
+     * If-None-Match 是否包含当前 ETag(支持 * 与多个值, 忽略弱校验前缀)
+     */
+    static boolean matchesETag(String ifNoneMatch, String eTag) {
+        if (StrUtil.isBlank(ifNoneMatch)) {
+            return false;
+        }
+        for (String value : ifNoneMatch.split(",")) {
+            String candidate = StrUtil.removePrefix(value.trim(), "W/");
+            if ("*".equals(candidate) || eTag.equals(candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 解析 Range 请求头, 只支持单个范围
+     *
+     * @param rangeHeader Range 请求头
+     * @param length      文件大小
+     * @return [起始位置, 结束位置](包含); 没有或不支持(多个范围、格式错误)时返回 null, 表示返回完整内容; 无法满足时返回空数组
+     */
+    static long[] parseRange(String rangeHeader, long length) {
+        if (StrUtil.isBlank(rangeHeader) || !rangeHeader.startsWith("bytes=") || rangeHeader.contains(",")) {
+            return null;
+        }
+        String spec = rangeHeader.substring("bytes=".length()).trim();
+        int index = spec.indexOf('-');
+        if (index < 0) {
+            return null;
+        }
+        String startText = spec.substring(0, index).trim();
+        String endText = spec.substring(index + 1).trim();
+        long start;
+        long end;
+        try {
+            if (startText.isEmpty()) {
+                // 后缀范围: 最后 n 个字节
+                long suffixLength = Long.parseLong(endText);
+                if (suffixLength <= 0) {
+                    return new long[0];
+                }
+                start = Math.max(0, length - suffixLength);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(startText);
+                end = endText.isEmpty() ? Long.MAX_VALUE : Long.parseLong(endText);
+                if (end < start) {
+                    // 格式错误, 忽略
+                    return null;
+                }
+                end = Math.min(end, length - 1);
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (start < 0 || start > end || start >= length) {
+            return new long[0];
+        }
+        return new long[]{start, end};
+    }
+}
@@ -0,0 +1,63 @@
+package com.zbc.manage.storage;
+
+import com.qcloud.cos.model.PartETag;
+import com.qcloud.cos.model.ciModel.persistence.CIUploadResult;
+
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * 图片分片上传的对象存储
+ * <p>
+ * 默认实现为 COS 分片上传; 本地实现将分片写入磁盘, 用于开发与测试环境替代 COS。
+ */
+public interface PictureMultipartStorage {
+
+    /**
+     * 初始化分片上传
+     *
+     * @param key         对象键
+     * @param contentType 内容类型
+     * @return 存储侧的分片上传 id
+     */
+    String initiate(String key, String contentType);
+
+    /**
+     * 上传分片, 同一分片重复上传时覆盖
+     *
+     * @param key         对象键
+     * @param uploadId    存储侧的分片上传 id
+     * @param partNumber  分片序号(从 1 开始)
+     * @param inputStream 分片内容(由调用方关闭)
+     * @param partSize    分片大小
+     * @return 分片 ETag
+     */
+    String uploadPart(String key, String uploadId, int partNumber, InputStream inputStream, long partSize);
+
+    /**
+     * 合并分片并处理图片
+     *
+     * @param key           对象键
+     * @param uploadId      存储侧的分片上传 id
+     * @param partETagList  所有分片(按序号升序)
+     * @param contentLength 文件大小
+     * @return 图片处理结果(原图信息、压缩图、缩略图)
+     */
+    CIUploadResult complete(String key, String uploadId, List<PartETag> partETagList, long contentLength);
+
+    /**
+     * 读取合并后的对象(计算内容哈希)
+     *
+     * @param key 对象键
+     * @return 对象内容(由调用方关闭)
+     */
+    InputStream openObject(String key);
+
+    /**
+     * 取消分片上传, 清理已上传的分片
+     *
+     * @param key      对象键
+     * @param uploadId 存储侧的分片上传 id
+     */
+    void abort(String key, String uploadId);
+}
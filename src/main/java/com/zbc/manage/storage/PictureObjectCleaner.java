@@ -0,0 +1,362 @@
+package com.zbc.manage.storage;
+
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
+import com.qcloud.cos.model.COSObjectSummary;
+import com.qcloud.cos.model.ObjectListing;
+import com.zbc.config.CosClientConfig;
+import com.zbc.domain.pojo.Picture;
+import com.zbc.domain.pojo.PictureFile;
+import com.zbc.domain.pojo.PicturePendingDelete;
+import com.zbc.manage.CosManage;
+import com.zbc.mapper.PictureFileMapper;
+import com.zbc.mapper.PictureMapper;
+import com.zbc.service.PicturePendingDeleteService;
+import com.zbc.utils.ObjectKeyUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.time.Duration;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * 存储对象清理
+ * <p>
+ * 删除图片时只在同一事务中登记待删除对象(picture_pending_delete), 由本组件定时批量删除(DeleteObjects, 每批最多 1000 个),
+ * 失败的对象按指数退避重试, 直到删除成功为止; 删除前复查对象是否仍被图片或文件记录引用, 仍被引用的不删除。
+ * 另外可以定期扫描存储前缀, 将超过保护期且没有被图片或文件记录引用的对象登记为待删除, 兜底清理遗漏的对象。
+ * 扫描按地址的路径部分判断引用(与域名、协议无关), 默认关闭, 开启后默认只记录日志(试运行)。
+ * 多实例部署时通过 redis 锁保证同一时间只有一个实例执行。
+ */
+@Slf4j
+@Component
+public class PictureObjectCleaner {
+
+    private static final String DELETE_LOCK_KEY = "picture:cleanup:delete:lock";
+
+    private static final String SWEEP_LOCK_KEY = "picture:cleanup:sweep:lock";
+
+    /**
+     * 单次批量删除的最大数量(COS 限制)
+     */
+    private static final int DELETE_BATCH_SIZE = 1000;
+
+    /**
+     * 加载引用时每批读取的记录数
+     */
+    private static final int REFERENCE_LOAD_BATCH_SIZE = 1000;
+
+    /**
+     * 试运行时日志中最多列出的对象数量
+     */
+    private static final int DRY_RUN_LOG_LIMIT = 100;
+
+    /**
+     * 值相同时才删除锁, 避免删除其他实例的锁
+     */
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end", Long.class);
+
+    @Resource
+    private CosManage cosManage;
+    @Resource
+    private CosClientConfig cosClientConfig;
+    @Resource
+    private PicturePendingDeleteService picturePendingDeleteService;
+    @Resource
+    private PictureMapper pictureMapper;
+    @Resource
+    private PictureFileMapper pictureFileMapper;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 每次执行最多删除的批数
+     */
+    @Value("${picture.cleanup.max-batches:10}")
+    private int maxBatches;
+
+    /**
+     * 首次重试间隔(秒), 之后每次翻倍
+     */
+    @Value("${picture.cleanup.retry-base-seconds:30}")
+    private long retryBaseSeconds;
+
+    /**
+     * 最大重试间隔(秒)
+     */
+    @Value("${picture.cleanup.retry-max-seconds:21600}")
+    private long retryMaxSeconds;
+
+    /**
+     * 是否扫描无引用的对象
+     */
+    @Value("${picture.cleanup.sweep-enabled:false}")
+    private boolean sweepEnabled;
+
+    /**
+     * 扫描是否只记录无引用的对象, 不登记删除
+     */
+    @Value("${picture.cleanup.sweep-dry-run:true}")
+    private boolean sweepDryRun;
+
+    /**
+     * 扫描的存储前缀
+     */
+    @Value("${picture.cleanup.sweep-prefixes:public/,space/}")
+    private String[] sweepPrefixes;
+
+    /**
+     * 保护期(小时), 最后修改时间在保护期内的对象不扫描(可能正在上传、尚未入库)
+     */
+    @Value("${picture.cleanup.sweep-min-age-hours:24}")
+    private long sweepMinAgeHours;
+
+    /**
+     * 删除到期的待删除对象
+     */
+    @Scheduled(initialDelayString = "${picture.cleanup.delete-interval-millis:10000}",
+            fixedDelayString = "${picture.cleanup.delete-interval-millis:10000}")
+    public void deletePendingObjects() {
+        String token = tryLock(DELETE_LOCK_KEY, Duration.ofMinutes(5));
+        if (token == null) {
+            return;
+        }
+        try {
+            for (int i = 0; i < maxBatches; i++) {
+                List<PicturePendingDelete> pendingDeleteList = picturePendingDeleteService.listDue(DELETE_BATCH_SIZE);
+                if (pendingDeleteList.isEmpty()) {
+                    return;
+                }
+                deleteBatch(pendingDeleteList);
+                if (pendingDeleteList.size() < DELETE_BATCH_SIZE) {
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            log.error("删除存储对象失败", e);
+        } finally {
+            unlock(DELETE_LOCK_KEY, token);
+        }
+    }
+
+    /**
+     * 扫描没有引用的对象
+     */
+    @Scheduled(cron = "${picture.cleanup.sweep-cron:0 0 4 * * ?}")
+    public void sweepOrphanObjects() {
+        if (!sweepEnabled) {
+            return;
+        }
+        String token = tryLock(SWEEP_LOCK_KEY, Duration.ofHours(6));
+        if (token == null) {
+            return;
+        }
+        try {
+            // 先加载引用再列举对象: 加载之后才入库的图片只会引用保护期内的新对象或文件记录已引用的对象
+            Set<String> referencedKeySet = loadReferencedKeys();
+            long orphanCount = 0;
+            for (String prefix : sweepPrefixes) {
+                orphanCount += sweepPrefix(prefix.trim(), referencedKeySet);
+            }
+            log.info("扫描无引用的存储对象完成, {} {} 个", sweepDryRun ? "试运行, 发现" : "登记待删除", orphanCount);
+        } catch (Exception e) {
+            log.error("扫描无引用的存储对象失败", e);
+        } finally {
+            unlock(SWEEP_LOCK_KEY, token);
+        }
+    }
+
+    private void deleteBatch(List<PicturePendingDelete> pendingDeleteList) {
+        // 复查引用: 仍被图片或文件记录引用的对象(登记后又被引用、登记有误)不删除, 直接移出队列
+        Set<String> referencedKeySet = getReferencedKeys(pendingDeleteList.stream()
+                .map(PicturePendingDelete::getObjectKey)
+                .collect(Collectors.toList()));
+        if (!referencedKeySet.isEmpty()) {
+            List<Long> referencedIdList = new ArrayList<>();
+            List<PicturePendingDelete> unreferencedList = new ArrayList<>();
+            for (PicturePendingDelete pendingDelete : pendingDeleteList) {
+                if (referencedKeySet.contains(pendingDelete.getObjectKey())) {
+                    referencedIdList.add(pendingDelete.getId());
+                    log.warn("待删除对象仍被引用, 不删除: {}", pendingDelete.getObjectKey());
+                } else {
+                    unreferencedList.add(pendingDelete);
+                }
+            }
+            picturePendingDeleteService.removeByIds(referencedIdList);
+            pendingDeleteList = unreferencedList;
+            if (pendingDeleteList.isEmpty()) {
+                return;
+            }
+        }
+        List<String> keyList = pendingDeleteList.stream().map(PicturePendingDelete::getObjectKey).collect(Collectors.toList());
+        Map<String, String> failedMap;
+        try {
+            failedMap = cosManage.deleteObjects(keyList);
+        } catch (Exception e) {
+            // 整批失败
+            failedMap = new HashMap<>();
+            for (String key : keyList) {
+                failedMap.put(key, e.getMessage());
+            }
+        }
+        List<Long> deletedIdList = new ArrayList<>();
+        for (PicturePendingDelete pendingDelete : pendingDeleteList) {
+            String error = failedMap.get(pendingDelete.getObjectKey());
+            if (error == null) {
+                deletedIdList.add(pendingDelete.getId());
+                continue;
+            }
+            // 指数退避
+            int attempts = pendingDelete.getAttempts() + 1;
+            long delaySeconds = Math.min(retryMaxSeconds, retryBaseSeconds << Math.min(attempts - 1, 20));
+            picturePendingDeleteService.update(new UpdateWrapper<PicturePendingDelete>()
+                    .eq("id", pendingDelete.getId())
+                    .set("attempts", attempts)
+                    .set("nextAttemptTime", new Date(System.currentTimeMillis() + delaySeconds * 1000))
+                    .set("lastError", StrUtil.subPre(StrUtil.blankToDefault(error, "未知错误"), 512)));
+            log.warn("删除存储对象失败, 第 {} 次: {}, {}", attempts, pendingDelete.getObjectKey(), error);
+        }
+        if (!deletedIdList.isEmpty()) {
+            picturePendingDeleteService.removeByIds(deletedIdList);
+        }
+    }
+
+    /**
+     * 扫描一个前缀
+     *
+     * @param referencedKeySet 被引用的对象键
+     * @return 无引用的对象数量
+     */
+    private long sweepPrefix(String prefix, Set<String> referencedKeySet) {
+        long orphanCount = 0;
+        Date threshold = new Date(System.currentTimeMillis() - sweepMinAgeHours * 3600 * 1000);
+        String marker = null;
+        ObjectListing objectListing;
+        do {
+            objectListing = cosManage.listObjects(prefix, marker, DELETE_BATCH_SIZE);
+            List<String> orphanKeyList = objectListing.getObjectSummaries().stream()
+                    .filter(summary -> summary.getLastModified() != null && summary.getLastModified().before(threshold))
+                    .map(COSObjectSummary::getKey)
+                    .filter(key -> !referencedKeySet.contains(ObjectKeyUtils.toObjectKey(key)))
+                    .collect(Collectors.toList());
+            if (sweepDryRun) {
+                long logLimit = Math.max(0, DRY_RUN_LOG_LIMIT - orphanCount);
+                orphanKeyList.stream().limit(logLimit).forEach(key -> log.info("试运行, 无引用的对象: {}", key));
+            } else {
+                picturePendingDeleteService.enqueue(orphanKeyList);
+            }
+            orphanCount += orphanKeyList.size();
+            marker = objectListing.getNextMarker();
+        } while (objectListing.isTruncated());
+        return orphanCount;
+    }
+
+    /**
+     * 加载所有被图片或文件记录引用的对象键(按 id 分批读取)
+     */
+    private Set<String> loadReferencedKeys() {
+        Set<String> referencedKeySet = new HashSet<>();
+        long lastId = 0;
+        List<Picture> pictureList;
+        do {
+            pictureList = pictureMapper.selectList(new QueryWrapper<Picture>()
+                    .select("id", "url", "thumbnailUrl")
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("limit " + REFERENCE_LOAD_BATCH_SIZE));
+            for (Picture picture : pictureList) {
+                addReferencedKey(picture.getUrl(), referencedKeySet);
+                addReferencedKey(picture.getThumbnailUrl(), referencedKeySet);
+                lastId = picture.getId();
+            }
+        } while (pictureList.size() == REFERENCE_LOAD_BATCH_SIZE);
+        lastId = 0;
+        List<PictureFile> pictureFileList;
+        do {
+            pictureFileList = pictureFileMapper.selectList(new QueryWrapper<PictureFile>()
+                    .select("id", "url", "thumbnailUrl")
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("limit " + REFERENCE_LOAD_BATCH_SIZE));
+            for (PictureFile pictureFile : pictureFileList) {
+                addReferencedKey(pictureFile.getUrl(), referencedKeySet);
+                addReferencedKey(pictureFile.getThumbnailUrl(), referencedKeySet);
+                lastId = pictureFile.getId();
+            }
+        } while (pictureFileList.size() == REFERENCE_LOAD_BATCH_SIZE);
+        return referencedKeySet;
+    }
+
+    /**
+     * 查询被图片或文件记录引用的对象(删除前复查)
+     * <p>
+     * 按当前访问域名拼接地址查询(走索引), 再按路径部分比较; 待删除对象都是由本服务登记的, 地址使用当前访问域名。
+     *
+     * @param keyList 对象键(不以 / 开头)
+     */
+    private Set<String> getReferencedKeys(List<String> keyList) {
+        // 历史数据中地址的路径部分可能以一个或两个 / 开头
+        Set<String> urlSet = new HashSet<>();
+        for (String key : keyList) {
+            urlSet.add(cosClientConfig.getHost() + "/" + key);
+            urlSet.add(cosClientConfig.getHost() + "//" + key);
+        }
+        Set<String> pathKeySet = new HashSet<>();
+        List<Picture> pictureList = pictureMapper.selectList(new QueryWrapper<Picture>()
+                .select("url", "thumbnailUrl")
+                .and(qw -> qw.in("url", urlSet).or().in("thumbnailUrl", urlSet)));
+        for (Picture picture : pictureList) {
+            addReferencedKey(picture.getUrl(), pathKeySet);
+            addReferencedKey(picture.getThumbnailUrl(), pathKeySet);
+        }
+        List<PictureFile> pictureFileList = pictureFileMapper.selectList(new QueryWrapper<PictureFile>()
+                .select("url", "thumbnailUrl")
+                .and(qw -> qw.in("url", urlSet).or().in("thumbnailUrl", urlSet)));
+        for (PictureFile pictureFile : pictureFileList) {
+            addReferencedKey(pictureFile.getUrl(), pathKeySet);
+            addReferencedKey(pictureFile.getThumbnailUrl(), pathKeySet);
+        }
+        Set<String> referencedKeySet = new HashSet<>();
+        for (String key : keyList) {
+            if (pathKeySet.contains(ObjectKeyUtils.toObjectKey(key))) {
+                referencedKeySet.add(key);
+            }
+        }
+        return referencedKeySet;
+    }
+
+    private static void addReferencedKey(String url, Set<String> referencedKeySet) {
+        String key = ObjectKeyUtils.toObjectKey(url);
+        if (key != null) {
+            referencedKeySet.add(key);
+        }
+    }
+
+    /**
+     * 获取锁
+     *
+     * @return 锁的值, 获取失败返回 null
+     */
+    private String tryLock(String lockKey, Duration timeout) {
+        String token = IdUtil.fastSimpleUUID();
+        Boolean locked = stringRedisTemplate.opsForValue().setIfAbsent(lockKey, token, timeout);
+        return Boolean.TRUE.equals(locked) ? token : null;
+    }
+
+    private void unlock(String lockKey, String token) {
+        try {
+            stringRedisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(lockKey), token);
+        } catch (Exception e) {
+            log.warn("释放锁失败: {}", lockKey, e);
+        }
+    }
+}
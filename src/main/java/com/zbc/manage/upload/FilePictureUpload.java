@@ -1,43 +1,54 @@
 package com.zbc.manage.upload;
 
 import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.IoUtil;
 import com.zbc.exception.ErrorCode;
 import com.zbc.utils.ThrowUtils;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.List;
 
+/**
+ * 本地文件上传: 用户上传的文件(MultipartFile)或服务端已读取到缓冲区的内容(PictureUploadBuffer, 批量抓取)
+ */
 @Service
 public class FilePictureUpload extends PictureUploadTemplate {
     @Override
     protected void validPicture(Object inputSource) {
-        MultipartFile multipartFile = (MultipartFile) inputSource;
-        ThrowUtils.throwIf(multipartFile == null, ErrorCode.PARAMS_ERROR, "文件不能为空");
+        ThrowUtils.throwIf(inputSource == null, ErrorCode.PARAMS_ERROR, "文件不能为空");
+        if (inputSource instanceof PictureUploadBuffer) {
+            // 读取时已校验大小并根据文件头识别格式
+            validSize(((PictureUploadBuffer) inputSource).getSize());
+            return;
+        }
         // 文件大小
-        long fileSize = multipartFile.getSize();
-        // 指定文件大小限制
-        final long ONE_M = 1024 * 1024;
-        ThrowUtils.throwIf(fileSize > 2 * ONE_M, ErrorCode.PARAMS_ERROR, "文件大小不能超过2M");
+        validSize(((MultipartFile) inputSource).getSize());
         // 指定文件后缀限制
-        String fileSuffix = FileUtil.getSuffix(multipartFile.getOriginalFilename());
+        String fileSuffix = FileUtil.getSuffix(getOriginalFilename(inputSource));
         final List<String> ALLOW_FORMAT_LIST = Arrays.asList("jpg", "jpeg", "png", "webp");
         ThrowUtils.throwIf(!ALLOW_FORMAT_LIST.contains(fileSuffix), ErrorCode.PARAMS_ERROR, "文件类型错误");
     }
 
     @Override
     protected String getOriginalFilename(Object inputSource) {
+        if (inputSource instanceof PictureUploadBuffer) {
+            return ((PictureUploadBuffer) inputSource).getOriginalFilename();
+        }
         MultipartFile multipartFile = (MultipartFile) inputSource;
         return multipartFile.getOriginalFilename(); // 原始文件
     }
 
     @Override
-    protected void processFile(Object inputSource, File file) throws IOException {
+    protected void processFile(Object inputSource, OutputStream outputStream) throws IOException {
         MultipartFile multipartFile = (MultipartFile) inputSource;
-        multipartFile.transferTo(file);
+        try (InputStream inputStream = multipartFile.getInputStream()) {
+            IoUtil.copy(inputStream, outputStream);
+        }
     }
 
 }
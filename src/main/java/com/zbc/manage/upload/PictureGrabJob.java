@@ -0,0 +1,139 @@
+package com.zbc.manage.upload;
+
+import com.zbc.domain.vo.PictureGrabJobVO;
+import com.zbc.enums.PictureGrabJobStatusEnum;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 批量抓取任务(进度由多个线程并发更新)
+ * <p>
+ * 任务按抓取数量划分为若干槽位, 每个槽位依次从候选队列取图片, 成功即结束, 失败则取下一张补位;
+ * 所有槽位结束后任务完成。进度每次变化时通知监听器(保存到 redis, 任意节点都可以查询)。
+ */
+@Getter
+public class PictureGrabJob {
+
+    private final String jobId;
+
+    private final String searchText;
+
+    private final int count;
+
+    private final Date createTime = new Date();
+
+    /**
+     * 待抓取的候选图片地址
+     */
+    private final Queue<String> candidateQueue = new ConcurrentLinkedQueue<>();
+
+    private final List<Long> pictureIdList = new ArrayList<>();
+
+    private final AtomicInteger failCount = new AtomicInteger();
+
+    /**
+     * 尚未结束的槽位数量
+     */
+    private final AtomicInteger activeSlotCount = new AtomicInteger();
+
+    private volatile int candidateCount;
+
+    private volatile PictureGrabJobStatusEnum status = PictureGrabJobStatusEnum.RUNNING;
+
+    private volatile String errorMessage;
+
+    private volatile Date finishTime;
+
+    @Getter(AccessLevel.NONE)
+    private final Consumer<PictureGrabJob> progressListener;
+
+    public PictureGrabJob(String jobId, String searchText, int count, Consumer<PictureGrabJob> progressListener) {
+        this.jobId = jobId;
+        this.searchText = searchText;
+        this.count = count;
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * 设置候选图片, 返回需要启动的槽位数量
+     */
+    public int start(List<String> candidateList) {
+        candidateQueue.addAll(candidateList);
+        candidateCount = candidateList.size();
+        int slotCount = Math.min(count, candidateCount);
+        activeSlotCount.set(slotCount);
+        if (slotCount == 0) {
+            finish();
+        } else {
+            progressListener.accept(this);
+        }
+        return slotCount;
+    }
+
+    /**
+     * 取下一张候选图片, 没有时返回 null
+     */
+    public String pollCandidate() {
+        return candidateQueue.poll();
+    }
+
+    public void recordSuccess(Long pictureId) {
+        synchronized (pictureIdList) {
+            pictureIdList.add(pictureId);
+        }
+        progressListener.accept(this);
+    }
+
+    public void recordFailure() {
+        failCount.incrementAndGet();
+        progressListener.accept(this);
+    }
+
+    /**
+     * 槽位结束(成功或候选图片已用完)
+     */
+    public void finishSlot() {
+        if (activeSlotCount.decrementAndGet() == 0) {
+            finish();
+        }
+    }
+
+    public void fail(String errorMessage) {
+        this.errorMessage = errorMessage;
+        this.finishTime = new Date();
+        this.status = PictureGrabJobStatusEnum.FAILED;
+        progressListener.accept(this);
+    }
+
+    private void finish() {
+        this.finishTime = new Date();
+        this.status = PictureGrabJobStatusEnum.FINISHED;
+        progressListener.accept(this);
+    }
+
+    public PictureGrabJobVO toVO() {
+        PictureGrabJobVO pictureGrabJobVO = new PictureGrabJobVO();
+        pictureGrabJobVO.setJobId(jobId);
+        pictureGrabJobVO.setStatus(status.getValue());
+        pictureGrabJobVO.setSearchText(searchText);
+        pictureGrabJobVO.setCount(count);
+        pictureGrabJobVO.setCandidateCount(candidateCount);
+        synchronized (pictureIdList) {
+            pictureGrabJobVO.setPictureIdList(new ArrayList<>(pictureIdList));
+        }
+        pictureGrabJobVO.setSuccessCount(pictureGrabJobVO.getPictureIdList().size());
+        pictureGrabJobVO.setFailCount(failCount.get());
+        pictureGrabJobVO.setErrorMessage(errorMessage);
+        pictureGrabJobVO.setCreateTime(createTime);
+        pictureGrabJobVO.setFinishTime(finishTime);
+        return pictureGrabJobVO;
+    }
+}
@@ -0,0 +1,178 @@
+package com.zbc.manage.upload;
+
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.zbc.domain.vo.PictureGrabJobVO;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * 批量抓取任务管理
+ * <p>
+ * 抓取流水线分为两级: 校验 + 下载(访问外部站点, 按域名限制并发, 单张超时), 上传 + 入库(访问 COS 与数据库)。
+ * 每级使用独立的有界线程池, 队列满时由提交线程执行, 形成反压。
+ * 任务在创建它的节点上执行, 进度每次变化时保存到 redis, 任意节点都可以查询, 保留一段时间后过期。
+ */
+@Slf4j
+@Component
+public class PictureGrabJobManager {
+
+    /**
+     * redis 中任务进度的 key 前缀
+     */
+    private static final String JOB_KEY_PREFIX = "picture:grab:job:";
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 下载线程数
+     */
+    @Value("${picture.grab.download-threads:8}")
+    private int downloadThreads;
+
+    /**
+     * 上传入库线程数
+     */
+    @Value("${picture.grab.upload-threads:4}")
+    private int uploadThreads;
+
+    /**
+     * 每个域名同时下载的最大数量
+     */
+    @Value("${picture.grab.max-connections-per-host:2}")
+    private int maxConnectionsPerHost;
+
+    /**
+     * 单张图片校验 + 下载的超时时间(秒), 包含等待域名并发许可的时间
+     */
+    @Value("${picture.grab.item-timeout-seconds:30}")
+    private long itemTimeoutSeconds;
+
+    /**
+     * 任务进度保留时间(分钟), 每次更新进度时续期
+     */
+    @Value("${picture.grab.job-expire-minutes:60}")
+    private long jobExpireMinutes;
+
+    @Getter
+    private ExecutorService downloadExecutor;
+
+    @Getter
+    private ExecutorService uploadExecutor;
+
+    private ScheduledExecutorService timeoutScheduler;
+
+    /**
+     * key: 域名, value: 该域名的并发许可
+     * 域名来自用户提交的地址, 使用弱引用值: 没有线程持有或等待许可时即可回收, 不会无限增长
+     */
+    private LoadingCache<String, Semaphore> hostPermitCache;
+
+    @PostConstruct
+    public void init() {
+        downloadExecutor = newBoundedExecutor(downloadThreads, "pictureGrabDownload");
+        uploadExecutor = newBoundedExecutor(uploadThreads, "pictureGrabUpload");
+        timeoutScheduler = Executors.newSingleThreadScheduledExecutor(
+                ThreadFactoryBuilder.create().setNamePrefix("pictureGrabTimeout").setDaemon(true).build());
+        hostPermitCache = Caffeine.newBuilder()
+                .weakValues()
+                .build(host -> new Semaphore(maxConnectionsPerHost));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        downloadExecutor.shutdownNow();
+        uploadExecutor.shutdownNow();
+        timeoutScheduler.shutdownNow();
+    }
+
+    /**
+     * 创建任务
+     */
+    public PictureGrabJob createJob(String searchText, int count) {
+        PictureGrabJob job = new PictureGrabJob(IdUtil.fastSimpleUUID(), searchText, count, this::saveProgress);
+        saveProgress(job);
+        return job;
+    }
+
+    /**
+     * 查询任务进度, 不存在或已过期返回 null
+     */
+    public PictureGrabJobVO getJobProgress(String jobId) {
+        String value = stringRedisTemplate.opsForValue().get(JOB_KEY_PREFIX + jobId);
+        if (StrUtil.isBlank(value)) {
+            return null;
+        }
+        return JSONUtil.toBean(value, PictureGrabJobVO.class);
+    }
+
+    /**
+     * 获取域名的并发许可
+     */
+    public Semaphore getHostPermit(String host) {
+        return hostPermitCache.get(host);
+    }
+
+    /**
+     * 保存任务进度, 同一任务串行写入, 避免旧进度覆盖新进度
+     */
+    private void saveProgress(PictureGrabJob job) {
+        synchronized (job) {
+            try {
+                stringRedisTemplate.opsForValue().set(JOB_KEY_PREFIX + job.getJobId(),
+                        JSONUtil.toJsonStr(job.toVO()), jobExpireMinutes, TimeUnit.MINUTES);
+            } catch (Exception e) {
+                // 进度保存失败不影响任务执行, 下次变化时会重新保存
+                log.warn("保存批量抓取任务进度失败, jobId = {}", job.getJobId(), e);
+            }
+        }
+    }
+
+    /**
+     * 在下载线程池中执行, 超时后中断任务并以 TimeoutException 结束
+     *
+     * @param task    任务
+     * @param discard 超时后任务才完成时, 用于清理其结果(如删除已下载的文件)
+     */
+    public <T> CompletableFuture<T> submitDownload(Callable<T> task, Consumer<T> discard) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> future = downloadExecutor.submit(() -> {
+            try {
+                T value = task.call();
+                if (!result.complete(value) && value != null) {
+                    discard.accept(value);
+                }
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        ScheduledFuture<?> timeout = timeoutScheduler.schedule(() -> {
+            if (result.completeExceptionally(new TimeoutException("下载超时"))) {
+                future.cancel(true);
+            }
+        }, itemTimeoutSeconds, TimeUnit.SECONDS);
+        result.whenComplete((value, e) -> timeout.cancel(false));
+        return result;
+    }
+
+    private static ExecutorService newBoundedExecutor(int threads, String namePrefix) {
+        return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(threads * 16),
+                ThreadFactoryBuilder.create().setNamePrefix(namePrefix).build(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+}
@@ -0,0 +1,219 @@
+package com.zbc.manage.upload;
+
+import cn.hutool.core.util.HexUtil;
+import cn.hutool.crypto.digest.DigestAlgorithm;
+import cn.hutool.crypto.digest.DigestUtil;
+import com.zbc.exception.BusinessException;
+import com.zbc.exception.ErrorCode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.InputStreamSource;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * 上传图片的内容缓冲区
+ * <p>
+ * 写入时同步完成: 大小限制、根据文件头(魔数)识别格式、计算 SHA-256。
+ * 内容不超过阈值时只保存在内存中, 超过后才溢出到临时文件, 之后可多次读取(计算感知哈希、上传 COS)。
+ * 关闭时删除临时文件。
+ */
+@Slf4j
+public class PictureUploadBuffer extends OutputStream implements InputStreamSource {
+
+    /**
+     * 识别格式需要的文件头长度
+     */
+    public static final int HEADER_LENGTH = 12;
+
+    private final long maxSize;
+
+    private final int spillThreshold;
+
+    private final MessageDigest messageDigest = DigestUtil.digester(DigestAlgorithm.SHA256).getDigest();
+
+    private final byte[] header = new byte[HEADER_LENGTH];
+
+    /**
+     * 内存缓冲, 溢出后置空
+     */
+    private byte[] memory = new byte[1024];
+
+    private long size;
+
+    private File spillFile;
+
+    private OutputStream spillOutputStream;
+
+    private String format;
+
+    private String fileHash;
+
+    /**
+     * 原始文件名(内容在上传前已读取到缓冲区时, 由读取方设置)
+     */
+    private String originalFilename;
+
+    /**
+     * @param maxSize        最大字节数, 超过时立即中断写入
+     * @param spillThreshold 内存缓冲的最大字节数, 超过后溢出到临时文件
+     */
+    public PictureUploadBuffer(long maxSize, int spillThreshold) {
+        this.maxSize = maxSize;
+        this.spillThreshold = spillThreshold;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len <= 0) {
+            return;
+        }
+        if (fileHash != null) {
+            throw new IOException("缓冲区已结束写入");
+        }
+        if (size + len > maxSize) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, String.format("文件大小不能超过 %dM", maxSize / 1024 / 1024));
+        }
+        // 1. 收集文件头, 收集完成后立即识别格式, 非图片内容不再继续接收
+        if (size < HEADER_LENGTH) {
+            int headerLength = (int) Math.min(HEADER_LENGTH - size, len);
+            System.arraycopy(b, off, header, (int) size, headerLength);
+            if (size + headerLength == HEADER_LENGTH) {
+                format = detectFormat(header);
+            }
+        }
+        // 2. 计算哈希
+        messageDigest.update(b, off, len);
+        // 3. 写入内存或临时文件
+        if (spillOutputStream == null && size + len > spillThreshold) {
+            spill();
+        }
+        if (spillOutputStream != null) {
+            spillOutputStream.write(b, off, len);
+        } else {
+            if (size + len > memory.length) {
+                memory = Arrays.copyOf(memory, (int) Math.min(Math.max(memory.length * 2L, size + len), spillThreshold));
+            }
+            System.arraycopy(b, off, memory, (int) size, len);
+        }
+        size += len;
+    }
+
+    /**
+     * 结束写入
+     *
+     * @return 内容哈希(十六进制小写)
+     */
+    public String finish() throws IOException {
+        if (fileHash == null) {
+            if (size < HEADER_LENGTH) {
+                throw new BusinessException(ErrorCode.PARAMS_ERROR, "文件类型错误");
+            }
+            if (spillOutputStream != null) {
+                spillOutputStream.close();
+            }
+            fileHash = HexUtil.encodeHexStr(messageDigest.digest());
+        }
+        return fileHash;
+    }
+
+    /**
+     * 读取内容, 需先结束写入
+     */
+    public InputStream openInputStream() throws IOException {
+        if (fileHash == null) {
+            throw new IllegalStateException("缓冲区尚未结束写入");
+        }
+        if (spillFile != null) {
+            return new BufferedInputStream(new FileInputStream(spillFile));
+        }
+        return new ByteArrayInputStream(memory, 0, (int) size);
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return openInputStream();
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * 根据文件头识别的格式: jpg / png / webp
+     */
+    public String getFormat() {
+        return format;
+    }
+
+    public String getOriginalFilename() {
+        return originalFilename;
+    }
+
+    public void setOriginalFilename(String originalFilename) {
+        this.originalFilename = originalFilename;
+    }
+
+    /**
+     * 是否已溢出到临时文件
+     */
+    public boolean isSpilled() {
+        return spillFile != null;
+    }
+
+    /**
+     * 释放内存, 删除临时文件
+     */
+    @Override
+    public void close() {
+        memory = null;
+        if (spillOutputStream != null) {
+            try {
+                spillOutputStream.close();
+            } catch (IOException e) {
+                log.warn("关闭临时文件失败: {}", spillFile.getAbsolutePath(), e);
+            }
+        }
+        if (spillFile != null && !spillFile.delete()) {
+            log.error("文件删除失败: {}", spillFile.getAbsolutePath());
+        }
+    }
+
+    private void spill() throws IOException {
+        spillFile = Files.createTempFile("picture-upload", null).toFile();
+        spillOutputStream = new BufferedOutputStream(new FileOutputStream(spillFile));
+        spillOutputStream.write(memory, 0, (int) size);
+        memory = null;
+    }
+
+    /**
+     * 根据文件头识别图片格式, 不支持的格式抛出异常
+     *
+     * @param header 文件头(至少 HEADER_LENGTH 字节)
+     * @return jpg / png / webp
+     */
+    public static String detectFormat(byte[] header) {
+        // JPEG: FF D8 FF
+        if ((header[0] & 0xff) == 0xff && (header[1] & 0xff) == 0xd8 && (header[2] & 0xff) == 0xff) {
+            return "jpg";
+        }
+        // PNG: 89 50 4E 47 0D 0A 1A 0A
+        if ((header[0] & 0xff) == 0x89 && header[1] == 'P' && header[2] == 'N' && header[3] == 'G'
+                && header[4] == 0x0d && header[5] == 0x0a && header[6] == 0x1a && header[7] == 0x0a) {
+            return "png";
+        }
+        // WEBP: "RIFF" + 4 字节长度 + "WEBP"
+        if (header[0] == 'R' && header[1] == 'I' && header[2] == 'F' && header[3] == 'F'
+                && header[8] == 'W' && header[9] == 'E' && header[10] == 'B' && header[11] == 'P') {
+            return "webp";
+        }
+        throw new BusinessException(ErrorCode.PARAMS_ERROR, "文件类型错误");
+    }
+}
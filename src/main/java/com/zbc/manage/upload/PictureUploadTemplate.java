@@ -6,22 +6,32 @@ import cn.hutool.core.io.FileUtil;
 import cn.hutool.core.util.NumberUtil;
 import cn.hutool.core.util.RandomUtil;
 import cn.hutool.core.util.StrUtil;
-import com.qcloud.cos.model.PutObjectResult;
 import com.qcloud.cos.model.ciModel.persistence.CIObject;
+import com.qcloud.cos.model.ciModel.persistence.CIUploadResult;
 import com.qcloud.cos.model.ciModel.persistence.ImageInfo;
 import com.qcloud.cos.model.ciModel.persistence.ProcessResults;
 import com.zbc.config.CosClientConfig;
 import com.zbc.domain.dto.file.UploadPictureResult;
+import com.zbc.domain.pojo.PictureFile;
 import com.zbc.exception.BusinessException;
 import com.zbc.exception.ErrorCode;
-import com.zbc.manage.CosManage;
+import com.zbc.manage.image.CosImageProcessor;
+import com.zbc.manage.image.ImageMetadata;
+import com.zbc.manage.image.ImageProcessor;
+import com.zbc.service.PictureFileService;
+import com.zbc.service.PicturePendingDeleteService;
+import com.zbc.utils.ObjectKeyUtils;
+import com.zbc.utils.ThrowUtils;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 
 import javax.annotation.Resource;
-import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Date;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * 图片上传模版
@@ -32,7 +42,23 @@ public abstract class PictureUploadTemplate {
     @Resource
     private CosClientConfig cosClientConfig;
     @Resource
-    private CosManage cosManage;
+    private PictureFileService pictureFileService;
+    @Resource
+    private ImageProcessor imageProcessor;
+    @Resource
+    private PicturePendingDeleteService picturePendingDeleteService;
+
+    /**
+     * 上传文件的最大字节数, 读取时超过立即中断
+     */
+    @Value("${picture.upload.max-size-bytes:2097152}")
+    private long maxSizeBytes;
+
+    /**
+     * 内存缓冲的最大字节数, 超过后才写入临时文件
+     */
+    @Value("${picture.upload.spill-threshold-bytes:1048576}")
+    private int spillThresholdBytes;
 
     /**
      * 上传图片
@@ -45,62 +71,134 @@ public abstract class PictureUploadTemplate {
         // 1. 校验图片
         // TODO: 不同
         validPicture(inputSource);
-        // 2. 图片上传地址(拼接文件路径)
-        String uuid = RandomUtil.randomString(10); // 随机生成一个10位字符串
-        String date = DateUtil.formatDate(new Date()); // 获取当前日期
         // TODO: 不同
         String originalFilename = getOriginalFilename(inputSource); // 原始文件
-        String suffix = FileUtil.getSuffix(originalFilename); // 原始文件后缀
-        // 最终拼接文件路径: 日期_uuid.文件后缀
-        StrUtil.blankToDefault(suffix, "jpg"); // 如果url没有后缀表明文件类型, 默认为jpg
-        String uploadFileName = String.format("%s_%s.%s", date, uuid, suffix);
-        // 上传路径
-        String uploadPath = String.format("/%s/%s", uploadPathPrefix, uploadFileName);
-        File file = null;
-        try {
-            // 3. 创建临时文件, 获取文件到服务器
-            file = File.createTempFile(uploadPath, null);
-            // 处理文件来源
-            // TODO: 不同
-            processFile(inputSource, file);
-            // 4. 上传文件到COS
-            PutObjectResult putObjectResult = cosManage.putPictureObject(uploadPath, file);
-            // 5. 获取图片信息, 封装返回结果
-            ImageInfo imageInfo = putObjectResult.getCiUploadResult().getOriginalInfo().getImageInfo();
-            // 获取图片处理结果
-            ProcessResults processResults = putObjectResult.getCiUploadResult().getProcessResults();
-            List<CIObject> objectList = processResults.getObjectList();
-            if (CollUtil.isNotEmpty(objectList)) {
-                CIObject compressCiObject = objectList.get(0); // 获取压缩后的图片信息
-                // 没有缩略图, 默认为压缩图
-                CIObject thumbnailCiObject = compressCiObject;
-                // 有缩略图, 获取缩略图
-                if (objectList.size() > 1) {
-                    thumbnailCiObject = objectList.get(1); // 获取缩略图信息
-                }
-                // 封装压缩图与缩略图的返回结果
-                return buildResult(originalFilename, compressCiObject, thumbnailCiObject);
+        // 内容已读取到缓冲区时(批量抓取时下载与上传分开执行)直接使用, 该缓冲区由调用方关闭
+        try (PictureUploadBuffer ownBuffer = inputSource instanceof PictureUploadBuffer ? null : newUploadBuffer()) {
+            PictureUploadBuffer buffer = ownBuffer == null ? (PictureUploadBuffer) inputSource : ownBuffer;
+            // 2. 读取文件内容到缓冲区, 写入的同时校验大小、识别格式、计算内容哈希, 超过阈值才落盘
+            if (ownBuffer != null) {
+                processFile(inputSource, ownBuffer);
+            }
+            String fileHash = buffer.finish();
+            // 相同内容的文件已经存储过, 直接复用, 不再上传
+            PictureFile existingFile = pictureFileService.getByFileHash(fileHash);
+            if (existingFile != null) {
+                return buildResult(originalFilename, existingFile);
             }
-            return buildResult(originalFilename, file, uploadPath, imageInfo);
+            // 3. 图片上传地址(拼接文件路径)
+            String uuid = RandomUtil.randomString(10); // 随机生成一个10位字符串
+            String date = DateUtil.formatDate(new Date()); // 获取当前日期
+            // 最终拼接文件路径: 日期_uuid.文件后缀(以文件头识别的格式为准)
+            String uploadFileName = String.format("%s_%s.%s", date, uuid, buffer.getFormat());
+            // 上传路径
+            String uploadPath = String.format("/%s/%s", uploadPathPrefix, uploadFileName);
+            // 4. 上传原图(已知长度, 直接从缓冲区读取)并解析原图信息, 压缩图、缩略图在入库后由后台处理队列生成
+            ImageMetadata imageMetadata = imageProcessor.upload(uploadPath, buffer, buffer.getSize(), buffer.getFormat());
+            // 5. 封装返回结果
+            UploadPictureResult uploadPictureResult = buildResult(originalFilename, buffer.getSize(), uploadPath, imageMetadata);
+            uploadPictureResult.setFileHash(fileHash);
+            // 6. 记录文件
+            return saveOrReuseFile(originalFilename, uploadPath, uploadPictureResult);
+        } catch (BusinessException e) {
+            throw e;
         } catch (Exception e) {
             log.error("文件上传失败", e);
             throw new BusinessException(ErrorCode.SYSTEM_ERROR, "上传失败");
-        } finally {
-            // 6. 删除临时文件
-            deleteTempFile(file);
         }
+    }
 
+    /**
+     * 记录已上传的文件(需已设置内容哈希), 相同内容的文件已记录过(并发上传)时使用已有文件, 并登记删除本次上传的对象
+     *
+     * @param originalFilename    原始文件名
+     * @param uploadPath          原图上传路径
+     * @param uploadPictureResult 本次上传的结果
+     * @return 实际使用的文件对应的上传结果
+     */
+    public UploadPictureResult saveOrReuseFile(String originalFilename, String uploadPath, UploadPictureResult uploadPictureResult) {
+        if (pictureFileService.saveIfAbsent(toPictureFile(uploadPictureResult))) {
+            uploadPictureResult.setNewFile(true);
+            return uploadPictureResult;
+        }
+        deleteUploadedObjects(uploadPath, uploadPictureResult);
+        PictureFile savedFile = pictureFileService.getByFileHash(uploadPictureResult.getFileHash());
+        ThrowUtils.throwIf(savedFile == null, ErrorCode.OPERATION_ERROR, "上传失败, 请重试");
+        return buildResult(originalFilename, savedFile);
+    }
+
+    /**
+     * 放弃本次上传新保存的文件(图片入库失败时调用): 文件记录仍没有引用时删除记录, 并登记删除上传的对象
+     * <p>
+     * 复用已有文件时不处理, 已有文件由引用它的图片管理。
+     *
+     * @param uploadPictureResult 上传结果
+     */
+    public void discardNewFile(UploadPictureResult uploadPictureResult) {
+        if (uploadPictureResult == null || !uploadPictureResult.isNewFile()) {
+            return;
+        }
+        // 入库失败前其他上传可能已复用该文件并完成引用, 此时保留
+        if (pictureFileService.removeIfUnreferenced(uploadPictureResult.getFileHash())) {
+            deleteUploadedObjects(null, uploadPictureResult);
+        }
+    }
+
+    /**
+     * 创建上传内容缓冲区(大小限制与内存阈值使用配置值)
+     */
+    public PictureUploadBuffer newUploadBuffer() {
+        return new PictureUploadBuffer(maxSizeBytes, spillThresholdBytes);
+    }
+
+    /**
+     * 校验文件大小, 与读取时缓冲区的限制一致
+     *
+     * @param fileSize 文件大小
+     */
+    protected void validSize(long fileSize) {
+        ThrowUtils.throwIf(fileSize > maxSizeBytes, ErrorCode.PARAMS_ERROR,
+                String.format("文件大小不能超过 %dM", maxSizeBytes / 1024 / 1024));
+    }
+
+    /**
+     * 根据 COS 图片处理结果封装返回结果, 有压缩图时使用压缩图, 否则使用原图
+     *
+     * @param originalFilename 原始文件名
+     * @param fileSize         原图大小
+     * @param uploadPath       原图上传路径
+     * @param ciUploadResult   COS 图片处理结果
+     * @return 上传图片结果
+     */
+    public UploadPictureResult buildResult(String originalFilename, long fileSize, String uploadPath, CIUploadResult ciUploadResult) {
+        ImageInfo imageInfo = ciUploadResult.getOriginalInfo().getImageInfo();
+        // 获取图片处理结果
+        ProcessResults processResults = ciUploadResult.getProcessResults();
+        List<CIObject> objectList = processResults == null ? null : processResults.getObjectList();
+        if (CollUtil.isNotEmpty(objectList)) {
+            CIObject compressCiObject = objectList.get(0); // 获取压缩后的图片信息
+            // 没有缩略图, 默认为压缩图
+            CIObject thumbnailCiObject = compressCiObject;
+            // 有缩略图, 获取缩略图
+            if (objectList.size() > 1) {
+                thumbnailCiObject = objectList.get(1); // 获取缩略图信息
+            }
+            // 封装压缩图与缩略图的返回结果
+            return buildResult(originalFilename, imageInfo, compressCiObject, thumbnailCiObject);
+        }
+        return buildResult(originalFilename, fileSize, uploadPath, CosImageProcessor.toMetadata(imageInfo));
     }
 
     /**
      * 封装返回结果(压缩、缩略图)
      *
      * @param originalFilename  原始文件名
+     * @param imageInfo         原图信息
      * @param compressCiObject  压缩图对象
      * @param thumbnailCiObject 缩略图对象
      * @return 上传图片结果
      */
-    private UploadPictureResult buildResult(String originalFilename, CIObject compressCiObject, CIObject thumbnailCiObject) {
+    private UploadPictureResult buildResult(String originalFilename, ImageInfo imageInfo, CIObject compressCiObject, CIObject thumbnailCiObject) {
 
         int width = compressCiObject.getWidth();
         int height = compressCiObject.getHeight();
@@ -109,14 +207,13 @@ public abstract class PictureUploadTemplate {
         // 设置原图压缩后的地址
         uploadPictureResult.setUrl(cosClientConfig.getHost() + "/" + compressCiObject.getKey());
         // 设置缩略图地址
-        uploadPictureResult.setUrl(cosClientConfig.getHost() + "/" + thumbnailCiObject.getKey());
+        uploadPictureResult.setThumbnailUrl(cosClientConfig.getHost() + "/" + thumbnailCiObject.getKey());
         uploadPictureResult.setPicName(FileUtil.mainName(originalFilename));
         uploadPictureResult.setPicSize(compressCiObject.getSize().longValue());
         uploadPictureResult.setPicWidth(width);
         uploadPictureResult.setPicHeight(height);
         uploadPictureResult.setPicFormat(compressCiObject.getFormat());
-        // TODO: new 对象?
-        ImageInfo imageInfo = new ImageInfo();
+        // 主色调取自原图信息
         uploadPictureResult.setPicColor(imageInfo.getAve());
         // 计算宽高比
         double scale = NumberUtil.round(width * 1.0 / height, 2).doubleValue();
@@ -140,52 +237,96 @@ public abstract class PictureUploadTemplate {
     protected abstract String getOriginalFilename(Object inputSource);
 
     /**
-     * 处理输入源并生成本地临时文件
+     * 处理输入源, 将文件内容写入输出流
      *
-     * @param inputSource 本地文件或url
+     * @param inputSource  本地文件或url
+     * @param outputStream 输出流(由调用方关闭)
      */
-    protected abstract void processFile(Object inputSource, File file) throws IOException;
+    protected abstract void processFile(Object inputSource, OutputStream outputStream) throws IOException;
+
+    /**
+     * 根据已存储的文件封装返回结果
+     *
+     * @param originalFilename 原始文件名
+     * @param pictureFile      已存储的文件
+     * @return 上传图片结果
+     */
+    private UploadPictureResult buildResult(String originalFilename, PictureFile pictureFile) {
+        UploadPictureResult uploadPictureResult = new UploadPictureResult();
+        uploadPictureResult.setUrl(pictureFile.getUrl());
+        uploadPictureResult.setThumbnailUrl(pictureFile.getThumbnailUrl());
+        uploadPictureResult.setPicName(FileUtil.mainName(originalFilename));
+        uploadPictureResult.setPicSize(pictureFile.getPicSize());
+        uploadPictureResult.setPicWidth(pictureFile.getPicWidth());
+        uploadPictureResult.setPicHeight(pictureFile.getPicHeight());
+        uploadPictureResult.setPicScale(pictureFile.getPicScale());
+        uploadPictureResult.setPicFormat(pictureFile.getPicFormat());
+        uploadPictureResult.setPicColor(pictureFile.getPicColor());
+        uploadPictureResult.setPicPhash(pictureFile.getPicPhash());
+        uploadPictureResult.setFileHash(pictureFile.getFileHash());
+        return uploadPictureResult;
+    }
+
+    /**
+     * 上传结果转换为文件记录
+     */
+    private static PictureFile toPictureFile(UploadPictureResult uploadPictureResult) {
+        PictureFile pictureFile = new PictureFile();
+        pictureFile.setFileHash(uploadPictureResult.getFileHash());
+        pictureFile.setUrl(uploadPictureResult.getUrl());
+        pictureFile.setThumbnailUrl(uploadPictureResult.getThumbnailUrl());
+        pictureFile.setPicSize(uploadPictureResult.getPicSize());
+        pictureFile.setPicWidth(uploadPictureResult.getPicWidth());
+        pictureFile.setPicHeight(uploadPictureResult.getPicHeight());
+        pictureFile.setPicScale(uploadPictureResult.getPicScale());
+        pictureFile.setPicFormat(uploadPictureResult.getPicFormat());
+        pictureFile.setPicColor(uploadPictureResult.getPicColor());
+        pictureFile.setPicPhash(uploadPictureResult.getPicPhash());
+        return pictureFile;
+    }
+
+    /**
+     * 登记删除本次上传产生的对象(原图、压缩图、缩略图)
+     *
+     * @param uploadPath          原图上传路径, 与图片地址一致时可为空
+     * @param uploadPictureResult 上传结果
+     */
+    public void deleteUploadedObjects(String uploadPath, UploadPictureResult uploadPictureResult) {
+        Set<String> keySet = new LinkedHashSet<>();
+        if (StrUtil.isNotBlank(uploadPath)) {
+            keySet.add(uploadPath);
+        }
+        keySet.add(ObjectKeyUtils.toObjectKey(uploadPictureResult.getUrl()));
+        keySet.add(ObjectKeyUtils.toObjectKey(uploadPictureResult.getThumbnailUrl()));
+        picturePendingDeleteService.enqueue(keySet);
+    }
 
 
     /**
      * 封转返回结果
      *
      * @param originalFilename 原始文件名
-     * @param file             本地文件
+     * @param fileSize         文件大小
      * @param uploadPath       上传路径
-     * @param imageInfo        COS返回的图片信息
+     * @param imageMetadata    原图信息
      * @return 上传图片结果
      */
-    private UploadPictureResult buildResult(String originalFilename, File file, String uploadPath, ImageInfo imageInfo) {
-        int width = imageInfo.getWidth();
-        int height = imageInfo.getHeight();
+    private UploadPictureResult buildResult(String originalFilename, long fileSize, String uploadPath, ImageMetadata imageMetadata) {
+        int width = imageMetadata.getWidth();
+        int height = imageMetadata.getHeight();
         // 封装返回结果
         UploadPictureResult uploadPictureResult = new UploadPictureResult();
         uploadPictureResult.setUrl(cosClientConfig.getHost() + "/" + uploadPath);
         uploadPictureResult.setPicName(FileUtil.getName(originalFilename));
-        uploadPictureResult.setPicSize(FileUtil.size(file));
+        uploadPictureResult.setPicSize(fileSize);
         uploadPictureResult.setPicWidth(width);
         uploadPictureResult.setPicHeight(height);
-        uploadPictureResult.setPicFormat(imageInfo.getFormat());
-        uploadPictureResult.setPicColor(imageInfo.getAve());
+        uploadPictureResult.setPicFormat(imageMetadata.getFormat());
+        uploadPictureResult.setPicColor(imageMetadata.getPicColor());
+        uploadPictureResult.setPicPhash(imageMetadata.getPicPhash());
         // 计算宽高比
         double scale = NumberUtil.round(width * 1.0 / height, 2).doubleValue();
         uploadPictureResult.setPicScale(scale);
         return uploadPictureResult;
     }
-
-    /**
-     * 删除临时文件
-     *
-     * @param file 文件
-     */
-    public void deleteTempFile(File file) {
-        if (file == null) {
-            return;
-        }
-        boolean deleted = file.delete();
-        if (!deleted) {
-            log.error("文件删除失败: {}", file.getAbsolutePath());
-        }
-    }
 }
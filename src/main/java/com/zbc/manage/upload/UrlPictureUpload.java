@@ -2,6 +2,7 @@ package com.zbc.manage.upload;
 
 import cn.hutool.core.io.FileUtil;
 import cn.hutool.core.util.StrUtil;
+import cn.hutool.http.HttpRequest;
 import cn.hutool.http.HttpResponse;
 import cn.hutool.http.HttpStatus;
 import cn.hutool.http.HttpUtil;
@@ -9,10 +10,11 @@ import cn.hutool.http.Method;
 import com.zbc.exception.BusinessException;
 import com.zbc.exception.ErrorCode;
 import com.zbc.utils.ThrowUtils;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Arrays;
@@ -20,6 +22,13 @@ import java.util.List;
 
 @Service
 public class UrlPictureUpload extends PictureUploadTemplate {
+
+    /**
+     * 访问图片地址的连接与读取超时时间(毫秒)
+     */
+    @Value("${picture.upload.url-timeout-millis:10000}")
+    private int urlTimeoutMillis;
+
     @Override
     protected void validPicture(Object inputSource) {
         String fileUrl = (String) inputSource;
@@ -35,7 +44,7 @@ public class UrlPictureUpload extends PictureUploadTemplate {
         // 3. 验证url是否存在
         HttpResponse response = null;
         try {
-            response = HttpUtil.createRequest(Method.HEAD, fileUrl).execute();
+            response = HttpUtil.createRequest(Method.HEAD, fileUrl).timeout(urlTimeoutMillis).execute();
             if (response.getStatus() != HttpStatus.HTTP_OK) {
                 return; // 不支持head请求
             }
@@ -52,12 +61,14 @@ public class UrlPictureUpload extends PictureUploadTemplate {
             if (StrUtil.isNotBlank(header)) {
                 try {
                     long contentLength = Long.parseLong(header);
-                    final long TWO_MB = 2 * 1024 * 1024L; // 限制文件大小为 2MB
-                    ThrowUtils.throwIf(contentLength > TWO_MB, ErrorCode.PARAMS_ERROR, "文件大小不能超过 2M");
+                    // 与读取时缓冲区的限制一致
+                    validSize(contentLength);
                 } catch (NumberFormatException e) {
                     throw new BusinessException(ErrorCode.PARAMS_ERROR, "文件大小格式错误");
                 }
             }
+        } catch (BusinessException e) {
+            throw e;
         } catch (Exception e) {
             throw new BusinessException(ErrorCode.SYSTEM_ERROR);
         } finally {
@@ -75,9 +86,32 @@ public class UrlPictureUpload extends PictureUploadTemplate {
     }
 
     @Override
-    protected void processFile(Object inputSource, File file) throws IOException {
+    protected void processFile(Object inputSource, OutputStream outputStream) throws IOException {
         String fileUrl = (String) inputSource;
-        HttpUtil.downloadFile(fileUrl, file);
+        try (HttpResponse response = HttpRequest.get(fileUrl).timeout(urlTimeoutMillis).executeAsync()) {
+            ThrowUtils.throwIf(!response.isOk(), ErrorCode.OPERATION_ERROR, "下载图片失败");
+            response.writeBody(outputStream, false, null);
+        }
+    }
+
+    /**
+     * 校验并下载图片到缓冲区(批量抓取时下载与上传分开执行), 缓冲区由调用方关闭
+     *
+     * @param fileUrl 图片地址
+     * @return 已结束写入的缓冲区
+     */
+    public PictureUploadBuffer download(String fileUrl) throws IOException {
+        validPicture(fileUrl);
+        PictureUploadBuffer buffer = newUploadBuffer();
+        try {
+            processFile(fileUrl, buffer);
+            buffer.finish();
+            buffer.setOriginalFilename(getOriginalFilename(fileUrl));
+            return buffer;
+        } catch (IOException | RuntimeException e) {
+            buffer.close();
+            throw e;
+        }
     }
 
 }
@@ -0,0 +1,8 @@
+package com.zbc.mapper;
+
+import com.zbc.domain.pojo.PictureFile;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+
+public interface PictureFileMapper extends BaseMapper<PictureFile> {
+
+}
@@ -0,0 +1,21 @@
+package com.zbc.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.zbc.domain.pojo.PicturePendingDelete;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
+import java.util.Date;
+
+public interface PicturePendingDeleteMapper extends BaseMapper<PicturePendingDelete> {
+
+    /**
+     * 批量登记待删除对象, 已登记的对象忽略
+     *
+     * @param objectKeyList   对象键
+     * @param nextAttemptTime 最早删除时间
+     * @return 新登记的数量
+     */
+    int insertIgnoreBatch(@Param("objectKeyList") Collection<String> objectKeyList,
+                          @Param("nextAttemptTime") Date nextAttemptTime);
+}
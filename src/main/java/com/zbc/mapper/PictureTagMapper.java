@@ -0,0 +1,8 @@
+package com.zbc.mapper;
+
+import com.zbc.domain.pojo.PictureTag;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+
+public interface PictureTagMapper extends BaseMapper<PictureTag> {
+
+}
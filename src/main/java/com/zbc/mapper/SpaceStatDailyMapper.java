@@ -0,0 +1,18 @@
+package com.zbc.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.zbc.domain.pojo.SpaceStatDaily;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+public interface SpaceStatDailyMapper extends BaseMapper<SpaceStatDaily> {
+
+    /**
+     * 批量累加(不存在时插入)
+     *
+     * @param deltaList 增量
+     * @return 影响行数
+     */
+    int upsertBatch(@Param("deltaList") List<SpaceStatDaily> deltaList);
+}
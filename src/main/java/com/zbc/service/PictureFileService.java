@@ -0,0 +1,48 @@
+package com.zbc.service;
+
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.zbc.domain.pojo.PictureFile;
+
+
+public interface PictureFileService extends IService<PictureFile> {
+
+    /**
+     * 根据内容哈希查询文件
+     *
+     * @param fileHash 内容哈希
+     * @return 文件, 不存在返回 null
+     */
+    PictureFile getByFileHash(String fileHash);
+
+    /**
+     * 保存新文件(引用数为 0, 由图片保存时增加), 已存在相同哈希时不保存
+     *
+     * @param pictureFile 文件
+     * @return 是否保存成功
+     */
+    boolean saveIfAbsent(PictureFile pictureFile);
+
+    /**
+     * 增加文件引用数, 需与图片的保存在同一事务中
+     *
+     * @param fileHash 内容哈希
+     * @return 文件是否存在
+     */
+    boolean retain(String fileHash);
+
+    /**
+     * 减少文件引用数, 需与图片的删除在同一事务中
+     *
+     * @param fileHash 内容哈希
+     * @return 剩余引用数, 文件不存在返回 -1
+     */
+    int release(String fileHash);
+
+    /**
+     * 删除没有引用的文件记录
+     *
+     * @param fileHash 内容哈希
+     * @return 是否删除(仍有引用时不删除)
+     */
+    boolean removeIfUnreferenced(String fileHash);
+}
@@ -0,0 +1,59 @@
+package com.zbc.service;
+
+import com.zbc.domain.dto.picture.PictureMultipartUploadInitRequest;
+import com.zbc.domain.dto.picture.PictureMultipartUploadPartRequest;
+import com.zbc.domain.dto.picture.PictureMultipartUploadRequest;
+import com.zbc.domain.pojo.User;
+import com.zbc.domain.vo.PictureMultipartUploadVO;
+import com.zbc.domain.vo.PictureVO;
+import org.springframework.web.multipart.MultipartFile;
+
+/**
+ * 图片分片上传(大图断点续传)
+ */
+public interface PictureMultipartUploadService {
+
+    /**
+     * 初始化分片上传
+     *
+     * @param initRequest 初始化参数
+     * @param loginUser   当前登录用户
+     * @return 分片上传 id 与分片规则
+     */
+    PictureMultipartUploadVO initiate(PictureMultipartUploadInitRequest initRequest, User loginUser);
+
+    /**
+     * 上传分片, 不同分片可以并行上传
+     *
+     * @param partRequest   分片参数
+     * @param multipartFile 分片内容
+     * @param loginUser     当前登录用户
+     */
+    void uploadPart(PictureMultipartUploadPartRequest partRequest, MultipartFile multipartFile, User loginUser);
+
+    /**
+     * 查询上传进度(断点续传)
+     *
+     * @param uploadId  分片上传 id
+     * @param loginUser 当前登录用户
+     * @return 上传进度
+     */
+    PictureMultipartUploadVO getProgress(String uploadId, User loginUser);
+
+    /**
+     * 合并分片, 处理图片并创建(或更新)图片
+     *
+     * @param uploadRequest 分片上传 id 与图片名称
+     * @param loginUser     当前登录用户
+     * @return 图片信息
+     */
+    PictureVO complete(PictureMultipartUploadRequest uploadRequest, User loginUser);
+
+    /**
+     * 取消分片上传
+     *
+     * @param uploadRequest 分片上传 id
+     * @param loginUser     当前登录用户
+     */
+    void abort(PictureMultipartUploadRequest uploadRequest, User loginUser);
+}
@@ -0,0 +1,34 @@
+package com.zbc.service;
+
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.zbc.domain.pojo.PicturePendingDelete;
+
+import java.util.Collection;
+import java.util.List;
+
+
+public interface PicturePendingDeleteService extends IService<PicturePendingDelete> {
+
+    /**
+     * 登记待删除对象, 在事务中调用时随事务一起提交
+     *
+     * @param objectKeys 对象键(可以以 / 开头)
+     */
+    void enqueue(Collection<String> objectKeys);
+
+    /**
+     * 登记待删除对象, 延迟一段时间后才删除
+     *
+     * @param objectKeys   对象键(可以以 / 开头)
+     * @param delaySeconds 延迟时间(秒)
+     */
+    void enqueue(Collection<String> objectKeys, long delaySeconds);
+
+    /**
+     * 查询已到删除时间的对象
+     *
+     * @param limit 最大数量
+     * @return 待删除对象
+     */
+    List<PicturePendingDelete> listDue(int limit);
+}
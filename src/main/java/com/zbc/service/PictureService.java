@@ -7,6 +7,8 @@ import com.zbc.api.aliyunai.model.CreateOutPaintingTaskResponse;
 import com.zbc.domain.dto.picture.*;
 import com.zbc.domain.pojo.Picture;
 import com.zbc.domain.pojo.User;
+import com.zbc.domain.vo.CursorPageVO;
+import com.zbc.domain.vo.PictureGrabJobVO;
 import com.zbc.domain.vo.PictureVO;
 
 import javax.servlet.http.HttpServletRequest;
@@ -17,7 +19,7 @@ public interface PictureService extends IService<Picture> {
     /**
      * 上传图片
      *
-     * @param inputSource   文件输入源
+     * @param inputSource   文件输入源: MultipartFile、File、url 或已存储的 UploadPictureResult(分片上传)
      * @param uploadRequest 上传参数
      * @param loginUser     当前登录用户
      * @return 图片视图对象
@@ -48,6 +50,14 @@ public interface PictureService extends IService<Picture> {
      */
     Page<PictureVO> getPictureVOPage(Page<Picture> picturePage, HttpServletRequest request);
 
+    /**
+     * 游标分页获取图片列表(不查询总数)
+     *
+     * @param cursorQueryRequest 游标查询参数
+     * @return 图片视图游标分页对象
+     */
+    CursorPageVO<PictureVO> listPictureVOByCursor(PictureCursorQueryRequest cursorQueryRequest, HttpServletRequest request);
+
     /**
      * 图片校验规则
      *
@@ -72,16 +82,25 @@ public interface PictureService extends IService<Picture> {
     void fillReviewParams(Picture picture, User loginUser);
 
     /**
-     * 批量抓取和创建图片
+     * 批量抓取和创建图片(后台执行)
      *
      * @param byBatchRequest 图片批量上传参数
      * @param loginUser      当前登录用户
-     * @return 陈工创建的图片数量
+     * @return 抓取任务 id
      */
-    Integer uploadPictureByBatch(PictureUploadByBatchRequest byBatchRequest, User loginUser);
+    String uploadPictureByBatch(PictureUploadByBatchRequest byBatchRequest, User loginUser);
 
     /**
-     * 图片清理
+     * 查询批量抓取任务进度
+     *
+     * @param jobId 抓取任务 id
+     * @return 任务进度
+     */
+    PictureGrabJobVO getUploadByBatchJob(String jobId);
+
+    /**
+     * 图片清理: 文件不再被引用时登记待删除对象, 由后台批量删除
+     * 需在删除图片(或更换图片文件)的事务中调用
      *
      * @param picture 图片对象
      */
@@ -108,12 +127,19 @@ public interface PictureService extends IService<Picture> {
     /**
      * 图片颜色搜索
      *
-     * @param spaceId   空间id
-     * @param picColor  图片颜色
-     * @param loginUser 当前登录用户
-     * @return 图片视图列表
+     * @param searchPictureByColorRequest 颜色搜索请求
+     * @param loginUser                   当前登录用户
+     * @return 图片视图列表(按相似度降序)
+     */
+    List<PictureVO> searchPictureByColor(SearchPictureByColorRequest searchPictureByColorRequest, User loginUser);
+
+    /**
+     * 站内以图搜图(同一空间或公共图库内的相似图片)
+     *
+     * @param searchPictureByPictureRequest 以图搜图请求
+     * @return 图片视图列表(按相似度降序)
      */
-    List<PictureVO> searchPictureByColor(Long spaceId, String picColor, User loginUser);
+    List<PictureVO> searchSimilarPicture(SearchPictureByPictureRequest searchPictureByPictureRequest);
 
     /**
      * 批量操作
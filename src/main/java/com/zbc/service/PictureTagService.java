@@ -0,0 +1,41 @@
+package com.zbc.service;
+
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.zbc.domain.pojo.Picture;
+import com.zbc.domain.pojo.PictureTag;
+
+import java.util.List;
+
+
+public interface PictureTagService extends IService<PictureTag> {
+
+    /**
+     * 根据图片的 tags 字段重建图片标签关联
+     *
+     * @param picture 图片
+     */
+    void syncPictureTags(Picture picture);
+
+    /**
+     * 删除图片的所有标签关联
+     *
+     * @param pictureId 图片 id
+     */
+    void removeByPictureId(Long pictureId);
+
+    /**
+     * 解析图片的 tags 字段(JSON 数组), 去重并去除空白标签
+     *
+     * @param tagsJson 标签 JSON
+     * @return 标签列表
+     */
+    List<String> parseTags(String tagsJson);
+
+    /**
+     * 规范化标签: 去除首尾空白与空白标签, 截断到最大长度后不区分大小写去重, 保留第一次出现的写法(与写入关联表时的处理一致)
+     *
+     * @param tagList 标签列表
+     * @return 标签列表
+     */
+    List<String> normalizeTags(List<String> tagList);
+}
@@ -55,4 +55,11 @@ public interface SpaceAnalyzeService extends IService<Space> {
      */
     List<SpaceUserAnalyzeResponse> getSpaceUserAnalyze(SpaceUserAnalyzeRequest spaceUserAnalyzeRequest, User loginUser);
 
+    /**
+     * 从图片表重建汇总(汇总与图片不一致时使用)
+     *
+     * @param spaceAnalyzeRequest 分析范围
+     * @param loginUser           当前登录用户
+     */
+    void rebuildSpaceStat(SpaceAnalyzeRequest spaceAnalyzeRequest, User loginUser);
 }
@@ -0,0 +1,30 @@
+package com.zbc.service;
+
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.zbc.domain.pojo.Picture;
+import com.zbc.domain.pojo.SpaceStatDaily;
+
+
+public interface SpaceStatDailyService extends IService<SpaceStatDaily> {
+
+    /**
+     * 公共图库在汇总表中的空间 id
+     */
+    long PUBLIC_SPACE_ID = 0L;
+
+    /**
+     * 按图片变更累加汇总: 扣除变更前的图片, 加上变更后的图片
+     *
+     * @param oldPicture 变更前的图片(创建时为空)
+     * @param newPicture 变更后的图片(删除时为空)
+     */
+    void applyChange(Picture oldPicture, Picture newPicture);
+
+    /**
+     * 从图片表重新统计汇总
+     *
+     * @param spaceId     空间 id, 为空时按 queryPublic 决定
+     * @param queryPublic 是否为公共图库; spaceId 为空且不是公共图库时重建全部
+     */
+    void rebuild(Long spaceId, boolean queryPublic);
+}
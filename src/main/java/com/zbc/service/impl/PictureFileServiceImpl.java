@@ -0,0 +1,74 @@
+package com.zbc.service.impl;
+
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.zbc.domain.pojo.PictureFile;
+import com.zbc.mapper.PictureFileMapper;
+import com.zbc.service.PictureFileService;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+
+
+@Service
+public class PictureFileServiceImpl extends ServiceImpl<PictureFileMapper, PictureFile> implements PictureFileService {
+
+    @Override
+    public PictureFile getByFileHash(String fileHash) {
+        if (StrUtil.isBlank(fileHash)) {
+            return null;
+        }
+        return this.getOne(new QueryWrapper<PictureFile>().eq("fileHash", fileHash));
+    }
+
+    @Override
+    public boolean saveIfAbsent(PictureFile pictureFile) {
+        pictureFile.setRefCount(0);
+        try {
+            return this.save(pictureFile);
+        } catch (DuplicateKeyException e) {
+            // 并发上传了相同内容的文件
+            return false;
+        }
+    }
+
+    @Override
+    public boolean retain(String fileHash) {
+        if (StrUtil.isBlank(fileHash)) {
+            return false;
+        }
+        return this.update(new UpdateWrapper<PictureFile>()
+                .eq("fileHash", fileHash)
+                .setSql("refCount = refCount + 1"));
+    }
+
+    @Override
+    public int release(String fileHash) {
+        if (StrUtil.isBlank(fileHash)) {
+            return -1;
+        }
+        boolean updated = this.update(new UpdateWrapper<PictureFile>()
+                .eq("fileHash", fileHash)
+                .gt("refCount", 0)
+                .setSql("refCount = refCount - 1"));
+        if (!updated) {
+            return -1;
+        }
+        // 同一事务中已持有行锁, 读到的是本次扣减后的值
+        PictureFile pictureFile = this.getOne(new QueryWrapper<PictureFile>()
+                .select("refCount")
+                .eq("fileHash", fileHash));
+        return pictureFile == null ? -1 : pictureFile.getRefCount();
+    }
+
+    @Override
+    public boolean removeIfUnreferenced(String fileHash) {
+        if (StrUtil.isBlank(fileHash)) {
+            return false;
+        }
+        return this.remove(new QueryWrapper<PictureFile>()
+                .eq("fileHash", fileHash)
+                .eq("refCount", 0));
+    }
+}
@@ -0,0 +1,425 @@
+package com.zbc.service.impl;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.date.DateUtil;
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.ObjUtil;
+import cn.hutool.core.util.RandomUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.digest.DigestUtil;
+import cn.hutool.json.JSONUtil;
+import com.qcloud.cos.model.PartETag;
+import com.qcloud.cos.model.ciModel.persistence.CIUploadResult;
+import com.zbc.domain.dto.file.UploadPictureResult;
+import com.zbc.domain.dto.picture.*;
+import com.zbc.domain.pojo.Picture;
+import com.zbc.domain.pojo.Space;
+import com.zbc.domain.pojo.User;
+import com.zbc.domain.vo.PictureMultipartUploadVO;
+import com.zbc.domain.vo.PictureVO;
+import com.zbc.enums.SpaceLevelEnum;
+import com.zbc.exception.BusinessException;
+import com.zbc.exception.ErrorCode;
+import com.zbc.manage.quota.SpaceQuotaManager;
+import com.zbc.manage.storage.PictureMultipartStorage;
+import com.zbc.manage.upload.FilePictureUpload;
+import com.zbc.manage.upload.PictureUploadBuffer;
+import com.zbc.service.PictureFileService;
+import com.zbc.service.PictureMultipartUploadService;
+import com.zbc.service.PictureService;
+import com.zbc.service.SpaceService;
+import com.zbc.utils.ThrowUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.annotation.Resource;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 图片分片上传
+ * <p>
+ * 会话与已上传分片的 ETag 保存在 redis hash 中(picture:multipart:{uploadId}), 客户端中断后可查询进度继续上传;
+ * 所有分片上传完成后由存储合并并处理图片, 计算内容哈希后按内容去重, 再走普通上传的入库流程。
+ * 会话的过期时间另外记录在有序集合中, 会话 hash 多保留一段时间, 由定时任务取消过期会话的存储侧分片上传、清理已合并但未入库的文件。
+ */
+@Slf4j
+@Service
+public class PictureMultipartUploadServiceImpl implements PictureMultipartUploadService {
+
+    private static final String SESSION_KEY_PREFIX = "picture:multipart:";
+
+    /**
+     * 会话过期时间的有序集合, member: uploadId, score: 过期时间戳(毫秒)
+     */
+    private static final String DEADLINE_KEY = "picture:multipart:deadline";
+
+    /**
+     * 会话 hash 在过期后多保留的时间(分钟), 供清理任务读取
+     */
+    private static final long CLEANUP_GRACE_MINUTES = 60;
+
+    /**
+     * 每次清理的最大会话数
+     */
+    private static final int SWEEP_BATCH_SIZE = 100;
+
+    /**
+     * hash 字段: 会话
+     */
+    private static final String SESSION_FIELD = "session";
+
+    /**
+     * hash 字段前缀: 分片 ETag
+     */
+    private static final String PART_FIELD_PREFIX = "part:";
+
+    /**
+     * hash 字段: 合并中标记, 防止重复合并
+     */
+    private static final String COMPLETING_FIELD = "completing";
+
+    /**
+     * hash 字段: 合并后的处理结果, 入库失败重试时不再重复合并
+     */
+    private static final String RESULT_FIELD = "result";
+
+    /**
+     * 允许分片上传的文件后缀
+     */
+    private static final List<String> ALLOW_FORMAT_LIST = Arrays.asList("jpg", "jpeg", "png", "webp");
+
+    /**
+     * COS 分片数量上限
+     */
+    private static final int MAX_PART_COUNT = 10000;
+
+    @Resource
+    private PictureMultipartStorage pictureMultipartStorage;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private SpaceService spaceService;
+    @Resource
+    private SpaceQuotaManager spaceQuotaManager;
+    @Resource
+    private PictureService pictureService;
+    @Resource
+    private FilePictureUpload filePictureUpload;
+    @Resource
+    private PictureFileService pictureFileService;
+
+    /**
+     * 分片上传的最大文件大小(字节)
+     */
+    @Value("${picture.multipart.max-file-size-bytes:104857600}")
+    private long maxFileSizeBytes;
+
+    /**
+     * 分片大小(字节), COS 要求除最后一片外不小于 1MB
+     */
+    @Value("${picture.multipart.part-size-bytes:5242880}")
+    private long partSizeBytes;
+
+    /**
+     * 会话有效期(小时), 每上传一个分片刷新
+     */
+    @Value("${picture.multipart.expire-hours:24}")
+    private long expireHours;
+
+    /**
+     * 清理过期会话的间隔(毫秒)
+     */
+    @Value("${picture.multipart.sweep-interval-millis:600000}")
+    private long sweepIntervalMillis;
+
+    @Override
+    public PictureMultipartUploadVO initiate(PictureMultipartUploadInitRequest initRequest, User loginUser) {
+        ThrowUtils.throwIf(initRequest == null, ErrorCode.PARAMS_ERROR);
+        ThrowUtils.throwIf(loginUser == null, ErrorCode.NO_AUTH_ERROR);
+        String fileName = initRequest.getFileName();
+        Long fileSize = initRequest.getFileSize();
+        Long spaceId = initRequest.getSpaceId();
+        // 1. 校验参数
+        ThrowUtils.throwIf(StrUtil.isBlank(fileName), ErrorCode.PARAMS_ERROR, "文件名不能为空");
+        String suffix = StrUtil.nullToEmpty(FileUtil.getSuffix(fileName)).toLowerCase();
+        ThrowUtils.throwIf(!ALLOW_FORMAT_LIST.contains(suffix), ErrorCode.PARAMS_ERROR, "文件类型错误");
+        ThrowUtils.throwIf(fileSize == null || fileSize <= 0, ErrorCode.PARAMS_ERROR, "文件大小错误");
+        ThrowUtils.throwIf(fileSize > maxFileSizeBytes, ErrorCode.PARAMS_ERROR,
+                String.format("文件大小不能超过 %dM", maxFileSizeBytes / 1024 / 1024));
+        // 2. 校验空间: 仅专业版、旗舰版支持, 并预先校验额度, 避免传完才发现空间不足
+        ThrowUtils.throwIf(spaceId == null, ErrorCode.PARAMS_ERROR, "分片上传仅支持空间图片");
+        Space space = spaceService.getById(spaceId);
+        ThrowUtils.throwIf(space == null, ErrorCode.NOT_FOUND_ERROR, "空间不存在");
+        SpaceLevelEnum spaceLevelEnum = SpaceLevelEnum.getEnumByValue(space.getSpaceLevel());
+        ThrowUtils.throwIf(spaceLevelEnum == null || spaceLevelEnum == SpaceLevelEnum.COMMON,
+                ErrorCode.NO_AUTH_ERROR, "仅专业版、旗舰版空间支持大图上传");
+        long oldPicSize = 0;
+        if (initRequest.getPictureId() != null) {
+            Picture oldPicture = pictureService.getById(initRequest.getPictureId());
+            ThrowUtils.throwIf(oldPicture == null, ErrorCode.NOT_FOUND_ERROR, "图片不存在");
+            ThrowUtils.throwIf(ObjUtil.notEqual(spaceId, oldPicture.getSpaceId()), ErrorCode.PARAMS_ERROR, "空间 id 不一致");
+            oldPicSize = ObjUtil.defaultIfNull(oldPicture.getPicSize(), 0L);
+        }
+        // 只校验不预留, 完成上传入库时再原子预留(重新上传按新旧文件的大小差)
+        spaceQuotaManager.checkAvailable(spaceId, initRequest.getPictureId() == null ? 1 : 0, fileSize - oldPicSize);
+        // 3. 计算分片规则
+        long partSize = Math.max(partSizeBytes, (fileSize + MAX_PART_COUNT - 1) / MAX_PART_COUNT);
+        int partCount = (int) ((fileSize + partSize - 1) / partSize);
+        // 4. 初始化存储侧分片上传, 路径规则与普通上传一致: space/spaceId/日期_uuid.后缀
+        String key = String.format("/space/%s/%s_%s.%s", spaceId, DateUtil.formatDate(new Date()), RandomUtil.randomString(10), suffix);
+        String storageUploadId = pictureMultipartStorage.initiate(key, "jpg".equals(suffix) ? "image/jpeg" : "image/" + suffix);
+        // 5. 保存会话
+        PictureMultipartUploadSession session = new PictureMultipartUploadSession();
+        session.setUploadId(IdUtil.fastSimpleUUID());
+        session.setStorageUploadId(storageUploadId);
+        session.setKey(key);
+        session.setFileName(fileName);
+        session.setFileSize(fileSize);
+        session.setPartSize(partSize);
+        session.setPartCount(partCount);
+        session.setUserId(loginUser.getId());
+        session.setSpaceId(spaceId);
+        session.setPictureId(initRequest.getPictureId());
+        String redisKey = SESSION_KEY_PREFIX + session.getUploadId();
+        stringRedisTemplate.opsForHash().put(redisKey, SESSION_FIELD, JSONUtil.toJsonStr(session));
+        touchSession(session.getUploadId());
+        return toVO(session, new ArrayList<>());
+    }
+
+    @Override
+    public void uploadPart(PictureMultipartUploadPartRequest partRequest, MultipartFile multipartFile, User loginUser) {
+        ThrowUtils.throwIf(partRequest == null || multipartFile == null, ErrorCode.PARAMS_ERROR);
+        PictureMultipartUploadSession session = getSession(partRequest.getUploadId(), loginUser);
+        Integer partNumber = partRequest.getPartNumber();
+        ThrowUtils.throwIf(partNumber == null || partNumber < 1 || partNumber > session.getPartCount(),
+                ErrorCode.PARAMS_ERROR, "分片序号错误");
+        // 除最后一片外大小必须等于分片大小
+        long expectedSize = partNumber < session.getPartCount()
+                ? session.getPartSize()
+                : session.getFileSize() - session.getPartSize() * (session.getPartCount() - 1);
+        ThrowUtils.throwIf(multipartFile.getSize() != expectedSize, ErrorCode.PARAMS_ERROR, "分片大小错误");
+        String etag;
+        try (InputStream inputStream = new BufferedInputStream(multipartFile.getInputStream())) {
+            if (partNumber == 1) {
+                // 第一片校验文件头, 非图片内容不再继续上传
+                checkFileHeader(inputStream);
+            }
+            etag = pictureMultipartStorage.uploadPart(session.getKey(), session.getStorageUploadId(), partNumber, inputStream, expectedSize);
+        } catch (BusinessException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("分片上传失败, uploadId = {}, partNumber = {}", session.getUploadId(), partNumber, e);
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "分片上传失败");
+        }
+        String redisKey = SESSION_KEY_PREFIX + session.getUploadId();
+        stringRedisTemplate.opsForHash().put(redisKey, PART_FIELD_PREFIX + partNumber, etag);
+        touchSession(session.getUploadId());
+    }
+
+    @Override
+    public PictureMultipartUploadVO getProgress(String uploadId, User loginUser) {
+        PictureMultipartUploadSession session = getSession(uploadId, loginUser);
+        Map<Integer, String> partMap = getPartMap(uploadId);
+        return toVO(session, new ArrayList<>(partMap.keySet()));
+    }
+
+    @Override
+    public PictureVO complete(PictureMultipartUploadRequest uploadRequest, User loginUser) {
+        ThrowUtils.throwIf(uploadRequest == null, ErrorCode.PARAMS_ERROR);
+        PictureMultipartUploadSession session = getSession(uploadRequest.getUploadId(), loginUser);
+        String redisKey = SESSION_KEY_PREFIX + session.getUploadId();
+        Boolean locked = stringRedisTemplate.opsForHash().putIfAbsent(redisKey, COMPLETING_FIELD, "1");
+        ThrowUtils.throwIf(!Boolean.TRUE.equals(locked), ErrorCode.OPERATION_ERROR, "正在合并, 请勿重复提交");
+        touchSession(session.getUploadId());
+        try {
+            // 1. 合并分片并处理图片(之前已合并过则直接使用结果)
+            Object savedResult = stringRedisTemplate.opsForHash().get(redisKey, RESULT_FIELD);
+            UploadPictureResult uploadPictureResult;
+            if (savedResult != null) {
+                uploadPictureResult = JSONUtil.toBean((String) savedResult, UploadPictureResult.class);
+            } else {
+                Map<Integer, String> partMap = getPartMap(session.getUploadId());
+                int missingCount = session.getPartCount() - partMap.size();
+                ThrowUtils.throwIf(missingCount > 0, ErrorCode.PARAMS_ERROR, String.format("还有 %d 个分片未上传", missingCount));
+                List<PartETag> partETagList = new ArrayList<>(partMap.size());
+                partMap.forEach((partNumber, etag) -> partETagList.add(new PartETag(partNumber, etag)));
+                CIUploadResult ciUploadResult = pictureMultipartStorage.complete(session.getKey(), session.getStorageUploadId(),
+                        partETagList, session.getFileSize());
+                uploadPictureResult = filePictureUpload.buildResult(session.getFileName(), session.getFileSize(), session.getKey(), ciUploadResult);
+                // 与普通上传一样按内容去重: 已有相同内容的文件时使用已有文件, 删除本次合并的对象
+                uploadPictureResult.setFileHash(computeFileHash(session.getKey()));
+                uploadPictureResult = filePictureUpload.saveOrReuseFile(session.getFileName(), session.getKey(), uploadPictureResult);
+                stringRedisTemplate.opsForHash().put(redisKey, RESULT_FIELD, JSONUtil.toJsonStr(uploadPictureResult));
+            }
+            // 2. 入库(与普通上传相同的校验、额度更新与事件)
+            PictureUploadRequest pictureUploadRequest = new PictureUploadRequest();
+            pictureUploadRequest.setId(session.getPictureId());
+            pictureUploadRequest.setSpaceId(session.getSpaceId());
+            pictureUploadRequest.setPicName(uploadRequest.getPicName());
+            PictureVO pictureVO = pictureService.uploadPicture(uploadPictureResult, pictureUploadRequest, loginUser);
+            removeSession(session.getUploadId());
+            return pictureVO;
+        } catch (RuntimeException e) {
+            stringRedisTemplate.opsForHash().delete(redisKey, COMPLETING_FIELD);
+            throw e;
+        }
+    }
+
+    @Override
+    public void abort(PictureMultipartUploadRequest uploadRequest, User loginUser) {
+        ThrowUtils.throwIf(uploadRequest == null, ErrorCode.PARAMS_ERROR);
+        PictureMultipartUploadSession session = getSession(uploadRequest.getUploadId(), loginUser);
+        String redisKey = SESSION_KEY_PREFIX + session.getUploadId();
+        ThrowUtils.throwIf(stringRedisTemplate.opsForHash().hasKey(redisKey, COMPLETING_FIELD), ErrorCode.OPERATION_ERROR, "正在合并, 无法取消");
+        discardStorage(session, (String) stringRedisTemplate.opsForHash().get(redisKey, RESULT_FIELD));
+        removeSession(session.getUploadId());
+    }
+
+    /**
+     * 定时清理过期会话: 取消存储侧的分片上传(已上传的分片会持续计费), 删除已合并但未入库的文件
+     */
+    @Scheduled(initialDelayString = "${picture.multipart.sweep-interval-millis:600000}",
+            fixedDelayString = "${picture.multipart.sweep-interval-millis:600000}")
+    public void sweepExpiredSessions() {
+        Set<String> uploadIdSet = stringRedisTemplate.opsForZSet()
+                .rangeByScore(DEADLINE_KEY, 0, System.currentTimeMillis(), 0, SWEEP_BATCH_SIZE);
+        if (CollUtil.isEmpty(uploadIdSet)) {
+            return;
+        }
+        for (String uploadId : uploadIdSet) {
+            // 多个节点同时清理时只有一个节点移除成功
+            Long removed = stringRedisTemplate.opsForZSet().remove(DEADLINE_KEY, uploadId);
+            if (removed == null || removed == 0) {
+                continue;
+            }
+            String redisKey = SESSION_KEY_PREFIX + uploadId;
+            Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(redisKey);
+            Object sessionValue = entries.get(SESSION_FIELD);
+            if (sessionValue == null) {
+                log.warn("过期的分片上传会话已不存在, 无法清理存储侧内容, uploadId = {}", uploadId);
+                continue;
+            }
+            PictureMultipartUploadSession session = JSONUtil.toBean((String) sessionValue, PictureMultipartUploadSession.class);
+            try {
+                discardStorage(session, (String) entries.get(RESULT_FIELD));
+                stringRedisTemplate.delete(redisKey);
+                log.info("已清理过期的分片上传, uploadId = {}, key = {}", uploadId, session.getKey());
+            } catch (Exception e) {
+                // 下次清理时重试
+                log.error("清理过期的分片上传失败, uploadId = {}", uploadId, e);
+                stringRedisTemplate.opsForZSet().add(DEADLINE_KEY, uploadId, System.currentTimeMillis() + sweepIntervalMillis);
+            }
+        }
+    }
+
+    /**
+     * 刷新会话的过期时间
+     */
+    private void touchSession(String uploadId) {
+        // 会话 hash 比过期时间多保留一段时间, 供清理任务读取
+        stringRedisTemplate.expire(SESSION_KEY_PREFIX + uploadId, TimeUnit.HOURS.toMinutes(expireHours) + CLEANUP_GRACE_MINUTES, TimeUnit.MINUTES);
+        stringRedisTemplate.opsForZSet().add(DEADLINE_KEY, uploadId, System.currentTimeMillis() + TimeUnit.HOURS.toMillis(expireHours));
+    }
+
+    private void removeSession(String uploadId) {
+        stringRedisTemplate.delete(SESSION_KEY_PREFIX + uploadId);
+        stringRedisTemplate.opsForZSet().remove(DEADLINE_KEY, uploadId);
+    }
+
+    /**
+     * 清理会话在存储侧留下的内容: 尚未合并时取消分片上传; 已合并但未入库时删除没有被引用的文件
+     *
+     * @param savedResult 合并后的处理结果, 未合并时为空
+     */
+    private void discardStorage(PictureMultipartUploadSession session, String savedResult) {
+        if (savedResult == null) {
+            pictureMultipartStorage.abort(session.getKey(), session.getStorageUploadId());
+            return;
+        }
+        UploadPictureResult uploadPictureResult = JSONUtil.toBean(savedResult, UploadPictureResult.class);
+        // 文件记录已被图片引用(其他上传复用了相同内容)时不删除; 复用已有文件时本次合并的对象在合并时已登记删除
+        String fileHash = uploadPictureResult.getFileHash();
+        if (StrUtil.isBlank(fileHash) || pictureFileService.removeIfUnreferenced(fileHash)) {
+            filePictureUpload.deleteUploadedObjects(session.getKey(), uploadPictureResult);
+        }
+    }
+
+    /**
+     * 读取合并后的对象计算内容哈希(与普通上传相同的 SHA-256)
+     */
+    private String computeFileHash(String key) {
+        try (InputStream inputStream = pictureMultipartStorage.openObject(key)) {
+            return DigestUtil.sha256Hex(inputStream);
+        } catch (IOException e) {
+            log.error("读取合并后的对象失败, key = {}", key, e);
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "分片合并失败");
+        }
+    }
+
+    /**
+     * 获取会话, 仅发起上传的用户可以继续操作
+     */
+    private PictureMultipartUploadSession getSession(String uploadId, User loginUser) {
+        ThrowUtils.throwIf(loginUser == null, ErrorCode.NO_AUTH_ERROR);
+        ThrowUtils.throwIf(StrUtil.isBlank(uploadId), ErrorCode.PARAMS_ERROR, "分片上传 id 不能为空");
+        Object value = stringRedisTemplate.opsForHash().get(SESSION_KEY_PREFIX + uploadId, SESSION_FIELD);
+        ThrowUtils.throwIf(value == null, ErrorCode.NOT_FOUND_ERROR, "分片上传不存在或已过期");
+        PictureMultipartUploadSession session = JSONUtil.toBean((String) value, PictureMultipartUploadSession.class);
+        ThrowUtils.throwIf(!loginUser.getId().equals(session.getUserId()), ErrorCode.NO_AUTH_ERROR);
+        return session;
+    }
+
+    /**
+     * 已上传的分片, key: 分片序号(升序), value: ETag
+     */
+    private Map<Integer, String> getPartMap(String uploadId) {
+        Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(SESSION_KEY_PREFIX + uploadId);
+        Map<Integer, String> partMap = new TreeMap<>();
+        entries.forEach((field, value) -> {
+            String fieldName = (String) field;
+            if (fieldName.startsWith(PART_FIELD_PREFIX)) {
+                partMap.put(Integer.parseInt(fieldName.substring(PART_FIELD_PREFIX.length())), (String) value);
+            }
+        });
+        return partMap;
+    }
+
+    /**
+     * 读取文件头识别格式, 读取后重置流
+     */
+    private static void checkFileHeader(InputStream inputStream) throws IOException {
+        byte[] header = new byte[PictureUploadBuffer.HEADER_LENGTH];
+        inputStream.mark(header.length);
+        int length = 0;
+        while (length < header.length) {
+            int read = inputStream.read(header, length, header.length - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+        ThrowUtils.throwIf(length < header.length, ErrorCode.PARAMS_ERROR, "文件类型错误");
+        PictureUploadBuffer.detectFormat(header);
+        inputStream.reset();
+    }
+
+    private static PictureMultipartUploadVO toVO(PictureMultipartUploadSession session, List<Integer> uploadedPartList) {
+        PictureMultipartUploadVO pictureMultipartUploadVO = new PictureMultipartUploadVO();
+        pictureMultipartUploadVO.setUploadId(session.getUploadId());
+        pictureMultipartUploadVO.setFileName(session.getFileName());
+        pictureMultipartUploadVO.setFileSize(session.getFileSize());
+        pictureMultipartUploadVO.setPartSize(session.getPartSize());
+        pictureMultipartUploadVO.setPartCount(session.getPartCount());
+        pictureMultipartUploadVO.setUploadedPartList(uploadedPartList);
+        return pictureMultipartUploadVO;
+    }
+}
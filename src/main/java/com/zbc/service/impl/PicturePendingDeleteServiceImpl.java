@@ -0,0 +1,50 @@
+package com.zbc.service.impl;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.zbc.domain.pojo.PicturePendingDelete;
+import com.zbc.mapper.PicturePendingDeleteMapper;
+import com.zbc.service.PicturePendingDeleteService;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+
+@Service
+public class PicturePendingDeleteServiceImpl extends ServiceImpl<PicturePendingDeleteMapper, PicturePendingDelete> implements PicturePendingDeleteService {
+
+    @Override
+    public void enqueue(Collection<String> objectKeys) {
+        this.enqueue(objectKeys, 0);
+    }
+
+    @Override
+    public void enqueue(Collection<String> objectKeys, long delaySeconds) {
+        if (CollUtil.isEmpty(objectKeys)) {
+            return;
+        }
+        // COS 对象键不以 / 开头, 统一格式后去重
+        Set<String> objectKeySet = new LinkedHashSet<>();
+        for (String objectKey : objectKeys) {
+            String normalizedKey = StrUtil.isBlank(objectKey) ? null : objectKey.replaceFirst("^/+", "");
+            if (StrUtil.isNotBlank(normalizedKey)) {
+                objectKeySet.add(normalizedKey);
+            }
+        }
+        if (objectKeySet.isEmpty()) {
+            return;
+        }
+        Date nextAttemptTime = new Date(System.currentTimeMillis() + delaySeconds * 1000);
+        this.baseMapper.insertIgnoreBatch(objectKeySet, nextAttemptTime);
+    }
+
+    @Override
+    public List<PicturePendingDelete> listDue(int limit) {
+        return this.list(new QueryWrapper<PicturePendingDelete>()
+                .le("nextAttemptTime", new Date())
+                .orderByAsc("nextAttemptTime")
+                .last("limit " + limit));
+    }
+}
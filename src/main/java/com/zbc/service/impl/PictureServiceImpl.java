@@ -1,6 +1,7 @@
 package com.zbc.service.impl;
 
 import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.codec.Base64;
 import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.util.ObjUtil;
 import cn.hutool.core.util.StrUtil;
@@ -15,48 +16,72 @@ import com.zbc.api.aliyunai.model.CreateOutPaintingTaskResponse;
 import com.zbc.domain.dto.file.UploadPictureResult;
 import com.zbc.domain.dto.picture.*;
 import com.zbc.domain.pojo.Picture;
+import com.zbc.domain.pojo.PictureFile;
 import com.zbc.domain.pojo.Space;
 import com.zbc.domain.pojo.User;
+import com.zbc.domain.vo.CursorPageVO;
+import com.zbc.domain.vo.PictureGrabJobVO;
 import com.zbc.domain.vo.PictureVO;
 import com.zbc.domain.vo.UserVO;
+import com.zbc.enums.ColorMetricEnum;
 import com.zbc.enums.PictureReviewStatusEnum;
+import com.zbc.event.PictureChangeEvent;
 import com.zbc.exception.BusinessException;
 import com.zbc.exception.ErrorCode;
-import com.zbc.manage.CosManage;
+import com.zbc.manage.image.PictureThumbnailManager;
+import com.zbc.manage.quota.SpaceQuotaManager;
+import com.zbc.manage.quota.SpaceQuotaReservation;
+import com.zbc.manage.search.PictureColorIndex;
+import com.zbc.manage.search.PictureHashIndex;
+import com.zbc.manage.search.PictureSearchEngine;
+import com.zbc.manage.search.PictureSearchQuery;
 import com.zbc.manage.upload.FilePictureUpload;
+import com.zbc.manage.upload.PictureGrabJob;
+import com.zbc.manage.upload.PictureGrabJobManager;
+import com.zbc.manage.upload.PictureUploadBuffer;
 import com.zbc.manage.upload.PictureUploadTemplate;
 import com.zbc.manage.upload.UrlPictureUpload;
 import com.zbc.mapper.PictureMapper;
+import com.zbc.service.PictureFileService;
+import com.zbc.service.PicturePendingDeleteService;
 import com.zbc.service.PictureService;
+import com.zbc.service.PictureTagService;
 import com.zbc.service.SpaceService;
 import com.zbc.service.UserService;
-import com.zbc.utils.ColorSimilarUtils;
 import com.zbc.utils.ColorTransformUtils;
+import com.zbc.utils.ObjectKeyUtils;
 import com.zbc.utils.ThrowUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
 import org.springframework.beans.BeanUtils;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
 
 import javax.annotation.Resource;
 import javax.servlet.http.HttpServletRequest;
-import java.awt.*;
 import java.io.IOException;
 import java.net.URL;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.Semaphore;
 import java.util.stream.Collectors;
 
 
 @Service
 @Slf4j
 public class PictureServiceImpl extends ServiceImpl<PictureMapper, Picture> implements PictureService {
+
+    /**
+     * 游标分页支持的排序字段(非空且与 id 组合后唯一)
+     */
+    private static final List<String> CURSOR_SORT_FIELD_LIST = Arrays.asList("id", "createTime", "editTime", "updateTime");
+
     @Resource
     private UserService userService;
     @Resource
@@ -66,11 +91,41 @@ public class PictureServiceImpl extends ServiceImpl<PictureMapper, Picture> impl
     @Resource
     private UrlPictureUpload urlPictureUpload;
     @Resource
-    private CosManage cosManage;
-    @Resource
     private TransactionTemplate transactionTemplate;
     @Resource
     private AliYunAiApi aliYunAiApi;
+    @Resource
+    private ApplicationEventPublisher applicationEventPublisher;
+    @Resource
+    private PictureSearchEngine pictureSearchEngine;
+    @Resource
+    private PictureColorIndex pictureColorIndex;
+    @Resource
+    private PictureHashIndex pictureHashIndex;
+    @Resource
+    private PictureFileService pictureFileService;
+    @Resource
+    private PictureTagService pictureTagService;
+    @Resource
+    private PictureGrabJobManager pictureGrabJobManager;
+    @Resource
+    private PictureThumbnailManager pictureThumbnailManager;
+    @Resource
+    private PicturePendingDeleteService picturePendingDeleteService;
+    @Resource
+    private SpaceQuotaManager spaceQuotaManager;
+
+    /**
+     * 全文搜索最多召回的图片数量
+     */
+    @Value("${picture.search.max-candidates:1000}")
+    private int searchMaxCandidates;
+
+    /**
+     * 批量抓取时获取搜索结果页面的超时时间(毫秒)
+     */
+    @Value("${picture.grab.page-timeout-millis:10000}")
+    private int grabPageTimeoutMillis;
 
     /**
      * 图片上传
@@ -89,19 +144,14 @@ public class PictureServiceImpl extends ServiceImpl<PictureMapper, Picture> impl
 /*            if (!loginUser.getId().equals(space.getUserId())) {
                 throw new BusinessException(ErrorCode.NO_AUTH_ERROR, "没有空间权限");
             }*/
-            // 校验额度
-            if (space.getTotalCount() >= space.getMaxCount()) {
-                throw new BusinessException(ErrorCode.PARAMS_ERROR, "空间图片数量已满");
-            }
-            if (space.getTotalSize() >= space.getMaxSize()) {
-                throw new BusinessException(ErrorCode.PARAMS_ERROR, "空间大小不足");
-            }
+            // 额度在上传前原子预留, 见下文
         }
         Long pictureId = null;
         pictureId = uploadRequest.getId();
+        Picture oldPicture = null;
         // 更新图片,id存在
         if (pictureId != null) {
-            Picture oldPicture = getById(pictureId);
+            oldPicture = getById(pictureId);
             ThrowUtils.throwIf(oldPicture == null, ErrorCode.NOT_FOUND_ERROR, "图片不存在");
             // 仅本人和管理员可编辑
             if (!oldPicture.getUserId().equals(loginUser.getId()) && !userService.isAdmin(loginUser)) {
@@ -133,53 +183,113 @@ public class PictureServiceImpl extends ServiceImpl<PictureMapper, Picture> impl
             // 空间: space / spaceId
             uploadPathPrefix = String.format("space/%s", spaceId); // 以空间id划分文件夹
         }
-        // 根据inputSource选择上传模板
-        PictureUploadTemplate template = filePictureUpload;
-        if (inputSource instanceof String) {
-            template = urlPictureUpload;
-        }
-        UploadPictureResult uploadPictureResult = template.uploadPicture(inputSource, uploadPathPrefix);
-        // 属性拷贝
+        // 预留空间额度: 新图片占用 1 个数量, 大小先按已知的文件大小预留, 上传完成后按实际大小修正
+        // 重新上传时旧文件占用的额度会被替换, 只预留新旧文件的大小差
+        long oldPicSize = oldPicture == null ? 0 : ObjUtil.defaultIfNull(oldPicture.getPicSize(), 0L);
+        SpaceQuotaReservation quotaReservation = spaceId == null ? null
+                : spaceQuotaManager.reserve(spaceId, oldPicture == null ? 1 : 0, getDeclaredSize(inputSource) - oldPicSize);
         Picture picture = new Picture();
-        picture.setUrl(uploadPictureResult.getUrl());
-        picture.setThumbnailUrl(uploadPictureResult.getThumbnailUrl());
-        String picName = uploadPictureResult.getPicName();
-        // 支持从外部传入图片名称
-        if (uploadRequest != null && StrUtil.isNotBlank(uploadRequest.getPicName())) {
-            picName = uploadRequest.getPicName();
-        }
-        picture.setName(picName);
-        picture.setSpaceId(spaceId);
-        picture.setPicSize(uploadPictureResult.getPicSize());
-        picture.setPicWidth(uploadPictureResult.getPicWidth());
-        picture.setPicHeight(uploadPictureResult.getPicHeight());
-        picture.setPicScale(uploadPictureResult.getPicScale());
-        picture.setPicFormat(uploadPictureResult.getPicFormat());
-        picture.setPicColor(ColorTransformUtils.getStandardColor(uploadPictureResult.getPicColor()));
-        picture.setUserId(loginUser.getId());
-        if (pictureId != null) { // 更新
-            picture.setId(pictureId);
-            picture.setEditTime(new Date());
-        }
-        // 填充审核参数
-        fillReviewParams(picture, loginUser);
-        Long finalSpaceId = spaceId;
-        transactionTemplate.execute(status -> {
-            boolean saved = this.saveOrUpdate(picture);
-            ThrowUtils.throwIf(!saved, ErrorCode.OPERATION_ERROR, "图片上传失败");
-            if (finalSpaceId != null) {
-                // 更新空间的额度
-                boolean update = spaceService.lambdaUpdate()
-                        .eq(Space::getId, finalSpaceId)
-                        .setSql("totalSize = totalSize + " + picture.getPicSize())
-                        .setSql("totalCount = totalCount + 1")
-                        .update();
-                ThrowUtils.throwIf(!update, ErrorCode.OPERATION_ERROR, "额度更新失败");
+        // 本次通过上传模板上传的文件, 入库失败时由模板清理(分片上传的文件由分片上传会话清理)
+        PictureUploadTemplate template = null;
+        UploadPictureResult uploadPictureResult = null;
+        try {
+            if (inputSource instanceof UploadPictureResult) {
+                // 已存储并处理完成的文件(分片上传), 直接入库
+                uploadPictureResult = (UploadPictureResult) inputSource;
+            } else {
+                // 根据inputSource选择上传模板
+                template = filePictureUpload;
+                if (inputSource instanceof String) {
+                    template = urlPictureUpload;
+                }
+                uploadPictureResult = template.uploadPicture(inputSource, uploadPathPrefix);
             }
-            return picture;
-        });
+            if (quotaReservation != null) {
+                spaceQuotaManager.resize(quotaReservation, uploadPictureResult.getPicSize() - oldPicSize);
+            }
+            // 属性拷贝
+            picture.setUrl(uploadPictureResult.getUrl());
+            picture.setThumbnailUrl(uploadPictureResult.getThumbnailUrl());
+            String picName = uploadPictureResult.getPicName();
+            // 支持从外部传入图片名称
+            if (uploadRequest != null && StrUtil.isNotBlank(uploadRequest.getPicName())) {
+                picName = uploadRequest.getPicName();
+            }
+            picture.setName(picName);
+            picture.setSpaceId(spaceId);
+            picture.setPicSize(uploadPictureResult.getPicSize());
+            picture.setPicWidth(uploadPictureResult.getPicWidth());
+            picture.setPicHeight(uploadPictureResult.getPicHeight());
+            picture.setPicScale(uploadPictureResult.getPicScale());
+            picture.setPicFormat(uploadPictureResult.getPicFormat());
+            picture.setPicColor(ColorTransformUtils.getStandardColor(uploadPictureResult.getPicColor()));
+            picture.setPicColorValue(ColorTransformUtils.toColorValue(picture.getPicColor()));
+            picture.setPicPhash(uploadPictureResult.getPicPhash());
+            picture.setFileHash(uploadPictureResult.getFileHash());
+            picture.setUserId(loginUser.getId());
+            if (pictureId != null) { // 更新
+                picture.setId(pictureId);
+                picture.setEditTime(new Date());
+            }
+            // 填充审核参数
+            fillReviewParams(picture, loginUser);
+            // 重新上传时旧文件不再被本图片引用
+            String oldFileHash = oldPicture == null ? null : oldPicture.getFileHash();
+            boolean fileChanged = ObjUtil.notEqual(oldFileHash, picture.getFileHash());
+            Picture finalOldPicture = oldPicture;
+            transactionTemplate.execute(status -> {
+                boolean saved = this.saveOrUpdate(picture);
+                ThrowUtils.throwIf(!saved, ErrorCode.OPERATION_ERROR, "图片上传失败");
+                // 更新文件引用数
+                if (fileChanged) {
+                    boolean retained = pictureFileService.retain(picture.getFileHash());
+                    ThrowUtils.throwIf(!retained, ErrorCode.OPERATION_ERROR, "图片文件已失效, 请重新上传");
+                    int remaining = pictureFileService.release(oldFileHash);
+                    // 旧文件已没有引用, 登记清理(历史图片由 url 判断是否共用)
+                    if (finalOldPicture != null && (StrUtil.isBlank(oldFileHash) || remaining == 0)) {
+                        this.deletePicture(finalOldPicture);
+                    }
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            spaceQuotaManager.release(quotaReservation);
+            // 本次新保存的文件没有图片引用, 也不会进入处理队列, 删除文件记录与对象
+            if (template != null) {
+                try {
+                    template.discardNewFile(uploadPictureResult);
+                } catch (Exception discardException) {
+                    log.error("清理上传失败的文件失败, fileHash = {}", uploadPictureResult.getFileHash(), discardException);
+                }
+            }
+            throw e;
+        }
+        if (quotaReservation != null) {
+            spaceQuotaManager.commit(quotaReservation);
+        }
+        // 发布图片变更事件
+        if (pictureId != null) {
+            applicationEventPublisher.publishEvent(PictureChangeEvent.update(oldPicture, this.getById(pictureId)));
+        } else {
+            applicationEventPublisher.publishEvent(PictureChangeEvent.create(picture));
+        }
+        return this.toPictureVO(picture);
+    }
 
-        return PictureVO.objectToVO(picture);
+    /**
+     * 上传前已知的文件大小, 未知时返回 0
+     */
+    private static long getDeclaredSize(Object inputSource) {
+        if (inputSource instanceof MultipartFile) {
+            return ((MultipartFile) inputSource).getSize();
+        }
+        if (inputSource instanceof UploadPictureResult) {
+            return ObjUtil.defaultIfNull(((UploadPictureResult) inputSource).getPicSize(), 0L);
+        }
+        if (inputSource instanceof PictureUploadBuffer) {
+            return ((PictureUploadBuffer) inputSource).getSize();
+        }
+        return 0;
     }
 
     /**
@@ -214,13 +324,31 @@ public class PictureServiceImpl extends ServiceImpl<PictureMapper, Picture> impl
         Long spaceId = pictureQueryRequest.getSpaceId();
         boolean nullSpaceId = pictureQueryRequest.isNullSpaceId();
         // 从多字段中搜索
+        List<Long> searchPictureIdList = null;
         if (StrUtil.isNotBlank(searchText)) {
-            // 需要拼接查询条件
-            // where (name like '%searchText%' or introduction like '%searchText%') and isDelete = 0;
-            queryWrapper.and(qw -> qw.like("name", searchText)
-                    .or()
-                    .like("introduction", searchText)
-            );
+            if (pictureSearchEngine.isReady()) {
+                // 通过全文索引召回按相关度排序的图片 id, 再由数据库做其余条件过滤
+                PictureSearchQuery searchQuery = new PictureSearchQuery();
+                searchQuery.setSearchText(searchText);
+                searchQuery.setSpaceId(spaceId);
+                searchQuery.setNullSpaceId(nullSpaceId);
+                searchQuery.setReviewStatus(reviewStatus);
+                searchQuery.setUserId(userId);
+                searchQuery.setLimit(searchMaxCandidates);
+                searchPictureIdList = pictureSearchEngine.search(searchQuery);
+                if (searchPictureIdList.isEmpty()) {
+                    queryWrapper.apply("1 = 0");
+                } else {
+                    queryWrapper.in("id", searchPictureIdList);
+                }
+            } else {
+                // 索引未就绪时降级为模糊查询
+                // where (name like '%searchText%' or introduction like '%searchText%') and isDelete = 0;
+                queryWrapper.and(qw -> qw.like("name", searchText)
+                        .or()
+                        .like("introduction", searchText)
+                );
+            }
         }
         queryWrapper.eq(ObjUtil.isNotEmpty(reviewStatus), "reviewStatus", reviewStatus);
         queryWrapper.like(StrUtil.isNotBlank(reviewMessage), "reviewMessage", reviewMessage);
@@ -240,14 +368,31 @@ public class PictureServiceImpl extends ServiceImpl<PictureMapper, Picture> impl
         queryWrapper.eq(ObjUtil.isNotEmpty(picScale), "picScale", picScale);
         queryWrapper.ge(ObjUtil.isNotEmpty(startEditTime), "startEditTime", startEditTime);
         queryWrapper.lt(ObjUtil.isNotEmpty(endEditTime), "endEditTime", endEditTime);
-        // JSON 数组查询
+        // 标签查询: 通过 picture_tag 关联表求同时包含所有标签的图片
         if (CollUtil.isNotEmpty(tags)) {
-            for (String tag : tags) {
-                queryWrapper.like("tags", "\"" + tag + "\"");
+            // 与写入关联表时一样截断, 超长标签才能匹配
+            List<String> tagList = pictureTagService.normalizeTags(tags);
+            if (!tagList.isEmpty()) {
+                StringBuilder tagSql = new StringBuilder("id in (select pictureId from picture_tag where tag in (");
+                for (int i = 0; i < tagList.size(); i++) {
+                    tagSql.append(i == 0 ? "" : ", ").append("{").append(i).append("}");
+                }
+                tagSql.append(")");
+                // 冗余的 spaceId 条件, 缩小索引扫描范围
+                if (ObjUtil.isNotEmpty(spaceId)) {
+                    tagSql.append(" and spaceId = ").append(spaceId);
+                } else if (nullSpaceId) {
+                    tagSql.append(" and spaceId is null");
+                }
+                tagSql.append(" group by pictureId having count(*) = ").append(tagList.size()).append(")");
+                queryWrapper.apply(tagSql.toString(), tagList.toArray());
             }
         }
-        // 排序
-        queryWrapper.orderBy(StrUtil.isNotEmpty(sortField), sortOrder.equals("ascend"), sortField);
+        // 排序, 全文搜索且未指定排序字段时按相关度排序
+        if (StrUtil.isEmpty(sortField) && CollUtil.isNotEmpty(searchPictureIdList)) {
+            queryWrapper.orderByAsc("field(id, " + CollUtil.join(searchPictureIdList, ",") + ")");
+        }
+        queryWrapper.orderBy(StrUtil.isNotEmpty(sortField), "ascend".equals(sortOrder), sortField);
         return queryWrapper;
     }
 
@@ -258,7 +403,7 @@ public class PictureServiceImpl extends ServiceImpl<PictureMapper, Picture> impl
     public PictureVO getPictureVO(Picture picture, HttpServletRequest request) {
         ThrowUtils.throwIf(picture == null, ErrorCode.NOT_FOUND_ERROR);
         // 获取VO
-        PictureVO pictureVO = PictureVO.objectToVO(picture);
+        PictureVO pictureVO = this.toPictureVO(picture);
         // 关联查询
         Long userId = picture.getUserId();
         if (userId != null && userId > 0) {
@@ -269,6 +414,15 @@ public class PictureServiceImpl extends ServiceImpl<PictureMapper, Picture> impl
         return pictureVO;
     }
 
+    /**
+     * 实体类转VO类, 并填充各尺寸缩略图地址
+     */
+    private PictureVO toPictureVO(Picture picture) {
+        PictureVO pictureVO = PictureVO.objectToVO(picture);
+        pictureThumbnailManager.fillSrcset(pictureVO);
+        return pictureVO;
+    }
+
     /**
      * 分页获取图片封装
      */
@@ -280,7 +434,7 @@ public class PictureServiceImpl extends ServiceImpl<PictureMapper, Picture> impl
             return pictureVOPage;
         }
         // pictureList => pictureVOList
-        List<PictureVO> pictureVOList = pictureList.stream().map(PictureVO::objectToVO).collect(Collectors.toList());
+        List<PictureVO> pictureVOList = pictureList.stream().map(this::toPictureVO).collect(Collectors.toList());
         // 1. 关联查询用户信息
         Set<Long> userIdSet = pictureList.stream().map(Picture::getUserId).collect(Collectors.toSet());
         List<User> users = userService.listByIds(userIdSet);
@@ -299,6 +453,107 @@ public class PictureServiceImpl extends ServiceImpl<PictureMapper, Picture> impl
         return pictureVOPage;
     }
 
+    /**
+     * 游标分页获取图片封装
+     * 按 (sortField, id) 定位上一页的最后一条, 不使用 offset, 也不查询总数
+     */
+    @Override
+    public CursorPageVO<PictureVO> listPictureVOByCursor(PictureCursorQueryRequest cursorQueryRequest, HttpServletRequest request) {
+        ThrowUtils.throwIf(cursorQueryRequest == null, ErrorCode.PARAMS_ERROR);
+        int size = cursorQueryRequest.getPageSize();
+        ThrowUtils.throwIf(size <= 0, ErrorCode.PARAMS_ERROR);
+        String sortField = StrUtil.blankToDefault(cursorQueryRequest.getSortField(), "id");
+        ThrowUtils.throwIf(!CURSOR_SORT_FIELD_LIST.contains(sortField), ErrorCode.PARAMS_ERROR, "不支持的排序字段");
+        boolean ascend = "ascend".equals(cursorQueryRequest.getSortOrder());
+        // 1. 复用普通查询条件(含 sortField 排序), 游标逻辑只追加 id 作为第二排序键
+        PictureQueryRequest pictureQueryRequest = new PictureQueryRequest();
+        BeanUtil.copyProperties(cursorQueryRequest, pictureQueryRequest);
+        pictureQueryRequest.setSortField(sortField);
+        QueryWrapper<Picture> queryWrapper = this.getQueryWrapper(pictureQueryRequest);
+        // 2. 根据游标定位: (sortField, id) 严格大于(升序)或小于(降序)上一页的最后一条
+        String cursor = cursorQueryRequest.getCursor();
+        if (StrUtil.isNotBlank(cursor)) {
+            JSONObject cursorObj = decodeCursor(cursor);
+            ThrowUtils.throwIf(!sortField.equals(cursorObj.getStr("sortField"))
+                    || ascend != cursorObj.getBool("ascend", false), ErrorCode.PARAMS_ERROR, "游标与排序条件不一致");
+            Long lastId = cursorObj.getLong("id");
+            ThrowUtils.throwIf(lastId == null, ErrorCode.PARAMS_ERROR, "游标无效");
+            if ("id".equals(sortField)) {
+                queryWrapper.gt(ascend, "id", lastId).lt(!ascend, "id", lastId);
+            } else {
+                Long lastValue = cursorObj.getLong("value");
+                ThrowUtils.throwIf(lastValue == null, ErrorCode.PARAMS_ERROR, "游标无效");
+                Date lastDate = new Date(lastValue);
+                if (ascend) {
+                    queryWrapper.and(qw -> qw.gt(sortField, lastDate)
+                            .or(q -> q.eq(sortField, lastDate).gt("id", lastId)));
+                } else {
+                    queryWrapper.and(qw -> qw.lt(sortField, lastDate)
+                            .or(q -> q.eq(sortField, lastDate).lt("id", lastId)));
+                }
+            }
+        }
+        // 3. 排序, 多查一条用于判断是否还有下一页
+        queryWrapper.orderBy(!"id".equals(sortField), ascend, "id");
+        queryWrapper.last("limit " + (size + 1));
+        List<Picture> pictureList = this.list(queryWrapper);
+        boolean hasMore = pictureList.size() > size;
+        if (hasMore) {
+            pictureList = pictureList.subList(0, size);
+        }
+        // 4. 封装结果
+        CursorPageVO<PictureVO> cursorPageVO = new CursorPageVO<>();
+        cursorPageVO.setSize(size);
+        cursorPageVO.setHasMore(hasMore);
+        if (hasMore) {
+            cursorPageVO.setNextCursor(encodeCursor(sortField, ascend, pictureList.get(size - 1)));
+        }
+        // 关联查询用户信息
+        Page<Picture> picturePage = new Page<>(1, size, false);
+        picturePage.setRecords(pictureList);
+        cursorPageVO.setRecords(this.getPictureVOPage(picturePage, request).getRecords());
+        return cursorPageVO;
+    }
+
+    /**
+     * 生成游标(排序字段、排序方向、最后一条的排序值和 id)
+     */
+    private static String encodeCursor(String sortField, boolean ascend, Picture lastPicture) {
+        JSONObject cursorObj = new JSONObject();
+        cursorObj.set("sortField", sortField);
+        cursorObj.set("ascend", ascend);
+        cursorObj.set("id", lastPicture.getId());
+        Date value = null;
+        switch (sortField) {
+            case "createTime":
+                value = lastPicture.getCreateTime();
+                break;
+            case "editTime":
+                value = lastPicture.getEditTime();
+                break;
+            case "updateTime":
+                value = lastPicture.getUpdateTime();
+                break;
+            default:
+                break;
+        }
+        if (value != null) {
+            cursorObj.set("value", value.getTime());
+        }
+        return Base64.encodeUrlSafe(cursorObj.toString());
+    }
+
+    /**
+     * 解析游标
+     */
+    private static JSONObject decodeCursor(String cursor) {
+        try {
+            return JSONUtil.parseObj(Base64.decodeStr(cursor));
+        } catch (Exception e) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, "游标无效");
+        }
+    }
+
     /**
      * 图片校验规则
      */
@@ -346,6 +601,8 @@ public class PictureServiceImpl extends ServiceImpl<PictureMapper, Picture> impl
         newPicture.setReviewTime(new Date());
         boolean updated = this.updateById(newPicture);
         ThrowUtils.throwIf(!updated, ErrorCode.OPERATION_ERROR);
+        // 发布图片变更事件
+        applicationEventPublisher.publishEvent(PictureChangeEvent.update(picture, this.getById(id)));
     }
 
     /**
@@ -371,31 +628,64 @@ public class PictureServiceImpl extends ServiceImpl<PictureMapper, Picture> impl
      * 批量抓取和创建图片
      */
     @Override
-    public Integer uploadPictureByBatch(PictureUploadByBatchRequest byBatchRequest, User loginUser) {
-        ThrowUtils.throwIf(byBatchRequest.getCount() > 30, ErrorCode.PARAMS_ERROR, "最多抓取30条");
-        // 拼接爬取路径
-        String fetchUrl = String.format("https://cn.bing.com/images/async?q=%s&mmasync=1", byBatchRequest.getSearchText());
-        Document document = null;
+    public String uploadPictureByBatch(PictureUploadByBatchRequest byBatchRequest, User loginUser) {
+        Integer count = byBatchRequest.getCount();
+        ThrowUtils.throwIf(count == null || count <= 0 || count > 30, ErrorCode.PARAMS_ERROR, "最多抓取30条");
+        ThrowUtils.throwIf(StrUtil.isBlank(byBatchRequest.getSearchText()), ErrorCode.PARAMS_ERROR, "搜索词不能为空");
+        PictureGrabJob job = pictureGrabJobManager.createJob(byBatchRequest.getSearchText(), count);
+        // 解析页面也在后台执行, 接口立即返回任务 id
+        pictureGrabJobManager.getDownloadExecutor().execute(() -> startGrabJob(job, byBatchRequest, loginUser));
+        return job.getJobId();
+    }
+
+    @Override
+    public PictureGrabJobVO getUploadByBatchJob(String jobId) {
+        ThrowUtils.throwIf(StrUtil.isBlank(jobId), ErrorCode.PARAMS_ERROR);
+        PictureGrabJobVO pictureGrabJobVO = pictureGrabJobManager.getJobProgress(jobId);
+        ThrowUtils.throwIf(pictureGrabJobVO == null, ErrorCode.NOT_FOUND_ERROR, "任务不存在或已过期");
+        return pictureGrabJobVO;
+    }
+
+    /**
+     * 解析页面得到候选图片, 按抓取数量启动槽位
+     */
+    private void startGrabJob(PictureGrabJob job, PictureUploadByBatchRequest byBatchRequest, User loginUser) {
+        List<String> candidateList;
         try {
-            // 建立连接
-            document = Jsoup.connect(fetchUrl).get();
-        } catch (IOException e) {
-            log.error("获取页面失败", e);
-            throw new BusinessException(ErrorCode.OPERATION_ERROR, "获取页面失败");
+            candidateList = fetchGrabCandidates(job.getSearchText());
+        } catch (Exception e) {
+            log.error("批量抓取解析页面失败, jobId = {}", job.getJobId(), e);
+            job.fail(e instanceof BusinessException ? e.getMessage() : "获取页面失败");
+            return;
+        }
+        String namePrefix = byBatchRequest.getNamePrefix();
+        if (StrUtil.isBlank(namePrefix)) {
+            // 默认使用搜索词
+            namePrefix = byBatchRequest.getSearchText();
         }
+        int slotCount = job.start(candidateList);
+        for (int slot = 1; slot <= slotCount; slot++) {
+            grabNext(job, slot, namePrefix, loginUser);
+        }
+    }
+
+    /**
+     * 获取搜索结果页面, 解析出图片地址
+     */
+    private List<String> fetchGrabCandidates(String searchText) throws IOException {
+        // 拼接爬取路径
+        String fetchUrl = String.format("https://cn.bing.com/images/async?q=%s&mmasync=1", searchText);
+        Document document = Jsoup.connect(fetchUrl).timeout(grabPageTimeoutMillis).get();
         // 成功,解析内容
         Element div = document.getElementsByClass("dgControl").first();
         if (ObjUtil.isNull(div)) {
             throw new BusinessException(ErrorCode.OPERATION_ERROR, "获取图片失败");
         }
-        // List
-        Elements imgList = div.select(".iusc");
-        // 遍历结果,依次处理
-        int count = 0;
-        for (Element ele : imgList) {
-            String fileUrl = ele.attr("m");
-            JSONObject obj = JSONUtil.parseObj(fileUrl);
-            fileUrl = obj.getStr("murl");
+        // 去重并保持页面顺序
+        Set<String> candidateSet = new LinkedHashSet<>();
+        for (Element ele : div.select(".iusc")) {
+            JSONObject obj = JSONUtil.parseObj(ele.attr("m"));
+            String fileUrl = obj.getStr("murl");
             if (StrUtil.isBlank(fileUrl)) {
                 log.error("图片地址为空, 跳过: {}", fileUrl);
                 continue;
@@ -406,58 +696,95 @@ public class PictureServiceImpl extends ServiceImpl<PictureMapper, Picture> impl
             if (index > -1) {
                 fileUrl = fileUrl.substring(0, index);
             }
-            String namePrefix = byBatchRequest.getNamePrefix();
-            if (StrUtil.isBlank(namePrefix)) {
-                // 默认使用搜索词
-                namePrefix = byBatchRequest.getSearchText();
-            }
-            PictureUploadRequest request = new PictureUploadRequest();
-            request.setFileUrl(fileUrl);
-            if (StrUtil.isNotBlank(namePrefix)) {
-                request.setPicName(namePrefix + (count + 1));
-            }
-            // 上传图片
-            try {
-                PictureVO pictureVO = this.uploadPicture(fileUrl, request, loginUser);
-                log.info("上传图片成功: {}", pictureVO);
-                count++;
-            } catch (Exception e) {
-                log.error("上传图片失败: {}", e.getMessage());
-                continue;
-            }
-            if (count >= byBatchRequest.getCount()) {
-                break;
-            }
+            candidateSet.add(fileUrl);
         }
-        return count;
+        return new ArrayList<>(candidateSet);
     }
 
     /**
-     * 删除图片
+     * 槽位抓取下一张候选图片: 校验 + 下载(下载线程池) -> 上传 + 入库(上传线程池), 失败时继续取下一张补位
+     *
+     * @param slot 槽位序号, 用于生成图片名称
      */
-    @Async // 异步执行
-    @Override
-    public void deletePicture(Picture picture) {
-        // 1. 先查询图片是否被多次使用
-        String url = picture.getUrl();
-        Long count = this.lambdaQuery().eq(Picture::getUrl, url).count();
-        if (count > 1) {
-            // 2. 多次使用, 不清理
+    private void grabNext(PictureGrabJob job, int slot, String namePrefix, User loginUser) {
+        String fileUrl = job.pollCandidate();
+        if (fileUrl == null) {
+            job.finishSlot();
             return;
         }
+        pictureGrabJobManager.submitDownload(() -> downloadGrabFile(fileUrl), PictureUploadBuffer::close)
+                .thenApplyAsync(buffer -> {
+                    try {
+                        PictureUploadRequest request = new PictureUploadRequest();
+                        request.setFileUrl(fileUrl);
+                        if (StrUtil.isNotBlank(namePrefix)) {
+                            request.setPicName(namePrefix + slot);
+                        }
+                        return this.uploadPicture(buffer, request, loginUser);
+                    } finally {
+                        buffer.close();
+                    }
+                }, pictureGrabJobManager.getUploadExecutor())
+                .whenComplete((pictureVO, e) -> {
+                    if (e == null) {
+                        log.info("上传图片成功: {}", pictureVO);
+                        job.recordSuccess(pictureVO.getId());
+                        job.finishSlot();
+                    } else {
+                        log.error("上传图片失败: {}, {}", fileUrl, e.getMessage());
+                        job.recordFailure();
+                        grabNext(job, slot, namePrefix, loginUser);
+                    }
+                });
+    }
+
+    /**
+     * 校验并下载图片到内存缓冲区(超过阈值才落盘), 同一域名的并发下载数受限
+     */
+    private PictureUploadBuffer downloadGrabFile(String fileUrl) throws Exception {
+        Semaphore hostPermit = pictureGrabJobManager.getHostPermit(new URL(fileUrl).getHost());
+        hostPermit.acquire();
         try {
-            // 3. 否则清理图片(压缩图), 并删除缩略图
-            String urlPath = new URL(url).getPath();
-            cosManage.deleteObject(urlPath);
-            String thumbnailUrl = picture.getThumbnailUrl();
-            if (StrUtil.isNotBlank(thumbnailUrl)) {
-                String thumbnailUrlPath = new URL(thumbnailUrl).getPath();
-                cosManage.deleteObject(thumbnailUrlPath);
+            return urlPictureUpload.download(fileUrl);
+        } finally {
+            hostPermit.release();
+        }
+    }
+
+    /**
+     * 清理图片文件: 文件不再被引用时登记待删除对象, 由后台批量删除
+     * 需与图片的删除(或更换文件)在同一事务中调用, 待删除记录随事务一起提交, 不会遗漏
+     */
+    @Override
+    public void deletePicture(Picture picture) {
+        Set<String> urlSet = new LinkedHashSet<>();
+        urlSet.add(picture.getUrl());
+        urlSet.add(picture.getThumbnailUrl());
+        String fileHash = picture.getFileHash();
+        if (StrUtil.isNotBlank(fileHash)) {
+            // 1. 按内容去重的文件: 引用数为 0 时删除文件记录, 删除失败说明已被重新引用, 不清理
+            PictureFile pictureFile = pictureFileService.getByFileHash(fileHash);
+            if (pictureFile == null || !pictureFileService.removeIfUnreferenced(fileHash)) {
+                return;
+            }
+            // 文件处理完成后图片可能尚未同步, 文件与图片的地址都需要清理
+            urlSet.add(pictureFile.getUrl());
+            urlSet.add(pictureFile.getThumbnailUrl());
+        } else {
+            // 1. 历史图片(没有文件记录): 其他图片仍在使用同一地址时不清理
+            Long count = this.lambdaQuery().eq(Picture::getUrl, picture.getUrl()).count();
+            if (count > 0) {
+                return;
+            }
+        }
+        // 2. 登记待删除对象
+        List<String> keyList = new ArrayList<>();
+        for (String url : urlSet) {
+            if (StrUtil.isNotBlank(url)) {
+                keyList.add(ObjectKeyUtils.toObjectKey(url));
             }
-        } catch (Exception e) {
-            log.error("删除图片失败: {}", e.getMessage());
-            throw new BusinessException(ErrorCode.PARAMS_ERROR);
         }
+        picturePendingDeleteService.enqueue(keyList);
     }
 
     /**
@@ -499,20 +826,19 @@ public class PictureServiceImpl extends ServiceImpl<PictureMapper, Picture> impl
         transactionTemplate.execute(status -> {
             boolean result = this.removeById(pictureId);
             ThrowUtils.throwIf(!result, ErrorCode.OPERATION_ERROR);
-            // 更新空间的额度
-            Long spaceId = oldPicture.getSpaceId();
-            if (spaceId != null) {
-                boolean update = spaceService.lambdaUpdate()
-                        .eq(Space::getId, spaceId)
-                        .setSql("totalSize = totalSize - " + oldPicture.getPicSize())
-                        .setSql("totalCount = totalCount - 1")
-                        .update();
-                ThrowUtils.throwIf(!update, ErrorCode.OPERATION_ERROR, "额度更新失败");
+            // 减少文件引用数, 文件不再被引用时登记清理(历史图片由 url 判断是否共用)
+            int remaining = pictureFileService.release(oldPicture.getFileHash());
+            if (StrUtil.isBlank(oldPicture.getFileHash()) || remaining == 0) {
+                this.deletePicture(oldPicture);
             }
-            return true;
+            return null;
         });
-        // 清理文件
-        this.deletePicture(oldPicture);
+        // 释放空间额度
+        if (oldPicture.getSpaceId() != null) {
+            spaceQuotaManager.increase(oldPicture.getSpaceId(), -ObjUtil.defaultIfNull(oldPicture.getPicSize(), 0L), -1);
+        }
+        // 发布图片变更事件
+        applicationEventPublisher.publishEvent(PictureChangeEvent.delete(oldPicture));
     }
 
     /**
@@ -540,16 +866,30 @@ public class PictureServiceImpl extends ServiceImpl<PictureMapper, Picture> impl
         // 操作数据库
         boolean result = this.updateById(picture);
         ThrowUtils.throwIf(!result, ErrorCode.OPERATION_ERROR);
+        // 发布图片变更事件
+        applicationEventPublisher.publishEvent(PictureChangeEvent.update(oldPicture, this.getById(id)));
     }
 
     /**
      * 颜色搜索
      */
     @Override
-    public List<PictureVO> searchPictureByColor(Long spaceId, String picColor, User loginUser) {
+    public List<PictureVO> searchPictureByColor(SearchPictureByColorRequest searchPictureByColorRequest, User loginUser) {
         // 1. 校验参数
-        ThrowUtils.throwIf(picColor == null, ErrorCode.PARAMS_ERROR);
+        ThrowUtils.throwIf(searchPictureByColorRequest == null, ErrorCode.PARAMS_ERROR);
+        Long spaceId = searchPictureByColorRequest.getSpaceId();
+        Integer targetColor = ColorTransformUtils.toColorValue(searchPictureByColorRequest.getPicColor());
+        int topK = ObjUtil.defaultIfNull(searchPictureByColorRequest.getTopK(), 12);
+        Double maxDistance = searchPictureByColorRequest.getMaxDistance();
+        ColorMetricEnum metric = ColorMetricEnum.RGB;
+        if (StrUtil.isNotBlank(searchPictureByColorRequest.getMetric())) {
+            metric = ColorMetricEnum.getEnumByValue(searchPictureByColorRequest.getMetric());
+            ThrowUtils.throwIf(metric == null, ErrorCode.PARAMS_ERROR, "不支持的颜色距离度量");
+        }
+        ThrowUtils.throwIf(targetColor == null, ErrorCode.PARAMS_ERROR, "颜色格式错误");
         ThrowUtils.throwIf(spaceId == null, ErrorCode.PARAMS_ERROR);
+        ThrowUtils.throwIf(topK <= 0 || topK > 100, ErrorCode.PARAMS_ERROR, "返回数量需在 1 ~ 100 之间");
+        ThrowUtils.throwIf(maxDistance != null && maxDistance < 0, ErrorCode.PARAMS_ERROR, "距离上限不能为负数");
         ThrowUtils.throwIf(loginUser == null, ErrorCode.NO_AUTH_ERROR);
         // 2. 校验空间权限
         Space space = spaceService.getById(spaceId);
@@ -557,34 +897,53 @@ public class PictureServiceImpl extends ServiceImpl<PictureMapper, Picture> impl
         if (!space.getUserId().equals(loginUser.getId()) && !userService.isAdmin(loginUser)) {
             throw new BusinessException(ErrorCode.NO_AUTH_ERROR);
         }
-        // 3. 查询所有含有主色调的图片
-        List<Picture> pictureList = this.lambdaQuery()
-                .eq(Picture::getSpaceId, spaceId)
-                .isNotNull(Picture::getPicColor)
-                .list();
-        if (CollUtil.isEmpty(pictureList)) {
+        // 3. 通过空间颜色索引查询最接近的 topK 张图片(按距离升序)
+        List<Long> pictureIdList = pictureColorIndex.searchNearest(spaceId, targetColor, topK, maxDistance, metric);
+        if (CollUtil.isEmpty(pictureIdList)) {
             return new ArrayList<>();
         }
-        // 4. 将目标颜色转化为Color对象
-        Color targetColor = Color.decode(picColor);
-        // 5. 计算相似度并排序
-        // 6. 返回结果VO
-        return pictureList.stream()
-                .sorted(Comparator.comparingDouble(picture -> {
-                    // 提取图片主色调
-                    String hexColor = picture.getPicColor();
-                    // 没有主色调, 展示在最后
-                    if (StrUtil.isBlank(hexColor)) {
-                        return Double.MAX_VALUE;
-                    }
-                    // 转换为Color对象
-                    Color pictureColor = Color.decode(hexColor);
-                    // 默认是从小到大排序, 但是越大的越相似, 应该排在前面, 所以取负数
-                    return -ColorSimilarUtils.calculateSimilarity(targetColor, pictureColor);
-                }))
-                .limit(12) // 获取前12个
-                .collect(Collectors.toList())
-                .stream().map(PictureVO::objectToVO) // 转换为VO
+        // 4. 查询图片并按索引返回的顺序排列
+        Map<Long, Picture> pictureMap = this.listByIds(pictureIdList).stream()
+                .collect(Collectors.toMap(Picture::getId, picture -> picture));
+        return pictureIdList.stream()
+                .map(pictureMap::get)
+                .filter(Objects::nonNull)
+                .map(this::toPictureVO)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 站内以图搜图
+     */
+    @Override
+    public List<PictureVO> searchSimilarPicture(SearchPictureByPictureRequest searchPictureByPictureRequest) {
+        // 1. 校验参数
+        ThrowUtils.throwIf(searchPictureByPictureRequest == null, ErrorCode.PARAMS_ERROR);
+        Long pictureId = searchPictureByPictureRequest.getPictureId();
+        int maxDistance = ObjUtil.defaultIfNull(searchPictureByPictureRequest.getMaxDistance(), 10);
+        int topK = ObjUtil.defaultIfNull(searchPictureByPictureRequest.getTopK(), 12);
+        ThrowUtils.throwIf(pictureId == null || pictureId <= 0, ErrorCode.PARAMS_ERROR);
+        ThrowUtils.throwIf(maxDistance < 0 || maxDistance > 64, ErrorCode.PARAMS_ERROR, "汉明距离需在 0 ~ 64 之间");
+        ThrowUtils.throwIf(topK <= 0 || topK > 100, ErrorCode.PARAMS_ERROR, "返回数量需在 1 ~ 100 之间");
+        Picture picture = this.getById(pictureId);
+        ThrowUtils.throwIf(picture == null, ErrorCode.NOT_FOUND_ERROR);
+        ThrowUtils.throwIf(picture.getPicPhash() == null, ErrorCode.OPERATION_ERROR, "该图片暂不支持以图搜图");
+        // 2. 在图片所在范围(空间或公共图库)的哈希索引中查询, 多查一条用于排除自身
+        List<Long> pictureIdList = pictureHashIndex.searchSimilar(picture.getSpaceId(), picture.getPicPhash(), maxDistance, topK + 1)
+                .stream()
+                .filter(id -> !id.equals(pictureId))
+                .limit(topK)
+                .collect(Collectors.toList());
+        if (pictureIdList.isEmpty()) {
+            return new ArrayList<>();
+        }
+        // 3. 查询图片并按索引返回的顺序排列
+        Map<Long, Picture> pictureMap = this.listByIds(pictureIdList).stream()
+                .collect(Collectors.toMap(Picture::getId, p -> p));
+        return pictureIdList.stream()
+                .map(pictureMap::get)
+                .filter(Objects::nonNull)
+                .map(this::toPictureVO)
                 .collect(Collectors.toList());
     }
 
@@ -629,9 +988,14 @@ public class PictureServiceImpl extends ServiceImpl<PictureMapper, Picture> impl
         });
         // 5. 批量重命名图片
         fillPictureWithNameRule(pictureList, nameRule);
-        // 6. 操作数据库
+        // 6. 操作数据库(先查询变更前的完整图片, 用于发布变更事件)
+        Map<Long, Picture> oldPictureMap = this.listByIds(pictureList.stream().map(Picture::getId).collect(Collectors.toList()))
+                .stream().collect(Collectors.toMap(Picture::getId, picture -> picture));
         boolean updated = this.updateBatchById(pictureList);
         ThrowUtils.throwIf(!updated, ErrorCode.OPERATION_ERROR);
+        // 发布图片变更事件(事务提交后处理)
+        this.listByIds(oldPictureMap.keySet()).forEach(newPicture ->
+                applicationEventPublisher.publishEvent(PictureChangeEvent.update(oldPictureMap.get(newPicture.getId()), newPicture)));
     }
 
     /**
@@ -0,0 +1,111 @@
+package com.zbc.service.impl;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.zbc.domain.pojo.Picture;
+import com.zbc.domain.pojo.PictureTag;
+import com.zbc.event.PictureChangeEvent;
+import com.zbc.mapper.PictureTagMapper;
+import com.zbc.service.PictureTagService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+
+@Slf4j
+@Service
+public class PictureTagServiceImpl extends ServiceImpl<PictureTagMapper, PictureTag> implements PictureTagService {
+
+    /**
+     * 标签最大长度, 与表字段长度一致
+     */
+    private static final int TAG_MAX_LENGTH = 64;
+
+    /**
+     * 图片变更时同步标签关联
+     * 在事务中发布时随图片一起提交, 否则立即执行
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void onPictureChange(PictureChangeEvent event) {
+        if (event.getNewPicture() != null) {
+            this.syncPictureTags(event.getNewPicture());
+        } else if (event.getOldPicture() != null) {
+            this.removeByPictureId(event.getOldPicture().getId());
+        }
+    }
+
+    @Override
+    public void syncPictureTags(Picture picture) {
+        if (picture == null || picture.getId() == null) {
+            return;
+        }
+        this.removeByPictureId(picture.getId());
+        List<String> tagList = this.parseTags(picture.getTags());
+        if (tagList.isEmpty()) {
+            return;
+        }
+        List<PictureTag> pictureTagList = tagList.stream().map(tag -> {
+            PictureTag pictureTag = new PictureTag();
+            pictureTag.setPictureId(picture.getId());
+            pictureTag.setTag(tag);
+            pictureTag.setSpaceId(picture.getSpaceId());
+            return pictureTag;
+        }).collect(Collectors.toList());
+        this.saveBatch(pictureTagList);
+    }
+
+    @Override
+    public void removeByPictureId(Long pictureId) {
+        if (pictureId == null) {
+            return;
+        }
+        this.remove(new QueryWrapper<PictureTag>().eq("pictureId", pictureId));
+    }
+
+    @Override
+    public List<String> parseTags(String tagsJson) {
+        if (StrUtil.isBlank(tagsJson)) {
+            return new ArrayList<>();
+        }
+        List<String> tagList;
+        try {
+            tagList = JSONUtil.toList(tagsJson, String.class);
+        } catch (Exception e) {
+            log.warn("图片标签格式错误, tags = {}", tagsJson);
+            return new ArrayList<>();
+        }
+        return this.normalizeTags(tagList);
+    }
+
+    @Override
+    public List<String> normalizeTags(List<String> tagList) {
+        if (CollUtil.isEmpty(tagList)) {
+            return new ArrayList<>();
+        }
+        // 关联表的排序规则(utf8mb4_unicode_ci)不区分大小写, 按小写去重, 保留第一次出现的写法,
+        // 否则大小写不同的标签会违反唯一索引, 标签过滤的 count(*) 也会对不上
+        Set<String> keySet = new HashSet<>();
+        List<String> result = new ArrayList<>();
+        for (String tag : tagList) {
+            if (StrUtil.isBlank(tag)) {
+                continue;
+            }
+            String normalizedTag = StrUtil.subPre(tag.trim(), TAG_MAX_LENGTH);
+            if (keySet.add(normalizedTag.toLowerCase(Locale.ROOT))) {
+                result.add(normalizedTag);
+            }
+        }
+        return result;
+    }
+}
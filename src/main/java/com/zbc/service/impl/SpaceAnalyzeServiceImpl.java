@@ -1,29 +1,32 @@
 package com.zbc.service.impl;
 
+import cn.hutool.core.convert.Convert;
 import cn.hutool.core.util.NumberUtil;
 import cn.hutool.core.util.ObjUtil;
-import cn.hutool.json.JSONUtil;
+import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.zbc.domain.dto.space.analyze.*;
-import com.zbc.domain.pojo.Picture;
+import com.zbc.domain.pojo.PictureTag;
 import com.zbc.domain.pojo.Space;
+import com.zbc.domain.pojo.SpaceStatDaily;
 import com.zbc.domain.pojo.User;
 import com.zbc.domain.vo.space.analyze.*;
+import com.zbc.enums.PictureSizeRangeEnum;
 import com.zbc.exception.BusinessException;
 import com.zbc.exception.ErrorCode;
+import com.zbc.manage.quota.SpaceQuotaManager;
 import com.zbc.mapper.SpaceMapper;
-import com.zbc.service.PictureService;
+import com.zbc.service.PictureTagService;
 import com.zbc.service.SpaceAnalyzeService;
 import com.zbc.service.SpaceService;
+import com.zbc.service.SpaceStatDailyService;
 import com.zbc.service.UserService;
 import com.zbc.utils.ThrowUtils;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
-import java.util.LinkedHashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.stream.Collectors;
 
 
@@ -36,7 +39,11 @@ public class SpaceAnalyzeServiceImpl extends ServiceImpl<SpaceMapper, Space> imp
     private SpaceService spaceService;
 
     @Resource
-    private PictureService pictureService;
+    private PictureTagService pictureTagService;
+    @Resource
+    private SpaceQuotaManager spaceQuotaManager;
+    @Resource
+    private SpaceStatDailyService spaceStatDailyService;
 
     /**
      * 获取空间使用情况
@@ -49,19 +56,19 @@ public class SpaceAnalyzeServiceImpl extends ServiceImpl<SpaceMapper, Space> imp
         boolean queryPublic = spaceAnalyzeRequest.isQueryPublic();
         boolean queryAll = spaceAnalyzeRequest.isQueryAll();
         if (queryAll || queryPublic) {
-            // 2. 全空间分析 / 公共图库分析 ===> Picture 表
+            // 2. 全空间分析 / 公共图库分析 ===> 汇总表
             // 权限校验, 仅管理员使用
             checkSpaceAuth(spaceAnalyzeRequest, loginUser);
             // 获取查询条件
-            QueryWrapper<Picture> queryWrapper = new QueryWrapper<>();
-            queryWrapper.select("picSize"); // 指定字段, 优化
-            fillAnalyzeQueryWrapper(spaceAnalyzeRequest, queryWrapper);
-            // 其实列表里就是图片大小一个字段
-            List<Object> pictureObjList = pictureService.getBaseMapper().selectObjs(queryWrapper);
+            QueryWrapper<SpaceStatDaily> queryWrapper = new QueryWrapper<>();
+            fillStatQueryWrapper(spaceAnalyzeRequest, queryWrapper);
+            queryWrapper.select("ifnull(sum(pictureCount), 0) as usedCount", "ifnull(sum(totalSize), 0) as usedSize");
+            List<Map<String, Object>> resultList = spaceStatDailyService.getBaseMapper().selectMaps(queryWrapper);
+            Map<String, Object> result = resultList.isEmpty() || resultList.get(0) == null ? Collections.emptyMap() : resultList.get(0);
             // 统计已使用的大小
-            long usedSize = pictureObjList.stream().mapToLong(obj -> (Long) obj).sum();
+            long usedSize = Convert.toLong(result.get("usedSize"), 0L);
             // 统计已使用的数量
-            long usedCount = pictureObjList.size();
+            long usedCount = Convert.toLong(result.get("usedCount"), 0L);
             // 封装返回结果
             SpaceUsageAnalyzeResponse response = new SpaceUsageAnalyzeResponse();
             response.setUsedSize(usedSize);
@@ -80,6 +87,8 @@ public class SpaceAnalyzeServiceImpl extends ServiceImpl<SpaceMapper, Space> imp
             ThrowUtils.throwIf(space == null, ErrorCode.NOT_FOUND_ERROR, "空间不存在");
             // 权限校验
             checkSpaceAuth(spaceAnalyzeRequest, loginUser);
+            // 使用实时的已使用额度
+            spaceQuotaManager.fillUsage(space);
             // 封装返回结果
             SpaceUsageAnalyzeResponse response = new SpaceUsageAnalyzeResponse();
             response.setUsedSize(space.getTotalSize());
@@ -105,17 +114,19 @@ public class SpaceAnalyzeServiceImpl extends ServiceImpl<SpaceMapper, Space> imp
         // 检查权限
         checkSpaceAuth(categoryAnalyzeRequest, loginUser);
         // 构造查询条件
-        QueryWrapper<Picture> queryWrapper = new QueryWrapper<>();
-        fillAnalyzeQueryWrapper(categoryAnalyzeRequest, queryWrapper);
-        // 构造查询条件: 根据分类进行分组查询
-        queryWrapper.select("category", "count(*) as count", "sum(picSize) as totalSize").groupBy("category");
-        // 转换结果为List<SpaceCategoryAnalyzeResponse>
-        return pictureService.getBaseMapper().selectMaps(queryWrapper)
+        QueryWrapper<SpaceStatDaily> queryWrapper = new QueryWrapper<>();
+        fillStatQueryWrapper(categoryAnalyzeRequest, queryWrapper);
+        // 构造查询条件: 在汇总表上根据分类进行分组查询
+        queryWrapper.select("category", "sum(pictureCount) as count", "sum(totalSize) as totalSize")
+                .groupBy("category")
+                .having("sum(pictureCount) > 0");
+        // 转换结果为List<SpaceCategoryAnalyzeResponse>, 未分类(空字符串)返回 null
+        return spaceStatDailyService.getBaseMapper().selectMaps(queryWrapper)
                 .stream()
                 .map(result -> {
-                    String category = result.get("category").toString();
-                    long count = Long.parseLong((String) result.get("count"));
-                    long totalSize = Long.parseLong((String) result.get("totalSize"));
+                    String category = StrUtil.emptyToNull(Convert.toStr(result.get("category")));
+                    long count = Convert.toLong(result.get("count"), 0L);
+                    long totalSize = Convert.toLong(result.get("totalSize"), 0L);
                     return new SpaceCategoryAnalyzeResponse(category, count, totalSize);
                 }).collect(Collectors.toList());
     }
@@ -129,28 +140,18 @@ public class SpaceAnalyzeServiceImpl extends ServiceImpl<SpaceMapper, Space> imp
         ThrowUtils.throwIf(loginUser == null, ErrorCode.NO_AUTH_ERROR);
         // 检查权限
         checkSpaceAuth(tagAnalyzeRequest, loginUser);
-        // 构造查询条件
-        QueryWrapper<Picture> queryWrapper = new QueryWrapper<>();
+        // 构造查询条件: 在图片标签关联表上按标签分组计数, 按使用次数降序排序
+        QueryWrapper<PictureTag> queryWrapper = new QueryWrapper<>();
         fillAnalyzeQueryWrapper(tagAnalyzeRequest, queryWrapper);
-
-        // 1. 查询所有符合条件的标签
-        queryWrapper.select("tas");
-        List<String> tagsJsonList = pictureService.getBaseMapper().selectObjs(queryWrapper)
+        queryWrapper.select("tag", "count(*) as count").groupBy("tag").orderByDesc("count");
+        // 转换为响应对象
+        return pictureTagService.getBaseMapper().selectMaps(queryWrapper)
                 .stream()
-                .filter(ObjUtil::isNotNull)
-                .map(Object::toString)
-                .collect(Collectors.toList());
-
-        // 2. 合并所有标签并统计使用次数(k, v : 标签名, 使用次数)
-        // 扁平化: ["java", "python"], ["java", "php"] ===> ["java", "python", "php"]
-        Map<String, Long> tagsCountMap = tagsJsonList.stream()
-                .flatMap(tagsJson -> JSONUtil.toList(tagsJson, String.class).stream())
-                .collect(Collectors.groupingBy(tag -> tag, Collectors.counting()));
-
-        // 3. 转换为响应对象, 按使用次数降序排序
-        return tagsCountMap.entrySet().stream()
-                .sorted((e1, e2) -> Long.compare(e2.getValue(), e1.getValue())) // 降序排序
-                .map(entry -> new SpaceTagAnalyzeResponse(entry.getKey(), entry.getValue()))
+                .map(result -> {
+                    String tag = result.get("tag").toString();
+                    Long count = Long.parseLong(result.get("count").toString());
+                    return new SpaceTagAnalyzeResponse(tag, count);
+                })
                 .collect(Collectors.toList());
     }
 
@@ -163,21 +164,18 @@ public class SpaceAnalyzeServiceImpl extends ServiceImpl<SpaceMapper, Space> imp
         ThrowUtils.throwIf(loginUser == null, ErrorCode.NO_AUTH_ERROR);
         // 检查权限
         checkSpaceAuth(spaceSizeAnalyzeRequest, loginUser);
-        // 构造查询条件
-        QueryWrapper<Picture> queryWrapper = new QueryWrapper<>();
-        fillAnalyzeQueryWrapper(spaceSizeAnalyzeRequest, queryWrapper);
-
-        queryWrapper.select("picSize");
-        List<Long> picSizeList = pictureService.getBaseMapper().selectObjs(queryWrapper)
-                .stream()
-                .map(size -> (Long) size)
-                .collect(Collectors.toList());
+        // 构造查询条件: 在汇总表上按大小区间分组
+        QueryWrapper<SpaceStatDaily> queryWrapper = new QueryWrapper<>();
+        fillStatQueryWrapper(spaceSizeAnalyzeRequest, queryWrapper);
+        queryWrapper.select("sizeBucket", "sum(pictureCount) as count").groupBy("sizeBucket");
+        Map<Integer, Long> bucketCountMap = new HashMap<>();
+        spaceStatDailyService.getBaseMapper().selectMaps(queryWrapper).forEach(result ->
+                bucketCountMap.put(Convert.toInt(result.get("sizeBucket")), Convert.toLong(result.get("count"), 0L)));
         // 定义分段范围, 使用有序的Map(k, v : "图片范围(大小)", 符合条件的图片数量)
         Map<String, Long> sizeRangeMap = new LinkedHashMap<>();
-        sizeRangeMap.put("<100KB", picSizeList.stream().filter(size -> size < 100 * 1024).count());
-        sizeRangeMap.put("100KB - 500KB", picSizeList.stream().filter(size -> size > 100 * 1024 && size < 500 * 1024).count());
-        sizeRangeMap.put("500KB - 1MB", picSizeList.stream().filter(size -> size > 500 * 1024 && size < 1024 * 1024).count());
-        sizeRangeMap.put(">1MB", picSizeList.stream().filter(size -> size > 1024 * 1024).count());
+        for (PictureSizeRangeEnum range : PictureSizeRangeEnum.values()) {
+            sizeRangeMap.put(range.getText(), bucketCountMap.getOrDefault(range.getValue(), 0L));
+        }
         // 转换为响应对象
         return sizeRangeMap.entrySet().stream()
                 .map(entry -> new SpaceSizeAnalyzeResponse(entry.getKey(), entry.getValue()))
@@ -193,30 +191,30 @@ public class SpaceAnalyzeServiceImpl extends ServiceImpl<SpaceMapper, Space> imp
         ThrowUtils.throwIf(loginUser == null, ErrorCode.NO_AUTH_ERROR);
         // 检查权限
         checkSpaceAuth(spaceUserAnalyzeRequest, loginUser);
-        // 构造查询条件
-        QueryWrapper<Picture> queryWrapper = new QueryWrapper<>();
+        // 构造查询条件(汇总表按天汇总, 周、月由天聚合)
+        QueryWrapper<SpaceStatDaily> queryWrapper = new QueryWrapper<>();
         Long userId = spaceUserAnalyzeRequest.getUserId();
         queryWrapper.eq(ObjUtil.isNotEmpty(userId), "userId", userId);
-        fillAnalyzeQueryWrapper(spaceUserAnalyzeRequest, queryWrapper);
+        fillStatQueryWrapper(spaceUserAnalyzeRequest, queryWrapper);
         // 时间维度: 按天、按周、按月
         String dimension = spaceUserAnalyzeRequest.getTimeDimension();
         switch (dimension) {
             case "day":
-                queryWrapper.select("DATE_FORMAT(createTime, '%Y-%m-%d') as period", "count(*) as count");
+                queryWrapper.select("DATE_FORMAT(statDate, '%Y-%m-%d') as period", "sum(pictureCount) as count");
                 break;
             case "week":
-                queryWrapper.select("YEARWEEK(createTime) as period", "count(*) as count");
+                queryWrapper.select("YEARWEEK(statDate) as period", "sum(pictureCount) as count");
                 break;
             case "month":
-                queryWrapper.select("DATE_FORMAT(createTime, '%Y-%m') as period", "count(*) as count");
+                queryWrapper.select("DATE_FORMAT(statDate, '%Y-%m') as period", "sum(pictureCount) as count");
                 break;
             default:
                 throw new BusinessException(ErrorCode.PARAMS_ERROR, "时间维度错误");
         }
         // 分组并排序
-        queryWrapper.groupBy("period").orderByDesc("period");
+        queryWrapper.groupBy("period").having("sum(pictureCount) > 0").orderByDesc("period");
         // 查询结果并转换
-        return pictureService.getBaseMapper().selectMaps(queryWrapper)
+        return spaceStatDailyService.getBaseMapper().selectMaps(queryWrapper)
                 .stream()
                 .map(result -> {
                     String period = result.get("period").toString();
@@ -227,6 +225,21 @@ public class SpaceAnalyzeServiceImpl extends ServiceImpl<SpaceMapper, Space> imp
     }
 
 
+    /**
+     * 从图片表重建汇总
+     */
+    @Override
+    public void rebuildSpaceStat(SpaceAnalyzeRequest spaceAnalyzeRequest, User loginUser) {
+        ThrowUtils.throwIf(spaceAnalyzeRequest == null, ErrorCode.PARAMS_ERROR);
+        ThrowUtils.throwIf(loginUser == null, ErrorCode.NO_AUTH_ERROR);
+        checkSpaceAuth(spaceAnalyzeRequest, loginUser);
+        boolean queryAll = spaceAnalyzeRequest.isQueryAll();
+        boolean queryPublic = spaceAnalyzeRequest.isQueryPublic();
+        Long spaceId = spaceAnalyzeRequest.getSpaceId();
+        ThrowUtils.throwIf(!queryAll && !queryPublic && spaceId == null, ErrorCode.OPERATION_ERROR, "请指定查询范围");
+        spaceStatDailyService.rebuild(queryAll ? null : spaceId, !queryAll && queryPublic);
+    }
+
     /**
      * 空间分析的权限校验
      *
@@ -256,7 +269,7 @@ public class SpaceAnalyzeServiceImpl extends ServiceImpl<SpaceMapper, Space> imp
      * @param request 请求
      * @param wrapper 查询对象
      */
-    private static void fillAnalyzeQueryWrapper(SpaceAnalyzeRequest request, QueryWrapper<Picture> wrapper) {
+    private static void fillAnalyzeQueryWrapper(SpaceAnalyzeRequest request, QueryWrapper<?> wrapper) {
         boolean queryAll = request.isQueryAll();
         if (queryAll) {
             // 全空间分析(admin), 无查询条件
@@ -275,6 +288,27 @@ public class SpaceAnalyzeServiceImpl extends ServiceImpl<SpaceMapper, Space> imp
         }
         throw new BusinessException(ErrorCode.OPERATION_ERROR, "请指定查询范围");
     }
+
+    /**
+     * 根据分析的条件构建汇总表的查询对象(公共图库在汇总表中的空间 id 为 0)
+     *
+     * @param request 请求
+     * @param wrapper 查询对象
+     */
+    private static void fillStatQueryWrapper(SpaceAnalyzeRequest request, QueryWrapper<SpaceStatDaily> wrapper) {
+        if (request.isQueryAll()) {
+            return;
+        }
+        if (request.isQueryPublic()) {
+            wrapper.eq("spaceId", SpaceStatDailyService.PUBLIC_SPACE_ID);
+            return;
+        }
+        if (request.getSpaceId() != null) {
+            wrapper.eq("spaceId", request.getSpaceId());
+            return;
+        }
+        throw new BusinessException(ErrorCode.OPERATION_ERROR, "请指定查询范围");
+    }
 }
 
 
@@ -19,6 +19,7 @@ import com.zbc.enums.SpaceRoleEnum;
 import com.zbc.enums.SpaceTypeEnum;
 import com.zbc.exception.BusinessException;
 import com.zbc.exception.ErrorCode;
+import com.zbc.manage.quota.SpaceQuotaManager;
 import com.zbc.mapper.SpaceMapper;
 import com.zbc.service.SpaceService;
 import com.zbc.service.SpaceUserService;
@@ -44,6 +45,8 @@ public class SpaceServiceImpl extends ServiceImpl<SpaceMapper, Space> implements
     private TransactionTemplate transactionTemplate;
     @Resource
     private SpaceUserService spaceUserService;
+    @Resource
+    private SpaceQuotaManager spaceQuotaManager;
 //    @Resource
 //    @Lazy
 //    private DynamicShardingManager dynamicShardingManager;
@@ -81,6 +84,8 @@ public class SpaceServiceImpl extends ServiceImpl<SpaceMapper, Space> implements
     @Override
     public SpaceVO getSpaceVO(Space space, HttpServletRequest request) {
         ThrowUtils.throwIf(space == null, ErrorCode.NOT_FOUND_ERROR);
+        // 使用实时的已使用额度
+        spaceQuotaManager.fillUsage(space);
         // 获取VO
         SpaceVO spaceVO = SpaceVO.objToVo(space);
         // 关联查询
@@ -103,6 +108,8 @@ public class SpaceServiceImpl extends ServiceImpl<SpaceMapper, Space> implements
         if (CollUtil.isEmpty(spaceList)) {
             return spaceVOPage;
         }
+        // 使用实时的已使用额度
+        spaceQuotaManager.fillUsage(spaceList);
         // spaceList => spaceVOList
         List<SpaceVO> spaceVOList = spaceList.stream().map(SpaceVO::objToVo).collect(Collectors.toList());
         // 1. 关联查询用户信息
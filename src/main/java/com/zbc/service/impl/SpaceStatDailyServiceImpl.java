@@ -0,0 +1,145 @@
+package com.zbc.service.impl;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.convert.Convert;
+import cn.hutool.core.date.DateUtil;
+import cn.hutool.core.util.ObjUtil;
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.zbc.domain.pojo.Picture;
+import com.zbc.domain.pojo.SpaceStatDaily;
+import com.zbc.enums.PictureSizeRangeEnum;
+import com.zbc.event.PictureChangeEvent;
+import com.zbc.mapper.PictureMapper;
+import com.zbc.mapper.SpaceStatDailyMapper;
+import com.zbc.service.SpaceStatDailyService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.Resource;
+import java.util.*;
+
+
+@Slf4j
+@Service
+public class SpaceStatDailyServiceImpl extends ServiceImpl<SpaceStatDailyMapper, SpaceStatDaily> implements SpaceStatDailyService {
+
+    /**
+     * 每批写入的数量
+     */
+    private static final int BATCH_SIZE = 500;
+
+    @Resource
+    private PictureMapper pictureMapper;
+
+    /**
+     * 图片变更时累加汇总
+     * 在事务中发布时随图片一起提交, 否则立即执行
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void onPictureChange(PictureChangeEvent event) {
+        this.applyChange(event.getOldPicture(), event.getNewPicture());
+    }
+
+    @Override
+    public void applyChange(Picture oldPicture, Picture newPicture) {
+        // 按唯一键排序, 并发事务加锁顺序一致, 避免死锁
+        Map<String, SpaceStatDaily> deltaMap = new TreeMap<>();
+        addDelta(deltaMap, oldPicture, -1);
+        addDelta(deltaMap, newPicture, 1);
+        // 编辑名称、审核等不影响汇总的变更, 增量相互抵消
+        deltaMap.values().removeIf(delta -> delta.getPictureCount() == 0 && delta.getTotalSize() == 0);
+        if (deltaMap.isEmpty()) {
+            return;
+        }
+        this.baseMapper.upsertBatch(new ArrayList<>(deltaMap.values()));
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public void rebuild(Long spaceId, boolean queryPublic) {
+        // 1. 删除范围内的汇总
+        QueryWrapper<SpaceStatDaily> removeWrapper = new QueryWrapper<>();
+        if (spaceId != null) {
+            removeWrapper.eq("spaceId", spaceId);
+        } else if (queryPublic) {
+            removeWrapper.eq("spaceId", PUBLIC_SPACE_ID);
+        }
+        this.baseMapper.delete(removeWrapper);
+        // 2. 按汇总维度分组统计图片
+        QueryWrapper<Picture> queryWrapper = new QueryWrapper<>();
+        if (spaceId != null) {
+            queryWrapper.eq("spaceId", spaceId);
+        } else if (queryPublic) {
+            queryWrapper.isNull("spaceId");
+        }
+        queryWrapper.select("spaceId", "date(createTime) as statDate", "userId", "category",
+                        buildSizeBucketSql() + " as sizeBucket", "count(*) as pictureCount", "ifnull(sum(picSize), 0) as totalSize")
+                .groupBy("spaceId", "statDate", "userId", "category", "sizeBucket");
+        List<SpaceStatDaily> statList = new ArrayList<>();
+        for (Map<String, Object> result : pictureMapper.selectMaps(queryWrapper)) {
+            SpaceStatDaily stat = new SpaceStatDaily();
+            stat.setSpaceId(ObjUtil.defaultIfNull(Convert.toLong(result.get("spaceId")), PUBLIC_SPACE_ID));
+            stat.setStatDate(Convert.toDate(result.get("statDate")));
+            stat.setUserId(Convert.toLong(result.get("userId")));
+            stat.setCategory(StrUtil.nullToEmpty(Convert.toStr(result.get("category"))));
+            stat.setSizeBucket(Convert.toInt(result.get("sizeBucket")));
+            stat.setPictureCount(Convert.toLong(result.get("pictureCount"), 0L));
+            stat.setTotalSize(Convert.toLong(result.get("totalSize"), 0L));
+            statList.add(stat);
+        }
+        // 3. 分批写入
+        for (List<SpaceStatDaily> batch : CollUtil.split(statList, BATCH_SIZE)) {
+            this.baseMapper.upsertBatch(batch);
+        }
+        log.info("重建空间汇总完成: spaceId = {}, queryPublic = {}, rows = {}", spaceId, queryPublic, statList.size());
+    }
+
+    /**
+     * 累加一张图片的增量
+     */
+    private static void addDelta(Map<String, SpaceStatDaily> deltaMap, Picture picture, int sign) {
+        if (picture == null || picture.getId() == null || picture.getUserId() == null) {
+            return;
+        }
+        long spaceId = ObjUtil.defaultIfNull(picture.getSpaceId(), PUBLIC_SPACE_ID);
+        // 新建图片的创建时间由数据库填充, 事件中可能为空
+        Date statDate = DateUtil.beginOfDay(ObjUtil.defaultIfNull(picture.getCreateTime(), new Date()));
+        String category = StrUtil.nullToEmpty(picture.getCategory());
+        long picSize = ObjUtil.defaultIfNull(picture.getPicSize(), 0L);
+        int sizeBucket = PictureSizeRangeEnum.getEnumBySize(picSize).getValue();
+        String key = String.format("%d|%s|%d|%s|%d", spaceId, DateUtil.formatDate(statDate), picture.getUserId(), category, sizeBucket);
+        SpaceStatDaily delta = deltaMap.computeIfAbsent(key, k -> {
+            SpaceStatDaily stat = new SpaceStatDaily();
+            stat.setSpaceId(spaceId);
+            stat.setStatDate(statDate);
+            stat.setUserId(picture.getUserId());
+            stat.setCategory(category);
+            stat.setSizeBucket(sizeBucket);
+            stat.setPictureCount(0L);
+            stat.setTotalSize(0L);
+            return stat;
+        });
+        delta.setPictureCount(delta.getPictureCount() + sign);
+        delta.setTotalSize(delta.getTotalSize() + sign * picSize);
+    }
+
+    /**
+     * 大小区间的 SQL 表达式, 与 {@link PictureSizeRangeEnum#getEnumBySize} 一致
+     */
+    private static String buildSizeBucketSql() {
+        StringBuilder sql = new StringBuilder("case");
+        for (PictureSizeRangeEnum range : PictureSizeRangeEnum.values()) {
+            if (range.getMaxSize() == Long.MAX_VALUE) {
+                sql.append(" else ").append(range.getValue());
+            } else {
+                sql.append(" when ifnull(picSize, 0) < ").append(range.getMaxSize()).append(" then ").append(range.getValue());
+            }
+        }
+        return sql.append(" end").toString();
+    }
+}
@@ -1,12 +1,42 @@
 package com.zbc.utils;
 
-import java.awt.*;
-
 /**
  * 工具类：计算颜色相似度
+ * <p>
+ * 颜色统一使用打包的 int 表示(0xRRGGBB), 批量接口直接处理数组, 比较时使用平方距离, 不开方也不产生对象。
+ * 支持两种距离: RGB 欧氏距离, 以及更接近人眼感知的 CIE Lab 色差(ΔE76)。
  */
 public class ColorSimilarUtils {
 
+    /**
+     * RGB 平方距离的最大值 3 × 255²
+     */
+    public static final int MAX_SQUARED_DISTANCE = 3 * 255 * 255;
+
+    /**
+     * RGB 欧氏距离的最大值 √(3 × 255²)
+     */
+    private static final double MAX_DISTANCE = Math.sqrt(MAX_SQUARED_DISTANCE);
+
+    /**
+     * sRGB 通道值(0 ~ 255)到线性值的查找表
+     */
+    private static final float[] SRGB_TO_LINEAR = new float[256];
+
+    /**
+     * D65 白点
+     */
+    private static final double XN = 0.95047;
+    private static final double YN = 1.0;
+    private static final double ZN = 1.08883;
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            double c = i / 255.0;
+            SRGB_TO_LINEAR[i] = (float) (c <= 0.04045 ? c / 12.92 : Math.pow((c + 0.055) / 1.055, 2.4));
+        }
+    }
+
     private ColorSimilarUtils() {
         // 工具类不需要实例化
     }
@@ -14,24 +44,12 @@ public class ColorSimilarUtils {
     /**
      * 计算两个颜色的相似度
      *
-     * @param color1 第一个颜色
-     * @param color2 第二个颜色
+     * @param rgb1 第一个颜色(0xRRGGBB)
+     * @param rgb2 第二个颜色(0xRRGGBB)
      * @return 相似度（0到1之间，1为完全相同）
      */
-    public static double calculateSimilarity(Color color1, Color color2) {
-        int r1 = color1.getRed();
-        int g1 = color1.getGreen();
-        int b1 = color1.getBlue();
-
-        int r2 = color2.getRed();
-        int g2 = color2.getGreen();
-        int b2 = color2.getBlue();
-
-        // 计算欧氏距离
-        double distance = Math.sqrt(Math.pow(r1 - r2, 2) + Math.pow(g1 - g2, 2) + Math.pow(b1 - b2, 2));
-
-        // 计算相似度
-        return 1 - distance / Math.sqrt(3 * Math.pow(255, 2));
+    public static double calculateSimilarity(int rgb1, int rgb2) {
+        return 1 - Math.sqrt(squaredDistance(rgb1, rgb2)) / MAX_DISTANCE;
     }
 
     /**
@@ -39,12 +57,111 @@ public class ColorSimilarUtils {
      *
      * @param hexColor1 第一个颜色的十六进制代码（如 0xFF0000）
      * @param hexColor2 第二个颜色的十六进制代码（如 0xFE0101）
-     * @return 相似度（0到1之间，1为完全相同）
+     * @return 相似度（0到1之间，1为完全相同）, 任意一个颜色为空或格式错误时返回 0
      */
     public static double calculateSimilarity(String hexColor1, String hexColor2) {
-        Color color1 = Color.decode(hexColor1);
-        Color color2 = Color.decode(hexColor2);
-        return calculateSimilarity(color1, color2);
+        Integer rgb1 = ColorTransformUtils.toColorValue(hexColor1);
+        Integer rgb2 = ColorTransformUtils.toColorValue(hexColor2);
+        if (rgb1 == null || rgb2 == null) {
+            return 0;
+        }
+        return calculateSimilarity(rgb1.intValue(), rgb2.intValue());
     }
 
+    /**
+     * 计算两个颜色的 RGB 平方距离
+     *
+     * @param rgb1 第一个颜色(0xRRGGBB)
+     * @param rgb2 第二个颜色(0xRRGGBB)
+     * @return 平方距离(0 ~ MAX_SQUARED_DISTANCE)
+     */
+    public static int squaredDistance(int rgb1, int rgb2) {
+        int dr = ((rgb1 >> 16) & 0xFF) - ((rgb2 >> 16) & 0xFF);
+        int dg = ((rgb1 >> 8) & 0xFF) - ((rgb2 >> 8) & 0xFF);
+        int db = (rgb1 & 0xFF) - (rgb2 & 0xFF);
+        return dr * dr + dg * dg + db * db;
+    }
+
+    /**
+     * 批量计算目标颜色与 colors[from, to) 的 RGB 平方距离
+     *
+     * @param targetRgb 目标颜色(0xRRGGBB)
+     * @param colors    候选颜色
+     * @param from      起始下标(包含)
+     * @param to        结束下标(不包含)
+     * @param out       结果, out[i - from] 对应 colors[i], 长度至少为 to - from
+     */
+    public static void squaredDistances(int targetRgb, int[] colors, int from, int to, int[] out) {
+        int r = (targetRgb >> 16) & 0xFF;
+        int g = (targetRgb >> 8) & 0xFF;
+        int b = targetRgb & 0xFF;
+        for (int i = from; i < to; i++) {
+            int color = colors[i];
+            int dr = ((color >> 16) & 0xFF) - r;
+            int dg = ((color >> 8) & 0xFF) - g;
+            int db = (color & 0xFF) - b;
+            out[i - from] = dr * dr + dg * dg + db * db;
+        }
+    }
+
+    /**
+     * 将颜色转换为 CIE Lab(D65)
+     *
+     * @param rgb    颜色(0xRRGGBB)
+     * @param out    结果数组, 依次写入 L、a、b
+     * @param offset 写入的起始下标
+     */
+    public static void toLab(int rgb, float[] out, int offset) {
+        double r = SRGB_TO_LINEAR[(rgb >> 16) & 0xFF];
+        double g = SRGB_TO_LINEAR[(rgb >> 8) & 0xFF];
+        double b = SRGB_TO_LINEAR[rgb & 0xFF];
+        double fx = labF((0.4124564 * r + 0.3575761 * g + 0.1804375 * b) / XN);
+        double fy = labF((0.2126729 * r + 0.7151522 * g + 0.0721750 * b) / YN);
+        double fz = labF((0.0193339 * r + 0.1191920 * g + 0.9503041 * b) / ZN);
+        out[offset] = (float) (116 * fy - 16);
+        out[offset + 1] = (float) (500 * (fx - fy));
+        out[offset + 2] = (float) (200 * (fy - fz));
+    }
+
+    /**
+     * 计算两个 Lab 颜色的平方色差(ΔE76²)
+     *
+     * @param lab1    第一个颜色所在数组
+     * @param offset1 第一个颜色的起始下标
+     * @param lab2    第二个颜色所在数组
+     * @param offset2 第二个颜色的起始下标
+     * @return 平方色差
+     */
+    public static float deltaESquared(float[] lab1, int offset1, float[] lab2, int offset2) {
+        float dl = lab1[offset1] - lab2[offset2];
+        float da = lab1[offset1 + 1] - lab2[offset2 + 1];
+        float db = lab1[offset1 + 2] - lab2[offset2 + 2];
+        return dl * dl + da * da + db * db;
+    }
+
+    /**
+     * 批量计算目标 Lab 颜色与 labs 中第 [from, to) 个颜色的平方色差
+     *
+     * @param targetLab 目标颜色(L、a、b)
+     * @param labs      候选颜色, 每 3 个元素为一个颜色
+     * @param from      起始颜色下标(包含)
+     * @param to        结束颜色下标(不包含)
+     * @param out       结果, out[i - from] 对应第 i 个颜色, 长度至少为 to - from
+     */
+    public static void deltaESquared(float[] targetLab, float[] labs, int from, int to, float[] out) {
+        float l = targetLab[0];
+        float a = targetLab[1];
+        float b = targetLab[2];
+        for (int i = from; i < to; i++) {
+            int offset = i * 3;
+            float dl = labs[offset] - l;
+            float da = labs[offset + 1] - a;
+            float db = labs[offset + 2] - b;
+            out[i - from] = dl * dl + da * da + db * db;
+        }
+    }
+
+    private static double labF(double t) {
+        return t > 216.0 / 24389 ? Math.cbrt(t) : (24389.0 / 27 * t + 16) / 116;
+    }
 }
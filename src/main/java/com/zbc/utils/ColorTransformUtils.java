@@ -3,7 +3,7 @@ package com.zbc.utils;
 import cn.hutool.core.util.StrUtil;
 
 /**
- * 工具类：计算颜色相似度
+ * 工具类：颜色格式转换
  */
 public class ColorTransformUtils {
 
@@ -18,11 +18,46 @@ public class ColorTransformUtils {
      * @return 标准颜色
      */
     public static String getStandardColor(String color) {
-        if (StrUtil.isNotBlank(color)) {
-            if (color.length() == 7) {
-                color = color.substring(0, 4) + "0" + color.substring(4, 7);
-            }
+        if (StrUtil.isNotBlank(color) && color.length() == 7) {
+            // 0xRRGBB => 0xRR0GBB
+            char[] chars = new char[8];
+            color.getChars(0, 4, chars, 0);
+            chars[4] = '0';
+            color.getChars(4, 7, chars, 5);
+            return new String(chars);
         }
         return color;
     }
+
+    /**
+     * 将十六进制颜色(如 0xFF0000、#FF0000)解析为打包的 int(0xRRGGBB)
+     *
+     * @param color 颜色
+     * @return 颜色值, 格式错误时返回 null
+     */
+    public static Integer toColorValue(String color) {
+        if (StrUtil.isBlank(color)) {
+            return null;
+        }
+        String hex = color.trim();
+        int start = 0;
+        if (hex.startsWith("0x") || hex.startsWith("0X")) {
+            start = 2;
+        } else if (hex.startsWith("#")) {
+            start = 1;
+        }
+        int length = hex.length() - start;
+        if (length <= 0 || length > 6) {
+            return null;
+        }
+        int value = 0;
+        for (int i = start; i < hex.length(); i++) {
+            int digit = Character.digit(hex.charAt(i), 16);
+            if (digit < 0) {
+                return null;
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
 }
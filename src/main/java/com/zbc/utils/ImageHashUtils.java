@@ -0,0 +1,137 @@
+package com.zbc.utils;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * 工具类：图片感知哈希
+ * <p>
+ * 哈希为 64 位, 直接存为 long, 两张图片的相似程度用汉明距离衡量(0 为几乎相同, 一般 10 以内可视为相似)。
+ */
+public class ImageHashUtils {
+
+    /**
+     * pHash 缩放尺寸
+     */
+    private static final int PHASH_SIZE = 32;
+
+    /**
+     * pHash 取 DCT 左上角低频区域的尺寸
+     */
+    private static final int PHASH_LOW_SIZE = 8;
+
+    /**
+     * DCT 系数表 cos((2x + 1) * u * π / 2N)
+     */
+    private static final double[][] DCT_COS = new double[PHASH_SIZE][PHASH_SIZE];
+
+    static {
+        for (int u = 0; u < PHASH_SIZE; u++) {
+            for (int x = 0; x < PHASH_SIZE; x++) {
+                DCT_COS[u][x] = Math.cos((2 * x + 1) * u * Math.PI / (2 * PHASH_SIZE));
+            }
+        }
+    }
+
+    private ImageHashUtils() {
+        // 工具类不需要实例化
+    }
+
+    /**
+     * 计算差值哈希(dHash): 缩放到 9×8 灰度图, 比较每行相邻像素的亮度
+     *
+     * @param image 图片
+     * @return 64 位哈希
+     */
+    public static long dHash(BufferedImage image) {
+        int[] gray = toGray(image, 9, 8);
+        long hash = 0;
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 8; x++) {
+                hash = (hash << 1) | (gray[y * 9 + x] > gray[y * 9 + x + 1] ? 1 : 0);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * 计算感知哈希(pHash): 缩放到 32×32 灰度图做二维 DCT, 取左上角 8×8 低频系数与其中位数比较
+     *
+     * @param image 图片
+     * @return 64 位哈希
+     */
+    public static long pHash(BufferedImage image) {
+        int[] gray = toGray(image, PHASH_SIZE, PHASH_SIZE);
+        // 只需要低频部分: 先对行做 DCT(只算前 8 个系数), 再对列做 DCT
+        double[][] rowDct = new double[PHASH_SIZE][PHASH_LOW_SIZE];
+        for (int y = 0; y < PHASH_SIZE; y++) {
+            for (int u = 0; u < PHASH_LOW_SIZE; u++) {
+                double sum = 0;
+                for (int x = 0; x < PHASH_SIZE; x++) {
+                    sum += gray[y * PHASH_SIZE + x] * DCT_COS[u][x];
+                }
+                rowDct[y][u] = sum;
+            }
+        }
+        double[] low = new double[PHASH_LOW_SIZE * PHASH_LOW_SIZE];
+        for (int v = 0; v < PHASH_LOW_SIZE; v++) {
+            for (int u = 0; u < PHASH_LOW_SIZE; u++) {
+                double sum = 0;
+                for (int y = 0; y < PHASH_SIZE; y++) {
+                    sum += rowDct[y][u] * DCT_COS[v][y];
+                }
+                low[v * PHASH_LOW_SIZE + u] = sum;
+            }
+        }
+        // 直流分量(0, 0)与其他系数量级差异大, 不参与中位数计算
+        double[] sorted = new double[low.length - 1];
+        System.arraycopy(low, 1, sorted, 0, sorted.length);
+        Arrays.sort(sorted);
+        double median = sorted[sorted.length / 2];
+        long hash = 0;
+        for (double value : low) {
+            hash = (hash << 1) | (value > median ? 1 : 0);
+        }
+        return hash;
+    }
+
+    /**
+     * 计算两个哈希的汉明距离
+     *
+     * @param hash1 哈希1
+     * @param hash2 哈希2
+     * @return 汉明距离(0 ~ 64)
+     */
+    public static int hammingDistance(long hash1, long hash2) {
+        return Long.bitCount(hash1 ^ hash2);
+    }
+
+    /**
+     * 按区域平均缩放并转换为灰度值(0 ~ 255), 透明像素按白色背景混合
+     */
+    private static int[] toGray(BufferedImage image, int width, int height) {
+        int sourceWidth = image.getWidth();
+        int sourceHeight = image.getHeight();
+        long[] sums = new long[width * height];
+        int[] counts = new int[width * height];
+        int[] row = new int[sourceWidth];
+        for (int y = 0; y < sourceHeight; y++) {
+            image.getRGB(0, y, sourceWidth, 1, row, 0, sourceWidth);
+            int offset = (int) ((long) y * height / sourceHeight) * width;
+            for (int x = 0; x < sourceWidth; x++) {
+                int pixel = row[x];
+                int alpha = (pixel >>> 24) & 0xFF;
+                int gray = (((pixel >> 16) & 0xFF) * 299 + ((pixel >> 8) & 0xFF) * 587 + (pixel & 0xFF) * 114) / 1000;
+                gray = (gray * alpha + 255 * (255 - alpha)) / 255;
+                int index = offset + (int) ((long) x * width / sourceWidth);
+                sums[index] += gray;
+                counts[index]++;
+            }
+        }
+        int[] result = new int[width * height];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = counts[i] == 0 ? 255 : (int) (sums[i] / counts[i]);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,39 @@
+package com.zbc.utils;
+
+import cn.hutool.core.util.StrUtil;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+/**
+ * 工具类：图片访问地址与对象键的转换
+ * <p>
+ * 上传、处理、输出与清理都通过这里取对象键, 保证引用比较时格式一致。
+ */
+public class ObjectKeyUtils {
+
+    private ObjectKeyUtils() {
+        // 工具类不需要实例化
+    }
+
+    /**
+     * 从访问地址中取出对象键(路径部分, 统一为以单个 / 开头), 不是完整地址时按路径处理
+     *
+     * @param url 访问地址或对象键
+     * @return 对象键, 地址为空时返回 null
+     */
+    public static String toObjectKey(String url) {
+        if (StrUtil.isBlank(url)) {
+            return null;
+        }
+        String path;
+        try {
+            path = new URL(url).getPath();
+        } catch (MalformedURLException e) {
+            path = url;
+        }
+        // 地址由 host + "/" + 上传路径拼接, 上传路径本身以 / 开头, 路径中可能有多个 /
+        String key = path.replaceFirst("^/+", "");
+        return key.isEmpty() ? null : "/" + key;
+    }
+}
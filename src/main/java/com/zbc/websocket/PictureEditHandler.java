@@ -1,31 +1,45 @@
 package com.zbc.websocket;
 
-import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.thread.ThreadFactoryBuilder;
 import cn.hutool.json.JSONUtil;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.module.SimpleModule;
-import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
 import com.zbc.disruptor.PictureEditEventProducer;
 import com.zbc.domain.pojo.User;
+import com.zbc.domain.vo.UserVO;
 import com.zbc.enums.PictureEditActionEnum;
 import com.zbc.enums.PictureEditMessageTypeEnum;
 import com.zbc.service.UserService;
 import com.zbc.websocket.domain.PictureEditRequestMessage;
 import com.zbc.websocket.domain.PictureEditResponseMessage;
+import com.zbc.websocket.domain.PictureEditRoomStats;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.PongMessage;
 import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
 
 /**
  * WebSocket处理器
+ * <p>
+ * 广播只把消息放入各会话的发送队列, 由发送线程池发送, 慢客户端不会阻塞事件处理线程。
+ * 多节点部署时, 本节点只保存自己的连接; 编辑锁保存在 redis(见 {@link PictureEditLockManager}),
+ * 广播通过 redis 发布订阅转发给其他节点(见 {@link PictureEditRelay}), 不需要会话粘滞。
+ * 每个连接在时间轮上定期检查: 定时发送 ping, 长时间没有消息或 pong 的连接(半开连接)被关闭;
+ * 持有编辑锁但长时间没有心跳或编辑操作的连接自动退出编辑, 锁状态与房间数量不会无限增长。
  */
 @Component
 @Slf4j
@@ -34,12 +48,100 @@ public class PictureEditHandler extends TextWebSocketHandler {
     private UserService userService;
     @Resource
     private PictureEditEventProducer pictureEditEventProducer;
+    @Resource
+    private PictureEditMessageCodec pictureEditMessageCodec;
+    @Resource
+    private PictureEditLockManager pictureEditLockManager;
+    @Resource
+    private PictureEditRelay pictureEditRelay;
+    @Resource
+    private PictureEditTimerWheel pictureEditTimerWheel;
+
+    /**
+     * 会话属性: 当前会话持有的编辑锁令牌
+     */
+    private static final String EDIT_FENCE_ATTRIBUTE = "editFence";
+
+    // 保存本节点连接的会话，key: pictureId, value: 编辑房间(用户会话集合)
+    private final Map<Long, PictureEditRoom> pictureRooms = new ConcurrentHashMap<>();
+
+    /**
+     * 单条消息发送时间限制(毫秒), 超过后关闭连接
+     */
+    @Value("${picture.edit.outbound.send-time-limit-millis:10000}")
+    private long sendTimeLimitMillis;
+
+    /**
+     * 每个会话待发送消息的大小限制(字节), 超过后关闭连接
+     */
+    @Value("${picture.edit.outbound.buffer-size-limit:524288}")
+    private long bufferSizeLimit;
 
-    // 每张图片的编辑状态，key: pictureId, value: 当前正在编辑的用户 ID
-    private final Map<Long, Long> pictureEditingUsers = new ConcurrentHashMap<>();
+    /**
+     * 发送线程数
+     */
+    @Value("${picture.edit.outbound.send-threads:8}")
+    private int sendThreads;
 
-    // 保存所有连接的会话，key: pictureId, value: 用户会话集合
-    private final Map<Long, Set<WebSocketSession>> pictureSessions = new ConcurrentHashMap<>();
+    /**
+     * 关闭慢客户端连接的线程数
+     */
+    @Value("${picture.edit.outbound.close-threads:2}")
+    private int closeThreads;
+
+    /**
+     * 持有编辑锁的连接超过该时间没有心跳或编辑操作时释放锁(毫秒)
+     */
+    @Value("${picture.edit.lock-idle-millis:30000}")
+    private long lockIdleMillis;
+
+    /**
+     * 连接存活检查间隔(毫秒)
+     */
+    @Value("${picture.edit.liveness.check-interval-millis:5000}")
+    private long checkIntervalMillis;
+
+    /**
+     * 发送 ping 的间隔(毫秒)
+     */
+    @Value("${picture.edit.liveness.ping-interval-millis:15000}")
+    private long pingIntervalMillis;
+
+    /**
+     * 超过该时间没有收到消息或 pong 时关闭连接(毫秒)
+     */
+    @Value("${picture.edit.liveness.idle-millis:45000}")
+    private long idleMillis;
+
+    private ExecutorService sendExecutor;
+
+    /**
+     * 关闭连接可能阻塞(发送关闭帧), 与发送线程池分开, 慢客户端的关闭不会排在阻塞的发送后面
+     */
+    private ExecutorService closeExecutor;
+
+    @PostConstruct
+    public void init() {
+        sendExecutor = Executors.newFixedThreadPool(sendThreads,
+                ThreadFactoryBuilder.create().setNamePrefix("pictureEditSender").build());
+        closeExecutor = Executors.newFixedThreadPool(closeThreads,
+                ThreadFactoryBuilder.create().setNamePrefix("pictureEditCloser").build());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        sendExecutor.shutdown();
+        closeExecutor.shutdown();
+    }
+
+    /**
+     * 各房间的统计信息
+     */
+    public List<PictureEditRoomStats> listRoomStats() {
+        return pictureRooms.values().stream()
+                .map(PictureEditRoom::stats)
+                .collect(Collectors.toList());
+    }
 
     /**
      * 连接建立成功
@@ -52,15 +154,24 @@ public class PictureEditHandler extends TextWebSocketHandler {
         // 保存会话到集合中
         User user = (User) session.getAttributes().get("user");
         Long pictureId = (Long) session.getAttributes().get("pictureId");
-        pictureSessions.putIfAbsent(pictureId, ConcurrentHashMap.newKeySet());
-        pictureSessions.get(pictureId).add(session);
+        PictureEditSession pictureEditSession = new PictureEditSession(session, sendExecutor, closeExecutor, sendTimeLimitMillis, bufferSizeLimit);
+        pictureRooms.compute(pictureId, (key, room) -> {
+            if (room == null) {
+                room = new PictureEditRoom(pictureId);
+                // 本节点第一个连接, 订阅其他节点的广播
+                pictureEditRelay.subscribe(pictureId, textMessage -> fanOut(pictureId, textMessage, null));
+            }
+            room.addSession(pictureEditSession);
+            return room;
+        });
+        pictureEditSession.setCheckTimeout(pictureEditTimerWheel.schedule(() -> checkSession(pictureEditSession), checkIntervalMillis));
 
         // 构造响应
         PictureEditResponseMessage pictureEditResponseMessage = new PictureEditResponseMessage();
         pictureEditResponseMessage.setType(PictureEditMessageTypeEnum.INFO.getValue());
         String message = String.format("%s加入编辑", user.getUserName());
         pictureEditResponseMessage.setMessage(message);
-        pictureEditResponseMessage.setUser(userService.getUserVO(user));
+        pictureEditResponseMessage.setUser(getUserVO(session, user));
         // 广播给同一张图片的用户(包括自己)
         broadcastToPicture(pictureId, pictureEditResponseMessage);
     }
@@ -74,6 +185,7 @@ public class PictureEditHandler extends TextWebSocketHandler {
      */
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+        touch(session);
         // 将消息解析为 PictureEditMessage
         PictureEditRequestMessage pictureEditRequestMessage = JSONUtil.toBean(message.getPayload(), PictureEditRequestMessage.class);
         String type = pictureEditRequestMessage.getType();
@@ -94,15 +206,17 @@ public class PictureEditHandler extends TextWebSocketHandler {
      */
     public void handleEnterEditMessage(PictureEditRequestMessage pictureEditRequestMessage, WebSocketSession session, User user, Long pictureId) throws Exception {
         // 没有用户正在编辑该图片，才能进入编辑
-        if (!pictureEditingUsers.containsKey(pictureId)) {
-            // 设置当前用户为编辑用户
-            pictureEditingUsers.put(pictureId, user.getId());
+        Long fence = pictureEditLockManager.tryLock(pictureId, user.getId());
+        if (fence != null) {
+            // 设置当前会话为编辑会话
+            session.getAttributes().put(EDIT_FENCE_ATTRIBUTE, fence);
+            markRenewed(session);
             // 构造响应
             PictureEditResponseMessage pictureEditResponseMessage = new PictureEditResponseMessage();
             pictureEditResponseMessage.setType(PictureEditMessageTypeEnum.ENTER_EDIT.getValue());
             String message = String.format("%s开始编辑图片", user.getUserName());
             pictureEditResponseMessage.setMessage(message);
-            pictureEditResponseMessage.setUser(userService.getUserVO(user));
+            pictureEditResponseMessage.setUser(getUserVO(session, user));
             // 广播给所有用户
             broadcastToPicture(pictureId, pictureEditResponseMessage);
         }
@@ -112,8 +226,6 @@ public class PictureEditHandler extends TextWebSocketHandler {
      * 处理编辑操作
      */
     public void handleEditActionMessage(PictureEditRequestMessage pictureEditRequestMessage, WebSocketSession session, User user, Long pictureId) throws Exception {
-        // 获取当前正在编辑的用户
-        Long editingUserId = pictureEditingUsers.get(pictureId);
         // 判断当前用户正在编辑的操作
         String editAction = pictureEditRequestMessage.getEditAction();
         PictureEditActionEnum actionEnum = PictureEditActionEnum.getEnumByValue(editAction);
@@ -121,33 +233,58 @@ public class PictureEditHandler extends TextWebSocketHandler {
             log.error("无效的编辑操作");
             return;
         }
-        // 确认是当前编辑者
-        if (editingUserId != null && editingUserId.equals(user.getId())) {
+        // 确认是当前编辑者(令牌一致), 同时续约
+        Long fence = (Long) session.getAttributes().get(EDIT_FENCE_ATTRIBUTE);
+        if (pictureEditLockManager.renew(pictureId, user.getId(), fence)) {
+            markRenewed(session);
             PictureEditResponseMessage pictureEditResponseMessage = new PictureEditResponseMessage();
             pictureEditResponseMessage.setType(PictureEditMessageTypeEnum.EDIT_ACTION.getValue());
             String message = String.format("%s执行了%s", user.getUserName(), actionEnum.getText());
             pictureEditResponseMessage.setMessage(message);
             pictureEditResponseMessage.setEditAction(editAction);
-            pictureEditResponseMessage.setUser(userService.getUserVO(user));
+            pictureEditResponseMessage.setUser(getUserVO(session, user));
             // 广播给除了当前客户端之外的其他用户，否则会造成重复编辑
             broadcastToPicture(pictureId, pictureEditResponseMessage, session);
         }
     }
 
+    /**
+     * 处理心跳: 续约编辑锁
+     */
+    public void handleHeartbeatMessage(PictureEditRequestMessage pictureEditRequestMessage, WebSocketSession session, User user, Long pictureId) throws Exception {
+        Long fence = (Long) session.getAttributes().get(EDIT_FENCE_ATTRIBUTE);
+        if (fence == null) {
+            return;
+        }
+        if (pictureEditLockManager.renew(pictureId, user.getId(), fence)) {
+            markRenewed(session);
+        } else {
+            // 租约已过期(可能已被其他用户获取)
+            session.getAttributes().remove(EDIT_FENCE_ATTRIBUTE, fence);
+        }
+    }
+
+    /**
+     * 收到 pong
+     */
+    @Override
+    protected void handlePongMessage(WebSocketSession session, PongMessage message) throws Exception {
+        touch(session);
+    }
+
     /**
      * 退出编辑状态
      */
     public void handleExitEditMessage(PictureEditRequestMessage pictureEditRequestMessage, WebSocketSession session, User user, Long pictureId) throws Exception {
-        Long editingUserId = pictureEditingUsers.get(pictureId);
-        if (editingUserId != null && editingUserId.equals(user.getId())) {
-            // 移除当前用户的编辑状态
-            pictureEditingUsers.remove(pictureId);
+        // 移除当前会话的编辑状态
+        Long fence = (Long) session.getAttributes().remove(EDIT_FENCE_ATTRIBUTE);
+        if (pictureEditLockManager.unlock(pictureId, user.getId(), fence)) {
             // 构造响应，发送退出编辑的消息通知
             PictureEditResponseMessage pictureEditResponseMessage = new PictureEditResponseMessage();
             pictureEditResponseMessage.setType(PictureEditMessageTypeEnum.EXIT_EDIT.getValue());
             String message = String.format("%s退出编辑图片", user.getUserName());
             pictureEditResponseMessage.setMessage(message);
-            pictureEditResponseMessage.setUser(userService.getUserVO(user));
+            pictureEditResponseMessage.setUser(getUserVO(session, user));
             broadcastToPicture(pictureId, pictureEditResponseMessage);
         }
     }
@@ -165,20 +302,26 @@ public class PictureEditHandler extends TextWebSocketHandler {
         handleExitEditMessage(null, session, user, pictureId);
 
         // 删除会话
-        Set<WebSocketSession> sessionSet = pictureSessions.get(pictureId);
-        if (sessionSet != null) {
-            sessionSet.remove(session);
-            if (sessionSet.isEmpty()) {
-                pictureSessions.remove(pictureId);
+        pictureRooms.computeIfPresent(pictureId, (key, room) -> {
+            PictureEditSession pictureEditSession = room.getSession(session.getId());
+            if (pictureEditSession != null) {
+                pictureEditSession.cancelCheck();
             }
-        }
+            room.removeSession(session.getId());
+            if (!room.isEmpty()) {
+                return room;
+            }
+            // 本节点最后一个连接, 取消订阅
+            pictureEditRelay.unsubscribe(pictureId);
+            return null;
+        });
 
         // 通知其他用户该用户已退出编辑
         PictureEditResponseMessage pictureEditResponseMessage = new PictureEditResponseMessage();
         pictureEditResponseMessage.setType(PictureEditMessageTypeEnum.INFO.getValue());
         String message = String.format("%s离开编辑", user.getUserName());
         pictureEditResponseMessage.setMessage(message);
-        pictureEditResponseMessage.setUser(userService.getUserVO(user));
+        pictureEditResponseMessage.setUser(getUserVO(session, user));
         broadcastToPicture(pictureId, pictureEditResponseMessage);
     }
 
@@ -191,28 +334,125 @@ public class PictureEditHandler extends TextWebSocketHandler {
      * @throws Exception
      */
     private void broadcastToPicture(Long pictureId, PictureEditResponseMessage pictureEditResponseMessage, WebSocketSession excludeSession) throws Exception {
-        Set<WebSocketSession> sessionSet = pictureSessions.get(pictureId);
-        if (CollUtil.isNotEmpty(sessionSet)) {
-            // 创建 ObjectMapper
-            ObjectMapper objectMapper = new ObjectMapper();
-            // 配置序列化：将 Long 类型转为 String，解决丢失精度问题
-            SimpleModule module = new SimpleModule();
-            module.addSerializer(Long.class, ToStringSerializer.instance);
-            module.addSerializer(Long.TYPE, ToStringSerializer.instance); // 支持 long 基本类型
-            objectMapper.registerModule(module);
-            // 序列化为 JSON 字符串
-            String message = objectMapper.writeValueAsString(pictureEditResponseMessage);
-            TextMessage textMessage = new TextMessage(message);
-            for (WebSocketSession session : sessionSet) {
+        // 只编码一次, 所有接收者共用
+        TextMessage textMessage = pictureEditMessageCodec.encode(pictureEditResponseMessage);
+        fanOut(pictureId, textMessage, excludeSession);
+        // 转发给其他节点
+        pictureEditRelay.publish(pictureId, textMessage);
+    }
+
+    /**
+     * 发给本节点该图片的连接
+     */
+    private void fanOut(Long pictureId, TextMessage textMessage, WebSocketSession excludeSession) {
+        PictureEditRoom room = pictureRooms.get(pictureId);
+        if (room != null && !room.isEmpty()) {
+            for (PictureEditSession pictureEditSession : room.getSessions()) {
                 // 排除掉的 session 不发送
-                if (excludeSession != null && excludeSession.equals(session)) {
+                if (excludeSession != null && excludeSession.equals(pictureEditSession.getSession())) {
                     continue;
                 }
-                if (session.isOpen()) {
-                    session.sendMessage(textMessage);
-                }
+                offer(room, pictureEditSession, textMessage);
+            }
+        }
+    }
+
+    /**
+     * 存活检查(在时间轮线程中执行, 不能阻塞)
+     */
+    private void checkSession(PictureEditSession pictureEditSession) {
+        WebSocketSession session = pictureEditSession.getSession();
+        if (!session.isOpen()) {
+            // 已关闭, 由 afterConnectionClosed 清理
+            return;
+        }
+        Map<String, Object> attributes = session.getAttributes();
+        Long pictureId = (Long) attributes.get("pictureId");
+        long now = System.currentTimeMillis();
+        // 1. 长时间没有消息或 pong, 关闭连接(半开连接)
+        if (now - pictureEditSession.getLastActiveMillis() > idleMillis) {
+            if (pictureEditSession.closeNotReliable()) {
+                log.warn("协同编辑连接失去响应, 关闭连接, pictureId = {}, sessionId = {}", pictureId, session.getId());
+            }
+            return;
+        }
+        // 2. 持有编辑锁但长时间没有心跳或编辑操作, 退出编辑(与其他消息一样按图片顺序处理)
+        // 定时器线程不能阻塞, 队列已满时不等待, 下一个刻度重新检查
+        long nextCheckMillis = checkIntervalMillis;
+        if (attributes.get(EDIT_FENCE_ATTRIBUTE) != null && now - pictureEditSession.getLastRenewMillis() > lockIdleMillis) {
+            PictureEditRequestMessage pictureEditRequestMessage = new PictureEditRequestMessage();
+            pictureEditRequestMessage.setType(PictureEditMessageTypeEnum.EXIT_EDIT.getValue());
+            if (pictureEditEventProducer.tryPublishEvent(pictureEditRequestMessage, session, (User) attributes.get("user"), pictureId)) {
+                pictureEditSession.setLastRenewMillis(now);
+            } else {
+                nextCheckMillis = pictureEditTimerWheel.getTickMillis();
+                log.warn("协同编辑事件队列已满, 稍后重试退出编辑, pictureId = {}, sessionId = {}", pictureId, session.getId());
+            }
+        }
+        // 3. 发送 ping
+        if (now - pictureEditSession.getLastPingMillis() >= pingIntervalMillis) {
+            pictureEditSession.setLastPingMillis(now);
+            PictureEditRoom room = pictureRooms.get(pictureId);
+            if (room != null) {
+                offer(room, pictureEditSession, new PingMessage());
             }
         }
+        pictureEditSession.setCheckTimeout(pictureEditTimerWheel.schedule(() -> checkSession(pictureEditSession), nextCheckMillis));
+    }
+
+    private void touch(WebSocketSession session) {
+        PictureEditSession pictureEditSession = getPictureEditSession(session);
+        if (pictureEditSession != null) {
+            pictureEditSession.touch();
+        }
+    }
+
+    private void markRenewed(WebSocketSession session) {
+        PictureEditSession pictureEditSession = getPictureEditSession(session);
+        if (pictureEditSession != null) {
+            pictureEditSession.setLastRenewMillis(System.currentTimeMillis());
+        }
+    }
+
+    private PictureEditSession getPictureEditSession(WebSocketSession session) {
+        PictureEditRoom room = pictureRooms.get((Long) session.getAttributes().get("pictureId"));
+        return room == null ? null : room.getSession(session.getId());
+    }
+
+    /**
+     * 获取会话缓存的脱敏用户信息
+     */
+    public UserVO getUserVO(WebSocketSession session, User user) {
+        UserVO userVO = (UserVO) session.getAttributes().get("userVO");
+        return userVO != null ? userVO : userService.getUserVO(user);
+    }
+
+    /**
+     * 发送消息给单个会话
+     */
+    public void sendToSession(WebSocketSession session, PictureEditResponseMessage pictureEditResponseMessage) throws Exception {
+        TextMessage textMessage = pictureEditMessageCodec.encode(pictureEditResponseMessage);
+        Long pictureId = (Long) session.getAttributes().get("pictureId");
+        PictureEditRoom room = pictureRooms.get(pictureId);
+        PictureEditSession pictureEditSession = room == null ? null : room.getSession(session.getId());
+        if (pictureEditSession != null) {
+            offer(room, pictureEditSession, textMessage);
+        }
+    }
+
+    /**
+     * 放入会话的发送队列, 超过限制时丢弃消息并关闭连接
+     */
+    private void offer(PictureEditRoom room, PictureEditSession pictureEditSession, WebSocketMessage<?> message) {
+        if (pictureEditSession.offer(message)) {
+            return;
+        }
+        boolean closed = pictureEditSession.closeNotReliable();
+        room.recordDropped(closed);
+        if (closed) {
+            log.warn("协同编辑客户端过慢, 关闭连接, pictureId = {}, sessionId = {}",
+                    room.getPictureId(), pictureEditSession.getSession().getId());
+        }
     }
 
     /**
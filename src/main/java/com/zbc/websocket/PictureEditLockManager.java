@@ -0,0 +1,104 @@
+package com.zbc.websocket;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * 图片编辑锁(集群范围)
+ * <p>
+ * 锁为带租约的 redis key(等同 SET NX PX), 值为 "用户 id:令牌"; 令牌由每张图片的计数器递增生成(fencing token)。
+ * 持有者的续约、编辑与释放都要求值完全一致, 租约过期后被其他用户重新获取时令牌不同, 原持有者的后续操作不再生效。
+ * 持有者通过心跳与编辑操作续约; 所在节点宕机时, 锁在租约到期后自动释放。
+ */
+@Component
+public class PictureEditLockManager {
+
+    private static final String LOCK_KEY_PREFIX = "picture:edit:lock:";
+
+    private static final String FENCE_KEY_PREFIX = "picture:edit:fence:";
+
+    /**
+     * 令牌计数器的过期时间(毫秒), 每次获取锁时刷新
+     */
+    private static final long FENCE_TTL_MILLIS = 7L * 24 * 3600 * 1000;
+
+    /**
+     * 获取锁, 返回令牌, 已被持有返回 0
+     * KEYS: lock, fence; ARGV: userId, leaseMillis, fenceTtlMillis
+     */
+    private static final DefaultRedisScript<Long> LOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[1]) == 1 then return 0 end " +
+                    "local fence = redis.call('incr', KEYS[2]) " +
+                    "redis.call('pexpire', KEYS[2], ARGV[3]) " +
+                    "redis.call('set', KEYS[1], ARGV[1] .. ':' .. fence, 'PX', ARGV[2]) " +
+                    "return fence", Long.class);
+
+    /**
+     * 值一致时续约
+     */
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('pexpire', KEYS[1], ARGV[2]) else return 0 end", Long.class);
+
+    /**
+     * 值一致时释放
+     */
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end", Long.class);
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 锁的租约(毫秒)
+     */
+    @Value("${picture.edit.lock-lease-millis:60000}")
+    private long leaseMillis;
+
+    /**
+     * 获取编辑锁
+     *
+     * @return 令牌, 已有其他用户在编辑时返回 null
+     */
+    public Long tryLock(Long pictureId, Long userId) {
+        Long fence = stringRedisTemplate.execute(LOCK_SCRIPT,
+                Arrays.asList(LOCK_KEY_PREFIX + pictureId, FENCE_KEY_PREFIX + pictureId),
+                String.valueOf(userId), String.valueOf(leaseMillis), String.valueOf(FENCE_TTL_MILLIS));
+        return fence == null || fence <= 0 ? null : fence;
+    }
+
+    /**
+     * 校验仍持有锁并续约
+     *
+     * @return 是否仍持有锁
+     */
+    public boolean renew(Long pictureId, Long userId, Long fence) {
+        if (fence == null) {
+            return false;
+        }
+        Long result = stringRedisTemplate.execute(RENEW_SCRIPT,
+                Collections.singletonList(LOCK_KEY_PREFIX + pictureId),
+                userId + ":" + fence, String.valueOf(leaseMillis));
+        return result != null && result > 0;
+    }
+
+    /**
+     * 释放编辑锁
+     *
+     * @return 是否由本次调用释放
+     */
+    public boolean unlock(Long pictureId, Long userId, Long fence) {
+        if (fence == null) {
+            return false;
+        }
+        Long result = stringRedisTemplate.execute(UNLOCK_SCRIPT,
+                Collections.singletonList(LOCK_KEY_PREFIX + pictureId),
+                userId + ":" + fence);
+        return result != null && result > 0;
+    }
+}
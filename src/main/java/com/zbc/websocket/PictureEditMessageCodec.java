@@ -0,0 +1,28 @@
+package com.zbc.websocket;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zbc.websocket.domain.PictureEditResponseMessage;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.TextMessage;
+
+/**
+ * 协同编辑消息编码
+ * <p>
+ * 使用 Spring 管理的 ObjectMapper(线程安全, Long 序列化为字符串, 与接口返回一致),
+ * 直接编码为 UTF-8 字节构造 TextMessage, 广播时所有接收者共用同一个消息, 计算大小与发送都不再重复编码。
+ */
+@Component
+@RequiredArgsConstructor
+public class PictureEditMessageCodec {
+
+    private final ObjectMapper objectMapper;
+
+    /**
+     * 编码响应消息
+     */
+    public TextMessage encode(PictureEditResponseMessage pictureEditResponseMessage) throws JsonProcessingException {
+        return new TextMessage(objectMapper.writeValueAsBytes(pictureEditResponseMessage));
+    }
+}
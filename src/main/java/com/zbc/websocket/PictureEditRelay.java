@@ -0,0 +1,131 @@
+package com.zbc.websocket;
+
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import cn.hutool.core.util.IdUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.concurrent.ConcurrentTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.TextMessage;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * 协同编辑广播中转(redis 发布订阅)
+ * <p>
+ * 每张图片一个频道, 节点上有该图片的连接时才订阅。广播时发布节点直接发给本地连接, 同时发布到频道,
+ * 其他节点收到后发给各自的全部本地连接(跳过自己发布的消息; 需要排除的会话只会在发布节点上)。
+ * 消息格式: 节点 id + 换行 + 已编码的 JSON, 转发时不再重新编码。
+ */
+@Slf4j
+@Component
+public class PictureEditRelay {
+
+    private static final String CHANNEL_PREFIX = "picture:edit:room:";
+
+    /**
+     * 当前节点 id
+     */
+    private final String nodeId = IdUtil.fastSimpleUUID();
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private RedisConnectionFactory redisConnectionFactory;
+
+    private RedisMessageListenerContainer listenerContainer;
+
+    private ExecutorService deliveryExecutor;
+
+    /**
+     * key: pictureId, value: 该图片频道的监听器
+     */
+    private final Map<Long, MessageListener> listeners = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        // 单线程分发, 保证同一频道的消息顺序(分发只是放入发送队列, 不会阻塞)
+        deliveryExecutor = Executors.newSingleThreadExecutor(
+                ThreadFactoryBuilder.create().setNamePrefix("pictureEditRelay").build());
+        listenerContainer = new RedisMessageListenerContainer();
+        listenerContainer.setConnectionFactory(redisConnectionFactory);
+        listenerContainer.setTaskExecutor(new ConcurrentTaskExecutor(deliveryExecutor));
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.start();
+    }
+
+    @PreDestroy
+    public void destroy() throws Exception {
+        listenerContainer.destroy();
+        deliveryExecutor.shutdown();
+    }
+
+    /**
+     * 订阅图片的频道
+     *
+     * @param receiver 收到其他节点的广播时调用
+     */
+    public void subscribe(Long pictureId, Consumer<TextMessage> receiver) {
+        MessageListener listener = (message, pattern) -> receive(message, receiver);
+        if (listeners.putIfAbsent(pictureId, listener) == null) {
+            listenerContainer.addMessageListener(listener, new ChannelTopic(CHANNEL_PREFIX + pictureId));
+        }
+    }
+
+    /**
+     * 取消订阅图片的频道
+     */
+    public void unsubscribe(Long pictureId) {
+        MessageListener listener = listeners.remove(pictureId);
+        if (listener != null) {
+            listenerContainer.removeMessageListener(listener, new ChannelTopic(CHANNEL_PREFIX + pictureId));
+        }
+    }
+
+    /**
+     * 发布广播给其他节点
+     */
+    public void publish(Long pictureId, TextMessage textMessage) {
+        String envelope = nodeId + "\n" + textMessage.getPayload();
+        try {
+            stringRedisTemplate.convertAndSend(CHANNEL_PREFIX + pictureId, envelope);
+        } catch (Exception e) {
+            // 其他节点的用户会丢失这条消息, 本地连接不受影响
+            log.error("发布协同编辑广播失败, pictureId = {}", pictureId, e);
+        }
+    }
+
+    private void receive(Message message, Consumer<TextMessage> receiver) {
+        byte[] body = message.getBody();
+        int index = -1;
+        for (int i = 0; i < body.length; i++) {
+            if (body[i] == '\n') {
+                index = i;
+                break;
+            }
+        }
+        if (index < 0) {
+            log.warn("无效的协同编辑广播");
+            return;
+        }
+        String sourceNodeId = new String(body, 0, index, StandardCharsets.UTF_8);
+        if (nodeId.equals(sourceNodeId)) {
+            return;
+        }
+        receiver.accept(new TextMessage(Arrays.copyOfRange(body, index + 1, body.length)));
+    }
+}
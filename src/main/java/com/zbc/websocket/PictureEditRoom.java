@@ -0,0 +1,83 @@
+package com.zbc.websocket;
+
+import com.zbc.websocket.domain.PictureEditRoomStats;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一张图片的协同编辑房间
+ */
+public class PictureEditRoom {
+
+    private final Long pictureId;
+
+    /**
+     * key: WebSocket 会话 id
+     */
+    private final Map<String, PictureEditSession> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * 因客户端过慢丢弃的消息数
+     */
+    private final LongAdder droppedMessages = new LongAdder();
+
+    /**
+     * 因客户端过慢关闭的连接数
+     */
+    private final LongAdder closedSessions = new LongAdder();
+
+    public PictureEditRoom(Long pictureId) {
+        this.pictureId = pictureId;
+    }
+
+    public Long getPictureId() {
+        return pictureId;
+    }
+
+    public void addSession(PictureEditSession pictureEditSession) {
+        sessions.put(pictureEditSession.getSession().getId(), pictureEditSession);
+    }
+
+    public PictureEditSession getSession(String sessionId) {
+        return sessions.get(sessionId);
+    }
+
+    public void removeSession(String sessionId) {
+        sessions.remove(sessionId);
+    }
+
+    public boolean isEmpty() {
+        return sessions.isEmpty();
+    }
+
+    public Collection<PictureEditSession> getSessions() {
+        return sessions.values();
+    }
+
+    public void recordDropped(boolean closed) {
+        droppedMessages.increment();
+        if (closed) {
+            closedSessions.increment();
+        }
+    }
+
+    public PictureEditRoomStats stats() {
+        PictureEditRoomStats stats = new PictureEditRoomStats();
+        stats.setPictureId(pictureId);
+        long queuedMessages = 0;
+        long queuedBytes = 0;
+        for (PictureEditSession pictureEditSession : sessions.values()) {
+            queuedMessages += pictureEditSession.getQueuedMessages();
+            queuedBytes += pictureEditSession.getQueuedBytes();
+        }
+        stats.setSessionCount(sessions.size());
+        stats.setQueuedMessages(queuedMessages);
+        stats.setQueuedBytes(queuedBytes);
+        stats.setDroppedMessages(droppedMessages.sum());
+        stats.setClosedSessions(closedSessions.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,248 @@
+package com.zbc.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
+
+import javax.websocket.Session;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 协同编辑会话的发送队列
+ * <p>
+ * 广播时只把消息放入会话自己的队列, 由发送线程池逐条发送, 同一会话同一时间只有一个线程在发送。
+ * 队列积压超过大小限制, 或一条消息发送超过时间限制时, 认为客户端过慢, 丢弃消息并关闭连接(客户端重连后重新同步)。
+ * 每次发送最多阻塞发送时间限制(容器的阻塞发送超时), 关闭连接在单独的线程池中执行, 慢客户端不会长时间占用发送线程。
+ * 同时记录最近的活跃时间(收到消息或 pong)与编辑锁续约时间, 供存活检查使用。
+ */
+@Slf4j
+public class PictureEditSession {
+
+    /**
+     * Tomcat 阻塞发送的超时时间属性(毫秒, 默认 20 秒), 超时后发送失败, 关闭连接时发送关闭帧也受此限制
+     */
+    private static final String BLOCKING_SEND_TIMEOUT_PROPERTY = "org.apache.tomcat.websocket.BLOCKING_SEND_TIMEOUT";
+
+    private final WebSocketSession session;
+
+    private final Executor sendExecutor;
+
+    private final Executor closeExecutor;
+
+    /**
+     * 单条消息发送时间限制(毫秒)
+     */
+    private final long sendTimeLimitMillis;
+
+    /**
+     * 队列积压大小限制(字节)
+     */
+    private final long bufferSizeLimit;
+
+    private final Queue<WebSocketMessage<?>> messageQueue = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger queuedMessages = new AtomicInteger();
+
+    private final AtomicLong queuedBytes = new AtomicLong();
+
+    private final AtomicBoolean flushing = new AtomicBoolean();
+
+    private final AtomicBoolean closing = new AtomicBoolean();
+
+    /**
+     * 当前消息开始发送的时间, 0 表示没有正在发送的消息
+     */
+    private volatile long sendStartMillis;
+
+    /**
+     * 最近一次收到客户端消息或 pong 的时间
+     */
+    private volatile long lastActiveMillis = System.currentTimeMillis();
+
+    /**
+     * 最近一次续约编辑锁的时间
+     */
+    private volatile long lastRenewMillis;
+
+    /**
+     * 最近一次发送 ping 的时间
+     */
+    private volatile long lastPingMillis = System.currentTimeMillis();
+
+    /**
+     * 下一次存活检查
+     */
+    private volatile PictureEditTimerWheel.Timeout checkTimeout;
+
+    public PictureEditSession(WebSocketSession session, Executor sendExecutor, Executor closeExecutor,
+                              long sendTimeLimitMillis, long bufferSizeLimit) {
+        this.session = session;
+        this.sendExecutor = sendExecutor;
+        this.closeExecutor = closeExecutor;
+        this.sendTimeLimitMillis = sendTimeLimitMillis;
+        this.bufferSizeLimit = bufferSizeLimit;
+        limitBlockingSend();
+    }
+
+    /**
+     * 放入发送队列(不阻塞)
+     *
+     * @return 是否放入成功, 超过限制时返回 false
+     */
+    public boolean offer(WebSocketMessage<?> message) {
+        if (closing.get() || !session.isOpen()) {
+            return true;
+        }
+        long startMillis = sendStartMillis;
+        if (startMillis > 0 && System.currentTimeMillis() - startMillis > sendTimeLimitMillis) {
+            return false;
+        }
+        int length = message.getPayloadLength();
+        if (queuedBytes.addAndGet(length) > bufferSizeLimit) {
+            queuedBytes.addAndGet(-length);
+            return false;
+        }
+        queuedMessages.incrementAndGet();
+        messageQueue.offer(message);
+        scheduleFlush();
+        return true;
+    }
+
+    /**
+     * 关闭不可靠(过慢或失去响应)的连接(在关闭线程池中异步执行, 不占用发送线程)
+     *
+     * @return 是否由本次调用关闭
+     */
+    public boolean closeNotReliable() {
+        if (!closing.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            closeExecutor.execute(this::close);
+        } catch (RejectedExecutionException e) {
+            close();
+        }
+        return true;
+    }
+
+    public WebSocketSession getSession() {
+        return session;
+    }
+
+    public long getLastActiveMillis() {
+        return lastActiveMillis;
+    }
+
+    public void touch() {
+        this.lastActiveMillis = System.currentTimeMillis();
+    }
+
+    public long getLastRenewMillis() {
+        return lastRenewMillis;
+    }
+
+    public void setLastRenewMillis(long lastRenewMillis) {
+        this.lastRenewMillis = lastRenewMillis;
+    }
+
+    public long getLastPingMillis() {
+        return lastPingMillis;
+    }
+
+    public void setLastPingMillis(long lastPingMillis) {
+        this.lastPingMillis = lastPingMillis;
+    }
+
+    public void setCheckTimeout(PictureEditTimerWheel.Timeout checkTimeout) {
+        this.checkTimeout = checkTimeout;
+    }
+
+    /**
+     * 取消存活检查
+     */
+    public void cancelCheck() {
+        PictureEditTimerWheel.Timeout timeout = checkTimeout;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    public int getQueuedMessages() {
+        return queuedMessages.get();
+    }
+
+    public long getQueuedBytes() {
+        return queuedBytes.get();
+    }
+
+    private void scheduleFlush() {
+        if (!flushing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            sendExecutor.execute(this::flush);
+        } catch (RejectedExecutionException e) {
+            // 线程池已关闭(应用停止中)
+            flushing.set(false);
+        }
+    }
+
+    private void flush() {
+        try {
+            WebSocketMessage<?> message;
+            while ((message = messageQueue.poll()) != null) {
+                queuedMessages.decrementAndGet();
+                queuedBytes.addAndGet(-message.getPayloadLength());
+                if (closing.get() || !session.isOpen()) {
+                    continue;
+                }
+                sendStartMillis = System.currentTimeMillis();
+                try {
+                    session.sendMessage(message);
+                } catch (Exception e) {
+                    // 发送超时或失败后连接已不可用, 关闭连接由客户端重连
+                    log.warn("发送协同编辑消息失败, 关闭连接, sessionId = {}", session.getId(), e);
+                    closeNotReliable();
+                } finally {
+                    sendStartMillis = 0;
+                }
+            }
+        } finally {
+            flushing.set(false);
+        }
+        // 释放标记之前放入的消息
+        if (!messageQueue.isEmpty()) {
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * 限制每次发送的阻塞时间, 与发送时间限制一致(非 Tomcat 容器时忽略)
+     */
+    private void limitBlockingSend() {
+        if (!(session instanceof NativeWebSocketSession)) {
+            return;
+        }
+        Session nativeSession = ((NativeWebSocketSession) session).getNativeSession(Session.class);
+        if (nativeSession != null) {
+            nativeSession.getUserProperties().put(BLOCKING_SEND_TIMEOUT_PROPERTY, sendTimeLimitMillis);
+        }
+    }
+
+    private void close() {
+        try {
+            session.close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (Exception e) {
+            log.warn("关闭协同编辑连接失败, sessionId = {}", session.getId(), e);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.zbc.websocket;
+
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 协同编辑定时器(时间轮)
+ * <p>
+ * 所有会话的存活检查与编辑锁超时检查共用一个调度线程: 每个刻度处理一个槽, 槽内只执行到期的任务,
+ * 添加与取消都是 O(1), 任务数量达到数万时也不需要为每个房间或会话单独创建定时器。
+ * 新任务先放入待添加队列, 由调度线程在每个刻度开始时放入对应的槽(槽只由调度线程访问)。
+ * 任务在调度线程中执行, 不能阻塞, 耗时操作需要交给其他线程。
+ */
+@Slf4j
+@Component
+public class PictureEditTimerWheel {
+
+    /**
+     * 每个刻度的时长(毫秒)
+     */
+    @Value("${picture.edit.timer.tick-millis:100}")
+    private long tickMillis;
+
+    /**
+     * 槽的数量, 向上取 2 的幂
+     */
+    @Value("${picture.edit.timer.wheel-size:512}")
+    private int wheelSize;
+
+    private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+
+    private ArrayDeque<Timeout>[] buckets;
+
+    private int mask;
+
+    private long tickNanos;
+
+    private long startNanos;
+
+    /**
+     * 当前刻度, 只由调度线程访问
+     */
+    private long tick;
+
+    private ScheduledExecutorService tickScheduler;
+
+    @PostConstruct
+    public void init() {
+        initBuckets();
+        tickScheduler = Executors.newSingleThreadScheduledExecutor(
+                ThreadFactoryBuilder.create().setNamePrefix("pictureEditTimer").setDaemon(true).build());
+        tickScheduler.scheduleAtFixedRate(this::onTick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 初始化槽与起始时间(不启动调度线程, 测试中手动推进刻度)
+     */
+    @SuppressWarnings("unchecked")
+    void initBuckets() {
+        int size = Integer.highestOneBit(Math.max(wheelSize - 1, 1)) << 1;
+        buckets = new ArrayDeque[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new ArrayDeque<>();
+        }
+        mask = size - 1;
+        tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        startNanos = System.nanoTime();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        tickScheduler.shutdownNow();
+    }
+
+    /**
+     * 添加任务
+     *
+     * @param task        任务
+     * @param delayMillis 延迟(毫秒)
+     * @return 可用于取消的句柄
+     */
+    public Timeout schedule(Runnable task, long delayMillis) {
+        Timeout timeout = new Timeout(task, System.nanoTime() - startNanos + TimeUnit.MILLISECONDS.toNanos(delayMillis));
+        pendingTimeouts.add(timeout);
+        return timeout;
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    void onTick() {
+        try {
+            transferPendingTimeouts();
+            Iterator<Timeout> iterator = buckets[(int) (tick & mask)].iterator();
+            while (iterator.hasNext()) {
+                Timeout timeout = iterator.next();
+                if (timeout.cancelled) {
+                    iterator.remove();
+                } else if (timeout.rounds > 0) {
+                    timeout.rounds--;
+                } else {
+                    iterator.remove();
+                    run(timeout);
+                }
+            }
+            tick++;
+        } catch (Throwable e) {
+            // 异常会终止定时调度, 这里只记录
+            log.error("协同编辑定时器执行失败", e);
+        }
+    }
+
+    private void transferPendingTimeouts() {
+        Timeout timeout;
+        while ((timeout = pendingTimeouts.poll()) != null) {
+            if (timeout.cancelled) {
+                continue;
+            }
+            long expireTick = Math.max(timeout.deadline / tickNanos, tick);
+            timeout.rounds = (expireTick - tick) / buckets.length;
+            buckets[(int) (expireTick & mask)].add(timeout);
+        }
+    }
+
+    private static void run(Timeout timeout) {
+        try {
+            timeout.task.run();
+        } catch (Exception e) {
+            log.error("协同编辑定时任务执行失败", e);
+        }
+    }
+
+    /**
+     * 定时任务句柄
+     */
+    public static class Timeout {
+
+        private final Runnable task;
+
+        /**
+         * 到期时间(相对时间轮启动, 纳秒)
+         */
+        private final long deadline;
+
+        /**
+         * 剩余圈数, 只由调度线程访问
+         */
+        private long rounds;
+
+        private volatile boolean cancelled;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * 取消任务(在下次经过所在槽时移除)
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
@@ -85,6 +85,8 @@ public class WebSocketHandshakeInterceptor implements HandshakeInterceptor {
             // 设置attributes
             attributes.put("user", loginUser);
             attributes.put("userId", loginUser.getId());
+            // 脱敏后的用户信息只生成一次, 之后每条消息复用
+            attributes.put("userVO", userService.getUserVO(loginUser));
             attributes.put("pictureId", Long.valueOf(pictureId)); // Long类型
         }
         return true;
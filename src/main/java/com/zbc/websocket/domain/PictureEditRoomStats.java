@@ -0,0 +1,44 @@
+package com.zbc.websocket.domain;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * 协同编辑房间统计信息
+ */
+@Data
+public class PictureEditRoomStats implements Serializable {
+
+    /**
+     * 图片 id
+     */
+    private Long pictureId;
+
+    /**
+     * 连接数
+     */
+    private int sessionCount;
+
+    /**
+     * 待发送的消息数
+     */
+    private long queuedMessages;
+
+    /**
+     * 待发送的消息大小(字节)
+     */
+    private long queuedBytes;
+
+    /**
+     * 因客户端过慢丢弃的消息数
+     */
+    private long droppedMessages;
+
+    /**
+     * 因客户端过慢关闭的连接数
+     */
+    private long closedSessions;
+
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,124 @@
+package com.zbc.manage.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 磁盘 LRU 缓存: 缓存键校验、按访问顺序淘汰与重启恢复
+ */
+class DiskLruCacheTest {
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    void rejectsUnsafeKeys() {
+        DiskLruCache cache = new DiskLruCache(tempDir, 1024);
+        assertThrows(IllegalArgumentException.class, () -> cache.get(null));
+        assertThrows(IllegalArgumentException.class, () -> cache.get(""));
+        assertThrows(IllegalArgumentException.class, () -> cache.get(".."));
+        assertThrows(IllegalArgumentException.class, () -> cache.get(".tmp-1"));
+        assertThrows(IllegalArgumentException.class, () -> cache.put("../escape", new byte[1]));
+        assertThrows(IllegalArgumentException.class, () -> cache.put("a/b", new byte[1]));
+        assertThrows(IllegalArgumentException.class, () -> cache.remove("a\\b"));
+        assertFalse(new File(tempDir.getParentFile(), "escape").exists());
+    }
+
+    @Test
+    void putAndGet() throws Exception {
+        DiskLruCache cache = new DiskLruCache(tempDir, 1024);
+        File file = cache.put("a", new byte[]{1, 2, 3});
+        assertArrayEquals(new byte[]{1, 2, 3}, Files.readAllBytes(file.toPath()));
+        assertEquals(file, cache.get("a"));
+        assertNull(cache.get("b"));
+
+        // 覆盖写入时只计算新大小
+        cache.put("a", new ByteArrayInputStream(new byte[]{4, 5}));
+        assertArrayEquals(new byte[]{4, 5}, Files.readAllBytes(cache.get("a").toPath()));
+        assertEquals(1, cache.size());
+        assertEquals(2, cache.getTotalBytes());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() throws Exception {
+        DiskLruCache cache = new DiskLruCache(tempDir, 30);
+        cache.put("a", new byte[10]);
+        cache.put("b", new byte[10]);
+        cache.put("c", new byte[10]);
+        // 访问 a 后, b 成为最久未访问的
+        assertNotNull(cache.get("a"));
+
+        cache.put("d", new byte[10]);
+
+        assertNull(cache.get("b"));
+        assertFalse(new File(tempDir, "b").exists());
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+        assertNotNull(cache.get("d"));
+        assertEquals(30, cache.getTotalBytes());
+    }
+
+    @Test
+    void keepsNewEntryLargerThanLimit() throws Exception {
+        DiskLruCache cache = new DiskLruCache(tempDir, 10);
+        cache.put("a", new byte[5]);
+
+        cache.put("big", new byte[20]);
+
+        assertNull(cache.get("a"));
+        assertNotNull(cache.get("big"));
+        assertEquals(20, cache.getTotalBytes());
+    }
+
+    @Test
+    void removeAndExternallyDeletedFile() throws Exception {
+        DiskLruCache cache = new DiskLruCache(tempDir, 1024);
+        cache.put("a", new byte[10]);
+        File file = cache.put("b", new byte[10]);
+
+        cache.remove("a");
+        assertFalse(new File(tempDir, "a").exists());
+        assertTrue(file.delete());
+        assertNull(cache.get("b"));
+
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getTotalBytes());
+    }
+
+    @Test
+    void reloadsExistingFilesAndDropsTempFiles() throws Exception {
+        DiskLruCache cache = new DiskLruCache(tempDir, 1024);
+        cache.put("a", new byte[10]);
+        cache.put("b", new byte[10]);
+        File tempFile = new File(tempDir, ".tmp-unfinished");
+        Files.write(tempFile.toPath(), new byte[5]);
+
+        DiskLruCache reloaded = new DiskLruCache(tempDir, 1024);
+
+        assertEquals(2, reloaded.size());
+        assertEquals(20, reloaded.getTotalBytes());
+        assertNotNull(reloaded.get("a"));
+        assertFalse(tempFile.exists());
+    }
+
+    @Test
+    void reloadEvictsOldestWhenOverLimit() throws Exception {
+        DiskLruCache cache = new DiskLruCache(tempDir, 1024);
+        File oldFile = cache.put("old", new byte[10]);
+        File newFile = cache.put("new", new byte[10]);
+        assertTrue(oldFile.setLastModified(System.currentTimeMillis() - 60_000));
+        assertTrue(newFile.setLastModified(System.currentTimeMillis()));
+
+        DiskLruCache reloaded = new DiskLruCache(tempDir, 15);
+
+        assertNull(reloaded.get("old"));
+        assertNotNull(reloaded.get("new"));
+        assertEquals(10, reloaded.getTotalBytes());
+    }
+}
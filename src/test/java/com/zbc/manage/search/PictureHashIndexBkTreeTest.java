@@ -0,0 +1,117 @@
+package com.zbc.manage.search;
+
+import com.zbc.utils.ImageHashUtils;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 感知哈希 BK 树: 查询结果与逐个比较一致, 按距离升序, 删除(含重建)后仍然正确
+ */
+class PictureHashIndexBkTreeTest {
+
+    @Test
+    void searchEmptyTree() {
+        PictureHashIndex.BkTree bkTree = new PictureHashIndex.BkTree();
+        assertTrue(bkTree.search(0L, 10, 10).isEmpty());
+        bkTree.remove(0L, 1L);
+        assertTrue(bkTree.search(0L, 10, 10).isEmpty());
+    }
+
+    @Test
+    void sameHashSharesNodeAndIgnoresDuplicates() {
+        PictureHashIndex.BkTree bkTree = new PictureHashIndex.BkTree();
+        bkTree.add(0x0fL, 1L);
+        bkTree.add(0x0fL, 2L);
+        bkTree.add(0x0fL, 1L);
+        bkTree.add(0x0eL, 3L);
+
+        assertEquals(Arrays.asList(1L, 2L), bkTree.search(0x0fL, 0, 10));
+        assertEquals(Arrays.asList(1L, 2L, 3L), bkTree.search(0x0fL, 1, 10));
+    }
+
+    @Test
+    void resultsOrderedByDistanceAndLimited() {
+        PictureHashIndex.BkTree bkTree = new PictureHashIndex.BkTree();
+        bkTree.add(0b1111L, 4L);
+        bkTree.add(0b0000L, 0L);
+        bkTree.add(0b0011L, 2L);
+        bkTree.add(0b0001L, 1L);
+
+        assertEquals(Arrays.asList(0L, 1L, 2L), bkTree.search(0L, 2, 10));
+        assertEquals(Arrays.asList(0L, 1L), bkTree.search(0L, 4, 2));
+        assertEquals(Arrays.asList(4L, 2L), bkTree.search(0b1111L, 2, 10));
+    }
+
+    @Test
+    void matchesBruteForce() {
+        Random random = new Random(42);
+        PictureHashIndex.BkTree bkTree = new PictureHashIndex.BkTree();
+        Map<Long, Long> hashMap = new HashMap<>();
+        long base = random.nextLong();
+        for (long pictureId = 1; pictureId <= 2000; pictureId++) {
+            // 一部分哈希集中在 base 附近, 保证查询有结果
+            long hash = pictureId % 2 == 0 ? flipBits(base, random.nextInt(12), random) : random.nextLong();
+            hashMap.put(pictureId, hash);
+            bkTree.add(hash, pictureId);
+        }
+        for (int i = 0; i < 20; i++) {
+            long query = flipBits(base, random.nextInt(6), random);
+            assertSearchMatches(bkTree, hashMap, query, 8);
+        }
+    }
+
+    @Test
+    void removeKeepsRemainingSearchable() {
+        Random random = new Random(7);
+        PictureHashIndex.BkTree bkTree = new PictureHashIndex.BkTree();
+        Map<Long, Long> hashMap = new HashMap<>();
+        long base = random.nextLong();
+        for (long pictureId = 1; pictureId <= 500; pictureId++) {
+            long hash = flipBits(base, random.nextInt(16), random);
+            hashMap.put(pictureId, hash);
+            bkTree.add(hash, pictureId);
+        }
+        // 删除大部分图片, 空节点超过有效图片数量时触发重建
+        for (long pictureId = 1; pictureId <= 400; pictureId++) {
+            bkTree.remove(hashMap.remove(pictureId), pictureId);
+        }
+        assertSearchMatches(bkTree, hashMap, base, 10);
+        // 删除不存在的图片不影响结果
+        bkTree.remove(base, 10_000L);
+        assertSearchMatches(bkTree, hashMap, base, 10);
+        // 删除后可以重新加入
+        bkTree.add(base, 1L);
+        hashMap.put(1L, base);
+        assertEquals(1L, bkTree.search(base, 0, 10).get(0));
+        assertSearchMatches(bkTree, hashMap, base, 10);
+    }
+
+    private static void assertSearchMatches(PictureHashIndex.BkTree bkTree, Map<Long, Long> hashMap, long query, int maxDistance) {
+        List<Long> result = bkTree.search(query, maxDistance, Integer.MAX_VALUE);
+        Set<Long> expected = new HashSet<>();
+        hashMap.forEach((pictureId, hash) -> {
+            if (ImageHashUtils.hammingDistance(query, hash) <= maxDistance) {
+                expected.add(pictureId);
+            }
+        });
+        assertEquals(expected, new HashSet<>(result));
+        assertEquals(expected.size(), result.size());
+        int lastDistance = 0;
+        for (Long pictureId : result) {
+            int distance = ImageHashUtils.hammingDistance(query, hashMap.get(pictureId));
+            assertTrue(distance >= lastDistance, "结果未按距离升序");
+            lastDistance = distance;
+        }
+    }
+
+    private static long flipBits(long hash, int count, Random random) {
+        long result = hash;
+        for (int i = 0; i < count; i++) {
+            result ^= 1L << random.nextInt(64);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,83 @@
+package com.zbc.manage.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 图片文本分词: 英文单词与前缀、中日韩文字的单字与双字
+ */
+class PictureTextTokenizerTest {
+
+    @Test
+    void blankText() {
+        assertTrue(PictureTextTokenizer.tokenizeForIndex(null).isEmpty());
+        assertTrue(PictureTextTokenizer.tokenizeForIndex(" \t").isEmpty());
+        assertTrue(PictureTextTokenizer.tokenizeForQuery("").isEmpty());
+        assertTrue(PictureTextTokenizer.tokenizeForQuery("-_,.").isEmpty());
+    }
+
+    @Test
+    void englishWordsWithPrefixes() {
+        assertEquals(setOf("hello", "he", "hel", "hell", "world", "wo", "wor", "worl"),
+                PictureTextTokenizer.tokenizeForIndex("Hello, WORLD"));
+        assertEquals(setOf("hello", "world"), PictureTextTokenizer.tokenizeForQuery("Hello, WORLD"));
+    }
+
+    @Test
+    void singleLetterWordsHaveNoPrefixes() {
+        assertEquals(setOf("a", "b", "c"), PictureTextTokenizer.tokenizeForIndex("a-b_c"));
+    }
+
+    @Test
+    void prefixLengthIsCapped() {
+        String word = "abcdefghijklmnopqrstuvwxyz";
+        Set<String> tokens = PictureTextTokenizer.tokenizeForIndex(word);
+        assertTrue(tokens.contains(word));
+        assertTrue(tokens.contains(word.substring(0, 16)));
+        assertFalse(tokens.contains(word.substring(0, 17)));
+        assertFalse(tokens.contains("a"));
+        // 单词 + 前缀 2 ~ 16
+        assertEquals(1 + 15, tokens.size());
+    }
+
+    @Test
+    void cjkUnigramsAndBigrams() {
+        assertEquals(setOf("美", "美丽", "丽", "丽风", "风", "风景", "景"),
+                PictureTextTokenizer.tokenizeForIndex("美丽风景"));
+        assertEquals(setOf("美丽", "丽风", "风景"), PictureTextTokenizer.tokenizeForQuery("美丽风景"));
+        // 单个字时查询使用单字
+        assertEquals(setOf("猫"), PictureTextTokenizer.tokenizeForQuery("猫"));
+        assertEquals(setOf("猫"), PictureTextTokenizer.tokenizeForIndex("猫"));
+    }
+
+    @Test
+    void japaneseAndKorean() {
+        assertEquals(setOf("サク", "クラ"), PictureTextTokenizer.tokenizeForQuery("サクラ"));
+        assertEquals(setOf("풍경"), PictureTextTokenizer.tokenizeForQuery("풍경"));
+    }
+
+    @Test
+    void mixedScriptsAreSplit() {
+        assertEquals(setOf("cat", "ca", "猫", "猫咪", "咪", "2024", "20", "202"),
+                PictureTextTokenizer.tokenizeForIndex("cat猫咪2024"));
+        assertEquals(setOf("cat", "猫咪", "2024"), PictureTextTokenizer.tokenizeForQuery("cat猫咪2024"));
+    }
+
+    @Test
+    void queryTokensAreSubsetOfIndexTokens() {
+        String text = "Sunset 海边日落 beach2024 サクラ";
+        Set<String> indexTokens = PictureTextTokenizer.tokenizeForIndex(text);
+        assertTrue(indexTokens.containsAll(PictureTextTokenizer.tokenizeForQuery(text)));
+        // 前缀查询能命中完整单词建立的索引
+        assertTrue(indexTokens.containsAll(PictureTextTokenizer.tokenizeForQuery("sun 日落")));
+    }
+
+    private static Set<String> setOf(String... tokens) {
+        return new LinkedHashSet<>(Arrays.asList(tokens));
+    }
+}
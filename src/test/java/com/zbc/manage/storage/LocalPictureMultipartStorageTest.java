@@ -0,0 +1,126 @@
+package com.zbc.manage.storage;
+
+import cn.hutool.core.io.IoUtil;
+import com.qcloud.cos.model.PartETag;
+import com.qcloud.cos.model.ciModel.persistence.CIUploadResult;
+import com.qcloud.cos.model.ciModel.persistence.ImageInfo;
+import com.zbc.exception.BusinessException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 本地分片上传存储: 分片上传、合并、读取与取消
+ */
+class LocalPictureMultipartStorageTest {
+
+    private static final String KEY = "/space/1/2025-01-01_test.png";
+
+    @TempDir
+    File tempDir;
+
+    private LocalPictureMultipartStorage storage;
+
+    @BeforeEach
+    void setUp() {
+        storage = new LocalPictureMultipartStorage();
+        ReflectionTestUtils.setField(storage, "localDir", tempDir.getAbsolutePath());
+        storage.init();
+    }
+
+    @Test
+    void completeMergesPartsInOrder() throws Exception {
+        byte[] content = createPng(64, 32, new Color(0x20, 0x40, 0x80));
+        String uploadId = storage.initiate(KEY, "image/png");
+        // 乱序上传, 合并时按分片序号拼接
+        int partSize = content.length / 3;
+        List<byte[]> partList = Arrays.asList(
+                Arrays.copyOfRange(content, 0, partSize),
+                Arrays.copyOfRange(content, partSize, partSize * 2),
+                Arrays.copyOfRange(content, partSize * 2, content.length));
+        List<PartETag> partETagList = new ArrayList<>();
+        for (int partNumber = partList.size(); partNumber >= 1; partNumber--) {
+            byte[] part = partList.get(partNumber - 1);
+            String etag = storage.uploadPart(KEY, uploadId, partNumber, new ByteArrayInputStream(part), part.length);
+            partETagList.add(0, new PartETag(partNumber, etag));
+        }
+
+        CIUploadResult result = storage.complete(KEY, uploadId, partETagList, content.length);
+
+        ImageInfo imageInfo = result.getOriginalInfo().getImageInfo();
+        assertEquals(KEY, result.getOriginalInfo().getKey());
+        assertEquals(64, imageInfo.getWidth());
+        assertEquals(32, imageInfo.getHeight());
+        assertEquals("png", imageInfo.getFormat());
+        assertEquals("0x204080", imageInfo.getAve());
+        assertTrue(result.getProcessResults().getObjectList().isEmpty());
+        try (InputStream inputStream = storage.openObject(KEY)) {
+            assertArrayEquals(content, IoUtil.readBytes(inputStream));
+        }
+        // 合并后分片已清理
+        assertFalse(new File(tempDir, "parts/" + uploadId).exists());
+    }
+
+    @Test
+    void reuploadedPartOverwritesPrevious() throws Exception {
+        byte[] content = createPng(8, 8, Color.RED);
+        String uploadId = storage.initiate(KEY, "image/png");
+        storage.uploadPart(KEY, uploadId, 1, new ByteArrayInputStream(new byte[]{1, 2, 3}), 3);
+        String etag = storage.uploadPart(KEY, uploadId, 1, new ByteArrayInputStream(content), content.length);
+
+        storage.complete(KEY, uploadId, Arrays.asList(new PartETag(1, etag)), content.length);
+
+        try (InputStream inputStream = storage.openObject(KEY)) {
+            assertArrayEquals(content, IoUtil.readBytes(inputStream));
+        }
+    }
+
+    @Test
+    void completeRejectsNonImage() {
+        String uploadId = storage.initiate(KEY, "image/png");
+        byte[] content = "not an image".getBytes();
+        String etag = storage.uploadPart(KEY, uploadId, 1, new ByteArrayInputStream(content), content.length);
+
+        assertThrows(BusinessException.class,
+                () -> storage.complete(KEY, uploadId, Arrays.asList(new PartETag(1, etag)), content.length));
+    }
+
+    @Test
+    void abortRemovesParts() {
+        String uploadId = storage.initiate(KEY, "image/png");
+        storage.uploadPart(KEY, uploadId, 1, new ByteArrayInputStream(new byte[]{1, 2, 3}), 3);
+
+        storage.abort(KEY, uploadId);
+
+        assertFalse(new File(tempDir, "parts/" + uploadId).exists());
+        assertThrows(BusinessException.class,
+                () -> storage.uploadPart(KEY, uploadId, 2, new ByteArrayInputStream(new byte[]{4}), 1));
+        assertThrows(BusinessException.class, () -> storage.openObject(KEY));
+    }
+
+    private static byte[] createPng(int width, int height, Color color) throws Exception {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(color);
+        graphics.fillRect(0, 0, width, height);
+        graphics.dispose();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", outputStream);
+        return outputStream.toByteArray();
+    }
+}
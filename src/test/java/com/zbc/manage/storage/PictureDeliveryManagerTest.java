@@ -0,0 +1,79 @@
+package com.zbc.manage.storage;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 图片输出的协商缓存与范围请求解析
+ */
+class PictureDeliveryManagerTest {
+
+    private static final String E_TAG = "\"abc\"";
+
+    @Test
+    void parseRangeWithoutHeaderReturnsFullContent() {
+        assertNull(PictureDeliveryManager.parseRange(null, 1000));
+        assertNull(PictureDeliveryManager.parseRange("", 1000));
+    }
+
+    @Test
+    void parseRangeClosedRange() {
+        assertArrayEquals(new long[]{0, 99}, PictureDeliveryManager.parseRange("bytes=0-99", 1000));
+        assertArrayEquals(new long[]{999, 999}, PictureDeliveryManager.parseRange("bytes=999-999", 1000));
+    }
+
+    @Test
+    void parseRangeOpenRangeAndEndBeyondLength() {
+        assertArrayEquals(new long[]{500, 999}, PictureDeliveryManager.parseRange("bytes=500-", 1000));
+        assertArrayEquals(new long[]{900, 999}, PictureDeliveryManager.parseRange("bytes=900-2000", 1000));
+    }
+
+    @Test
+    void parseRangeSuffixRange() {
+        assertArrayEquals(new long[]{900, 999}, PictureDeliveryManager.parseRange("bytes=-100", 1000));
+        // 后缀长度超过文件大小时返回完整内容
+        assertArrayEquals(new long[]{0, 999}, PictureDeliveryManager.parseRange("bytes=-2000", 1000));
+    }
+
+    @Test
+    void parseRangeNotSatisfiable() {
+        assertEquals(0, PictureDeliveryManager.parseRange("bytes=1000-", 1000).length);
+        assertEquals(0, PictureDeliveryManager.parseRange("bytes=1000-1100", 1000).length);
+        assertEquals(0, PictureDeliveryManager.parseRange("bytes=-0", 1000).length);
+        assertEquals(0, PictureDeliveryManager.parseRange("bytes=0-", 0).length);
+        assertEquals(0, PictureDeliveryManager.parseRange("bytes=-10", 0).length);
+    }
+
+    @Test
+    void parseRangeIgnoresUnsupportedOrMalformed() {
+        assertNull(PictureDeliveryManager.parseRange("bytes=0-1,5-6", 1000));
+        assertNull(PictureDeliveryManager.parseRange("items=0-1", 1000));
+        assertNull(PictureDeliveryManager.parseRange("bytes=100", 1000));
+        assertNull(PictureDeliveryManager.parseRange("bytes=a-b", 1000));
+        assertNull(PictureDeliveryManager.parseRange("bytes=5-3", 1000));
+    }
+
+    @Test
+    void matchesETag() {
+        assertFalse(PictureDeliveryManager.matchesETag(null, E_TAG));
+        assertFalse(PictureDeliveryManager.matchesETag(" ", E_TAG));
+        assertTrue(PictureDeliveryManager.matchesETag(E_TAG, E_TAG));
+        assertTrue(PictureDeliveryManager.matchesETag("W/" + E_TAG, E_TAG));
+        assertTrue(PictureDeliveryManager.matchesETag("\"other\", " + E_TAG, E_TAG));
+        assertTrue(PictureDeliveryManager.matchesETag("*", E_TAG));
+        assertFalse(PictureDeliveryManager.matchesETag("\"other\"", E_TAG));
+        assertFalse(PictureDeliveryManager.matchesETag("abc", E_TAG));
+    }
+
+    @Test
+    void resolveRangeHonorsIfRange() {
+        assertEquals("bytes=0-99", PictureDeliveryManager.resolveRange("bytes=0-99", null, E_TAG));
+        assertEquals("bytes=0-99", PictureDeliveryManager.resolveRange("bytes=0-99", E_TAG, E_TAG));
+        // 版本已变化(或弱校验、日期)时返回完整内容
+        assertNull(PictureDeliveryManager.resolveRange("bytes=0-99", "\"other\"", E_TAG));
+        assertNull(PictureDeliveryManager.resolveRange("bytes=0-99", "W/" + E_TAG, E_TAG));
+        assertNull(PictureDeliveryManager.resolveRange("bytes=0-99", "Wed, 21 Oct 2015 07:28:00 GMT", E_TAG));
+        assertNull(PictureDeliveryManager.resolveRange(null, E_TAG, E_TAG));
+    }
+}
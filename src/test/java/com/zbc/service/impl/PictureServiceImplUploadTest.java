@@ -0,0 +1,134 @@
+package com.zbc.service.impl;
+
+import com.zbc.domain.dto.file.UploadPictureResult;
+import com.zbc.domain.dto.picture.PictureUploadRequest;
+import com.zbc.domain.pojo.Space;
+import com.zbc.domain.pojo.User;
+import com.zbc.exception.BusinessException;
+import com.zbc.exception.ErrorCode;
+import com.zbc.manage.quota.SpaceQuotaManager;
+import com.zbc.manage.quota.SpaceQuotaReservation;
+import com.zbc.manage.upload.UrlPictureUpload;
+import com.zbc.service.PictureFileService;
+import com.zbc.service.PicturePendingDeleteService;
+import com.zbc.service.SpaceService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 图片上传入库失败时清理本次新保存的文件记录与对象
+ */
+class PictureServiceImplUploadTest {
+
+    private static final String FILE_URL = "https://example.com/image.png";
+
+    private static final String FILE_HASH = "hash";
+
+    private PictureServiceImpl pictureService;
+
+    private UrlPictureUpload urlPictureUpload;
+
+    private SpaceQuotaManager spaceQuotaManager;
+
+    private PictureFileService pictureFileService;
+
+    private PicturePendingDeleteService picturePendingDeleteService;
+
+    private SpaceQuotaReservation reservation;
+
+    @BeforeEach
+    void setUp() {
+        pictureFileService = mock(PictureFileService.class);
+        picturePendingDeleteService = mock(PicturePendingDeleteService.class);
+        // 上传模板只模拟上传本身, 清理逻辑使用真实实现
+        urlPictureUpload = mock(UrlPictureUpload.class);
+        doCallRealMethod().when(urlPictureUpload).discardNewFile(any());
+        doCallRealMethod().when(urlPictureUpload).deleteUploadedObjects(any(), any());
+        ReflectionTestUtils.setField(urlPictureUpload, "pictureFileService", pictureFileService);
+        ReflectionTestUtils.setField(urlPictureUpload, "picturePendingDeleteService", picturePendingDeleteService);
+
+        SpaceService spaceService = mock(SpaceService.class);
+        when(spaceService.getById(1L)).thenReturn(new Space());
+        // URL 上传预留大小为 0, 上传完成后按实际大小修正时额度不足
+        spaceQuotaManager = mock(SpaceQuotaManager.class);
+        reservation = new SpaceQuotaReservation();
+        reservation.setSpaceId(1L);
+        when(spaceQuotaManager.reserve(eq(1L), anyLong(), anyLong())).thenReturn(reservation);
+        doThrow(new BusinessException(ErrorCode.OPERATION_ERROR, "空间大小不足"))
+                .when(spaceQuotaManager).resize(eq(reservation), anyLong());
+
+        pictureService = new PictureServiceImpl();
+        ReflectionTestUtils.setField(pictureService, "spaceService", spaceService);
+        ReflectionTestUtils.setField(pictureService, "urlPictureUpload", urlPictureUpload);
+        ReflectionTestUtils.setField(pictureService, "spaceQuotaManager", spaceQuotaManager);
+        ReflectionTestUtils.setField(pictureService, "pictureFileService", pictureFileService);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void resizeFailureRemovesNewFileAndObjects() {
+        when(urlPictureUpload.uploadPicture(eq(FILE_URL), anyString())).thenReturn(uploadResult(true));
+        when(pictureFileService.removeIfUnreferenced(FILE_HASH)).thenReturn(true);
+
+        BusinessException exception = assertThrows(BusinessException.class, this::upload);
+
+        assertEquals("空间大小不足", exception.getMessage());
+        verify(spaceQuotaManager).release(reservation);
+        verify(pictureFileService).removeIfUnreferenced(FILE_HASH);
+        ArgumentCaptor<Collection<String>> keyCaptor = ArgumentCaptor.forClass(Collection.class);
+        verify(picturePendingDeleteService).enqueue(keyCaptor.capture());
+        assertEquals(new HashSet<>(Arrays.asList("/space/1/2025-01-01_a.png", "/space/1/2025-01-01_a_thumbnail.png")),
+                new HashSet<>(keyCaptor.getValue()));
+    }
+
+    @Test
+    void resizeFailureKeepsReusedFile() {
+        when(urlPictureUpload.uploadPicture(eq(FILE_URL), anyString())).thenReturn(uploadResult(false));
+
+        assertThrows(BusinessException.class, this::upload);
+
+        verify(spaceQuotaManager).release(reservation);
+        verify(pictureFileService, never()).removeIfUnreferenced(anyString());
+        verifyNoInteractions(picturePendingDeleteService);
+    }
+
+    @Test
+    void resizeFailureKeepsFileReferencedMeanwhile() {
+        when(urlPictureUpload.uploadPicture(eq(FILE_URL), anyString())).thenReturn(uploadResult(true));
+        // 其他上传已复用该文件并完成引用
+        when(pictureFileService.removeIfUnreferenced(FILE_HASH)).thenReturn(false);
+
+        assertThrows(BusinessException.class, this::upload);
+
+        verify(pictureFileService).removeIfUnreferenced(FILE_HASH);
+        verifyNoInteractions(picturePendingDeleteService);
+    }
+
+    private void upload() {
+        PictureUploadRequest uploadRequest = new PictureUploadRequest();
+        uploadRequest.setSpaceId(1L);
+        User loginUser = new User();
+        loginUser.setId(2L);
+        pictureService.uploadPicture(FILE_URL, uploadRequest, loginUser);
+    }
+
+    private static UploadPictureResult uploadResult(boolean newFile) {
+        UploadPictureResult uploadPictureResult = new UploadPictureResult();
+        uploadPictureResult.setUrl("https://cos.example.com/space/1/2025-01-01_a.png");
+        uploadPictureResult.setThumbnailUrl("https://cos.example.com/space/1/2025-01-01_a_thumbnail.png");
+        uploadPictureResult.setPicSize(1024L);
+        uploadPictureResult.setFileHash(FILE_HASH);
+        uploadPictureResult.setNewFile(newFile);
+        return uploadPictureResult;
+    }
+}
@@ -0,0 +1,43 @@
+package com.zbc.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 标签规范化: 与关联表的排序规则一致, 不区分大小写去重
+ */
+class PictureTagServiceImplTest {
+
+    private final PictureTagServiceImpl pictureTagService = new PictureTagServiceImpl();
+
+    @Test
+    void emptyAndBlankTags() {
+        assertTrue(pictureTagService.normalizeTags(null).isEmpty());
+        assertTrue(pictureTagService.normalizeTags(Collections.emptyList()).isEmpty());
+        assertTrue(pictureTagService.normalizeTags(Arrays.asList(" ", "", null)).isEmpty());
+    }
+
+    @Test
+    void caseVariantsKeepFirstSpelling() {
+        assertEquals(Arrays.asList("Java", "spring"),
+                pictureTagService.normalizeTags(Arrays.asList("Java", "java", " JAVA ", "spring", "Spring")));
+        assertEquals(Collections.singletonList("风景"), pictureTagService.normalizeTags(Arrays.asList("风景", " 风景")));
+    }
+
+    @Test
+    void truncatedTagsAreDeduplicated() {
+        String prefix = String.join("", Collections.nCopies(64, "a"));
+        assertEquals(Collections.singletonList(prefix),
+                pictureTagService.normalizeTags(Arrays.asList(prefix + "b", prefix.toUpperCase() + "c")));
+    }
+
+    @Test
+    void parseTagsFromJson() {
+        assertEquals(Arrays.asList("Java", "cat"), pictureTagService.parseTags("[\"Java\",\"java\",\"cat\"]"));
+        assertTrue(pictureTagService.parseTags("not json").isEmpty());
+    }
+}
@@ -0,0 +1,110 @@
+package com.zbc.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 图片感知哈希: 相同、缩放后的图片距离小, 不同图片距离大
+ */
+class ImageHashUtilsTest {
+
+    @Test
+    void hammingDistance() {
+        assertEquals(0, ImageHashUtils.hammingDistance(0x5aL, 0x5aL));
+        assertEquals(1, ImageHashUtils.hammingDistance(0b1010L, 0b1000L));
+        assertEquals(64, ImageHashUtils.hammingDistance(0L, -1L));
+    }
+
+    @Test
+    void sameImageHasSameHash() {
+        assertEquals(ImageHashUtils.pHash(pattern(256, false)), ImageHashUtils.pHash(pattern(256, false)));
+        assertEquals(ImageHashUtils.dHash(pattern(256, false)), ImageHashUtils.dHash(pattern(256, false)));
+    }
+
+    @Test
+    void scaledImageIsSimilar() {
+        BufferedImage image = pattern(256, false);
+        long pHash = ImageHashUtils.pHash(image);
+        long dHash = ImageHashUtils.dHash(image);
+        for (int size : new int[]{100, 640}) {
+            BufferedImage scaled = scale(image, size);
+            assertTrue(ImageHashUtils.hammingDistance(pHash, ImageHashUtils.pHash(scaled)) <= 10, "pHash, size = " + size);
+            assertTrue(ImageHashUtils.hammingDistance(dHash, ImageHashUtils.dHash(scaled)) <= 10, "dHash, size = " + size);
+        }
+    }
+
+    @Test
+    void differentImageIsNotSimilar() {
+        BufferedImage image = pattern(256, false);
+        assertTrue(ImageHashUtils.hammingDistance(ImageHashUtils.pHash(image), ImageHashUtils.pHash(stripes(256))) > 20);
+        assertTrue(ImageHashUtils.hammingDistance(ImageHashUtils.dHash(image), ImageHashUtils.dHash(stripes(256))) > 20);
+        // 反色后低频系数符号相反, 几乎所有位都不同
+        assertTrue(ImageHashUtils.hammingDistance(ImageHashUtils.pHash(image), ImageHashUtils.pHash(pattern(256, true))) > 40);
+    }
+
+    @Test
+    void transparentPixelsBlendWithWhite() {
+        BufferedImage transparent = new BufferedImage(32, 32, BufferedImage.TYPE_INT_ARGB);
+        BufferedImage white = new BufferedImage(32, 32, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = white.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, 32, 32);
+        graphics.dispose();
+        assertEquals(ImageHashUtils.pHash(white), ImageHashUtils.pHash(transparent));
+        assertEquals(ImageHashUtils.dHash(white), ImageHashUtils.dHash(transparent));
+    }
+
+    @Test
+    void imageSmallerThanHashSize() {
+        BufferedImage image = scale(pattern(256, false), 5);
+        assertDoesNotThrow(() -> ImageHashUtils.pHash(image));
+        assertDoesNotThrow(() -> ImageHashUtils.dHash(image));
+    }
+
+    /**
+     * 白底黑色圆形与矩形(invert 为 true 时反色)
+     */
+    private static BufferedImage pattern(int size, boolean invert) {
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        graphics.setColor(invert ? Color.BLACK : Color.WHITE);
+        graphics.fillRect(0, 0, size, size);
+        graphics.setColor(invert ? Color.WHITE : Color.BLACK);
+        graphics.fillOval(size / 8, size / 8, size / 2, size / 2);
+        graphics.fillRect(size * 5 / 8, size / 2, size / 4, size * 3 / 8);
+        graphics.dispose();
+        return image;
+    }
+
+    /**
+     * 白底黑色竖条纹
+     */
+    private static BufferedImage stripes(int size) {
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, size, size);
+        graphics.setColor(Color.BLACK);
+        for (int i = 0; i < 4; i++) {
+            graphics.fillRect(i * size / 4, 0, size / 8, size);
+        }
+        graphics.dispose();
+        return image;
+    }
+
+    private static BufferedImage scale(BufferedImage source, int size) {
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(source, 0, 0, size, size, null);
+        graphics.dispose();
+        return image;
+    }
+}
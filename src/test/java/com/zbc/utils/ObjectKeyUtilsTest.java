@@ -0,0 +1,34 @@
+package com.zbc.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 访问地址转换为对象键: 完整地址、重复的 / 与对象键本身得到相同结果
+ */
+class ObjectKeyUtilsTest {
+
+    @Test
+    void blankUrl() {
+        assertNull(ObjectKeyUtils.toObjectKey(null));
+        assertNull(ObjectKeyUtils.toObjectKey(" "));
+        assertNull(ObjectKeyUtils.toObjectKey("https://example.com"));
+        assertNull(ObjectKeyUtils.toObjectKey("https://example.com/"));
+    }
+
+    @Test
+    void sameKeyForUrlAndPath() {
+        String key = "/space/1/2025-01-01_a.png";
+        assertEquals(key, ObjectKeyUtils.toObjectKey("https://example.com/space/1/2025-01-01_a.png"));
+        // host + "/" + 以 / 开头的上传路径
+        assertEquals(key, ObjectKeyUtils.toObjectKey("https://example.com//space/1/2025-01-01_a.png"));
+        assertEquals(key, ObjectKeyUtils.toObjectKey("space/1/2025-01-01_a.png"));
+        assertEquals(key, ObjectKeyUtils.toObjectKey(key));
+    }
+
+    @Test
+    void queryIsIgnored() {
+        assertEquals("/public/2/a.webp", ObjectKeyUtils.toObjectKey("https://example.com/public/2/a.webp?imageMogr2/format/png"));
+    }
+}
@@ -0,0 +1,102 @@
+package com.zbc.websocket;
+
+import cn.hutool.core.bean.BeanUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+import com.zbc.config.JsonConfig;
+import com.zbc.domain.pojo.User;
+import com.zbc.domain.vo.UserVO;
+import com.zbc.enums.PictureEditMessageTypeEnum;
+import com.zbc.websocket.domain.PictureEditResponseMessage;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.socket.TextMessage;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 协同编辑广播编码基准测试: 每条消息新建 ObjectMapper 并复制用户信息(原实现) 与 共用 ObjectMapper、缓存用户信息(现实现)
+ * <p>
+ * 广播给房间内的多个接收者, 每个接收者计算一次消息大小(发送队列限制)。
+ * 运行 main 方法, 通过 gc 分析器对比 gc.alloc.rate.norm(每次操作分配的字节数)。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PictureEditMessageCodecBenchmark {
+
+    @Param({"10"})
+    private int recipients;
+
+    private User user;
+
+    private UserVO userVO;
+
+    private PictureEditMessageCodec pictureEditMessageCodec;
+
+    @Setup
+    public void setup() {
+        user = new User();
+        user.setId(1866000000000000001L);
+        user.setUserAccount("benchmark");
+        user.setUserName("基准测试用户");
+        user.setUserAvatar("https://example.com/avatar.png");
+        user.setUserProfile("协同编辑基准测试");
+        user.setUserRole("user");
+        user.setCreateTime(new Date());
+        userVO = BeanUtil.copyProperties(user, UserVO.class);
+        ObjectMapper objectMapper = new JsonConfig().jacksonObjectMapper(new Jackson2ObjectMapperBuilder());
+        pictureEditMessageCodec = new PictureEditMessageCodec(objectMapper);
+    }
+
+    @Benchmark
+    public void perMessageMapper(Blackhole blackhole) throws Exception {
+        PictureEditResponseMessage pictureEditResponseMessage = createMessage(BeanUtil.copyProperties(user, UserVO.class));
+        ObjectMapper objectMapper = new ObjectMapper();
+        SimpleModule module = new SimpleModule();
+        module.addSerializer(Long.class, ToStringSerializer.instance);
+        module.addSerializer(Long.TYPE, ToStringSerializer.instance);
+        objectMapper.registerModule(module);
+        TextMessage textMessage = new TextMessage(objectMapper.writeValueAsString(pictureEditResponseMessage));
+        for (int i = 0; i < recipients; i++) {
+            blackhole.consume(textMessage.getPayloadLength());
+        }
+    }
+
+    @Benchmark
+    public void sharedCodec(Blackhole blackhole) throws Exception {
+        PictureEditResponseMessage pictureEditResponseMessage = createMessage(userVO);
+        TextMessage textMessage = pictureEditMessageCodec.encode(pictureEditResponseMessage);
+        for (int i = 0; i < recipients; i++) {
+            blackhole.consume(textMessage.getPayloadLength());
+        }
+    }
+
+    private static PictureEditResponseMessage createMessage(UserVO userVO) {
+        PictureEditResponseMessage pictureEditResponseMessage = new PictureEditResponseMessage();
+        pictureEditResponseMessage.setType(PictureEditMessageTypeEnum.EDIT_ACTION.getValue());
+        pictureEditResponseMessage.setMessage(userVO.getUserName() + "执行了放大操作");
+        pictureEditResponseMessage.setEditAction("ZOOM_IN");
+        pictureEditResponseMessage.setUser(userVO);
+        return pictureEditResponseMessage;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(PictureEditMessageCodecBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,171 @@
+package com.zbc.websocket;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 协同编辑时间轮: 跨多圈的任务在到期的刻度执行(手动推进刻度), 实际调度时不提前执行, 取消的任务不执行
+ */
+class PictureEditTimerWheelTest {
+
+    private static final long TICK_MILLIS = 10;
+
+    /**
+     * 8 个槽, 一圈 80 毫秒
+     */
+    private static final int WHEEL_SIZE = 8;
+
+    /**
+     * 调度线程的时间误差上限(测试机负载高时留出余量, 只用于发现明显的延迟, 精确的刻度由手动推进的测试校验)
+     */
+    private static final long TOLERANCE_MILLIS = 500;
+
+    private PictureEditTimerWheel timerWheel;
+
+    @BeforeEach
+    void setUp() {
+        timerWheel = new PictureEditTimerWheel();
+        ReflectionTestUtils.setField(timerWheel, "tickMillis", TICK_MILLIS);
+        ReflectionTestUtils.setField(timerWheel, "wheelSize", WHEEL_SIZE);
+        timerWheel.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        timerWheel.destroy();
+    }
+
+    @Test
+    void firesOnTimeAcrossRounds() throws Exception {
+        long[] delays = {5, 35, 80, 250, 410};
+        CountDownLatch latch = new CountDownLatch(delays.length);
+        List<Long> order = Collections.synchronizedList(new ArrayList<>());
+        long[] elapsed = new long[delays.length];
+        long start = System.nanoTime();
+        // 倒序添加, 执行顺序仍按到期时间
+        for (int i = delays.length - 1; i >= 0; i--) {
+            int index = i;
+            timerWheel.schedule(() -> {
+                elapsed[index] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                order.add(delays[index]);
+                latch.countDown();
+            }, delays[i]);
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < delays.length; i++) {
+            // 不早于到期时间
+            assertTrue(elapsed[i] >= delays[i], "提前执行, delay = " + delays[i] + ", elapsed = " + elapsed[i]);
+            assertTrue(elapsed[i] < delays[i] + TOLERANCE_MILLIS, "延迟执行, delay = " + delays[i] + ", elapsed = " + elapsed[i]);
+        }
+        List<Long> expected = new ArrayList<>();
+        for (long delay : delays) {
+            expected.add(delay);
+        }
+        assertEquals(expected, order);
+    }
+
+    @Test
+    void firesInExpireTickAcrossRounds() {
+        // 一个刻度 1 秒, 4 个槽, 测试执行期间真实时间的流逝不会跨过刻度
+        PictureEditTimerWheel manualWheel = new PictureEditTimerWheel();
+        ReflectionTestUtils.setField(manualWheel, "tickMillis", 1000L);
+        ReflectionTestUtils.setField(manualWheel, "wheelSize", 4);
+        manualWheel.initBuckets();
+        long[] firedTicks = new long[6];
+        Arrays.fill(firedTicks, -1);
+        long[] delays = {500, 3500, 4500, 10500, 9500};
+        PictureEditTimerWheel.Timeout[] timeouts = new PictureEditTimerWheel.Timeout[delays.length];
+        long[] currentTick = new long[1];
+        for (int i = 0; i < delays.length; i++) {
+            int index = i;
+            timeouts[i] = manualWheel.schedule(() -> firedTicks[index] = currentTick[0], delays[i]);
+        }
+
+        for (currentTick[0] = 0; currentTick[0] < 16; currentTick[0]++) {
+            if (currentTick[0] == 2) {
+                // 已放入槽且还有剩余圈数时取消
+                timeouts[4].cancel();
+            }
+            if (currentTick[0] == 6) {
+                // 已到期的任务在下一个刻度执行
+                manualWheel.schedule(() -> firedTicks[5] = currentTick[0], 0);
+            }
+            manualWheel.onTick();
+        }
+
+        // 第 0 圈的第 0、3 个槽, 第 1 圈的第 0 个槽, 第 2 圈的第 2 个槽, 不提前也不多等一圈
+        assertEquals(0, firedTicks[0]);
+        assertEquals(3, firedTicks[1]);
+        assertEquals(4, firedTicks[2]);
+        assertEquals(10, firedTicks[3]);
+        assertEquals(-1, firedTicks[4]);
+        assertEquals(6, firedTicks[5]);
+    }
+
+    @Test
+    void runsEachTaskOnce() throws Exception {
+        AtomicInteger count = new AtomicInteger();
+        timerWheel.schedule(count::incrementAndGet, 20);
+        timerWheel.schedule(count::incrementAndGet, 0);
+
+        // 经过多圈后每个任务只执行一次
+        Thread.sleep(300);
+        assertEquals(2, count.get());
+    }
+
+    @Test
+    void cancelledTasksDoNotRun() throws Exception {
+        AtomicInteger count = new AtomicInteger();
+        // 仍在待添加队列中时取消
+        timerWheel.schedule(count::incrementAndGet, 30).cancel();
+        // 已放入槽(跨多圈)后取消
+        PictureEditTimerWheel.Timeout inBucket = timerWheel.schedule(count::incrementAndGet, 200);
+        PictureEditTimerWheel.Timeout notCancelled = timerWheel.schedule(count::incrementAndGet, 200);
+        Thread.sleep(50);
+        inBucket.cancel();
+        CountDownLatch latch = new CountDownLatch(1);
+        timerWheel.schedule(latch::countDown, 300);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(1, count.get());
+        notCancelled.cancel();
+    }
+
+    @Test
+    void taskCanRescheduleAndFailuresDoNotStopWheel() throws Exception {
+        timerWheel.schedule(() -> {
+            throw new IllegalStateException("test");
+        }, 10);
+        // 与存活检查一样, 在任务中重新添加下一次任务
+        CountDownLatch latch = new CountDownLatch(3);
+        AtomicLong lastRun = new AtomicLong(System.nanoTime());
+        AtomicLong minInterval = new AtomicLong(Long.MAX_VALUE);
+        Runnable[] task = new Runnable[1];
+        task[0] = () -> {
+            long now = System.nanoTime();
+            minInterval.accumulateAndGet(TimeUnit.NANOSECONDS.toMillis(now - lastRun.getAndSet(now)), Math::min);
+            latch.countDown();
+            if (latch.getCount() > 0) {
+                timerWheel.schedule(task[0], 100);
+            }
+        };
+        timerWheel.schedule(task[0], 100);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(minInterval.get() >= 100, "提前执行, interval = " + minInterval.get());
+    }
+}